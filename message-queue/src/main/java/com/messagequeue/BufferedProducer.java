@@ -0,0 +1,185 @@
+package com.messagequeue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.messagequeue.services.AsyncQueueService;
+import com.messagequeue.services.SqsQueueService;
+import com.services.model.Message;
+import com.services.model.SendMessageRequest;
+
+/// <summary>
+/// Collects the messages sent to a queue by any number of threads into batches and pushes every batch with a
+/// single asynchronous push. A batch is pushed once it holds the most messages or bytes of a batch, or once its
+/// first message has waited the linger time, so a busy producer sends full batches and a quiet one waits no longer
+/// than the linger time. Every message gets its own future, completed when the push of its batch completes.
+/// The size of a message is the size of its text form, the body Amazon SQS receives for it.
+/// </summary>
+public class BufferedProducer implements AutoCloseable {
+
+	private final AsyncQueueService queueService;
+	private final String queueUrl;
+	private final int maxBatchSize;
+	private final int maxBatchBytes;
+	private final long lingerMillis;
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "buffered-producer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	// Batch being filled, replaced by a new batch when it is pushed. Guarded by this.
+	private Batch batch = new Batch();
+	private boolean closed;
+
+	/// <parameter name="queueService">Represents the service of the queue.</parameter>
+	/// <parameter name="queueUrl">Represents the Queue URL.</parameter>
+	/// <parameter name="maxBatchSize">Represents the most messages pushed at once.</parameter>
+	/// <parameter name="maxBatchBytes">Represents the most bytes of messages pushed at once.</parameter>
+	/// <parameter name="lingerMillis">Represents the longest a message waits for its batch to fill.</parameter>
+	public BufferedProducer(AsyncQueueService queueService, String queueUrl, int maxBatchSize, int maxBatchBytes, long lingerMillis) {
+		if (maxBatchSize < 1 || maxBatchBytes < 1) {
+			throw new IllegalArgumentException("A batch must hold at least one message and one byte: " + maxBatchSize + ", " + maxBatchBytes);
+		}
+
+		this.queueService = queueService;
+		this.queueUrl = queueUrl;
+		this.maxBatchSize = maxBatchSize;
+		this.maxBatchBytes = maxBatchBytes;
+		this.lingerMillis = lingerMillis;
+	}
+
+	/// <summary>Creates the producer with the batch limits of Amazon SQS, 10 messages and 256 KB.</summary>
+	public static BufferedProducer forSqs(AsyncQueueService queueService, String queueUrl, long lingerMillis) {
+		return new BufferedProducer(queueService, queueUrl, SqsQueueService.maxBatchEntries, SqsQueueService.maxBatchBytes, lingerMillis);
+	}
+
+	/// <summary>Adds the message to the batch being filled, pushing the batch when the message fills it.</summary>
+	/// <parameter name="message">Represents the message, with its own delay seconds when it is delayed.</parameter>
+	/// <Returns>The future completed once the message is in the queue, failed when the push failed.</Returns>
+	public CompletableFuture<Void> send(Message message) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		int bytes = message.toString().getBytes(StandardCharsets.UTF_8).length;
+
+		if (bytes > maxBatchBytes) {
+			future.completeExceptionally(new IllegalArgumentException("The message of " + bytes + " bytes exceeds the batch limit of " + maxBatchBytes + " bytes."));
+			return future;
+		}
+
+		Batch full = null;
+		Batch next;
+
+		synchronized (this) {
+			if (closed) {
+				future.completeExceptionally(new IllegalStateException("The producer is closed."));
+				return future;
+			}
+
+			if (batch.bytes + bytes > maxBatchBytes) {
+				full = takeBatch();
+			}
+
+			batch.add(message, bytes, future);
+
+			if (batch.messages.size() == 1 && lingerMillis > 0) {
+				Batch lingering = batch;
+				scheduler.schedule(() -> flush(lingering), lingerMillis, TimeUnit.MILLISECONDS);
+			}
+
+			next = batch.messages.size() >= maxBatchSize || lingerMillis <= 0 ? takeBatch() : null;
+		}
+
+		push(full);
+		push(next);
+		return future;
+	}
+
+	/// <summary>Pushes the batch being filled without waiting for it to fill.</summary>
+	public void flush() {
+		Batch full;
+
+		synchronized (this) {
+			full = takeBatch();
+		}
+
+		push(full);
+	}
+
+	/// <summary>Pushes the messages sent so far and stops the producer, later sends fail.</summary>
+	@Override
+	public void close() {
+		synchronized (this) {
+			closed = true;
+		}
+
+		flush();
+		scheduler.shutdownNow();
+	}
+
+	/// <summary>Pushes the batch once its linger time passed, unless it was pushed already.</summary>
+	private void flush(Batch lingering) {
+		Batch full = null;
+
+		synchronized (this) {
+			if (batch == lingering) {
+				full = takeBatch();
+			}
+		}
+
+		push(full);
+	}
+
+	/// <summary>Replaces the batch being filled with an empty one.</summary>
+	/// <Returns>The batch that was being filled, null when it was empty.</Returns>
+	private Batch takeBatch() {
+		Batch full = batch;
+		batch = new Batch();
+		return full.messages.isEmpty() ? null : full;
+	}
+
+	/// <summary>Pushes the batch outside of the lock and completes the futures of its messages.</summary>
+	private void push(Batch full) {
+		if (full == null) {
+			return;
+		}
+
+		CompletableFuture<Void> pushed;
+
+		try {
+			pushed = queueService.pushAsync(new SendMessageRequest(queueUrl, full.messages, 0));
+		}
+		catch (RuntimeException e) {
+			pushed = new CompletableFuture<>();
+			pushed.completeExceptionally(e);
+		}
+
+		pushed.whenComplete((result, failure) -> {
+			for (CompletableFuture<Void> future : full.futures) {
+				if (failure != null) {
+					future.completeExceptionally(failure);
+				}
+				else {
+					future.complete(null);
+				}
+			}
+		});
+	}
+
+	/// <summary>Messages of a batch being filled and their futures.</summary>
+	private static class Batch {
+		private final List<Message> messages = new ArrayList<>();
+		private final List<CompletableFuture<Void>> futures = new ArrayList<>();
+		private int bytes;
+
+		void add(Message message, int messageBytes, CompletableFuture<Void> future) {
+			messages.add(message);
+			futures.add(future);
+			bytes += messageBytes;
+		}
+	}
+}
@@ -1,49 +1,60 @@
-package com.messagequeue;
-
-import java.util.List;
-
-import com.messagequeue.services.QueueService;
-import com.services.model.DeleteMessageRequest;
-import com.services.model.Message;
-import com.services.model.ReceiveMessageRequest;
-
-public class Consumer implements Runnable {
-
-	private QueueService queueService;
-	private String queueUrl;
-	private int visibilityTimeout;
-	private int maxMessages;
-	
-	public Consumer(QueueService queueService, String queueUrl, int visibilityTimeout, int maxMessages) {
-		this.queueService = queueService;
-		this.queueUrl = queueUrl;
-		this.visibilityTimeout = visibilityTimeout;
-		this.maxMessages = maxMessages;
-	}
-	
-	public void run() {
-		
-		// Generate Send Message Request.
-		ReceiveMessageRequest receiveRequest = new ReceiveMessageRequest(queueUrl,maxMessages, visibilityTimeout);
-		
-		try {
-			List<Message> receivedMessages = (List<Message>)queueService.poll(receiveRequest);
-						
-			if(receivedMessages != null) {
-				for(Message msg : receivedMessages) {
-					System.out.println(msg.toString());
-					
-				}
-				
-				DeleteMessageRequest deleteRequest = new DeleteMessageRequest(queueUrl, receivedMessages);
-				queueService.delete(deleteRequest);
-			}
-			
-			
-			
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		}
-	}
-}
-
+package com.messagequeue;
+
+import java.util.List;
+
+import com.messagequeue.services.QueueService;
+import com.services.model.DeleteMessageRequest;
+import com.services.model.DeleteMessageResult;
+import com.services.model.Message;
+import com.services.model.ReceiveMessageRequest;
+
+public class Consumer implements Runnable {
+
+	private QueueService queueService;
+	private String queueUrl;
+	private int visibilityTimeout;
+	private int maxMessages;
+	private int waitTimeSeconds;
+	
+	public Consumer(QueueService queueService, String queueUrl, int visibilityTimeout, int maxMessages) {
+		this(queueService, queueUrl, visibilityTimeout, maxMessages, 0);
+	}
+	
+	public Consumer(QueueService queueService, String queueUrl, int visibilityTimeout, int maxMessages, int waitTimeSeconds) {
+		this.queueService = queueService;
+		this.queueUrl = queueUrl;
+		this.visibilityTimeout = visibilityTimeout;
+		this.maxMessages = maxMessages;
+		this.waitTimeSeconds = waitTimeSeconds;
+	}
+	
+	public void run() {
+		
+		// Generate Send Message Request.
+		ReceiveMessageRequest receiveRequest = new ReceiveMessageRequest(queueUrl,maxMessages, visibilityTimeout, waitTimeSeconds);
+		
+		try {
+			List<Message> receivedMessages = (List<Message>)queueService.poll(receiveRequest);
+						
+			if(receivedMessages != null) {
+				for(Message msg : receivedMessages) {
+					System.out.println(msg.toString());
+					
+				}
+				
+				DeleteMessageRequest deleteRequest = new DeleteMessageRequest(queueUrl, receivedMessages);
+				DeleteMessageResult deleteResult = queueService.delete(deleteRequest);
+				
+				for(DeleteMessageResult.Failure failure : deleteResult.getFailed()) {
+					System.out.println("Failed to delete " + failure.getMessage() + ": " + failure.getCode() + " " + failure.getReason());
+				}
+			}
+			
+			
+			
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+}
+
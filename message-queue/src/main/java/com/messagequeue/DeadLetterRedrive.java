@@ -0,0 +1,102 @@
+package com.messagequeue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.messagequeue.services.QueueService;
+import com.services.model.DeleteMessageRequest;
+import com.services.model.DeleteMessageResult;
+import com.services.model.Message;
+import com.services.model.MessageStatus;
+import com.services.model.ReceiveMessageRequest;
+import com.services.model.SendMessageRequest;
+
+/// <summary>
+/// Moves the messages of a dead-letter queue back to their source queue once the cause of their failures is
+/// fixed, no faster than the given rate so the consumers of the source queue are not flooded. Every message is
+/// pushed to the source queue as a new message, with its receives counted from zero, before it is deleted from
+/// the dead-letter queue, so a failure in between leaves the message in both queues rather than in none.
+/// </summary>
+public class DeadLetterRedrive {
+
+	// Most messages moved by a single receive, push and delete, the batch limit of Amazon SQS.
+	private static final int maxBatchSize = 10;
+
+	// Visibility timeout, in minutes, of the messages being moved.
+	private static final int visibilityTimeout = 1;
+
+	private final QueueService queueService;
+	private final String deadLetterQueueUrl;
+	private final String sourceQueueUrl;
+	private final int messagesPerSecond;
+
+	/// <parameter name="queueService">Represents the service of both queues.</parameter>
+	/// <parameter name="deadLetterQueueUrl">Represents the Queue URL the messages are moved from.</parameter>
+	/// <parameter name="sourceQueueUrl">Represents the Queue URL the messages are moved to.</parameter>
+	/// <parameter name="messagesPerSecond">Represents the most messages moved in a second.</parameter>
+	public DeadLetterRedrive(QueueService queueService, String deadLetterQueueUrl, String sourceQueueUrl, int messagesPerSecond) {
+		if (messagesPerSecond < 1) {
+			throw new IllegalArgumentException("The rate must be at least one message per second: " + messagesPerSecond);
+		}
+
+		this.queueService = queueService;
+		this.deadLetterQueueUrl = deadLetterQueueUrl;
+		this.sourceQueueUrl = sourceQueueUrl;
+		this.messagesPerSecond = messagesPerSecond;
+	}
+
+	/// <summary>Moves the messages until the dead-letter queue is empty or the given number of messages was moved.</summary>
+	/// <parameter name="maxMessages">Represents the most messages to move.</parameter>
+	/// <Returns>The number of messages moved.</Returns>
+	public int run(int maxMessages) throws InterruptedException {
+		int batchSize = Math.min(maxBatchSize, messagesPerSecond);
+		long started = System.nanoTime();
+		int moved = 0;
+
+		while (moved < maxMessages) {
+			List<Message> received = queueService.poll(
+					new ReceiveMessageRequest(deadLetterQueueUrl, Math.min(batchSize, maxMessages - moved), visibilityTimeout, 0));
+
+			if (received == null || received.isEmpty()) {
+				break;
+			}
+
+			queueService.push(new SendMessageRequest(sourceQueueUrl, copy(received), 0));
+			DeleteMessageResult result = queueService.delete(new DeleteMessageRequest(deadLetterQueueUrl, received));
+
+			for (DeleteMessageResult.Failure failure : result.getFailed()) {
+				System.out.println("Failed to delete redriven " + failure.getMessage() + ": " + failure.getCode() + " " + failure.getReason());
+			}
+
+			moved += received.size();
+
+			// Waits until the messages moved so far are within the rate.
+			long aheadNanos = started + moved * TimeUnit.SECONDS.toNanos(1) / messagesPerSecond - System.nanoTime();
+
+			if (aheadNanos > 0) {
+				TimeUnit.NANOSECONDS.sleep(aheadNanos);
+			}
+		}
+
+		return moved;
+	}
+
+	/// <summary>
+	/// Returns new messages with the content and message group of the received messages, leaving the received
+	/// messages to be deleted. Keeping the group keeps the order of the messages of a FIFO queue within their group.
+	/// </summary>
+	private List<Message> copy(List<Message> received) {
+		List<Message> messages = new ArrayList<>(received.size());
+
+		for (Message message : received) {
+			Message copy = new Message();
+			copy.setMessageStatus(MessageStatus.NEW);
+			copy.setMessage(message.getMessage());
+			copy.setMessageGroupId(message.getMessageGroupId());
+			messages.add(copy);
+		}
+
+		return messages;
+	}
+}
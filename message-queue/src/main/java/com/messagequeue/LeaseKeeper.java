@@ -0,0 +1,95 @@
+package com.messagequeue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.messagequeue.services.QueueService;
+import com.services.model.ChangeVisibilityRequest;
+import com.services.model.ChangeVisibilityResult;
+import com.services.model.DeleteMessageResult;
+import com.services.model.Message;
+
+/// <summary>
+/// Keeps the received messages of a queue invisible while they are being processed, so a consumer can receive
+/// them with a short visibility timeout and still take as long as it needs. Every half lease the leases of all
+/// the held messages are extended by one lease with a single batch change, so the messages of a consumer that
+/// died become visible again within one lease. A message whose lease could not be extended is dropped.
+/// </summary>
+public class LeaseKeeper implements AutoCloseable {
+
+	private final QueueService queueService;
+	private final String queueUrl;
+	private final long leaseMillis;
+	private final Set<Message> held = ConcurrentHashMap.newKeySet();
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "lease-keeper");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/// <parameter name="queueService">Represents the service of the queue.</parameter>
+	/// <parameter name="queueUrl">Represents the Queue URL.</parameter>
+	/// <parameter name="leaseMillis">Represents the visibility timeout set on every extension, in milliseconds.</parameter>
+	public LeaseKeeper(QueueService queueService, String queueUrl, long leaseMillis) {
+		if (leaseMillis < 2) {
+			throw new IllegalArgumentException("The lease must be at least 2 milliseconds: " + leaseMillis);
+		}
+
+		this.queueService = queueService;
+		this.queueUrl = queueUrl;
+		this.leaseMillis = leaseMillis;
+		scheduler.scheduleWithFixedDelay(this::extend, leaseMillis / 2, leaseMillis / 2, TimeUnit.MILLISECONDS);
+	}
+
+	/// <summary>Keeps extending the leases of the received messages until they are released.</summary>
+	/// <parameter name="messages">Represents the messages returned by a receive, still being processed.</parameter>
+	public void hold(List<Message> messages) {
+		held.addAll(messages);
+	}
+
+	/// <summary>Stops extending the leases of the messages, once they were processed and deleted or are to be received again.</summary>
+	public void release(List<Message> messages) {
+		held.removeAll(messages);
+	}
+
+	/// <summary>Returns the number of messages whose leases are being extended.</summary>
+	public int size() {
+		return held.size();
+	}
+
+	/// <summary>Stops extending the leases, the held messages become visible once their current lease passes.</summary>
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+		held.clear();
+	}
+
+	/// <summary>Extends the leases of every held message with a single batch change.</summary>
+	private void extend() {
+		List<Message> messages = new ArrayList<>(held);
+
+		if (messages.isEmpty()) {
+			return;
+		}
+
+		try {
+			ChangeVisibilityResult result = queueService.changeVisibility(new ChangeVisibilityRequest(queueUrl, messages, leaseMillis));
+
+			for (DeleteMessageResult.Failure failure : result.getFailed()) {
+				// A message released during the change, because it was deleted, is not reported.
+				if (held.remove(failure.getMessage())) {
+					System.out.println("Lost the lease of " + failure.getMessage() + ": " + failure.getCode() + " " + failure.getReason());
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			// The leases are extended again on the next run, while the current leases last.
+			e.printStackTrace();
+		}
+	}
+}
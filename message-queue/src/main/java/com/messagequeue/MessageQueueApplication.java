@@ -38,6 +38,7 @@ public class MessageQueueApplication implements CommandLineRunner{
 		int delayPublish = Integer.parseInt(config.getDelayPublish());
 		int visibilityTimeout = Integer.parseInt(config.getVisibilityTimeout());
 		int maxMessages = Integer.parseInt(config.getMaxMessages());
+		int waitTimeSeconds = config.getWaitTimeSeconds() == null ? 0 : Integer.parseInt(config.getWaitTimeSeconds());
 		
 		ExecutorService prodExecutorService = Executors.newFixedThreadPool(threads);
 		ExecutorService conExecutorService = Executors.newFixedThreadPool(threads);
@@ -46,13 +47,13 @@ public class MessageQueueApplication implements CommandLineRunner{
 		prodExecutorService.execute(new Producer(queueService, queueUrl,delayPublish,maxMessages));
 		prodExecutorService.execute(new Producer(queueService, queueUrl,delayPublish,maxMessages));
 		
-		conExecutorService.execute(new Consumer(queueService, queueUrl, visibilityTimeout, maxMessages));
+		conExecutorService.execute(new Consumer(queueService, queueUrl, visibilityTimeout, maxMessages, waitTimeSeconds));
 		
 		prodExecutorService.execute(new Producer(queueService, queueUrl,delayPublish,maxMessages));
 		
-		conExecutorService.execute(new Consumer(queueService, queueUrl, visibilityTimeout, maxMessages));
-		conExecutorService.execute(new Consumer(queueService, queueUrl, visibilityTimeout, maxMessages));
-		conExecutorService.execute(new Consumer(queueService, queueUrl, visibilityTimeout, maxMessages));
+		conExecutorService.execute(new Consumer(queueService, queueUrl, visibilityTimeout, maxMessages, waitTimeSeconds));
+		conExecutorService.execute(new Consumer(queueService, queueUrl, visibilityTimeout, maxMessages, waitTimeSeconds));
+		conExecutorService.execute(new Consumer(queueService, queueUrl, visibilityTimeout, maxMessages, waitTimeSeconds));
 	   
 		prodExecutorService.shutdown();
 		
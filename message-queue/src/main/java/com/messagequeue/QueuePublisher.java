@@ -0,0 +1,170 @@
+package com.messagequeue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.messagequeue.services.QueueService;
+import com.services.model.DeleteMessageRequest;
+import com.services.model.DeleteMessageResult;
+import com.services.model.Message;
+import com.services.model.ReceiveMessageRequest;
+import com.utilities.Flow;
+
+/// <summary>
+/// Publishes the messages of a queue to subscribers, receiving only as many messages as the subscriber has
+/// requested and not yet been sent, so the queue keeps the messages downstream cannot handle yet. Every
+/// subscriber competes for the messages of the queue like any other consumer. A message is deleted from the
+/// queue once onNext returned for it, with one delete for the messages of every receive.
+/// </summary>
+public class QueuePublisher implements Flow.Publisher<Message> {
+
+	private final QueueService queueService;
+	private final String queueUrl;
+	private final int maxBatchSize;
+	private final int visibilityTimeout;
+	private final int waitTimeSeconds;
+	private final Executor executor;
+
+	/// <parameter name="queueService">Represents the service of the queue.</parameter>
+	/// <parameter name="queueUrl">Represents the Queue URL.</parameter>
+	/// <parameter name="maxBatchSize">Represents the most messages received at once.</parameter>
+	/// <parameter name="visibilityTimeout">Represents the visibility timeout of the received messages.</parameter>
+	/// <parameter name="waitTimeSeconds">Represents the long polling wait of a receive on an empty queue.</parameter>
+	/// <parameter name="executor">Represents where the receives run and the subscribers are called.</parameter>
+	public QueuePublisher(QueueService queueService, String queueUrl, int maxBatchSize, int visibilityTimeout,
+			int waitTimeSeconds, Executor executor) {
+
+		if (waitTimeSeconds < 1) {
+			// Without a wait a subscription with demand would receive from an empty queue in a loop.
+			throw new IllegalArgumentException("The wait time must be at least one second: " + waitTimeSeconds);
+		}
+
+		this.queueService = queueService;
+		this.queueUrl = queueUrl;
+		this.maxBatchSize = maxBatchSize;
+		this.visibilityTimeout = visibilityTimeout;
+		this.waitTimeSeconds = waitTimeSeconds;
+		this.executor = executor;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super Message> subscriber) {
+		Objects.requireNonNull(subscriber);
+		subscriber.onSubscribe(new QueueSubscription(subscriber));
+	}
+
+	/// <summary>
+	/// Subscription receiving from the queue while the subscriber has demand. The receives run one at a time on
+	/// the executor: a request arriving while they run adds to the demand the running receives serve.
+	/// </summary>
+	private class QueueSubscription implements Flow.Subscription {
+
+		private final Flow.Subscriber<? super Message> subscriber;
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicInteger requests = new AtomicInteger();
+		private volatile boolean cancelled;
+
+		QueueSubscription(Flow.Subscriber<? super Message> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				cancel();
+				subscriber.onError(new IllegalArgumentException("Non-positive request: " + n));
+				return;
+			}
+
+			// Demand adding up past Long.MAX_VALUE is unbounded.
+			demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+
+			if (requests.getAndIncrement() == 0) {
+				executor.execute(this::run);
+			}
+		}
+
+		/// <summary>
+		/// Stops receiving for the subscriber. Messages of a receive running at the time are not sent and not
+		/// deleted, they are received again once their visibility timeout passes.
+		/// </summary>
+		@Override
+		public void cancel() {
+			cancelled = true;
+		}
+
+		private void run() {
+			int missed = 1;
+
+			do {
+				receive();
+				missed = requests.addAndGet(-missed);
+			}
+			while (missed != 0);
+		}
+
+		private void receive() {
+			while (!cancelled && demand.get() > 0) {
+				int batchSize = (int) Math.min(demand.get(), maxBatchSize);
+				List<Message> messages;
+
+				try {
+					messages = queueService.poll(new ReceiveMessageRequest(queueUrl, batchSize, visibilityTimeout, waitTimeSeconds));
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					fail(e);
+					return;
+				}
+				catch (RuntimeException e) {
+					fail(e);
+					return;
+				}
+
+				if (messages != null) {
+					send(messages);
+				}
+			}
+		}
+
+		private void send(List<Message> messages) {
+			List<Message> sent = new ArrayList<>();
+
+			for (Message message : messages) {
+				if (cancelled) {
+					break;
+				}
+
+				try {
+					subscriber.onNext(message);
+				}
+				catch (RuntimeException e) {
+					// A subscriber failing a message cancels the subscription, the message is not deleted.
+					e.printStackTrace();
+					cancelled = true;
+					break;
+				}
+
+				sent.add(message);
+				demand.decrementAndGet();
+			}
+
+			if (!sent.isEmpty()) {
+				DeleteMessageResult result = queueService.delete(new DeleteMessageRequest(queueUrl, sent));
+
+				for (DeleteMessageResult.Failure failure : result.getFailed()) {
+					System.out.println("Failed to delete " + failure.getMessage() + ": " + failure.getCode() + " " + failure.getReason());
+				}
+			}
+		}
+
+		private void fail(Exception e) {
+			cancelled = true;
+			subscriber.onError(e);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package com.messagequeue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.messagequeue.services.QueueService;
+import com.services.model.Message;
+import com.services.model.SendMessageRequest;
+import com.utilities.Flow;
+
+/// <summary>
+/// Pushes the messages of a publisher to a queue in batches. The subscriber requests a batch of messages,
+/// pushes it once it is full and only then requests the next one, so a publisher is never ahead of the
+/// queue by more than a batch. The last partial batch is pushed when the publisher completes.
+/// </summary>
+public class QueueSubscriber implements Flow.Subscriber<Message> {
+
+	private final QueueService queueService;
+	private final String queueUrl;
+	private final int batchSize;
+	private final int delaySeconds;
+	private final List<Message> batch = new ArrayList<>();
+	private final CompletableFuture<Void> completion = new CompletableFuture<>();
+	private Flow.Subscription subscription;
+
+	public QueueSubscriber(QueueService queueService, String queueUrl, int batchSize, int delaySeconds) {
+		this.queueService = queueService;
+		this.queueUrl = queueUrl;
+		this.batchSize = batchSize;
+		this.delaySeconds = delaySeconds;
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		if (this.subscription != null) {
+			// A subscriber pushes the messages of a single publisher.
+			subscription.cancel();
+			return;
+		}
+
+		this.subscription = subscription;
+		subscription.request(batchSize);
+	}
+
+	@Override
+	public void onNext(Message message) {
+		batch.add(message);
+
+		if (batch.size() >= batchSize && push()) {
+			subscription.request(batchSize);
+		}
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		// The messages received before the failure are still pushed.
+		if (push()) {
+			completion.completeExceptionally(throwable);
+		}
+	}
+
+	@Override
+	public void onComplete() {
+		if (push()) {
+			completion.complete(null);
+		}
+	}
+
+	/// <summary>Returns the future completed once the publisher completed and every message was pushed.</summary>
+	public CompletableFuture<Void> getCompletion() {
+		return completion;
+	}
+
+	/// <summary>Pushes the messages of the batch, cancelling the subscription when the push fails.</summary>
+	/// <Returns>True when the batch was pushed.</Returns>
+	private boolean push() {
+		if (batch.isEmpty()) {
+			return true;
+		}
+
+		try {
+			queueService.push(new SendMessageRequest(queueUrl, new ArrayList<>(batch), delaySeconds));
+			batch.clear();
+			return true;
+		}
+		catch (RuntimeException e) {
+			subscription.cancel();
+			completion.completeExceptionally(e);
+			return false;
+		}
+	}
+}
@@ -12,6 +12,13 @@ public class ApplicationConfiguration {
 	private String queueUrl;
 	private String delayPublish;
 	private String visibilityTimeout;
+	private String fsyncPolicy;
+	private String compactionDeletedRatio;
+	private String compactionBytesPerSecond;
+	private String queueEngine;
+	private String waitTimeSeconds;
+	private String deadLetterQueueUrl;
+	private String maxReceiveCount;
 		
 	public String getWorkerThreads() {
 		return workerThreads;
@@ -50,5 +57,61 @@ public class ApplicationConfiguration {
 	public void setVisibilityTimeout(String visibilityTimeout) {
 		this.visibilityTimeout = visibilityTimeout;
 	}
+
+	public String getFsyncPolicy() {
+		return fsyncPolicy;
+	}
+
+	public void setFsyncPolicy(String fsyncPolicy) {
+		this.fsyncPolicy = fsyncPolicy;
+	}
+
+	public String getCompactionDeletedRatio() {
+		return compactionDeletedRatio;
+	}
+
+	public void setCompactionDeletedRatio(String compactionDeletedRatio) {
+		this.compactionDeletedRatio = compactionDeletedRatio;
+	}
+
+	public String getCompactionBytesPerSecond() {
+		return compactionBytesPerSecond;
+	}
+
+	public void setCompactionBytesPerSecond(String compactionBytesPerSecond) {
+		this.compactionBytesPerSecond = compactionBytesPerSecond;
+	}
+
+	public String getQueueEngine() {
+		return queueEngine;
+	}
+
+	public void setQueueEngine(String queueEngine) {
+		this.queueEngine = queueEngine;
+	}
+
+	public String getWaitTimeSeconds() {
+		return waitTimeSeconds;
+	}
+
+	public void setWaitTimeSeconds(String waitTimeSeconds) {
+		this.waitTimeSeconds = waitTimeSeconds;
+	}
+
+	public String getDeadLetterQueueUrl() {
+		return deadLetterQueueUrl;
+	}
+
+	public void setDeadLetterQueueUrl(String deadLetterQueueUrl) {
+		this.deadLetterQueueUrl = deadLetterQueueUrl;
+	}
+
+	public String getMaxReceiveCount() {
+		return maxReceiveCount;
+	}
+
+	public void setMaxReceiveCount(String maxReceiveCount) {
+		this.maxReceiveCount = maxReceiveCount;
+	}
 	
 }
@@ -0,0 +1,48 @@
+package com.messagequeue.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/// <summary>
+/// XML response of the SQS-compatible endpoint, encoded with its status line and headers for a keep-alive
+/// connection or for the last response of a connection.
+/// </summary>
+class HttpResponse {
+
+	private final int status;
+	private final byte[] body;
+
+	HttpResponse(int status, String body) {
+		this.status = status;
+		this.body = body.getBytes(StandardCharsets.UTF_8);
+	}
+
+	int getStatus() {
+		return status;
+	}
+
+	/// <summary>Returns the response as written to the connection.</summary>
+	/// <parameter name="keepAlive">Represents whether the connection stays open after the response.</parameter>
+	ByteBuffer encode(boolean keepAlive) {
+		String head = "HTTP/1.1 " + status + " " + reason(status) + "\r\n"
+				+ "Content-Type: text/xml\r\n"
+				+ "Content-Length: " + body.length + "\r\n"
+				+ (keepAlive ? "" : "Connection: close\r\n")
+				+ "\r\n";
+		byte[] headBytes = head.getBytes(StandardCharsets.ISO_8859_1);
+		ByteBuffer buffer = ByteBuffer.allocate(headBytes.length + body.length);
+		buffer.put(headBytes).put(body).flip();
+		return buffer;
+	}
+
+	private static String reason(int status) {
+		switch (status) {
+		case 200: return "OK";
+		case 400: return "Bad Request";
+		case 411: return "Length Required";
+		case 413: return "Payload Too Large";
+		case 431: return "Request Header Fields Too Large";
+		default: return "Internal Server Error";
+		}
+	}
+}
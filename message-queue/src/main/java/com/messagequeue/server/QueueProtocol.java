@@ -0,0 +1,192 @@
+package com.messagequeue.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.services.model.DeleteMessageResult;
+import com.services.model.Message;
+
+/// <summary>
+/// Binary format of the frames exchanged by QueueProtocolServer and QueueProtocolClient. Every frame starts
+/// with a fixed header, all numbers big-endian:
+///
+///   int   length         bytes of the frame following this field
+///   byte  code           operation of a request, status of a response
+///   long  correlationId  id chosen by the client for the request, repeated by its response
+///
+/// The body of the frame follows, a string being an int byte count followed by its UTF-8 bytes, and the message
+/// group of a message the empty string when the message has none:
+///
+///   push               string queueUrl, int count, count x (string body, int delaySeconds, string messageGroupId)
+///                      responds with an empty body
+///   poll               string queueUrl, int maxMessages, long visibilityTimeoutMillis, int waitTimeSeconds
+///                      responds with int count, count x (long receiptId, int priorAttempts, long receivedAt or -1, string body,
+///                      string messageGroupId)
+///   delete             string queueUrl, int count, count x long receiptId
+///                      responds with int failedCount, failedCount x (int index, string code, string reason, byte senderFault)
+///   changeVisibility   string queueUrl, long visibilityTimeoutMillis, int count, count x long receiptId
+///                      responds as delete
+///   setRedrivePolicy   string queueUrl, byte hasPolicy, then string deadLetterQueueUrl, int maxReceiveCount when it has
+///                      responds with an empty body
+///
+/// A response has the ok status and the body of its operation, or the failed status and a string describing the
+/// failure. Responses are written as their operations complete, so a client matches them to its requests by the
+/// correlation id rather than by their order.
+/// </summary>
+final class QueueProtocol {
+
+	static final byte push = 1;
+	static final byte poll = 2;
+	static final byte delete = 3;
+	static final byte changeVisibility = 4;
+	static final byte setRedrivePolicy = 5;
+
+	static final byte ok = 0;
+	static final byte failed = 1;
+
+	static final int headerBytes = 4 + 1 + 8;
+	static final int maxFrameBytes = 16 * 1024 * 1024;
+
+	private QueueProtocol() {}
+
+	/// <summary>Writer of a frame, the length of the frame filled in once its body is written.</summary>
+	static final class FrameWriter extends DataOutputStream {
+
+		FrameWriter(byte code, long correlationId) {
+			super(new ByteArrayOutputStream(256));
+
+			try {
+				writeInt(0);
+				writeByte(code);
+				writeLong(correlationId);
+			}
+			catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		void writeString(String text) throws IOException {
+			byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+			writeInt(bytes.length);
+			write(bytes);
+		}
+
+		/// <summary>Writes the message group of the message, the empty string when it has none.</summary>
+		void writeGroup(Message message) throws IOException {
+			writeString(message.getMessageGroupId() != null ? message.getMessageGroupId() : "");
+		}
+
+		/// <summary>Writes the receipt ids of the messages, the body shared by delete and changeVisibility.</summary>
+		void writeReceipts(List<Message> messages) throws IOException {
+			writeInt(messages.size());
+
+			for (Message message : messages) {
+				writeLong(message.getReceiptId());
+			}
+		}
+
+		/// <summary>Writes the failures of a delete or a change, identified by the index of their message in the request.</summary>
+		void writeFailures(List<Message> requested, List<DeleteMessageResult.Failure> failures) throws IOException {
+			writeInt(failures.size());
+
+			if (failures.isEmpty()) {
+				return;
+			}
+
+			Map<Message, Integer> indexes = new IdentityHashMap<>();
+
+			for (int i = 0; i < requested.size(); i++) {
+				indexes.put(requested.get(i), i);
+			}
+
+			for (DeleteMessageResult.Failure failure : failures) {
+				writeInt(indexes.getOrDefault(failure.getMessage(), -1));
+				writeString(String.valueOf(failure.getCode()));
+				writeString(String.valueOf(failure.getReason()));
+				writeByte(failure.isSenderFault() ? 1 : 0);
+			}
+		}
+
+		/// <summary>Returns the frame with its length.</summary>
+		ByteBuffer toFrame() {
+			ByteBuffer frame = ByteBuffer.wrap(((ByteArrayOutputStream) out).toByteArray());
+			frame.putInt(0, frame.capacity() - 4);
+			return frame;
+		}
+	}
+
+	static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+
+		if (length < 0 || length > buffer.remaining()) {
+			throw new IllegalArgumentException("String of " + length + " bytes exceeds the frame.");
+		}
+
+		String text = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+		return text;
+	}
+
+	/// <summary>Reads the message group written by writeGroup.</summary>
+	/// <Returns>The message group, null when the message has none.</Returns>
+	static String readGroup(ByteBuffer buffer) {
+		String group = readString(buffer);
+		return group.isEmpty() ? null : group;
+	}
+
+	/// <summary>Reads the receipt ids of a delete or a change as messages identified by them.</summary>
+	static List<Message> readReceipts(ByteBuffer buffer) {
+		int count = readCount(buffer, 8);
+		List<Message> messages = new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++) {
+			Message message = new Message();
+			message.setReceiptId(buffer.getLong());
+			messages.add(message);
+		}
+
+		return messages;
+	}
+
+	/// <summary>Reads the failures of a delete or a change into the lists of a result, every other message of the request succeeded.</summary>
+	static void readFailures(ByteBuffer buffer, List<Message> requested, List<Message> successful, List<DeleteMessageResult.Failure> failed) {
+		int count = readCount(buffer, 4);
+		boolean[] failedIndexes = new boolean[requested.size()];
+
+		for (int i = 0; i < count; i++) {
+			int index = buffer.getInt();
+			String code = readString(buffer);
+			String reason = readString(buffer);
+			boolean senderFault = buffer.get() != 0;
+
+			if (index >= 0 && index < requested.size()) {
+				failedIndexes[index] = true;
+				failed.add(new DeleteMessageResult.Failure(requested.get(index), code, reason, senderFault));
+			}
+		}
+
+		for (int i = 0; i < requested.size(); i++) {
+			if (!failedIndexes[i]) {
+				successful.add(requested.get(i));
+			}
+		}
+	}
+
+	/// <summary>Reads the count of a list whose entries take at least the given bytes, rejecting counts the frame cannot hold.</summary>
+	static int readCount(ByteBuffer buffer, int minEntryBytes) {
+		int count = buffer.getInt();
+
+		if (count < 0 || (long) count * minEntryBytes > buffer.remaining()) {
+			throw new IllegalArgumentException("Count " + count + " exceeds the frame.");
+		}
+
+		return count;
+	}
+}
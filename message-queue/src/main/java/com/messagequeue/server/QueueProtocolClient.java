@@ -0,0 +1,327 @@
+package com.messagequeue.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.messagequeue.services.AsyncQueueService;
+import com.messagequeue.services.RedrivePolicy;
+import com.services.model.ChangeVisibilityRequest;
+import com.services.model.ChangeVisibilityResult;
+import com.services.model.DeleteMessageRequest;
+import com.services.model.DeleteMessageResult;
+import com.services.model.Message;
+import com.services.model.ReceiveMessageRequest;
+import com.services.model.SendMessageRequest;
+
+/// <summary>
+/// Queue service reaching the local queues of a QueueProtocolServer over a single connection, so Producer,
+/// Consumer and the other clients of a QueueService run against a remote queue unchanged. Any number of threads
+/// share the connection: every request gets a correlation id and a future completed by the response carrying the
+/// same id, so requests are pipelined rather than waiting for each other. A writer thread takes the requests
+/// queued by the callers and flushes the socket once for all the requests queued at that moment, and a reader
+/// thread completes the futures as the responses arrive.
+/// </summary>
+public class QueueProtocolClient implements AsyncQueueService, AutoCloseable {
+
+	private static final int bufferBytes = 64 * 1024;
+
+	private final Socket socket;
+	private final AtomicLong correlationIds = new AtomicLong();
+	private final Map<Long, CompletableFuture<ByteBuffer>> pending = new ConcurrentHashMap<>();
+	private final LinkedBlockingQueue<ByteBuffer> requests = new LinkedBlockingQueue<>();
+	private final Thread writer;
+	private final Thread reader;
+	private volatile boolean closed;
+
+	/// <parameter name="host">Represents the host of the server.</parameter>
+	/// <parameter name="port">Represents the port of the server.</parameter>
+	public QueueProtocolClient(String host, int port) throws IOException {
+		socket = new Socket(host, port);
+		socket.setTcpNoDelay(true);
+
+		writer = new Thread(this::writeRequests, "queue-protocol-writer");
+		writer.setDaemon(true);
+		writer.start();
+
+		reader = new Thread(this::readResponses, "queue-protocol-reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/// <summary>
+	/// Pushes the messages to the queue of the server. Every message keeps its own Delay Seconds, or gets
+	/// the Delay Seconds of the request.
+	/// </summary>
+	/// <parameter name ="request">Represents the Send Message Request.</parameter>
+	@Override
+	public void push(SendMessageRequest request) {
+		join(pushAsync(request));
+	}
+
+	@Override
+	public CompletableFuture<Void> pushAsync(SendMessageRequest request) {
+		return call(QueueProtocol.push, request.getQueueUrl(), frame -> {
+			frame.writeInt(request.getAllMessages().size());
+
+			for (Message message : request.getAllMessages()) {
+				frame.writeString(message.getMessage());
+				frame.writeInt(request.getDelaySeconds(message));
+				frame.writeGroup(message);
+			}
+		}, body -> null);
+	}
+
+	/// <summary>
+	/// Receives messages from the queue of the server, which long polls up to the Wait Time Seconds of the
+	/// request without holding a thread of its own.
+	/// </summary>
+	/// <parameter name ="request">Represents the Receive Message Request.</parameter>
+    ///<Returns>Returns the Queue Messages, empty when there were none.</Returns>
+	@Override
+	public List<Message> poll(ReceiveMessageRequest request) throws InterruptedException {
+		try {
+			return pollAsync(request).get();
+		}
+		catch (ExecutionException e) {
+			throw rethrow(e.getCause());
+		}
+	}
+
+	@Override
+	public CompletableFuture<List<Message>> pollAsync(ReceiveMessageRequest request) {
+		return call(QueueProtocol.poll, request.getQueueUrl(), frame -> {
+			frame.writeInt(request.getRequestBatchSize());
+			frame.writeLong(request.getVisibilityTimeoutMillis());
+			frame.writeInt(request.getWaitTimeSeconds());
+		}, body -> {
+			int count = QueueProtocol.readCount(body, 28);
+			List<Message> messages = new ArrayList<>(count);
+
+			for (int i = 0; i < count; i++) {
+				Message message = new Message();
+				message.setReceiptId(body.getLong());
+				message.setPriorAttempts(body.getInt());
+				long receivedAt = body.getLong();
+
+				if (receivedAt >= 0) {
+					message.setinvisibleFromTime(new Date(receivedAt));
+				}
+
+				message.setMessage(QueueProtocol.readString(body));
+				message.setMessageGroupId(QueueProtocol.readGroup(body));
+				messages.add(message);
+			}
+
+			return messages;
+		});
+	}
+
+	@Override
+	public DeleteMessageResult delete(DeleteMessageRequest request) {
+		return join(deleteAsync(request));
+	}
+
+	@Override
+	public CompletableFuture<DeleteMessageResult> deleteAsync(DeleteMessageRequest request) {
+		return call(QueueProtocol.delete, request.getQueueUrl(), frame -> frame.writeReceipts(request.getMessages()), body -> {
+			DeleteMessageResult result = new DeleteMessageResult();
+			QueueProtocol.readFailures(body, request.getMessages(), result.getSuccessful(), result.getFailed());
+			return result;
+		});
+	}
+
+	@Override
+	public ChangeVisibilityResult changeVisibility(ChangeVisibilityRequest request) {
+		return join(changeVisibilityAsync(request));
+	}
+
+	@Override
+	public CompletableFuture<ChangeVisibilityResult> changeVisibilityAsync(ChangeVisibilityRequest request) {
+		return call(QueueProtocol.changeVisibility, request.getQueueUrl(), frame -> {
+			frame.writeLong(request.getVisibilityTimeoutMillis());
+			frame.writeReceipts(request.getMessages());
+		}, body -> {
+			ChangeVisibilityResult result = new ChangeVisibilityResult();
+			QueueProtocol.readFailures(body, request.getMessages(), result.getSuccessful(), result.getFailed());
+			return result;
+		});
+	}
+
+	@Override
+	public void setRedrivePolicy(String queueUrl, RedrivePolicy policy) {
+		join(call(QueueProtocol.setRedrivePolicy, queueUrl, frame -> {
+			frame.writeByte(policy != null ? 1 : 0);
+
+			if (policy != null) {
+				frame.writeString(policy.getDeadLetterQueueUrl());
+				frame.writeInt(policy.getMaxReceiveCount());
+			}
+		}, body -> null));
+	}
+
+	/// <summary>Closes the connection, failing the requests still waiting for their responses.</summary>
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		socket.close();
+		writer.interrupt();
+		failPending(new IllegalStateException("The connection to the queue server is closed."));
+	}
+
+	/// <summary>Queues the request for the writer thread.</summary>
+	/// <parameter name="code">Represents the operation.</parameter>
+	/// <parameter name="queueUrl">Represents the Queue URL, the first field of every request.</parameter>
+	/// <parameter name="body">Represents the writer of the rest of the request.</parameter>
+	/// <parameter name="decoder">Represents the reader of the response.</parameter>
+	/// <Returns>The future completed with the decoded response.</Returns>
+	private <T> CompletableFuture<T> call(byte code, String queueUrl, BodyWriter body, Function<ByteBuffer, T> decoder) {
+		long correlationId = correlationIds.incrementAndGet();
+		CompletableFuture<ByteBuffer> response = new CompletableFuture<>();
+		QueueProtocol.FrameWriter frame = new QueueProtocol.FrameWriter(code, correlationId);
+
+		try {
+			frame.writeString(queueUrl);
+			body.write(frame);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		pending.put(correlationId, response);
+		requests.add(frame.toFrame());
+
+		// A request queued while the connection closed would never be answered.
+		if (closed && pending.remove(correlationId) != null) {
+			response.completeExceptionally(new IllegalStateException("The connection to the queue server is closed."));
+		}
+
+		return response.thenApply(decoder);
+	}
+
+	private void writeRequests() {
+		List<ByteBuffer> batch = new ArrayList<>();
+
+		try {
+			OutputStream output = new BufferedOutputStream(socket.getOutputStream(), bufferBytes);
+
+			while (!closed) {
+				batch.add(requests.take());
+				requests.drainTo(batch);
+
+				for (ByteBuffer request : batch) {
+					output.write(request.array(), 0, request.limit());
+				}
+
+				output.flush();
+				batch.clear();
+			}
+		}
+		catch (InterruptedException e) {
+			// Interrupted by close.
+		}
+		catch (IOException e) {
+			if (!closed) {
+				e.printStackTrace();
+			}
+		}
+		finally {
+			closeQuietly();
+		}
+	}
+
+	private void readResponses() {
+		try {
+			DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream(), bufferBytes));
+
+			for (;;) {
+				int length = input.readInt();
+
+				if (length < QueueProtocol.headerBytes - 4 || length > QueueProtocol.maxFrameBytes) {
+					throw new IOException("Frame of " + length + " bytes.");
+				}
+
+				byte status = input.readByte();
+				long correlationId = input.readLong();
+				byte[] body = new byte[length - (QueueProtocol.headerBytes - 4)];
+				input.readFully(body);
+
+				CompletableFuture<ByteBuffer> response = pending.remove(correlationId);
+
+				if (response == null) {
+					continue;
+				}
+
+				if (status == QueueProtocol.ok) {
+					response.complete(ByteBuffer.wrap(body));
+				}
+				else {
+					response.completeExceptionally(new IllegalStateException("The queue server failed the request: " + QueueProtocol.readString(ByteBuffer.wrap(body))));
+				}
+			}
+		}
+		catch (IOException e) {
+			if (!closed) {
+				e.printStackTrace();
+			}
+		}
+		finally {
+			closeQuietly();
+		}
+	}
+
+	private void closeQuietly() {
+		try {
+			close();
+		}
+		catch (IOException e) {
+			// The connection is gone either way.
+		}
+	}
+
+	private void failPending(RuntimeException failure) {
+		for (Long correlationId : pending.keySet()) {
+			CompletableFuture<ByteBuffer> response = pending.remove(correlationId);
+
+			if (response != null) {
+				response.completeExceptionally(failure);
+			}
+		}
+	}
+
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		}
+		catch (CompletionException e) {
+			throw rethrow(e.getCause());
+		}
+	}
+
+	private static RuntimeException rethrow(Throwable failure) {
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		}
+
+		throw new IllegalStateException(failure);
+	}
+
+	private interface BodyWriter {
+		void write(QueueProtocol.FrameWriter frame) throws IOException;
+	}
+}
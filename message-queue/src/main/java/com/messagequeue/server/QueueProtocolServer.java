@@ -0,0 +1,412 @@
+package com.messagequeue.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.messagequeue.services.AsyncQueueService;
+import com.messagequeue.services.RedrivePolicy;
+import com.services.model.ChangeVisibilityRequest;
+import com.services.model.DeleteMessageRequest;
+import com.services.model.Message;
+import com.services.model.MessageStatus;
+import com.services.model.ReceiveMessageRequest;
+import com.services.model.SendMessageRequest;
+
+/// <summary>
+/// Serves the local queues over the binary protocol of QueueProtocol, a leaner front end than the SQS-compatible
+/// server for clients that need the throughput. A single thread runs a selector over every connection, starts the
+/// operations of the requests on the asynchronous queue service and writes their responses as they complete, in
+/// any order. A client can therefore pipeline any number of requests on a connection, up to 1024 unanswered
+/// requests after which the server stops reading from the connection until responses were written. The responses
+/// waiting for a connection are written with a single gathering write.
+/// </summary>
+public class QueueProtocolServer implements AutoCloseable {
+
+	private static final int maxPendingRequests = 1024;
+	private static final int maxGatheredResponses = 64;
+	private static final int acceptBacklog = 1024;
+
+	private final AsyncQueueService queueService;
+	private final Selector selector;
+	private final ServerSocketChannel serverChannel;
+	private final Thread selectorThread;
+
+	// Connections with responses completed by the queue service, to be written by the selector thread.
+	private final ConcurrentLinkedQueue<Connection> completed = new ConcurrentLinkedQueue<>();
+	private volatile boolean closed;
+
+	/// <parameter name="queueService">Represents the local queue service holding the messages.</parameter>
+	/// <parameter name="address">Represents the address to listen on, port 0 picking a free port.</parameter>
+	public QueueProtocolServer(AsyncQueueService queueService, InetSocketAddress address) throws IOException {
+		this.queueService = queueService;
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.configureBlocking(false);
+		serverChannel.bind(address, acceptBacklog);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+		selectorThread = new Thread(this::run, "queue-protocol");
+		selectorThread.setDaemon(true);
+		selectorThread.start();
+	}
+
+	/// <summary>Returns the port the server listens on.</summary>
+	public int getPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/// <summary>
+	/// Stops the server and closes its connections, the operations already started still complete. An interrupt stops
+	/// the wait for the selector thread and stays set on the calling thread.
+	/// </summary>
+	@Override
+	public void close() {
+		closed = true;
+		selector.wakeup();
+
+		try {
+			selectorThread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run() {
+		try {
+			while (!closed) {
+				Connection connection;
+
+				// Responses completed on this thread while it handled the last keys are written before it waits again.
+				while ((connection = completed.poll()) != null) {
+					connection.flush();
+				}
+
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					if (!key.isValid()) {
+						continue;
+					}
+
+					if (key.isAcceptable()) {
+						accept();
+						continue;
+					}
+
+					connection = (Connection) key.attachment();
+
+					if (key.isReadable()) {
+						connection.read();
+					}
+
+					if (key.isValid() && key.isWritable()) {
+						connection.flush();
+					}
+				}
+			}
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		finally {
+			for (SelectionKey key : selector.keys()) {
+				closeQuietly(key);
+			}
+
+			try {
+				selector.close();
+				serverChannel.close();
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel;
+
+		while ((channel = serverChannel.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			Connection connection = new Connection(channel);
+			connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+		}
+	}
+
+	private static void closeQuietly(SelectionKey key) {
+		key.cancel();
+
+		try {
+			key.channel().close();
+		}
+		catch (IOException e) {
+			// The connection is gone either way.
+		}
+	}
+
+	/// <summary>Starts the operation of a request frame.</summary>
+	/// <parameter name="code">Represents the operation.</parameter>
+	/// <parameter name="correlationId">Represents the id of the request.</parameter>
+	/// <parameter name="body">Represents the body of the frame.</parameter>
+	/// <Returns>The future completed with the response frame.</Returns>
+	private CompletableFuture<ByteBuffer> dispatch(byte code, long correlationId, ByteBuffer body) {
+		String queueUrl = QueueProtocol.readString(body);
+
+		switch (code) {
+		case QueueProtocol.push: {
+			int count = QueueProtocol.readCount(body, 12);
+			List<Message> messages = new ArrayList<>(count);
+
+			for (int i = 0; i < count; i++) {
+				Message message = new Message();
+				message.setMessageStatus(MessageStatus.NEW);
+				message.setMessage(QueueProtocol.readString(body));
+				message.setDelaySeconds(body.getInt());
+				message.setMessageGroupId(QueueProtocol.readGroup(body));
+				messages.add(message);
+			}
+
+			return queueService.pushAsync(new SendMessageRequest(queueUrl, messages, 0))
+					.thenApply(done -> new QueueProtocol.FrameWriter(QueueProtocol.ok, correlationId).toFrame());
+		}
+		case QueueProtocol.poll: {
+			int maxMessages = body.getInt();
+			long visibilityTimeoutMillis = body.getLong();
+			ReceiveMessageRequest request = new ReceiveMessageRequest(queueUrl, maxMessages, 0, body.getInt());
+			request.setVisibilityTimeoutMillis(visibilityTimeoutMillis);
+
+			return queueService.pollAsync(request).thenApply(messages -> respond(correlationId, frame -> {
+				// The local queues complete a receive that found no messages with null.
+				int count = messages == null ? 0 : messages.size();
+				frame.writeInt(count);
+
+				for (int i = 0; i < count; i++) {
+					Message message = messages.get(i);
+					frame.writeLong(message.getReceiptId());
+					frame.writeInt(message.getPriorAttempts());
+					frame.writeLong(message.getinvisibleFromTime() != null ? message.getinvisibleFromTime().getTime() : -1);
+					frame.writeString(message.getMessage());
+					frame.writeGroup(message);
+				}
+			}));
+		}
+		case QueueProtocol.delete: {
+			List<Message> messages = QueueProtocol.readReceipts(body);
+
+			return queueService.deleteAsync(new DeleteMessageRequest(queueUrl, messages))
+					.thenApply(result -> respond(correlationId, frame -> frame.writeFailures(messages, result.getFailed())));
+		}
+		case QueueProtocol.changeVisibility: {
+			long visibilityTimeoutMillis = body.getLong();
+			List<Message> messages = QueueProtocol.readReceipts(body);
+
+			return queueService.changeVisibilityAsync(new ChangeVisibilityRequest(queueUrl, messages, visibilityTimeoutMillis))
+					.thenApply(result -> respond(correlationId, frame -> frame.writeFailures(messages, result.getFailed())));
+		}
+		case QueueProtocol.setRedrivePolicy: {
+			RedrivePolicy policy = body.get() != 0 ? new RedrivePolicy(QueueProtocol.readString(body), body.getInt()) : null;
+			queueService.setRedrivePolicy(queueUrl, policy);
+			return CompletableFuture.completedFuture(new QueueProtocol.FrameWriter(QueueProtocol.ok, correlationId).toFrame());
+		}
+		default:
+			throw new IllegalArgumentException("Unknown operation " + code);
+		}
+	}
+
+	private static ByteBuffer respond(long correlationId, BodyWriter body) {
+		QueueProtocol.FrameWriter frame = new QueueProtocol.FrameWriter(QueueProtocol.ok, correlationId);
+
+		try {
+			body.write(frame);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		return frame.toFrame();
+	}
+
+	private static ByteBuffer failure(long correlationId, Throwable failure) {
+		QueueProtocol.FrameWriter frame = new QueueProtocol.FrameWriter(QueueProtocol.failed, correlationId);
+
+		try {
+			frame.writeString(failure.getCause() != null && failure.getCause() != failure ? String.valueOf(failure.getCause()) : String.valueOf(failure));
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		return frame.toFrame();
+	}
+
+	private interface BodyWriter {
+		void write(QueueProtocol.FrameWriter frame) throws IOException;
+	}
+
+	/// <summary>State of a connection, used by the selector thread except for the queue of completed responses.</summary>
+	private class Connection {
+		private final SocketChannel channel;
+		private SelectionKey key;
+		private ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+		private final ConcurrentLinkedQueue<ByteBuffer> responses = new ConcurrentLinkedQueue<>();
+		private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+		// Set while the connection is in the completed queue, so a burst of responses wakes the selector once.
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+		// Requests read whose responses were not taken for writing yet.
+		private int pending;
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		void read() {
+			try {
+				if (channel.read(in) < 0) {
+					closeQuietly(key);
+					return;
+				}
+
+				parseFrames();
+			}
+			catch (IOException | RuntimeException e) {
+				closeQuietly(key);
+			}
+		}
+
+		/// <summary>Starts the requests received in full while the connection has room for pending requests.</summary>
+		private void parseFrames() {
+			in.flip();
+
+			while (pending < maxPendingRequests && in.remaining() >= 4) {
+				int length = in.getInt(in.position());
+
+				if (length < QueueProtocol.headerBytes - 4 || length > QueueProtocol.maxFrameBytes) {
+					throw new IllegalArgumentException("Frame of " + length + " bytes.");
+				}
+
+				if (in.remaining() < 4 + length) {
+					break;
+				}
+
+				ByteBuffer frame = in.slice();
+				frame.position(4).limit(4 + length);
+				in.position(in.position() + 4 + length);
+
+				byte code = frame.get();
+				long correlationId = frame.getLong();
+				// The body is copied out of the input buffer, which is reused for the next requests.
+				ByteBuffer body = ByteBuffer.allocate(frame.remaining());
+				body.put(frame).flip();
+				start(code, correlationId, body);
+			}
+
+			in.compact();
+
+			if (in.position() >= 4) {
+				int needed = 4 + in.getInt(0);
+
+				if (needed > in.capacity()) {
+					ByteBuffer larger = ByteBuffer.allocate(needed);
+					in.flip();
+					larger.put(in);
+					in = larger;
+				}
+			}
+
+			updateInterest();
+		}
+
+		private void start(byte code, long correlationId, ByteBuffer body) {
+			CompletableFuture<ByteBuffer> response;
+			pending++;
+
+			try {
+				response = dispatch(code, correlationId, body);
+			}
+			catch (RuntimeException e) {
+				response = new CompletableFuture<>();
+				response.completeExceptionally(e);
+			}
+
+			response.whenComplete((frame, failure) -> {
+				responses.add(failure != null ? failure(correlationId, failure) : frame);
+
+				if (scheduled.compareAndSet(false, true)) {
+					completed.add(this);
+
+					if (Thread.currentThread() != selectorThread) {
+						selector.wakeup();
+					}
+				}
+			});
+		}
+
+		/// <summary>Writes the completed responses, as far as the socket takes them.</summary>
+		void flush() {
+			scheduled.set(false);
+
+			if (!key.isValid()) {
+				return;
+			}
+
+			ByteBuffer response;
+
+			while ((response = responses.poll()) != null) {
+				out.add(response);
+				pending--;
+			}
+
+			try {
+				while (!out.isEmpty()) {
+					ByteBuffer[] gathered = out.stream().limit(maxGatheredResponses).toArray(ByteBuffer[]::new);
+					channel.write(gathered);
+
+					while (!out.isEmpty() && !out.peek().hasRemaining()) {
+						out.poll();
+					}
+
+					if (gathered[gathered.length - 1].hasRemaining()) {
+						break;
+					}
+				}
+
+				// Requests left in the input buffer are started once responses made room for them.
+				if (in.position() > 0 && pending < maxPendingRequests) {
+					parseFrames();
+				}
+				else {
+					updateInterest();
+				}
+			}
+			catch (IOException | RuntimeException e) {
+				closeQuietly(key);
+			}
+		}
+
+		/// <summary>Reads while the connection has room for pending requests, and writes while responses are left.</summary>
+		private void updateInterest() {
+			if (key.isValid()) {
+				key.interestOps((pending < maxPendingRequests ? SelectionKey.OP_READ : 0) | (out.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+			}
+		}
+	}
+}
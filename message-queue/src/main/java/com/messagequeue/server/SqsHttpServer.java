@@ -0,0 +1,413 @@
+package com.messagequeue.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.messagequeue.services.AsyncQueueService;
+
+/// <summary>
+/// Embedded HTTP server speaking the subset of the Amazon SQS Query API served by SqsQueryApi, so the AWS SDK,
+/// SqsQueueService and services in other languages can use the local queues as if they were Amazon SQS.
+///
+/// A single thread runs a selector over every connection. It parses the requests, starts their actions on the
+/// asynchronous queue service and writes the responses once the actions complete, so a connection costs a buffer
+/// rather than a thread and a long polling receive holds no thread while it waits. Connections are kept alive
+/// between requests, and pipelined requests are answered in the order they arrived.
+/// </summary>
+public class SqsHttpServer implements AutoCloseable {
+
+	private static final int maxHeaderBytes = 16 * 1024;
+	// A batch of 10 messages of 256 KB, form encoded.
+	private static final int maxBodyBytes = 8 * 1024 * 1024;
+	// Requests of a connection waiting for their responses before the server stops reading from it.
+	private static final int maxPipelinedRequests = 64;
+	private static final int acceptBacklog = 1024;
+
+	private final SqsQueryApi api;
+	private final Selector selector;
+	private final ServerSocketChannel serverChannel;
+	private final Thread selectorThread;
+
+	// Connections with responses completed by the queue service, to be written by the selector thread.
+	private final ConcurrentLinkedQueue<Connection> completed = new ConcurrentLinkedQueue<>();
+	private volatile boolean closed;
+
+	/// <parameter name="queueService">Represents the local queue service holding the messages.</parameter>
+	/// <parameter name="backendPrefix">Represents the prefix of the local Queue URLs, such as the directory of the file queues.</parameter>
+	/// <parameter name="address">Represents the address to listen on, port 0 picking a free port.</parameter>
+	public SqsHttpServer(AsyncQueueService queueService, String backendPrefix, InetSocketAddress address) throws IOException {
+		api = new SqsQueryApi(queueService, backendPrefix);
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.configureBlocking(false);
+		serverChannel.bind(address, acceptBacklog);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+		selectorThread = new Thread(this::run, "sqs-http");
+		selectorThread.setDaemon(true);
+		selectorThread.start();
+	}
+
+	/// <summary>Returns the port the server listens on.</summary>
+	public int getPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/// <summary>Returns the endpoint of the server on the loopback interface, for SqsClientSettings.setEndpoint.</summary>
+	public String getEndpoint() {
+		return "http://localhost:" + getPort();
+	}
+
+	/// <summary>Makes an existing local queue known to GetQueueUrl, such as a file queue left by an earlier run.</summary>
+	/// <parameter name="queueName">Represents the name of the queue.</parameter>
+	public void createQueue(String queueName) {
+		api.createQueue(queueName);
+	}
+
+	/// <summary>
+	/// Stops the server and closes its connections, the actions already started still complete. An interrupt stops
+	/// the wait for the selector thread and stays set on the calling thread.
+	/// </summary>
+	@Override
+	public void close() {
+		closed = true;
+		selector.wakeup();
+
+		try {
+			selectorThread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run() {
+		try {
+			while (!closed) {
+				Connection connection;
+
+				// Responses completed on this thread while it handled the last keys are written before it waits again.
+				while ((connection = completed.poll()) != null) {
+					connection.flush();
+				}
+
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					if (!key.isValid()) {
+						continue;
+					}
+
+					if (key.isAcceptable()) {
+						accept();
+						continue;
+					}
+
+					connection = (Connection) key.attachment();
+
+					if (key.isReadable()) {
+						connection.read();
+					}
+
+					if (key.isValid() && key.isWritable()) {
+						connection.flush();
+					}
+				}
+			}
+		}
+		catch (IOException e) {
+			System.out.println("The SQS server stopped: " + e);
+		}
+		finally {
+			for (SelectionKey key : selector.keys()) {
+				closeQuietly(key);
+			}
+
+			try {
+				selector.close();
+				serverChannel.close();
+			}
+			catch (IOException e) {
+				System.out.println("Failed to close the SQS server: " + e);
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel;
+
+		while ((channel = serverChannel.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			Connection connection = new Connection(channel);
+			connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+		}
+	}
+
+	private static void closeQuietly(SelectionKey key) {
+		key.cancel();
+
+		try {
+			key.channel().close();
+		}
+		catch (IOException e) {
+			// The connection is gone either way.
+		}
+	}
+
+	/// <summary>Request of a connection and its response, set once its action completes.</summary>
+	private static class Exchange {
+		private final boolean keepAlive;
+		private volatile HttpResponse response;
+
+		Exchange(boolean keepAlive) {
+			this.keepAlive = keepAlive;
+		}
+	}
+
+	/// <summary>State of a connection, used by the selector thread only.</summary>
+	private class Connection {
+		private final SocketChannel channel;
+		private SelectionKey key;
+		private ByteBuffer in = ByteBuffer.allocate(8192);
+		private final ArrayDeque<Exchange> exchanges = new ArrayDeque<>();
+		private ByteBuffer out;
+		// Set once the last request of the connection was read, its response closes the connection.
+		private boolean lastRequest;
+		// Bytes a partly received request needs in the input buffer.
+		private int needed;
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		void read() {
+			try {
+				if (channel.read(in) < 0) {
+					closeQuietly(key);
+					return;
+				}
+
+				in.flip();
+
+				while (!lastRequest && exchanges.size() < maxPipelinedRequests && parseRequest()) {
+					// Parses every request received in full.
+				}
+
+				in.compact();
+
+				if (needed > in.capacity()) {
+					ByteBuffer larger = ByteBuffer.allocate(needed);
+					in.flip();
+					larger.put(in);
+					in = larger;
+				}
+
+				updateInterest();
+			}
+			catch (IOException e) {
+				closeQuietly(key);
+			}
+		}
+
+		/// <summary>Parses the next request of the input buffer and starts its action.</summary>
+		/// <Returns>Whether a request was parsed, false when the rest of the request has not arrived.</Returns>
+		private boolean parseRequest() {
+			int start = in.position();
+			int headerEnd = headerEnd(start, in.limit());
+
+			if (headerEnd < 0) {
+				if (in.remaining() > maxHeaderBytes) {
+					reject(431);
+				}
+
+				needed = Math.max(in.remaining() + 1, in.capacity());
+				return false;
+			}
+
+			String[] lines = new String(in.array(), start, headerEnd - start, StandardCharsets.ISO_8859_1).split("\r\n");
+			String[] requestLine = lines[0].split(" ");
+
+			if (requestLine.length != 3) {
+				reject(400);
+				return false;
+			}
+
+			Map<String, String> headers = new HashMap<>();
+
+			for (int i = 1; i < lines.length; i++) {
+				int colon = lines[i].indexOf(':');
+
+				if (colon > 0) {
+					headers.put(lines[i].substring(0, colon).trim().toLowerCase(), lines[i].substring(colon + 1).trim());
+				}
+			}
+
+			if (headers.containsKey("transfer-encoding")) {
+				reject(411);
+				return false;
+			}
+
+			int contentLength;
+
+			try {
+				contentLength = Integer.parseInt(headers.getOrDefault("content-length", "0"));
+			}
+			catch (NumberFormatException e) {
+				reject(400);
+				return false;
+			}
+
+			if (contentLength < 0 || contentLength > maxBodyBytes) {
+				reject(413);
+				return false;
+			}
+
+			if (in.limit() - headerEnd < contentLength) {
+				needed = headerEnd - start + contentLength;
+				return false;
+			}
+
+			needed = 0;
+			String target = requestLine[1];
+			int query = target.indexOf('?');
+			String form = new String(in.array(), headerEnd, contentLength, StandardCharsets.UTF_8);
+			in.position(headerEnd + contentLength);
+
+			String connectionHeader = headers.get("connection");
+			boolean keepAlive = requestLine[2].equals("HTTP/1.1") ? !"close".equalsIgnoreCase(connectionHeader) : "keep-alive".equalsIgnoreCase(connectionHeader);
+			String host = headers.getOrDefault("host", "localhost:" + getPort());
+			CompletableFuture<HttpResponse> response;
+
+			// A failure of one request is answered on its own exchange, the connection and the server carry on.
+			try {
+				response = api.handle(host, query >= 0 ? target.substring(0, query) : target, query >= 0 ? target.substring(query + 1) : null, form);
+			}
+			catch (RuntimeException e) {
+				System.out.println("The request " + requestLine[0] + " " + target + " failed: " + e);
+				response = CompletableFuture.completedFuture(new HttpResponse(500, ""));
+			}
+
+			respond(response, keepAlive);
+			return true;
+		}
+
+		/// <summary>Returns the index after the blank line ending the headers, -1 when it has not arrived.</summary>
+		private int headerEnd(int from, int to) {
+			byte[] bytes = in.array();
+
+			for (int i = from; i + 3 < to; i++) {
+				if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n') {
+					return i + 4;
+				}
+			}
+
+			return -1;
+		}
+
+		/// <summary>Answers a request that cannot be parsed and closes the connection after the response.</summary>
+		private void reject(int status) {
+			in.position(in.limit());
+			respond(CompletableFuture.completedFuture(new HttpResponse(status, "")), false);
+		}
+
+		/// <summary>Queues the exchange of the request, its response is written once the earlier responses are.</summary>
+		private void respond(CompletableFuture<HttpResponse> response, boolean keepAlive) {
+			Exchange exchange = new Exchange(keepAlive);
+			exchanges.add(exchange);
+			lastRequest = !keepAlive;
+
+			response.whenComplete((result, failure) -> {
+				exchange.response = failure != null ? new HttpResponse(500, "") : result;
+				completed.add(this);
+
+				if (Thread.currentThread() != selectorThread) {
+					selector.wakeup();
+				}
+			});
+		}
+
+		/// <summary>Writes the completed responses in the order of their requests, as far as the socket takes them.</summary>
+		void flush() {
+			if (!key.isValid()) {
+				return;
+			}
+
+			try {
+				for (;;) {
+					if (out == null) {
+						Exchange head = exchanges.peek();
+
+						if (head == null || head.response == null) {
+							break;
+						}
+
+						exchanges.poll();
+						out = head.response.encode(head.keepAlive);
+					}
+
+					channel.write(out);
+
+					if (out.hasRemaining()) {
+						break;
+					}
+
+					out = null;
+
+					if (lastRequest && exchanges.isEmpty()) {
+						closeQuietly(key);
+						return;
+					}
+				}
+
+				updateInterest();
+			}
+			catch (IOException e) {
+				closeQuietly(key);
+			}
+		}
+
+		/// <summary>Reads while the connection has room for pipelined requests, and writes while a response is partly written.</summary>
+		private void updateInterest() {
+			if (!key.isValid()) {
+				return;
+			}
+
+			int interest = out != null ? SelectionKey.OP_WRITE : 0;
+
+			if (!lastRequest && exchanges.size() < maxPipelinedRequests) {
+				interest |= SelectionKey.OP_READ;
+			}
+
+			key.interestOps(interest);
+
+			// Requests already in the buffer are parsed once earlier responses made room for them.
+			if (!lastRequest && exchanges.size() < maxPipelinedRequests && in.position() > 0 && needed == 0) {
+				in.flip();
+
+				while (!lastRequest && exchanges.size() < maxPipelinedRequests && parseRequest()) {
+					// Parses every request received in full.
+				}
+
+				in.compact();
+			}
+		}
+	}
+}
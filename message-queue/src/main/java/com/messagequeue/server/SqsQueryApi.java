@@ -0,0 +1,504 @@
+package com.messagequeue.server;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.messagequeue.services.AsyncQueueService;
+import com.services.model.ChangeVisibilityRequest;
+import com.services.model.ChangeVisibilityResult;
+import com.services.model.DeleteMessageRequest;
+import com.services.model.DeleteMessageResult;
+import com.services.model.Message;
+import com.services.model.MessageStatus;
+import com.services.model.ReceiveMessageRequest;
+import com.services.model.SendMessageRequest;
+
+/// <summary>
+/// Serves the actions of the Amazon SQS Query API used by SqsQueueService from a local queue service:
+/// CreateQueue, GetQueueUrl, SendMessageBatch, ReceiveMessage, DeleteMessageBatch, ChangeMessageVisibility and
+/// ChangeMessageVisibilityBatch. The queue of an action is the last segment of the request path, the path of
+/// its Queue URL, or of the QueueUrl parameter for clients posting every action to the root path. The responses
+/// carry the elements the AWS SDK reads, including the MD5 digests of the message bodies it checks.
+///
+/// The local queues know no message IDs, a received message is identified by its receipt handle instead, and
+/// every action completes on the thread of the local queue, so the caller never waits for a long polling receive.
+/// </summary>
+class SqsQueryApi {
+
+	static final String queuePath = "/queue/";
+
+	private static final String namespace = "http://queue.amazonaws.com/doc/2012-11-05/";
+	private static final String nonExistentQueue = "AWS.SimpleQueueService.NonExistentQueue";
+	private static final String approximateReceiveCount = "ApproximateReceiveCount";
+	private static final String messageGroupId = "MessageGroupId";
+
+	// Limits of Amazon SQS on the entries of a batch and the messages of a receive, and its defaults.
+	private static final int maxBatchEntries = 10;
+	private static final int defaultVisibilityTimeoutSeconds = 30;
+
+	private final AsyncQueueService queueService;
+	private final String backendPrefix;
+	private final Set<String> queues = ConcurrentHashMap.newKeySet();
+
+	/// <parameter name="queueService">Represents the local queue service holding the messages.</parameter>
+	/// <parameter name="backendPrefix">Represents the prefix of the local Queue URLs, the queue name following it.</parameter>
+	SqsQueryApi(AsyncQueueService queueService, String backendPrefix) {
+		this.queueService = queueService;
+		this.backendPrefix = backendPrefix;
+	}
+
+	/// <summary>Makes the queue known to GetQueueUrl and the message actions, as CreateQueue does.</summary>
+	void createQueue(String queueName) {
+		queues.add(queueName);
+	}
+
+	/// <summary>
+	/// Runs the action of the request. A request whose parameters cannot be parsed, or whose action fails, is
+	/// answered with an error response of its own, so one bad request never affects the others.
+	/// </summary>
+	/// <parameter name="host">Represents the Host header of the request, the authority of the Queue URLs returned.</parameter>
+	/// <parameter name="path">Represents the path of the request.</parameter>
+	/// <parameter name="query">Represents the query string of the request, null when it has none.</parameter>
+	/// <parameter name="form">Represents the application/x-www-form-urlencoded body of the request.</parameter>
+	/// <Returns>The future completed with the response, an error response when the action failed.</Returns>
+	CompletableFuture<HttpResponse> handle(String host, String path, String query, String form) {
+		Map<String, String> params = new HashMap<>();
+		String action = null;
+
+		try {
+			parseForm(query, params);
+			parseForm(form, params);
+			action = params.get("Action");
+			return run(action, host, path, params).exceptionally(failure -> internalError(params.get("Action"), failure));
+		}
+		catch (QueryException e) {
+			return CompletableFuture.completedFuture(error(400, e.code, e.getMessage()));
+		}
+		catch (RuntimeException e) {
+			return CompletableFuture.completedFuture(internalError(action, e));
+		}
+	}
+
+	private CompletableFuture<HttpResponse> run(String action, String host, String path, Map<String, String> params) throws QueryException {
+		switch (action == null ? "" : action) {
+		case "CreateQueue":
+			return CompletableFuture.completedFuture(createQueue(host, params));
+		case "GetQueueUrl":
+			return CompletableFuture.completedFuture(getQueueUrl(host, params));
+		case "SendMessageBatch":
+			return sendMessageBatch(queueName(path, params), params);
+		case "ReceiveMessage":
+			return receiveMessage(queueName(path, params), params);
+		case "DeleteMessageBatch":
+			return deleteMessageBatch(queueName(path, params), params);
+		case "ChangeMessageVisibility":
+			return changeMessageVisibility(queueName(path, params), params);
+		case "ChangeMessageVisibilityBatch":
+			return changeMessageVisibilityBatch(queueName(path, params), params);
+		default:
+			return CompletableFuture.completedFuture(error(400, "InvalidAction", "The action " + action + " is not valid for this endpoint."));
+		}
+	}
+
+	private HttpResponse createQueue(String host, Map<String, String> params) throws QueryException {
+		String queueName = required(params, "QueueName");
+		queues.add(queueName);
+		return ok("CreateQueue", "<QueueUrl>" + escape(queueUrl(host, queueName)) + "</QueueUrl>");
+	}
+
+	private HttpResponse getQueueUrl(String host, Map<String, String> params) throws QueryException {
+		String queueName = required(params, "QueueName");
+
+		if (!queues.contains(queueName)) {
+			return error(400, nonExistentQueue, "The specified queue does not exist for this wsdl version.");
+		}
+
+		return ok("GetQueueUrl", "<QueueUrl>" + escape(queueUrl(host, queueName)) + "</QueueUrl>");
+	}
+
+	private CompletableFuture<HttpResponse> sendMessageBatch(String queueName, Map<String, String> params) throws QueryException {
+		List<String> ids = entryIds(params, "SendMessageBatchRequestEntry");
+		List<Message> messages = new ArrayList<>(ids.size());
+
+		for (int i = 0; i < ids.size(); i++) {
+			String entry = "SendMessageBatchRequestEntry." + (i + 1) + ".";
+			Message message = new Message();
+			message.setMessageStatus(MessageStatus.NEW);
+			message.setMessage(required(params, entry + "MessageBody"));
+
+			if (params.containsKey(entry + "DelaySeconds")) {
+				message.setDelaySeconds(intParam(params, entry + "DelaySeconds", 0));
+			}
+
+			// The message group orders the messages on a local queue created with the FIFO engine.
+			message.setMessageGroupId(params.get(entry + messageGroupId));
+
+			messages.add(message);
+		}
+
+		return queueService.pushAsync(new SendMessageRequest(backendPrefix + queueName, messages, 0)).thenApply(done -> {
+			StringBuilder result = new StringBuilder();
+
+			for (int i = 0; i < ids.size(); i++) {
+				result.append("<SendMessageBatchResultEntry><Id>").append(escape(ids.get(i))).append("</Id><MessageId>")
+						.append(UUID.randomUUID()).append("</MessageId><MD5OfMessageBody>").append(md5(messages.get(i).getMessage()))
+						.append("</MD5OfMessageBody></SendMessageBatchResultEntry>");
+			}
+
+			return ok("SendMessageBatch", result.toString());
+		});
+	}
+
+	private CompletableFuture<HttpResponse> receiveMessage(String queueName, Map<String, String> params) throws QueryException {
+		int maxMessages = intParam(params, "MaxNumberOfMessages", 1);
+
+		if (maxMessages < 1 || maxMessages > maxBatchEntries) {
+			throw new QueryException("InvalidParameterValue", "MaxNumberOfMessages must be between 1 and " + maxBatchEntries + ".");
+		}
+
+		ReceiveMessageRequest request = new ReceiveMessageRequest(backendPrefix + queueName, maxMessages, 0, intParam(params, "WaitTimeSeconds", 0));
+		request.setVisibilityTimeoutMillis(intParam(params, "VisibilityTimeout", defaultVisibilityTimeoutSeconds) * 1000L);
+		boolean receiveCount = requestsAttribute(params, approximateReceiveCount);
+		boolean groupId = requestsAttribute(params, messageGroupId);
+
+		return queueService.pollAsync(request).thenApply(messages -> {
+			StringBuilder result = new StringBuilder();
+
+			// The local queues complete a receive that found no messages with null.
+			if (messages != null) {
+				for (Message message : messages) {
+					String receiptHandle = Long.toString(message.getReceiptId());
+					result.append("<Message><MessageId>").append(receiptHandle).append("</MessageId><ReceiptHandle>").append(receiptHandle)
+							.append("</ReceiptHandle><MD5OfBody>").append(md5(message.getMessage())).append("</MD5OfBody><Body>")
+							.append(escape(message.getMessage())).append("</Body>");
+
+					if (receiveCount) {
+						result.append("<Attribute><Name>").append(approximateReceiveCount).append("</Name><Value>")
+								.append(message.getPriorAttempts() + 1).append("</Value></Attribute>");
+					}
+
+					if (groupId && message.getMessageGroupId() != null) {
+						result.append("<Attribute><Name>").append(messageGroupId).append("</Name><Value>")
+								.append(escape(message.getMessageGroupId())).append("</Value></Attribute>");
+					}
+
+					result.append("</Message>");
+				}
+			}
+
+			return ok("ReceiveMessage", result.toString());
+		});
+	}
+
+	private CompletableFuture<HttpResponse> deleteMessageBatch(String queueName, Map<String, String> params) throws QueryException {
+		Entries entries = receiptEntries(params, "DeleteMessageBatchRequestEntry");
+
+		return queueService.deleteAsync(new DeleteMessageRequest(backendPrefix + queueName, entries.messages))
+				.thenApply(result -> ok("DeleteMessageBatch", entries.toXml("DeleteMessageBatchResultEntry", result.getSuccessful(), result.getFailed())));
+	}
+
+	private CompletableFuture<HttpResponse> changeMessageVisibility(String queueName, Map<String, String> params) throws QueryException {
+		Message message = new Message();
+		message.setReceiptId(receiptId(required(params, "ReceiptHandle")));
+		List<Message> messages = new ArrayList<>();
+		messages.add(message);
+		long visibilityTimeoutMillis = intParam(params, "VisibilityTimeout", 0) * 1000L;
+
+		return queueService.changeVisibilityAsync(new ChangeVisibilityRequest(backendPrefix + queueName, messages, visibilityTimeoutMillis)).thenApply(result -> {
+			if (!result.getFailed().isEmpty()) {
+				DeleteMessageResult.Failure failure = result.getFailed().get(0);
+				return error(400, failure.getCode(), failure.getReason());
+			}
+
+			return ok("ChangeMessageVisibility", null);
+		});
+	}
+
+	private CompletableFuture<HttpResponse> changeMessageVisibilityBatch(String queueName, Map<String, String> params) throws QueryException {
+		Entries entries = receiptEntries(params, "ChangeMessageVisibilityBatchRequestEntry");
+		List<CompletableFuture<ChangeVisibilityResult>> changes = new ArrayList<>();
+		Map<Long, List<Message>> byTimeout = new HashMap<>();
+
+		// The entries of a batch may each have their own timeout, the local queues take one timeout per change.
+		for (int i = 0; i < entries.messages.size(); i++) {
+			int timeout = intParam(params, "ChangeMessageVisibilityBatchRequestEntry." + entries.indexes.get(i) + ".VisibilityTimeout", 0);
+			byTimeout.computeIfAbsent(timeout * 1000L, millis -> new ArrayList<>()).add(entries.messages.get(i));
+		}
+
+		for (Map.Entry<Long, List<Message>> change : byTimeout.entrySet()) {
+			changes.add(queueService.changeVisibilityAsync(new ChangeVisibilityRequest(backendPrefix + queueName, change.getValue(), change.getKey())));
+		}
+
+		return CompletableFuture.allOf(changes.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+			List<Message> successful = new ArrayList<>();
+			List<DeleteMessageResult.Failure> failed = new ArrayList<>();
+
+			for (CompletableFuture<ChangeVisibilityResult> change : changes) {
+				successful.addAll(change.join().getSuccessful());
+				failed.addAll(change.join().getFailed());
+			}
+
+			return ok("ChangeMessageVisibilityBatch", entries.toXml("ChangeMessageVisibilityBatchResultEntry", successful, failed));
+		});
+	}
+
+	/// <summary>Returns whether the numbered AttributeName parameters of a receive ask for the attribute.</summary>
+	private static boolean requestsAttribute(Map<String, String> params, String attribute) {
+		for (int i = 1; params.containsKey("AttributeName." + i); i++) {
+			String name = params.get("AttributeName." + i);
+
+			if (name.equals(attribute) || name.equals("All")) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/// <summary>Returns the name of the queue of a message action, which must have been created.</summary>
+	private String queueName(String path, Map<String, String> params) throws QueryException {
+		String queueUrl = params.get("QueueUrl");
+
+		if (queueUrl != null) {
+			try {
+				path = new URI(queueUrl).getPath();
+			}
+			catch (URISyntaxException e) {
+				throw new QueryException("InvalidParameterValue", "Value " + queueUrl + " for parameter QueueUrl is invalid.");
+			}
+		}
+
+		String queueName = path == null ? "" : path.substring(path.lastIndexOf('/') + 1);
+
+		if (!queues.contains(queueName)) {
+			throw new QueryException(nonExistentQueue, "The specified queue does not exist for this wsdl version.");
+		}
+
+		return queueName;
+	}
+
+	private String queueUrl(String host, String queueName) {
+		return "http://" + host + queuePath + queueName;
+	}
+
+	/// <summary>Returns the ids of the numbered entries of a batch, which must hold from 1 to 10 entries.</summary>
+	private List<String> entryIds(Map<String, String> params, String entryName) throws QueryException {
+		List<String> ids = new ArrayList<>();
+
+		for (int i = 1; params.containsKey(entryName + "." + i + ".Id"); i++) {
+			ids.add(params.get(entryName + "." + i + ".Id"));
+		}
+
+		if (ids.isEmpty()) {
+			throw new QueryException("AWS.SimpleQueueService.EmptyBatchRequest", "There should be at least one " + entryName + " in the request.");
+		}
+
+		if (ids.size() > maxBatchEntries) {
+			throw new QueryException("AWS.SimpleQueueService.TooManyEntriesInBatchRequest", "Maximum number of entries per request are " + maxBatchEntries + ".");
+		}
+
+		return ids;
+	}
+
+	/// <summary>Reads the entries of a batch identifying received messages by their receipt handles.</summary>
+	private Entries receiptEntries(Map<String, String> params, String entryName) throws QueryException {
+		List<String> ids = entryIds(params, entryName);
+		Entries entries = new Entries();
+
+		for (int i = 0; i < ids.size(); i++) {
+			String handle = required(params, entryName + "." + (i + 1) + ".ReceiptHandle");
+
+			try {
+				Message message = new Message();
+				message.setReceiptId(Long.parseLong(handle));
+				entries.add(ids.get(i), i + 1, message);
+			}
+			catch (NumberFormatException e) {
+				entries.invalid.put(ids.get(i), "The input receipt handle \"" + handle + "\" is not a valid receipt handle.");
+			}
+		}
+
+		return entries;
+	}
+
+	private long receiptId(String handle) throws QueryException {
+		try {
+			return Long.parseLong(handle);
+		}
+		catch (NumberFormatException e) {
+			throw new QueryException(DeleteMessageResult.receiptHandleIsInvalid, "The input receipt handle \"" + handle + "\" is not a valid receipt handle.");
+		}
+	}
+
+	private static String required(Map<String, String> params, String name) throws QueryException {
+		String value = params.get(name);
+
+		if (value == null) {
+			throw new QueryException("MissingParameter", "The request must contain the parameter " + name + ".");
+		}
+
+		return value;
+	}
+
+	private static int intParam(Map<String, String> params, String name, int defaultValue) throws QueryException {
+		String value = params.get(name);
+
+		try {
+			return value == null ? defaultValue : Integer.parseInt(value);
+		}
+		catch (NumberFormatException e) {
+			throw new QueryException("InvalidParameterValue", "Value " + value + " for parameter " + name + " is invalid.");
+		}
+	}
+
+	/// <summary>Parses the parameters of a query string or of an application/x-www-form-urlencoded body into the map.</summary>
+	private static void parseForm(String form, Map<String, String> params) throws QueryException {
+		if (form == null || form.isEmpty()) {
+			return;
+		}
+
+		try {
+			for (String pair : form.split("&")) {
+				int equals = pair.indexOf('=');
+
+				if (equals < 0) {
+					params.put(URLDecoder.decode(pair, "UTF-8"), "");
+				}
+				else {
+					params.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"), URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+				}
+			}
+		}
+		catch (IllegalArgumentException e) {
+			throw new QueryException("MalformedQueryString", "The query string is malformed: " + e.getMessage());
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private HttpResponse ok(String action, String result) {
+		StringBuilder xml = new StringBuilder("<?xml version=\"1.0\"?><").append(action).append("Response xmlns=\"").append(namespace).append("\">");
+
+		if (result != null) {
+			xml.append('<').append(action).append("Result>").append(result).append("</").append(action).append("Result>");
+		}
+
+		xml.append("<ResponseMetadata><RequestId>").append(UUID.randomUUID()).append("</RequestId></ResponseMetadata></").append(action).append("Response>");
+		return new HttpResponse(200, xml.toString());
+	}
+
+	private HttpResponse error(int status, String code, String message) {
+		return new HttpResponse(status, "<?xml version=\"1.0\"?><ErrorResponse xmlns=\"" + namespace + "\"><Error><Type>" + (status < 500 ? "Sender" : "Receiver")
+				+ "</Type><Code>" + escape(code) + "</Code><Message>" + escape(message) + "</Message><Detail/></Error><RequestId>"
+				+ UUID.randomUUID() + "</RequestId></ErrorResponse>");
+	}
+
+	private HttpResponse internalError(String action, Throwable failure) {
+		Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+		System.out.println("The " + action + " action failed: " + cause);
+		return error(500, "InternalError", String.valueOf(cause.getMessage()));
+	}
+
+	/// <summary>Returns the hex MD5 digest of the UTF-8 text, as Amazon SQS returns for message bodies.</summary>
+	static String md5(String text) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(text.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder(32);
+
+			for (byte b : digest) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+
+			return hex.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/// <summary>Escapes the text for XML content. Carriage returns are escaped too, which XML parsers would drop otherwise.</summary>
+	static String escape(String text) {
+		StringBuilder escaped = new StringBuilder(text.length() + 16);
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+
+			switch (c) {
+			case '&': escaped.append("&amp;"); break;
+			case '<': escaped.append("&lt;"); break;
+			case '>': escaped.append("&gt;"); break;
+			case '"': escaped.append("&quot;"); break;
+			case '\r': escaped.append("&#xD;"); break;
+			default: escaped.append(c);
+			}
+		}
+
+		return escaped.toString();
+	}
+
+	/// <summary>Entries of a batch identifying messages by receipt handle, and the entries whose handles are not valid.</summary>
+	private static class Entries {
+		private final List<Message> messages = new ArrayList<>();
+		private final List<Integer> indexes = new ArrayList<>();
+		private final Map<Message, String> ids = new IdentityHashMap<>();
+		private final Map<String, String> invalid = new HashMap<>();
+
+		void add(String id, int index, Message message) {
+			messages.add(message);
+			indexes.add(index);
+			ids.put(message, id);
+		}
+
+		/// <summary>Returns the result entries of the batch, mapping the messages of the outcome back to the entry ids.</summary>
+		String toXml(String resultEntry, List<Message> successful, List<DeleteMessageResult.Failure> failed) {
+			StringBuilder xml = new StringBuilder();
+
+			for (Message message : successful) {
+				xml.append('<').append(resultEntry).append("><Id>").append(escape(ids.get(message))).append("</Id></").append(resultEntry).append('>');
+			}
+
+			for (DeleteMessageResult.Failure failure : failed) {
+				appendError(xml, ids.get(failure.getMessage()), failure.getCode(), failure.getReason(), failure.isSenderFault());
+			}
+
+			for (Map.Entry<String, String> entry : invalid.entrySet()) {
+				appendError(xml, entry.getKey(), DeleteMessageResult.receiptHandleIsInvalid, entry.getValue(), true);
+			}
+
+			return xml.toString();
+		}
+
+		private static void appendError(StringBuilder xml, String id, String code, String reason, boolean senderFault) {
+			xml.append("<BatchResultErrorEntry><Id>").append(escape(id)).append("</Id><Code>").append(escape(code)).append("</Code><Message>")
+					.append(escape(String.valueOf(reason))).append("</Message><SenderFault>").append(senderFault).append("</SenderFault></BatchResultErrorEntry>");
+		}
+	}
+
+	/// <summary>Failure of an action caused by its parameters, answered with an error response.</summary>
+	private static class QueryException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		private final String code;
+
+		QueryException(String code, String message) {
+			super(message);
+			this.code = code;
+		}
+	}
+}
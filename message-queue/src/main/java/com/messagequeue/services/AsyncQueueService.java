@@ -0,0 +1,29 @@
+package com.messagequeue.services;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.services.model.ChangeVisibilityRequest;
+import com.services.model.ChangeVisibilityResult;
+import com.services.model.Message;
+import com.services.model.DeleteMessageRequest;
+import com.services.model.DeleteMessageResult;
+import com.services.model.SendMessageRequest;
+import com.services.model.ReceiveMessageRequest;
+
+public interface AsyncQueueService extends QueueService {
+	
+	//  pushes a message onto a queue, completing once the messages are in the queue.
+	CompletableFuture<Void> pushAsync(SendMessageRequest request);
+	
+	//  retrieves messages from a queue, completing with null when the wait time passed without messages.
+	//  A receive waiting for messages holds no thread.
+	CompletableFuture<List<Message>> pollAsync(ReceiveMessageRequest request);
+	
+	//  deletes the messages from the queue that were received by poll, completing with the outcome for every message.
+	CompletableFuture<DeleteMessageResult> deleteAsync(DeleteMessageRequest request);
+	
+	//  changes the visibility timeout of the messages received by poll, completing with the outcome for every message.
+	CompletableFuture<ChangeVisibilityResult> changeVisibilityAsync(ChangeVisibilityRequest request);
+	
+}
@@ -0,0 +1,66 @@
+package com.messagequeue.services;
+
+import java.util.List;
+
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+
+/// <summary>
+/// Adds the MessageGroupId and MessageDeduplicationId of Amazon SQS FIFO queues to the entries of a send batch,
+/// parameters the version of the AWS SDK in use has no setters for. The handler runs on every request before it
+/// is signed, and adds the parameters of the entries created as FifoRequestHandler.Entry.
+/// </summary>
+class FifoRequestHandler extends RequestHandler2 {
+
+	/// <summary>Send batch entry of a FIFO queue.</summary>
+	static final class Entry extends SendMessageBatchRequestEntry {
+		private static final long serialVersionUID = 1L;
+
+		private final String messageGroupId;
+		private final String deduplicationId;
+
+		/// <parameter name="messageGroupId">Represents the group the message is received in order with.</parameter>
+		/// <parameter name="deduplicationId">Represents the id of the send, a send retried with the same id within 5 minutes is dropped.</parameter>
+		Entry(String messageGroupId, String deduplicationId) {
+			this.messageGroupId = messageGroupId;
+			this.deduplicationId = deduplicationId;
+		}
+
+		String getMessageGroupId() {
+			return messageGroupId;
+		}
+
+		String getDeduplicationId() {
+			return deduplicationId;
+		}
+	}
+
+	@Override
+	public void beforeRequest(Request<?> request) {
+		if (!(request.getOriginalRequest() instanceof SendMessageBatchRequest)) {
+			return;
+		}
+
+		List<SendMessageBatchRequestEntry> entries = ((SendMessageBatchRequest) request.getOriginalRequest()).getEntries();
+
+		for (int i = 0; i < entries.size(); i++) {
+			if (entries.get(i) instanceof Entry) {
+				Entry entry = (Entry) entries.get(i);
+				String prefix = "SendMessageBatchRequestEntry." + (i + 1) + ".";
+				request.addParameter(prefix + "MessageGroupId", entry.getMessageGroupId());
+				request.addParameter(prefix + "MessageDeduplicationId", entry.getDeduplicationId());
+			}
+		}
+	}
+
+	@Override
+	public void afterResponse(Request<?> request, Response<?> response) {
+	}
+
+	@Override
+	public void afterError(Request<?> request, Response<?> response, Exception e) {
+	}
+}
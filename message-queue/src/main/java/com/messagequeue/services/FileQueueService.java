@@ -1,413 +1,727 @@
-package com.messagequeue.services;
-
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
-import org.springframework.context.annotation.Profile;
-import org.springframework.stereotype.Service;
-
-import com.services.model.Message;
-import com.services.model.MessageStatus;
-import com.services.model.DeleteMessageRequest;
-import com.services.model.SendMessageRequest;
-import com.services.model.ReceiveMessageRequest;
-import com.utilities.DateTimeUtility;
-
-@Service
-@Profile("test")
-public class FileQueueService implements QueueService {
-	
-	private static final String queueName = "messages";
-	private static final String lockName = ".lock";
-	private static AtomicInteger identity = new AtomicInteger();
-		
-	
-	/// <summary>
-    /// Publishes the Messages to the File Queue with Message Status as NEW indicating
-    /// these messages are available for processing.
-    /// </summary>
-    /// <parameter name="SendMessageRequest">Represents Send Message Request.</parameter>
-	@Override
-	public void push(SendMessageRequest request) {
-	    
-    		File wlock = getWriteLockFile(request.getQueueUrl());
-    		File queue = getQueue(request.getQueueUrl());
-    		
-	    acquireWriteLock(wlock);
-	    
-	    try (PrintWriter pw = new PrintWriter(new FileWriter(queue, true))){
-	    		    	
-	    		for (Message message : request.getAllMessages()) {
-		        pw.println(message.toString());
-		    }
-	    } 
-	    catch (IOException e) {
-	    		e.printStackTrace();
-	    } 
-	    finally {
-	    		releaseWriteLock(wlock);
-	    }
-	}
-    
-    /// <summary>
-    /// Fetches newly queued messages limited by the Request Batch Size parameter of the Request
-    /// and marks them as in-flight messages so that these messages are not available for other
-    /// consumers.
-    /// </summary>
-    /// <parameter name="ReceiveMessageRequest">Represents Receive Request.</parameter>
-    /// <Returns>Returns list of messages for processing to Consumer.</Returns>
-	@Override
-	public List<Message> poll(ReceiveMessageRequest request) {
-		
-    		String queueUri = request.getQueueUrl();
-		File wLock = getWriteLockFile(queueUri);
-		
-		File queue = new File(queueUri + queueName);
-		
-		if (!queue.exists()) {
-			System.out.println("There are no messages in the Queue waiting to be processed.");
-    			return null;
-		}
-		
-		Path path = queue.toPath();
-		//DateFormat formatter =new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-		Calendar cal = Calendar.getInstance();
-		//String currTime = formatter.format(cal.getTime());
-		Date currTime = cal.getTime();
-		int visibilityTimeout = request.getVisibilityTimeout();
-		List<Message> messagesToProcess = null;
-		
-		// Establishes lock to be able to retrieve the newly queued messages and mark them as in process.
-    		acquireWriteLock(wLock);
-    	
-		try {
-	    	
-	    		List<Message> visTimeoutMessages = getVisibilityTimeoutMessages(path, visibilityTimeout, request.getRequestBatchSize());
-	    	
-			// Call the Newly queued messages are pulled.
-	    		List<Message> filteredMessages = Files.lines(path)
-												.filter(s -> s.contains(MessageStatus.NEW.toString()))
-												.limit(request.getRequestBatchSize()-visTimeoutMessages.size())
-												.map(p-> deserializeMessage(p)).collect(Collectors.toList());
-			
-	    	
-	    		messagesToProcess = Stream.concat(visTimeoutMessages.stream(), filteredMessages.stream())
-	    											.collect(Collectors.toList());
-	    	
-	    		/// Change the Message status of the message to indicate it is being picked up
-		    /// for processing and will not be visible for other consumers.
-		    	for(Message msg : messagesToProcess) {
-		    		
-		    		String originalMessage = msg.toString();
-		    		int receiptId = identity.incrementAndGet();
-		    		msg.setMessageStatus(MessageStatus.INFLIGHT);
-		    		msg.setinvisibleFromTime(currTime);
-		    		msg.setReceiptId(receiptId);
-		    		
-		    		replaceSelected(originalMessage, msg.toString(), queueUri);
-		    		//changeMessageStatus(originalMessage,MessageStatus.INFLIGHT,currTime,identity.incrementAndGet(),queueUri))
-		    	}
-												
-		    	if(filteredMessages.size() == 0 && visTimeoutMessages.size() == 0) {
-		    		System.out.println("There are no messages in the Queue waiting to be processed.");
-		    		return null;
-		    	}
-	    } 
-	    catch (IOException e) {
-			e.printStackTrace();
-		} 
-	    
-	    finally{
-	    		releaseWriteLock(wLock);
-	    }
-		
-		return messagesToProcess;
-	}
-
-    /// <summary>
-    /// Transforms the String Representation of the Message in to the Message object. 
-    /// </summary>
-    /// <parameter name="messageText">Represents string representation of the message.</parameter>
-	@Override
-	public void delete(DeleteMessageRequest request) {
-		File wLock = getWriteLockFile(request.getQueueUrl());
-		
-		acquireWriteLock(wLock);
-		
-		try {
-			
-			if(request.getMessages().size() > 0) {
-				String queue = getUpdatedQueue(request.getMessages(), request.getQueueUrl());
-				writeToFile(queue, request.getQueueUrl());
-			}
-		} 
-		catch (Exception e) {
-			e.printStackTrace();
-		}
-		finally{
-			releaseWriteLock(wLock);
-		}
-	}
-
-	/// <summary>Converts the Message String into Message object.</summary>
-    /// <parameter name = "messageText">String representation of the message.</parameter>
-    /// <Returns>Message Object</Returns>
-    private Message deserializeMessage(String messageText) {
-    	
-    	DateFormat formatter =new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-    	String[] tokens = messageText.split("\\|");
-    	
-    	Message message = new Message();
-    	
-    	try {
-    		message.setMessageStatus(MessageStatus.valueOf(tokens[0]));
-    		message.setPriorAttempts(Integer.parseInt(tokens[1]));
-    		
-    		if(!tokens[2].isEmpty()) { 
-    			message.setinvisibleFromTime(((Date)formatter.parse(tokens[2])));
-    		}
-    		
-    		message.setReceiptId(Integer.parseInt(tokens[3]));
-        	message.setMessage(tokens[4]);
-    } 
-    	catch (ParseException e) {
-			e.printStackTrace();
-		}
-    	
-    	return message;
-    	
-    }
-    
-    /// <summary>Retrieves messages with visibility timeout to be sent for reprocessing.</summary>
-    /// <parameter name = "path">String file queue path.</parameter>
-    /// <parameter name = "messageText">Represents visibility time out period.</parameter>
-    /// <parameter name = "messageText">Represents the Batch Size of a single poll operation.</parameter>
-    /// <Returns>List of In-flight messages with visibility timeout.</Returns>
-    private List<Message> getVisibilityTimeoutMessages(Path path, int visibilityTimeout, int batchSize) throws IOException {
-    	
-    		List<Message> visibilityTimeoutMessages = new ArrayList<Message>();
-    		Calendar cal = Calendar.getInstance();
-		
-		try {
-	    	// in-flight messages collection maintains the messages picked up and currently being processed.
-			List<Message> inflightMessages = Files.lines(path)
-												.filter(s -> s.contains(MessageStatus.INFLIGHT.toString()))
-												.limit(batchSize)
-												.map(p-> deserializeMessage(p)).collect(Collectors.toList());
-			
-			for(Message msg : inflightMessages) {
-				int duration = Math.abs(DateTimeUtility.minutesDiff(cal.getTime(), msg.getinvisibleFromTime()));
-				
-				if(duration > visibilityTimeout) {
-					
-					// Increment the prior attempt to indicate the message has been picked again for processing.
-					int priorAttempt = msg.getPriorAttempts();
-					msg.setPriorAttempts(priorAttempt++);
-					visibilityTimeoutMessages.add(msg);
-				}
-			}
-		}
-		catch(IOException e) {
-			e.printStackTrace();
-		}
-		
-		return visibilityTimeoutMessages;
-    	
-    }
-    
-	/*/// <summary>
-    /// To Change the Message status of the message to indicate it is being picked up
-    /// for processing and will not be visible for other consumers.
-    /// </summary>
-    /// <parameter name="originalMessage">Represents original message that is queued.</parameter>
-    /// <parameter name="status">Represents the Status of the Message (NEW , INFLIGHT, PROCESSED).</parameter>
-    /// <parameter name="currTime">Represents the time the message is picked for processing.</parameter>
-    /// <parameter name="receiptId">Represents the Receipt Id of the message.</parameter>
-    /// <parameter name="queueUri">Represents the Directory Location where the message file (Queue) is located.</parameter>
-    private void changeMessageStatus(String originalMessage, MessageStatus status, String currTime, int receiptId, String queueUri){
-		String[] tokens = originalMessage.split("\\|");
-		tokens[0] = status.toString();
-		tokens[2] = currTime;
-		tokens[3] = Integer.toString(receiptId);
-		
-		String newMessage = String.join("|", tokens);
-		
-		try {
-			replaceSelected(originalMessage, newMessage, queueUri);
-		}
-		catch(Exception e)
-		{
-			e.printStackTrace();
-		}
-	}
-	*/
-    
-	/// <summary>Acquires a lock on the File Queue so that other threads wanting to acquire lock
-    /// on the File are kept waiting until the lock is released.</summary>
-    /// <parameter>Represent the Lock File (Object) of the File Queue.</parameter>
-	private void acquireWriteLock(File wLock) {
-		
-		while (!wLock.mkdir()) {
-			try {
-				System.out.println("Waiting to acquire");
-				Thread.sleep(50);
-				
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-		}
-	}
-
-	
-	/// <summary>Release the File Locked held to block Writing/ Reading into/from the Messages Queue.</summary>
-    /// <parameter>Represent the Lock File (Object) of the File Queue.</parameter>
-	private void releaseWriteLock(File wLock) {
-		wLock.delete();
-	}
-	
-	/// <summary>Creates message file Queue if it does not exists.</summary>
-    /// <parameter>Represent message file queue URL.</parameter>
-	/// <Returns>Reference to the message file queue.</Returns>
-	private File getQueue(String queueUri) {
-				
-		File file = new File(queueUri + queueName);
-		
-		if(!file.exists()) {
-			try {
-				System.out.println("create directory");
-				file.getParentFile().mkdir();
-				System.out.println("cAbout to create file");
-				file.createNewFile();
-			} 
-			catch (IOException e) {
-				e.printStackTrace();
-			}
-		}
-		
-		return file;
-	}
-	
-	/// <summary>Creates a .lock file to indicate Lock is acquired on the message file queue.</summary>
-    /// <parameter>Represent message file queue URL.</parameter>
-	/// <Returns>Reference to the .lock file.</Returns>
-	private File getWriteLockFile(String queueUri) {
-		
-		File file = new File(queueUri + lockName);
-		return file;
-	}
-	
-	/// <summary>
-    /// Finds the Text (message) to be replaced in the messages file and replace with the new updated message.
-    /// </summary>
-    /// <parameter name="originalText">Represents original message that is going to be modified.</parameter>
-	/// <parameter name="replaceWith">Represents updated message.</parameter>
-	/// <parameter name="queueUri">Represents the Directory Location where the message file (Queue) is located.</parameter>
-	private void replaceSelected(String originalText, String replaceWith, String queueUri)  {
-		Path path = Paths.get(queueUri, queueName);
-	
-		try {
-			
-			// Retrieves all the messages from the Queue.
-			List<String> fileContent = new ArrayList<>(Files.readAllLines(path)); //.readAllLines(path, StandardCharsets.UTF_8));
-			
-			for (int i = 0; i < fileContent.size(); i++) {
-				
-				// Replace the original Test with the updated message.
-			    if (fileContent.get(i).equals(originalText)) {
-			        fileContent.set(i, replaceWith);
-			        break;
-			    }
-			}
-			
-			
-			// Write back the modified string array back to the queue file.
-			Files.write(path, fileContent, StandardCharsets.UTF_8, java.nio.file.StandardOpenOption.TRUNCATE_EXISTING);
-			
-	    }
-		catch (IOException e) {
-			e.printStackTrace();
-		}
-		
-				    
-	}
-	
-	/// <summary>
-    /// Gets the Updated the Queue File content after deletion of processed messages.
-    /// </summary>
-	/// <parameter name="deletedMessages">Represents list of messages to be deleted from the file Queue.</parameter>
-	/// <parameter name="replaceWith">Represents File Queue URL.</parameter>
-    private String getUpdatedQueue(List<Message> deletedMessages, String queueUri)   {
-		
-		String[] serializedMessages = new String[deletedMessages.size()];
-	    
-		int i = 0;
-	    for(Message message : deletedMessages) {
-	    		serializedMessages[i] = message.toString();
-	    		i++;
-	    }
-	    
-		String filePath = queueUri.concat(queueName);
-		File file = new File(filePath);
-		
-		String currentLine;
-	    //BufferedReader reader = null;
-	    StringBuilder  stringBuilder = new StringBuilder();
-	    
-	    try (BufferedReader reader =new BufferedReader(new FileReader(file))){ 
-	    				   
-		    while((currentLine = reader.readLine()) != null) {
-		    	
-		    		boolean matched = false;
-				for(String msg : serializedMessages)
-			    {
-					if(currentLine.equals(msg)) {
-			    			matched = true;
-			    			break;
-					}
-			    }
-				
-				if(matched) 
-			    		continue;
-				
-			    stringBuilder.append(currentLine);
-				stringBuilder.append(System.getProperty("line.separator"));
-			}
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-	    
-	    return stringBuilder.toString().trim();
-	}
-    
-    /// <summary>
-    /// Writes the String (file content) on to the file queue.</summary>
-    /// <parameter name="messages">Represents messages with each message seperated by a new line character.</parameter>
-    /// <parameter name="replaceWith">Represents file Queue URL.</parameter>
-	private void writeToFile(String messages, String queueUri) throws Exception  {
-		String filePath = queueUri.concat(queueName);
-		File messagesFile = new File(filePath);
-		
-		// Clear the contents of the queue.
-		try(PrintWriter pw = new PrintWriter(new FileWriter(messagesFile))) {   
-			pw.println(messages);
-		}
-	}
-}
\ No newline at end of file
+package com.messagequeue.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import com.messagequeue.config.ApplicationConfiguration;
+import com.messagequeue.storage.Compaction;
+import com.messagequeue.storage.FileQueueStore;
+import com.messagequeue.storage.FsyncPolicy;
+import com.messagequeue.storage.GroupCommit;
+import com.messagequeue.storage.QueueLock;
+import com.services.model.ChangeVisibilityRequest;
+import com.services.model.ChangeVisibilityResult;
+import com.services.model.Message;
+import com.services.model.DeleteMessageRequest;
+import com.services.model.DeleteMessageResult;
+import com.services.model.SendMessageRequest;
+import com.services.model.ReceiveMessageRequest;
+import com.utilities.ChangeNotifier;
+import com.utilities.MillisClock;
+
+@Service
+@Profile("test")
+public class FileQueueService implements AsyncQueueService, InitializingBean, DisposableBean {
+
+	// Interval at which queues with the INTERVAL fsync policy are checked for changes to force.
+	private static final long syncCheckMillis = 100;
+
+	// Interval at which the loaded queues are checked for segments worth compacting.
+	private static final long compactionCheckMillis = 5000;
+
+	// Longest a long poll waits without receiving again, to see messages past their visibility timeout
+	// and messages pushed by other processes, which are not signalled to this process.
+	private static final long receiveCheckMillis = 500;
+
+	// Time the dead letters claimed by a receive are kept from other receives while they are moved.
+	private static final long deadLetterClaimMillis = 60000;
+
+	// Threads running the asynchronous operations, which wait on the disk and the queue lock.
+	private static final int asyncThreads = 4;
+
+	@Autowired(required = false)
+	private ApplicationConfiguration config;
+
+	private final Map<String, FileQueueStore> stores = new HashMap<>();
+	private final Map<String, GroupCommit> groupCommits = new ConcurrentHashMap<>();
+	private final Map<String, FsyncPolicy> fsyncPolicies = new ConcurrentHashMap<>();
+	private final Map<String, RedrivePolicy> redrivePolicies = new ConcurrentHashMap<>();
+	private final Map<String, ChangeNotifier> notifiers = new ConcurrentHashMap<>();
+	private final Map<String, PendingReceives> pendingReceives = new ConcurrentHashMap<>();
+	private final ExecutorService asyncExecutor = Executors.newFixedThreadPool(asyncThreads, runnable -> {
+		Thread thread = new Thread(runnable, "file-queue-async");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final ScheduledExecutorService receiveScheduler = newDaemonScheduler("file-queue-receive");
+	private FsyncPolicy defaultFsyncPolicy = FsyncPolicy.everyMillis(1000);
+	private ScheduledExecutorService syncScheduler;
+	private ScheduledExecutorService compactionScheduler;
+	private double compactionDeletedRatio = 0.5;
+	private long compactionBytesPerSecond = 4L * 1024 * 1024;
+
+	// Time of the visibility timeouts, delays and wait times of the queues.
+	private final MillisClock clock;
+
+	public FileQueueService() {
+		this(MillisClock.monotonic());
+	}
+
+	/// <summary>
+	/// Creates the service on the given clock, which tests move forward themselves.
+	/// </summary>
+	/// <parameter name="clock">Represents the clock of the visibility timeouts, delays and wait times.</parameter>
+	public FileQueueService(MillisClock clock) {
+		this.clock = clock;
+	}
+
+	/// <summary>Starts the service once Spring has injected the configuration.</summary>
+	@Override
+	public void afterPropertiesSet() {
+		start();
+	}
+
+	/// <summary>Closes the service when the Spring context is closed.</summary>
+	@Override
+	public void destroy() {
+		close();
+	}
+
+	/// <summary>
+	/// Reads the fsync policy, compaction thresholds and the redrive policy of the queue of the application from
+	/// the configuration, and starts forcing INTERVAL queues and compacting segments in the background.
+	/// </summary>
+	public void start() {
+		if (config != null && config.getFsyncPolicy() != null) {
+			defaultFsyncPolicy = FsyncPolicy.parse(config.getFsyncPolicy());
+		}
+
+		if (config != null && config.getCompactionDeletedRatio() != null) {
+			compactionDeletedRatio = Double.parseDouble(config.getCompactionDeletedRatio());
+		}
+
+		if (config != null && config.getCompactionBytesPerSecond() != null) {
+			compactionBytesPerSecond = Long.parseLong(config.getCompactionBytesPerSecond());
+		}
+
+		if (config != null && config.getDeadLetterQueueUrl() != null && config.getMaxReceiveCount() != null) {
+			setRedrivePolicy(config.getQueueUrl(), new RedrivePolicy(config.getDeadLetterQueueUrl(), Integer.parseInt(config.getMaxReceiveCount())));
+		}
+
+		syncScheduler = newDaemonScheduler("file-queue-sync");
+		syncScheduler.scheduleWithFixedDelay(this::syncDueStores, syncCheckMillis, syncCheckMillis, TimeUnit.MILLISECONDS);
+
+		// Compaction runs on its own thread so a throttled copy never delays the forcing of the queues.
+		compactionScheduler = newDaemonScheduler("file-queue-compaction");
+		compactionScheduler.scheduleWithFixedDelay(this::compactStores, compactionCheckMillis, compactionCheckMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/// <summary>Stops the background sync and forces the pending changes of every queue to the disk.</summary>
+	public void close() {
+		asyncExecutor.shutdown();
+		receiveScheduler.shutdownNow();
+
+		if (syncScheduler != null) {
+			syncScheduler.shutdown();
+		}
+
+		if (compactionScheduler != null) {
+			compactionScheduler.shutdownNow();
+		}
+
+		for (FileQueueStore store : loadedStores()) {
+			try {
+				store.close();
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/// <summary>
+    /// Sets when the changes of the queue are forced to the disk. Pushes return only once their messages are
+    /// covered by the policy, so the policy decides how many acknowledged messages a machine crash can lose.
+    /// </summary>
+    /// <parameter name="queueUri">Represents message file queue URL.</parameter>
+    /// <parameter name="fsyncPolicy">Represents the fsync policy of the queue.</parameter>
+	public void setFsyncPolicy(String queueUri, FsyncPolicy fsyncPolicy) {
+		fsyncPolicies.put(queueUri, fsyncPolicy);
+
+		synchronized (stores) {
+			FileQueueStore store = stores.get(queueUri);
+
+			if (store != null) {
+				store.setFsyncPolicy(fsyncPolicy);
+			}
+		}
+	}
+
+	/// <summary>
+    /// Sets when a full segment of the queues is compacted and how fast the compacted copy is written.
+    /// </summary>
+    /// <parameter name="deletedRatio">Represents the share of deleted records that makes a segment worth compacting.</parameter>
+    /// <parameter name="bytesPerSecond">Represents the maximum write rate of a compaction, zero or less for no limit.</parameter>
+	public void setCompactionThresholds(double deletedRatio, long bytesPerSecond) {
+		this.compactionDeletedRatio = deletedRatio;
+		this.compactionBytesPerSecond = bytesPerSecond;
+	}
+
+	/// <summary>
+    /// Compacts the full segments of the queue holding mostly deleted records. The live records are copied
+    /// without holding the queue lock, which is only taken to swap the copy in, so producers and consumers
+    /// are not kept waiting while a segment is rewritten.
+    /// </summary>
+    /// <parameter name="queueUri">Represents message file queue URL.</parameter>
+	/// <Returns>The number of segments compacted.</Returns>
+	public int compact(String queueUri) throws IOException, InterruptedException {
+		FileQueueStore store = getStore(queueUri);
+		int compacted = 0;
+		Compaction compaction;
+
+		while ((compaction = store.prepareCompaction(compactionDeletedRatio)) != null) {
+			Compaction prepared = compaction;
+			prepared.write(compactionBytesPerSecond);
+
+			// A store reloaded meanwhile holds other segments, and discards the compaction prepared by this one.
+			boolean swapped = write(queueUri, current -> current.completeCompaction(prepared));
+
+			if (!swapped) {
+				// The next run compacts the reloaded store.
+				break;
+			}
+
+			compacted++;
+		}
+
+		return compacted;
+	}
+
+	/// <summary>
+    /// Publishes the Messages to the File Queue by appending them to the active segment of the queue.
+    /// Concurrent pushes to the same queue are merged into a single append and a single fsync, and each
+    /// push returns once the append covering its messages is done. The messages are available for
+    /// processing as soon as they are appended, and the receives waiting on the queue are woken.
+    /// Delayed messages are appended at once too, and are received only once their Delay Seconds have passed.
+    /// File queues keep no message groups, so a message with a Message Group Id fails the push with an
+    /// IllegalArgumentException rather than being stored without its group.
+    /// </summary>
+    /// <parameter name="SendMessageRequest">Represents Send Message Request.</parameter>
+	@Override
+	public void push(SendMessageRequest request) {
+
+	    try {
+	    		append(request);
+	    }
+	    catch (IOException e) {
+	    		e.printStackTrace();
+	    }
+	}
+
+    /// <summary>
+    /// Publishes the Messages to the File Queue on the asynchronous threads of the service. Pushes running
+    /// at the same time on these threads are merged into a single append and a single fsync.
+    /// </summary>
+    /// <parameter name="SendMessageRequest">Represents Send Message Request.</parameter>
+    /// <Returns>The future completed once the messages are appended, or with the failure of the append.</Returns>
+	@Override
+	public CompletableFuture<Void> pushAsync(SendMessageRequest request) {
+		return CompletableFuture.runAsync(() -> {
+			try {
+				append(request);
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, asyncExecutor);
+	}
+
+	private void append(SendMessageRequest request) throws IOException {
+		String queueUri = request.getQueueUrl();
+
+		for (Message message : request.getAllMessages()) {
+			if (message.getMessageGroupId() != null) {
+				throw new IllegalArgumentException("File queues keep no message groups, the message of group "
+						+ message.getMessageGroupId() + " was not pushed to " + queueUri);
+			}
+		}
+
+		GroupCommit groupCommit = groupCommits.computeIfAbsent(queueUri, uri -> new GroupCommit(messages -> write(uri, store -> {
+			store.append(messages);
+			return null;
+		})));
+
+		// Delayed messages are stored at once with their own delay, and become visible once it has passed.
+		// The messages of the caller are left as they are, those taking the delay of the request are copied.
+		List<Message> messages = request.getAllMessages();
+
+		if (request.getDelaySeconds() > 0) {
+			messages = new ArrayList<>(messages);
+
+			for (int i = 0; i < messages.size(); i++) {
+				if (messages.get(i).getDelaySeconds() == null) {
+					messages.set(i, withDelay(messages.get(i), request.getDelaySeconds()));
+				}
+			}
+		}
+
+		groupCommit.append(messages);
+		signalReceivers(queueUri);
+	}
+
+	/// <summary>Returns a copy of the message to be stored with the given delay.</summary>
+    /// <parameter name="message">Represents the message pushed without delay seconds of its own.</parameter>
+    /// <parameter name="delaySeconds">Represents the delay seconds of the request.</parameter>
+	private static Message withDelay(Message message, int delaySeconds) {
+		Message delayed = new Message(message.getinvisibleFromTime(), message.getMessage());
+		delayed.setMessageStatus(message.getMessageStatus());
+		delayed.setPriorAttempts(message.getPriorAttempts());
+		delayed.setReceiptId(message.getReceiptId());
+		delayed.setDelaySeconds(delaySeconds);
+		return delayed;
+	}
+
+	/// <summary>Wakes the receives of this process waiting for messages to arrive in the queue.</summary>
+    /// <parameter name="queueUri">Represents message file queue URL.</parameter>
+	private void signalReceivers(String queueUri) {
+		getNotifier(queueUri).signal();
+
+		PendingReceives pending = pendingReceives.get(queueUri);
+
+		if (pending != null) {
+			pending.signal();
+		}
+	}
+
+    /// <summary>
+    /// Fetches queued messages limited by the Request Batch Size parameter of the Request
+    /// and marks them as in-flight messages so that these messages are not available for other
+    /// consumers. In-flight messages past the visibility timeout are fetched first.
+    /// When the queue is empty the caller waits up to the Wait Time Seconds of the request. Pushes of this
+    /// process wake it at once, so the queue is not locked and scanned again until something changed or
+    /// the receive check interval passed.
+    /// </summary>
+    /// <parameter name="ReceiveMessageRequest">Represents Receive Request.</parameter>
+    /// <Returns>Returns list of messages for processing to Consumer.</Returns>
+	@Override
+	public List<Message> poll(ReceiveMessageRequest request) throws InterruptedException {
+
+		ChangeNotifier notifier = getNotifier(request.getQueueUrl());
+		long deadline = clock.millis() + TimeUnit.SECONDS.toMillis(request.getWaitTimeSeconds());
+		List<Message> messagesToProcess = null;
+
+		try {
+			long version = notifier.getVersion();
+			messagesToProcess = receive(request);
+			long remaining;
+
+			while(messagesToProcess.size() == 0 && (remaining = deadline - clock.millis()) > 0) {
+				notifier.await(version, Math.min(remaining, receiveCheckMillis));
+				version = notifier.getVersion();
+				messagesToProcess = receive(request);
+			}
+
+		    	if(messagesToProcess.size() == 0) {
+		    		System.out.println("There are no messages in the Queue waiting to be processed.");
+		    		return null;
+		    	}
+	    }
+	    catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		return messagesToProcess;
+	}
+
+    /// <summary>
+    /// Fetches queued messages on the asynchronous threads of the service. When the queue is empty the receive
+    /// is parked without a thread until a push of this process, or the receive check interval, finds messages,
+    /// or the Wait Time Seconds of the request pass.
+    /// </summary>
+    /// <parameter name="ReceiveMessageRequest">Represents Receive Request.</parameter>
+    /// <Returns>The future completed with the messages, or with null when there were none.</Returns>
+	@Override
+	public CompletableFuture<List<Message>> pollAsync(ReceiveMessageRequest request) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return receive(request);
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, asyncExecutor).thenCompose(messages -> {
+			if (!messages.isEmpty()) {
+				return CompletableFuture.completedFuture(messages);
+			}
+
+			if (request.getWaitTimeSeconds() <= 0) {
+				System.out.println("There are no messages in the Queue waiting to be processed.");
+				return CompletableFuture.completedFuture(null);
+			}
+
+			return pendingReceives.computeIfAbsent(request.getQueueUrl(),
+					uri -> new PendingReceives(this::receive, asyncExecutor, receiveScheduler, receiveCheckMillis, clock))
+					.park(request);
+		});
+	}
+
+	/// <summary>
+	/// Retrieves the queued messages and marks them as in process while holding the queue lock. With a redrive
+	/// policy, the messages past their last allowed receive are claimed under the same lock and moved to the
+	/// dead-letter queue once it is released, so no queue lock is ever taken while another one is held.
+	/// </summary>
+    /// <parameter name="request">Represents Receive Request.</parameter>
+	/// <Returns>The received messages, empty when the queue has none ready.</Returns>
+	private List<Message> receive(ReceiveMessageRequest request) throws IOException {
+		long now = clock.millis();
+		RedrivePolicy policy = redrivePolicies.get(request.getQueueUrl());
+		List<Message> deadLetters = new ArrayList<>();
+
+		List<Message> messages = write(request.getQueueUrl(), store -> {
+			if (policy != null) {
+				deadLetters.addAll(store.claimDeadLetters(policy.getMaxReceiveCount(), now, deadLetterClaimMillis));
+			}
+
+			return store.receive(request.getRequestBatchSize(), request.getVisibilityTimeoutMillis(), now);
+		});
+
+		if (!deadLetters.isEmpty()) {
+			moveDeadLetters(request.getQueueUrl(), policy, deadLetters);
+		}
+
+		return messages;
+	}
+
+	/// <summary>
+	/// Appends the claimed dead letters to the dead-letter queue, then deletes them from the queue. A failure
+	/// leaves them claimed, and they are claimed and moved again by a receive once the claim expires.
+	/// </summary>
+    /// <parameter name="queueUri">Represents message file queue URL.</parameter>
+    /// <parameter name="policy">Represents the redrive policy the messages were claimed by.</parameter>
+    /// <parameter name="deadLetters">Represents the claimed messages, with the receipt ids of the claim.</parameter>
+	private void moveDeadLetters(String queueUri, RedrivePolicy policy, List<Message> deadLetters) {
+		List<Message> moved = new ArrayList<>();
+
+		for (Message deadLetter : deadLetters) {
+			Message message = new Message(null, deadLetter.getMessage());
+			message.setPriorAttempts(deadLetter.getPriorAttempts());
+			moved.add(message);
+		}
+
+		try {
+			write(policy.getDeadLetterQueueUrl(), deadLetterStore -> {
+				deadLetterStore.append(moved);
+				return null;
+			});
+			signalReceivers(policy.getDeadLetterQueueUrl());
+
+			write(queueUri, store -> store.delete(deadLetters));
+		}
+		catch (IOException e) {
+			System.out.println("Failed to move the dead letters of " + queueUri + ": " + e);
+		}
+	}
+
+	/// <summary>
+    /// Sets the redrive policy of the queue for the receives of this process. The dead-letter queue is a file
+    /// queue of this service, and a moved message keeps counting its receives there.
+    /// </summary>
+    /// <parameter name="queueUri">Represents message file queue URL.</parameter>
+    /// <parameter name="policy">Represents the redrive policy, null to stop moving messages.</parameter>
+	@Override
+	public void setRedrivePolicy(String queueUri, RedrivePolicy policy) {
+		if (policy != null) {
+			policy.validate(queueUri);
+			redrivePolicies.put(queueUri, policy);
+		}
+		else {
+			redrivePolicies.remove(queueUri);
+		}
+	}
+
+	/// <summary>Returns the notifier signalled when this process pushes messages to the queue.</summary>
+    /// <parameter name="queueUri">Represents message file queue URL.</parameter>
+	private ChangeNotifier getNotifier(String queueUri) {
+		return notifiers.computeIfAbsent(queueUri, uri -> new ChangeNotifier());
+	}
+
+    /// <summary>
+    /// Deletes the processed messages, identified by the receipt id handed out by poll, from the File Queue.
+    /// Messages whose receipt id does not identify an in-flight message are reported as failed, and so are
+    /// all the messages when the queue files could not be changed.
+    /// </summary>
+    /// <parameter name="request">Represents the Delete Message Request.</parameter>
+    /// <Returns>The outcome of the delete for every message.</Returns>
+	@Override
+	public DeleteMessageResult delete(DeleteMessageRequest request) {
+
+		try {
+
+			if(request.getMessages().size() > 0) {
+				return write(request.getQueueUrl(), store -> store.delete(request.getMessages()));
+			}
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+
+			DeleteMessageResult result = new DeleteMessageResult();
+			for(Message msg : request.getMessages()) {
+				result.addFailed(msg, "InternalError", e.toString(), false);
+			}
+
+			return result;
+		}
+
+		return new DeleteMessageResult();
+	}
+
+	/// <summary>
+    /// Deletes the processed messages from the File Queue on the asynchronous threads of the service.
+    /// </summary>
+    /// <parameter name="request">Represents the Delete Message Request.</parameter>
+    /// <Returns>The future completed with the outcome of the delete for every message.</Returns>
+	@Override
+	public CompletableFuture<DeleteMessageResult> deleteAsync(DeleteMessageRequest request) {
+		return CompletableFuture.supplyAsync(() -> delete(request), asyncExecutor);
+	}
+
+	/// <summary>
+    /// Changes the visibility timeout of the received messages while holding the queue lock. The new deadline
+    /// of every message is written in place to the state file of its segment, so other processes see it too.
+    /// </summary>
+    /// <parameter name="request">Represents Change Visibility Request.</parameter>
+	/// <Returns>The outcome of the change for every message.</Returns>
+	@Override
+	public ChangeVisibilityResult changeVisibility(ChangeVisibilityRequest request) {
+
+		try {
+
+			if(request.getMessages().size() > 0) {
+				long now = clock.millis();
+				ChangeVisibilityResult result = write(request.getQueueUrl(),
+						store -> store.changeVisibility(request.getMessages(), request.getVisibilityTimeoutMillis(), now));
+
+				if(request.getVisibilityTimeoutMillis() <= 0 && !result.getSuccessful().isEmpty()) {
+					signalReceivers(request.getQueueUrl());
+				}
+
+				return result;
+			}
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+
+			ChangeVisibilityResult result = new ChangeVisibilityResult();
+			for(Message msg : request.getMessages()) {
+				result.addFailed(msg, "InternalError", e.toString(), false);
+			}
+
+			return result;
+		}
+
+		return new ChangeVisibilityResult();
+	}
+
+	/// <summary>
+    /// Changes the visibility timeout of the received messages on the asynchronous threads of the service.
+    /// </summary>
+    /// <parameter name="request">Represents Change Visibility Request.</parameter>
+	/// <Returns>The future completed with the outcome of the change for every message.</Returns>
+	@Override
+	public CompletableFuture<ChangeVisibilityResult> changeVisibilityAsync(ChangeVisibilityRequest request) {
+		return CompletableFuture.supplyAsync(() -> changeVisibility(request), asyncExecutor);
+	}
+
+	/// <summary>
+    /// Returns the approximate number of messages available for retrieval from the queue.
+    /// Reads the in-memory index of the queue without blocking producers and consumers.
+    /// </summary>
+    /// <parameter name="queueUri">Represents message file queue URL.</parameter>
+	public int getApproximateNumberOfMessages(String queueUri) throws IOException {
+		return readCounts(queueUri)[0];
+	}
+
+	/// <summary>
+    /// Returns the approximate number of messages that are in flight, received and not yet deleted.
+    /// Reads the in-memory index of the queue without blocking producers and consumers.
+    /// </summary>
+    /// <parameter name="queueUri">Represents message file queue URL.</parameter>
+	public int getApproximateNumberOfMessagesNotVisible(String queueUri) throws IOException {
+		return readCounts(queueUri)[1];
+	}
+
+	/// <summary>
+    /// Runs the operation on the store of the queue while holding the queue lock, so that other threads
+    /// and processes wanting to change the queue are kept waiting until the lock is released. The store
+    /// is reloaded first when the queue files were changed by another process. A new version is committed
+    /// only when the operation changed the queue files, so receives that find nothing and failed operations
+    /// do not make the other processes reload the queue.
+    /// </summary>
+    /// <parameter name="queueUri">Represents message file queue URL.</parameter>
+    /// <parameter name="operation">Represents the operation to run on the store.</parameter>
+	/// <Returns>The result of the operation.</Returns>
+	private <T> T write(String queueUri, StoreOperation<T> operation) throws IOException {
+
+		QueueLock lock = QueueLock.forDirectory(new File(queueUri));
+		long version = lock.lockWrite();
+
+		try {
+			FileQueueStore store = getStore(queueUri, version);
+
+			try {
+				return operation.apply(store);
+			}
+			finally {
+				if (store.takeChanged()) {
+					store.setVersion(lock.commit());
+				}
+			}
+		}
+		finally {
+			lock.unlockWrite();
+		}
+	}
+
+	/// <summary>Reads the pending and in-flight counts of the queue under an optimistic read of the queue lock.</summary>
+    /// <parameter name="queueUri">Represents message file queue URL.</parameter>
+	/// <Returns>The pending and in-flight counts.</Returns>
+	private int[] readCounts(String queueUri) throws IOException {
+
+		QueueLock lock = QueueLock.forDirectory(new File(queueUri));
+		FileQueueStore store = getStore(queueUri);
+
+		long stamp = lock.tryOptimisticRead();
+		int[] counts = { store.getPendingCount(), store.getInflightCount() };
+
+		if (!lock.validate(stamp)) {
+			// A writer changed the queue while reading, read again once it is done.
+			stamp = lock.lockRead();
+
+			try {
+				counts[0] = store.getPendingCount();
+				counts[1] = store.getInflightCount();
+			}
+			finally {
+				lock.unlockRead(stamp);
+			}
+		}
+
+		return counts;
+	}
+
+	/// <summary>Returns the storage of the file Queue, loading it under the queue lock when it is not loaded yet.</summary>
+    /// <parameter>Represent message file queue URL.</parameter>
+	/// <Returns>Reference to the store of the file queue.</Returns>
+	private FileQueueStore getStore(String queueUri) throws IOException {
+
+		synchronized (stores) {
+			FileQueueStore store = stores.get(queueUri);
+
+			if(store != null) {
+				return store;
+			}
+		}
+
+		return write(queueUri, store -> store);
+	}
+
+	/// <summary>
+	/// Opens the storage of the file Queue, creating the queue directory if it does not exists.
+	/// Must be called while holding the queue lock.
+	/// </summary>
+    /// <parameter>Represent message file queue URL.</parameter>
+    /// <parameter>Represent the version of the queue files read from the queue lock.</parameter>
+	/// <Returns>Reference to the store of the file queue.</Returns>
+	private FileQueueStore getStore(String queueUri, long version) throws IOException {
+
+		synchronized (stores) {
+			FileQueueStore store = stores.get(queueUri);
+
+			if(store == null || store.getVersion() != version) {
+				if (store != null) {
+					store.close();
+				}
+
+				store = new FileQueueStore(new File(queueUri), FileQueueStore.defaultSegmentBytes, clock);
+				store.setVersion(version);
+				store.setFsyncPolicy(fsyncPolicies.getOrDefault(queueUri, defaultFsyncPolicy));
+				stores.put(queueUri, store);
+			}
+
+			return store;
+		}
+	}
+
+	/// <summary>Forces the changes of the queues with the INTERVAL policy whose interval has passed.</summary>
+	private void syncDueStores() {
+		long now = clock.millis();
+
+		for (FileQueueStore store : loadedStores()) {
+			try {
+				store.syncIfDue(now);
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/// <summary>Compacts the segments worth compacting of every loaded queue.</summary>
+	private void compactStores() {
+		List<String> queueUris;
+
+		synchronized (stores) {
+			queueUris = new ArrayList<>(stores.keySet());
+		}
+
+		for (String queueUri : queueUris) {
+			try {
+				compact(queueUri);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private ScheduledExecutorService newDaemonScheduler(String name) {
+		return Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, name);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private List<FileQueueStore> loadedStores() {
+		synchronized (stores) {
+			return new ArrayList<>(stores.values());
+		}
+	}
+
+	/// <summary>Operation run on the store of a queue while holding the queue lock.</summary>
+	@FunctionalInterface
+	private interface StoreOperation<T> {
+		T apply(FileQueueStore store) throws IOException;
+	}
+}
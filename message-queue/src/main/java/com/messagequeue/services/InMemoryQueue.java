@@ -0,0 +1,140 @@
+package com.messagequeue.services;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.services.model.Message;
+import com.utilities.ChangeNotifier;
+import com.utilities.TimingWheel;
+
+/// <summary>
+/// State of a single in-memory queue: the messages ready to be received, the delayed messages not yet
+/// visible, the in-flight table and the counters of the queue. Queues share no state, so producers and consumers of one queue never contend
+/// with those of another.
+/// </summary>
+class InMemoryQueue {
+
+	private final String url;
+	private final QueueEngine engine;
+	private final ReadyMessages ready;
+	private final InflightTable inflight;
+	private final TimingWheel<Message> delayed;
+	private final ChangeNotifier notifier = new ChangeNotifier();
+
+	private final LongAdder sentCount = new LongAdder();
+	private final LongAdder receivedCount = new LongAdder();
+	private final LongAdder deletedCount = new LongAdder();
+	private final LongAdder expiredCount = new LongAdder();
+	private final LongAdder deadLetteredCount = new LongAdder();
+	private volatile RedrivePolicy redrivePolicy;
+
+	/// <parameter name="startTime">Represents the current time in epoch millis of the clock of the queue.</parameter>
+	InMemoryQueue(String url, QueueEngine engine, long startTime) {
+		this.url = url;
+		this.engine = engine;
+		this.ready = ReadyMessages.create(engine);
+		this.inflight = new InflightTable(startTime);
+		this.delayed = new TimingWheel<>(10, 64, startTime);
+	}
+
+	/// <summary>Adds the message to the end of the messages ready to be received.</summary>
+	/// <Returns>True when the message was added, false when the engine of the queue is full.</Returns>
+	boolean offer(Message message) {
+		return ready.offer(message);
+	}
+
+	/// <summary>Removes the first message ready to be received.</summary>
+	/// <Returns>The message, null when no message is ready.</Returns>
+	Message poll() {
+		return ready.poll();
+	}
+
+	/// <summary>Removes up to the given number of messages ready to be received.</summary>
+	/// <Returns>The number of messages added to the target.</Returns>
+	int drainTo(List<Message> target, int max) {
+		return ready.drainTo(target, max);
+	}
+
+	/// <summary>Returns the received message whose visibility timeout passed to the messages ready to be received.</summary>
+	/// <Returns>True when the message was added, false when the engine of the queue is full.</Returns>
+	boolean requeue(Message message) {
+		return ready.requeue(message);
+	}
+
+	/// <summary>Releases the received message once it is deleted or moved to the dead-letter queue.</summary>
+	void release(Message message) {
+		ready.release(message);
+	}
+
+	/// <summary>Holds the message back until its visible-at time.</summary>
+	void delay(Message message, long visibleAt) {
+		delayed.schedule(message, visibleAt);
+	}
+
+	/// <summary>Removes the delayed messages whose visible-at time has passed.</summary>
+	/// <Returns>The messages to be offered to the queue, each message is returned once.</Returns>
+	List<Message> releaseDelayed(long now) {
+		return delayed.expire(now);
+	}
+
+	/// <summary>Removes every message ready to be received.</summary>
+	void clear() {
+		ready.clear();
+	}
+
+	String getUrl() {
+		return url;
+	}
+
+	/// <summary>Returns the notifier signalled when messages are pushed to the queue.</summary>
+	ChangeNotifier getNotifier() {
+		return notifier;
+	}
+
+	QueueEngine getEngine() {
+		return engine;
+	}
+
+	InflightTable getInflight() {
+		return inflight;
+	}
+
+	/// <summary>Returns the approximate number of messages ready to be received.</summary>
+	int getReadyCount() {
+		return ready.size();
+	}
+
+	/// <summary>Returns the number of delayed messages not yet visible.</summary>
+	int getDelayedCount() {
+		return delayed.size();
+	}
+
+	LongAdder getSentCount() {
+		return sentCount;
+	}
+
+	LongAdder getReceivedCount() {
+		return receivedCount;
+	}
+
+	LongAdder getDeletedCount() {
+		return deletedCount;
+	}
+
+	LongAdder getExpiredCount() {
+		return expiredCount;
+	}
+
+	/// <summary>Returns the number of messages moved to the dead-letter queue.</summary>
+	LongAdder getDeadLetteredCount() {
+		return deadLetteredCount;
+	}
+
+	RedrivePolicy getRedrivePolicy() {
+		return redrivePolicy;
+	}
+
+	void setRedrivePolicy(RedrivePolicy redrivePolicy) {
+		this.redrivePolicy = redrivePolicy;
+	}
+}
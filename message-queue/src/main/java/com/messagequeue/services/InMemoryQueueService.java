@@ -1,155 +1,539 @@
-package com.messagequeue.services;
-
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-
-import org.springframework.context.annotation.Profile;
-import org.springframework.stereotype.Service;
-
-import com.utilities.DateTimeUtility;
-import com.services.model.Message;
-import com.services.model.DeleteMessageRequest;
-import com.services.model.SendMessageRequest;
-import com.services.model.ReceiveMessageRequest;
-
-@Service
-@Profile({"local"})
-public class InMemoryQueueService implements QueueService {
-	
-	private final Map<String, ConcurrentLinkedQueue<Message>> queues = new HashMap<>();
-	private final List<Message> inflightMessages = new ArrayList<>();
-	private static AtomicInteger identity = new AtomicInteger();
-	
-	
-    /// <summary>
-    /// Sending batch of messages to in memory queue.
-    /// Delay seconds will wait for the specified delay before pushing on to Queue. </summary>
-	/// <parameter name ="request">Represents the Send Message Request.</parameter>
-    @Override
-	public void push(SendMessageRequest request) {
-		final ConcurrentLinkedQueue<Message> queue = getOrCreateQueue(request.getQueueUrl());
-		
-		// Introduced the Delay Seconds to minimize the possibility of Consumer Starvation.
-		int delay = request.getDelaySeconds();
-		
-		try {
-			TimeUnit.SECONDS.sleep(delay);
-		} 
-		catch (InterruptedException e) {
-			e.printStackTrace();
-		}	
-		
-		for(Message message : request.getAllMessages()) {
-			// Enqueues the message to the Queue.
-			queue.offer(message);
-			
-		}
-	}
-
-	/// <summary>
-    /// Retrieves one or more messages (up to max limit specified in the configuration), from the specified queue.
-	/// Messages exceeding the Visibility Timeout will be available in the queue when there is new receive request is placed.   
-	/// </summary>
-	/// <parameter name ="request">Represents the Receive Message Request.</parameter>
-    ///<Returns>Returns the Queue Messages for processing.</Returns>
-    @Override
-    public List<Message> poll(ReceiveMessageRequest request) {
-		
-		final ConcurrentLinkedQueue<Message> queue = getOrCreateQueue(request.getQueueUrl());
-		List<Message> messages = new ArrayList<>();
-		Calendar cal = Calendar.getInstance();
-		int visibilityTimeout = request.getVisibilityTimeout(); 
-				
-		// in-flight messages collection maintains the messages picked up and currently being processed.
-		for(Message msg : inflightMessages) {
-			int duration = Math.abs(DateTimeUtility.minutesDiff(cal.getTime(), msg.getinvisibleFromTime()));
-			
-			// Checks if the in-flight message has been invisible past the visibility time out setting.
-			if(duration > visibilityTimeout) {
-				
-				// Increment the prior attempt to indicate the message has been picked again for processing.
-				int priorAttempt = msg.getPriorAttempts();
-				msg.setPriorAttempts(priorAttempt++);
-				
-				// enqueue the message to the queue for re-processing.
-				queue.offer(msg);
-			}
-		}
-		
-		
-		
-		// Validate if the Queue has any messages to process.
-		if(queue.size() == 0) {
-			System.out.println("There are no messages in the Queue waiting to be processed.");
-			return null;
-		}
-		
-		int count = 0;
-		while(queue.size() > 0 && count < request.getRequestBatchSize()) {
-			
-			// Removes the message from the queue.
-			Message message = (Message)queue.poll();
-			
-			if(message != null) {
-				// invisible From Time marks when the message has been picked up for processing.
-				message.setinvisibleFromTime(cal.getTime());
-				message.setReceiptId(identity.incrementAndGet());
-				messages.add(message);
-				
-				// add the picked up message to in-flight messages collection to be able to retrieve again 
-				// in case the message processing is failed and the message has to readded to the queue for
-				// re-processing.
-				inflightMessages.add(message);
-			}
-			count++;
-		}
-	
-		return messages;
-	}
-
-	/// <summary>
-    /// Deletes the given messages from the Queue.
-	/// </summary>
-	/// <parameter name ="request">Represents the Delete Message Request.</parameter>
-    @Override
-    public void delete(DeleteMessageRequest request) {
-		final ConcurrentLinkedQueue<Message> queue = getOrCreateQueue(request.getQueueUrl());
-		
-		for(Message msg : request.getMessages()) {
-			queue.remove(msg);
-		}
-	}
-	
-    
-    /// <summary>
-    /// Creates a Queue if there is no queue for the given url, otherwise return the instance of
-    /// the queue for the given queue url.
-    /// </summary>
-	/// <parameter name ="url">Represents the Queue URL</parameter>
-	private ConcurrentLinkedQueue<Message> getOrCreateQueue(String url) {
-
-		ConcurrentLinkedQueue<Message> queue = queues.get(url);
-		
-		if (queue == null) {
-	
-			// Locks the critical section. Only one thread can create new instance of the Queue.
-			synchronized (queues) {
-			
-				if(queue == null) {
-					queue = new ConcurrentLinkedQueue<>();
-					queues.put(url, queue);
-				}
-					
-			}
-		}
-
-		return queue;
-	}
-	
-}
+package com.messagequeue.services;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import com.messagequeue.config.ApplicationConfiguration;
+import com.services.model.ChangeVisibilityRequest;
+import com.services.model.ChangeVisibilityResult;
+import com.services.model.Message;
+import com.services.model.DeleteMessageRequest;
+import com.services.model.DeleteMessageResult;
+import com.services.model.SendMessageRequest;
+import com.services.model.ReceiveMessageRequest;
+import com.utilities.MillisClock;
+
+@Service
+@Profile({"local"})
+public class InMemoryQueueService implements AsyncQueueService, InitializingBean, DisposableBean {
+	
+	// Pause of a producer waiting for room in a full ring buffer.
+	private static final long fullQueueWaitNanos = TimeUnit.MICROSECONDS.toNanos(100);
+	
+	// Delay before an expired message that found its queue full is offered again.
+	private static final long fullQueueRetryMillis = 100;
+	
+	// Longest a long poll waits without looking for in-flight messages past their visibility timeout,
+	// and the interval delayed messages are released to their queue at.
+	private static final long expiryCheckMillis = 100;
+	
+	@Autowired(required = false)
+	private ApplicationConfiguration config;
+	
+	// State of every queue by queue url. Looking up an existing queue never blocks.
+	private final ConcurrentHashMap<String, InMemoryQueue> queues = new ConcurrentHashMap<>();
+	private QueueEngine defaultEngine = QueueEngine.linked();
+	
+	// Time of the visibility timeouts, delays and wait times of the queues.
+	private final MillisClock clock;
+	
+	// Asynchronous receives waiting for messages by queue url, and the timer of their wait times,
+	// of delayed messages and of asynchronous pushes waiting for room in a ring buffer.
+	private final ConcurrentHashMap<String, PendingReceives> pendingReceives = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "in-memory-queue-timer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	public InMemoryQueueService() {
+		this(MillisClock.monotonic());
+	}
+	
+	/// <summary>
+	/// Creates the service on the given clock, which tests move forward themselves.
+	/// </summary>
+	/// <parameter name ="clock">Represents the clock of the visibility timeouts, delays and wait times.</parameter>
+	public InMemoryQueueService(MillisClock clock) {
+		this.clock = clock;
+		scheduler.scheduleWithFixedDelay(this::releaseDelayed, expiryCheckMillis, expiryCheckMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	/// <summary>Starts the service once Spring has injected the configuration.</summary>
+	@Override
+	public void afterPropertiesSet() {
+		start();
+	}
+	
+	/// <summary>Closes the service when the Spring context is closed.</summary>
+	@Override
+	public void destroy() {
+		close();
+	}
+	
+	/// <summary>
+	/// Reads the engine of the queues created on first use, and the redrive policy of the queue of the
+	/// application, from the configuration.
+	/// </summary>
+	public void start() {
+		if (config != null && config.getQueueEngine() != null) {
+			defaultEngine = QueueEngine.parse(config.getQueueEngine());
+		}
+		
+		if (config != null && config.getDeadLetterQueueUrl() != null && config.getMaxReceiveCount() != null) {
+			setRedrivePolicy(config.getQueueUrl(), new RedrivePolicy(config.getDeadLetterQueueUrl(), Integer.parseInt(config.getMaxReceiveCount())));
+		}
+	}
+	
+	/// <summary>Stops the timer of the asynchronous operations.</summary>
+	public void close() {
+		scheduler.shutdownNow();
+	}
+	
+	/// <summary>
+	/// Creates the queue with the given engine. Queues created on first use by a push or a receive
+	/// get the engine of the configuration.
+	/// </summary>
+	/// <parameter name ="url">Represents the Queue URL</parameter>
+	/// <parameter name ="engine">Represents the engine holding the ready messages of the queue.</parameter>
+	/// <Returns>True when the queue was created, false when a queue with the url already existed.</Returns>
+	public boolean createQueue(String url, QueueEngine engine) {
+		return queues.putIfAbsent(url, new InMemoryQueue(url, engine, clock.millis())) == null;
+	}
+	
+    /// <summary>
+    /// Sending batch of messages to in memory queue.
+    /// A message with Delay Seconds, its own or those of the request, is stored at once and becomes visible
+    /// once the delay has passed, so the producer never waits for it.
+	/// While the ring buffer of a queue is full the producer waits for consumers to make room. </summary>
+	/// <parameter name ="request">Represents the Send Message Request.</parameter>
+    @Override
+	public void push(SendMessageRequest request) {
+		final InMemoryQueue queue = getOrCreateQueue(request.getQueueUrl());
+		List<Message> visible = delayMessages(queue, request);
+		int sent = request.getAllMessages().size() - visible.size();
+		
+		for(Message message : visible) {
+			// Enqueues the message to the Queue.
+			while(!queue.offer(message)) {
+				LockSupport.parkNanos(fullQueueWaitNanos);
+				
+				if(Thread.currentThread().isInterrupted()) {
+					System.out.println("Interrupted waiting for room in the queue, " + (request.getAllMessages().size() - sent) + " messages were not sent.");
+					queue.getSentCount().add(sent);
+					signalReceivers(queue);
+					return;
+				}
+			}
+			sent++;
+		}
+		
+		queue.getSentCount().add(sent);
+		signalReceivers(queue);
+	}
+	
+    /// <summary>
+    /// Sending batch of messages to in memory queue without blocking the caller. The messages are pushed
+    /// on the calling thread, delayed messages are stored until their Delay Seconds pass. While the ring
+    /// buffer of the queue is full the remaining messages are offered again on the timer.
+    /// </summary>
+	/// <parameter name ="request">Represents the Send Message Request.</parameter>
+    ///<Returns>Returns the future completed once every message is in the queue.</Returns>
+	@Override
+	public CompletableFuture<Void> pushAsync(SendMessageRequest request) {
+		final InMemoryQueue queue = getOrCreateQueue(request.getQueueUrl());
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		List<Message> visible = delayMessages(queue, request);
+		
+		queue.getSentCount().add(request.getAllMessages().size() - visible.size());
+		offerAsync(queue, visible, 0, future);
+		return future;
+	}
+	
+    /// <summary>
+    /// Holds back the messages of the request with Delay Seconds until their visible-at time.
+    /// </summary>
+	/// <parameter name ="queue">Represents the Queue.</parameter>
+	/// <parameter name ="request">Represents the Send Message Request.</parameter>
+    ///<Returns>Returns the messages without delay, to be offered to the queue at once.</Returns>
+	private List<Message> delayMessages(InMemoryQueue queue, SendMessageRequest request) {
+		List<Message> visible = new ArrayList<>(request.getAllMessages().size());
+		long now = clock.millis();
+		
+		for(Message message : request.getAllMessages()) {
+			int delay = request.getDelaySeconds(message);
+			
+			if(delay > 0) {
+				queue.delay(message, now + TimeUnit.SECONDS.toMillis(delay));
+			}
+			else {
+				visible.add(message);
+			}
+		}
+		
+		return visible;
+	}
+	
+    /// <summary>
+    /// Offers the delayed messages whose visible-at time has passed to their queue.
+    /// </summary>
+	/// <parameter name ="queue">Represents the Queue.</parameter>
+	/// <parameter name ="now">Represents the current time in epoch millis.</parameter>
+    ///<Returns>Returns true when messages became visible.</Returns>
+	private boolean releaseDelayed(InMemoryQueue queue, long now) {
+		boolean released = false;
+		
+		for(Message message : queue.releaseDelayed(now)) {
+			if(queue.offer(message)) {
+				released = true;
+			}
+			else {
+				// The ring buffer is full, the message stays delayed until a later release finds room.
+				queue.delay(message, now + fullQueueRetryMillis);
+			}
+		}
+		
+		return released;
+	}
+	
+    /// <summary>
+    /// Runs on the timer to release the delayed messages of every queue and wake the receives waiting for them.
+    /// </summary>
+	private void releaseDelayed() {
+		try {
+			long now = clock.millis();
+			
+			for(InMemoryQueue queue : queues.values()) {
+				if(queue.getDelayedCount() > 0 && releaseDelayed(queue, now)) {
+					signalReceivers(queue);
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	private void offerAsync(InMemoryQueue queue, List<Message> messages, int from, CompletableFuture<Void> future) {
+		int sent = from;
+		
+		while(sent < messages.size() && queue.offer(messages.get(sent))) {
+			sent++;
+		}
+		
+		if(sent > from) {
+			queue.getSentCount().add(sent - from);
+			signalReceivers(queue);
+		}
+		
+		if(sent < messages.size()) {
+			int next = sent;
+			scheduler.schedule(() -> offerAsync(queue, messages, next, future), fullQueueWaitNanos, TimeUnit.NANOSECONDS);
+		}
+		else {
+			future.complete(null);
+		}
+	}
+
+	/// <summary>
+    /// Retrieves one or more messages (up to max limit specified in the configuration), from the specified queue.
+	/// Messages exceeding the Visibility Timeout will be available in the queue when there is new receive request is placed.
+	/// The timing wheel hands out every expired message once, so it is re-queued once per receive.
+	/// When the queue is empty the caller waits up to the Wait Time Seconds of the request, and is woken
+	/// as soon as a push adds messages to the queue.
+	/// </summary>
+	/// <parameter name ="request">Represents the Receive Message Request.</parameter>
+    ///<Returns>Returns the Queue Messages for processing.</Returns>
+    @Override
+    public List<Message> poll(ReceiveMessageRequest request) throws InterruptedException {
+		
+		final InMemoryQueue queue = getOrCreateQueue(request.getQueueUrl());
+		long deadline = clock.millis() + TimeUnit.SECONDS.toMillis(request.getWaitTimeSeconds());
+		long version = queue.getNotifier().getVersion();
+		List<Message> messages = receive(queue, request);
+		long remaining;
+		
+		while(messages.isEmpty() && (remaining = deadline - clock.millis()) > 0) {
+			
+			// Wakes on the next push, or in time to return messages whose visibility timeout passes meanwhile.
+			queue.getNotifier().await(version, Math.min(remaining, expiryCheckMillis));
+			version = queue.getNotifier().getVersion();
+			messages = receive(queue, request);
+		}
+		
+		// Validate if the Queue had any messages to process.
+		if(messages.isEmpty()) {
+			System.out.println("There are no messages in the Queue waiting to be processed.");
+			return null;
+		}
+		
+		return messages;
+	}
+	
+	/// <summary>
+    /// Retrieves messages from the specified queue without blocking the caller. Messages ready in the queue are
+    /// returned at once. Otherwise the receive is parked without a thread until a push adds messages to the queue
+    /// or the Wait Time Seconds of the request pass.
+	/// </summary>
+	/// <parameter name ="request">Represents the Receive Message Request.</parameter>
+    ///<Returns>Returns the future completed with the Queue Messages, or with null when there were none.</Returns>
+	@Override
+	public CompletableFuture<List<Message>> pollAsync(ReceiveMessageRequest request) {
+		
+		final InMemoryQueue queue = getOrCreateQueue(request.getQueueUrl());
+		List<Message> messages = receive(queue, request);
+		
+		if(!messages.isEmpty()) {
+			return CompletableFuture.completedFuture(messages);
+		}
+		
+		if(request.getWaitTimeSeconds() <= 0) {
+			System.out.println("There are no messages in the Queue waiting to be processed.");
+			return CompletableFuture.completedFuture(null);
+		}
+		
+		// Parked receives are served on the thread of the push waking them, or on the timer.
+		return pendingReceives.computeIfAbsent(queue.getUrl(),
+				url -> new PendingReceives(pending -> receive(queue, pending), Runnable::run, scheduler, expiryCheckMillis, clock))
+				.park(request);
+	}
+	
+	/// <summary>
+    /// Returns the expired in-flight messages and the delayed messages past their visible-at time to the
+    /// queue and receives the messages ready in the queue.
+	/// </summary>
+	/// <parameter name ="queue">Represents the Queue.</parameter>
+	/// <parameter name ="request">Represents the Receive Message Request.</parameter>
+    ///<Returns>Returns the received messages, empty when the queue has none ready.</Returns>
+	private List<Message> receive(InMemoryQueue queue, ReceiveMessageRequest request) {
+		
+		final InflightTable inflight = queue.getInflight();
+		List<Message> messages = new ArrayList<>();
+		long now = clock.millis();
+		
+		// Returns the in-flight messages invisible past their visibility timeout to the queue for re-processing,
+		// or moves them to the dead-letter queue once they were received the max receive count of the queue.
+		RedrivePolicy policy = queue.getRedrivePolicy();
+		
+		for(Message expired : inflight.expire(now)) {
+			
+			// Increment the prior attempt to indicate the message has been picked again for processing,
+			// before the message is offered and can be received by another consumer.
+			int priorAttempts = expired.getPriorAttempts();
+			expired.setPriorAttempts(priorAttempts + 1);
+			
+			InMemoryQueue target = policy != null && expired.getPriorAttempts() >= policy.getMaxReceiveCount()
+					? getOrCreateQueue(policy.getDeadLetterQueueUrl()) : queue;
+			
+			// A FIFO queue returns the message to the head of its group rather than the end of the queue.
+			if(target == queue ? queue.requeue(expired) : target.offer(expired)) {
+				if(target == queue) {
+					queue.getExpiredCount().increment();
+				}
+				else {
+					queue.release(expired);
+					queue.getDeadLetteredCount().increment();
+					target.getSentCount().increment();
+					signalReceivers(target);
+				}
+			}
+			else {
+				// The ring buffer is full, the message stays invisible until a later receive finds room.
+				expired.setPriorAttempts(priorAttempts);
+				inflight.add(expired, now + fullQueueRetryMillis);
+			}
+		}
+		
+		releaseDelayed(queue, now);
+		
+		// Removes the messages from the queue until the batch is full or the queue is empty,
+		// a ring buffer hands out the whole batch at once.
+		queue.drainTo(messages, request.getRequestBatchSize());
+		Date receivedTime = messages.isEmpty() ? null : new Date(now);
+		
+		for(Message message : messages) {
+			
+			// invisible From Time marks when the message has been picked up for processing.
+			message.setinvisibleFromTime(receivedTime);
+			
+			// add the picked up message to in-flight messages collection under a new receipt handle to be
+			// able to retrieve again in case the message processing is failed and the message has to 
+			// readded to the queue for re-processing.
+			inflight.add(message, now + request.getVisibilityTimeoutMillis());
+		}
+		
+		queue.getReceivedCount().add(messages.size());
+		return messages;
+	}
+
+	/// <summary>
+    /// Deletes the given received messages from the Queue, looking each of them up by its receipt handle.
+	/// Deleted messages are taken out of the timing wheel so they are never re-queued. A message whose receipt
+	/// handle does not identify an in-flight message, because it was never received or its visibility timeout
+	/// has passed, is reported as failed. Deleting the last in-flight message of a group of a FIFO queue unlocks
+	/// the group, and wakes the receives waiting for its next messages.
+	/// </summary>
+	/// <parameter name ="request">Represents the Delete Message Request.</parameter>
+    ///<Returns>Returns the outcome of the delete for every message.</Returns>
+    @Override
+    public DeleteMessageResult delete(DeleteMessageRequest request) {
+		final InMemoryQueue queue = getOrCreateQueue(request.getQueueUrl());
+		final InflightTable inflight = queue.getInflight();
+		DeleteMessageResult result = new DeleteMessageResult();
+		
+		for(Message msg : request.getMessages()) {
+			Message removed = inflight.remove(msg.getReceiptId());
+			
+			if(removed != null) {
+				// Unlocks the message group of a FIFO queue once the group has no other message in flight.
+				queue.release(removed);
+				result.addSuccessful(msg);
+			}
+			else {
+				result.addFailed(msg, DeleteMessageResult.receiptHandleIsInvalid, 
+						"The receipt handle " + msg.getReceiptId() + " does not identify an in-flight message.", true);
+			}
+		}
+		
+		queue.getDeletedCount().add(result.getSuccessful().size());
+		
+		if(queue.getEngine().getKind() == QueueEngine.Kind.FIFO && !result.getSuccessful().isEmpty() && queue.getReadyCount() > 0) {
+			signalReceivers(queue);
+		}
+		
+		return result;
+	}
+	
+	/// <summary>
+    /// Deletes the given received messages from the Queue, which never blocks.
+	/// </summary>
+	/// <parameter name ="request">Represents the Delete Message Request.</parameter>
+    ///<Returns>Returns the completed future of the outcome of the delete for every message.</Returns>
+	@Override
+	public CompletableFuture<DeleteMessageResult> deleteAsync(DeleteMessageRequest request) {
+		return CompletableFuture.completedFuture(delete(request));
+	}
+	
+	/// <summary>
+    /// Sets the redrive policy of the queue. The message is moved as it is, only its queue changes, and keeps
+    /// counting its receives in the dead-letter queue.
+	/// </summary>
+	/// <parameter name ="url">Represents the Queue URL</parameter>
+	/// <parameter name ="policy">Represents the redrive policy, null to stop moving messages.</parameter>
+	@Override
+	public void setRedrivePolicy(String url, RedrivePolicy policy) {
+		if(policy != null) {
+			policy.validate(url);
+		}
+		
+		getOrCreateQueue(url).setRedrivePolicy(policy);
+	}
+	
+	/// <summary>
+    /// Changes the visibility timeout of the given received messages, looking each of them up by its receipt
+	/// handle and moving it to its new deadline in the timing wheel. A visibility timeout of 0 makes the messages
+	/// visible to the next receive. A message whose visibility timeout has already passed is reported as failed.
+	/// </summary>
+	/// <parameter name ="request">Represents the Change Visibility Request.</parameter>
+    ///<Returns>Returns the outcome of the change for every message.</Returns>
+	@Override
+	public ChangeVisibilityResult changeVisibility(ChangeVisibilityRequest request) {
+		final InMemoryQueue queue = getOrCreateQueue(request.getQueueUrl());
+		final InflightTable inflight = queue.getInflight();
+		ChangeVisibilityResult result = new ChangeVisibilityResult();
+		long deadline = clock.millis() + request.getVisibilityTimeoutMillis();
+		
+		for(Message msg : request.getMessages()) {
+			if(inflight.extend(msg.getReceiptId(), deadline)) {
+				result.addSuccessful(msg);
+			}
+			else {
+				result.addFailed(msg, DeleteMessageResult.receiptHandleIsInvalid, 
+						"The receipt handle " + msg.getReceiptId() + " does not identify an in-flight message.", true);
+			}
+		}
+		
+		if(request.getVisibilityTimeoutMillis() <= 0 && !result.getSuccessful().isEmpty()) {
+			signalReceivers(queue);
+		}
+		
+		return result;
+	}
+	
+	/// <summary>
+    /// Changes the visibility timeout of the given received messages, which never blocks.
+	/// </summary>
+	/// <parameter name ="request">Represents the Change Visibility Request.</parameter>
+    ///<Returns>Returns the completed future of the outcome of the change for every message.</Returns>
+	@Override
+	public CompletableFuture<ChangeVisibilityResult> changeVisibilityAsync(ChangeVisibilityRequest request) {
+		return CompletableFuture.completedFuture(changeVisibility(request));
+	}
+	
+    
+    /// <summary>
+    /// Wakes the receives waiting for messages to arrive in the queue.
+    /// </summary>
+	private void signalReceivers(InMemoryQueue queue) {
+		queue.getNotifier().signal();
+		PendingReceives pending = pendingReceives.get(queue.getUrl());
+		
+		if(pending != null) {
+			pending.signal();
+		}
+	}
+	
+    /// <summary>
+    /// Returns the approximate number of messages available for retrieval from the queue.
+    /// </summary>
+	/// <parameter name ="url">Represents the Queue URL</parameter>
+	public int getApproximateNumberOfMessages(String url) {
+		return getOrCreateQueue(url).getReadyCount();
+	}
+	
+    /// <summary>
+    /// Returns the approximate number of messages that are in flight, received and not yet deleted.
+    /// </summary>
+	/// <parameter name ="url">Represents the Queue URL</parameter>
+	public int getApproximateNumberOfMessagesNotVisible(String url) {
+		return getOrCreateQueue(url).getInflight().size();
+	}
+	
+    /// <summary>
+    /// Returns the approximate number of delayed messages that are not yet visible.
+    /// </summary>
+	/// <parameter name ="url">Represents the Queue URL</parameter>
+	public int getApproximateNumberOfMessagesDelayed(String url) {
+		return getOrCreateQueue(url).getDelayedCount();
+	}
+	
+    /// <summary>
+    /// Creates a Queue if there is no queue for the given url, otherwise return the instance of
+    /// the queue for the given queue url. The lookup of an existing queue is a plain read of the
+    /// concurrent map; a new queue is created atomically, so every thread gets the same instance.
+    /// </summary>
+	/// <parameter name ="url">Represents the Queue URL</parameter>
+	private InMemoryQueue getOrCreateQueue(String url) {
+
+		InMemoryQueue queue = queues.get(url);
+		
+		if (queue == null) {
+			queue = queues.computeIfAbsent(url, key -> new InMemoryQueue(key, defaultEngine, clock.millis()));
+		}
+
+		return queue;
+	}
+}
@@ -0,0 +1,85 @@
+package com.messagequeue.services;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.services.model.Message;
+import com.utilities.TimingWheel;
+
+/// <summary>
+/// In-flight messages of a single in-memory queue, indexed by the 64-bit receipt handle handed out when
+/// the message was received. The visibility timeout of every entry is held in a timing wheel of the table,
+/// so receiving, deleting, extending and expiring a message are all O(1).
+/// </summary>
+class InflightTable {
+
+	private final TimingWheel<Message> visibilityTimer;
+	private final Map<Long, TimingWheel.Timeout<Message>> entries = new ConcurrentHashMap<>();
+	private final AtomicLong receipts = new AtomicLong();
+
+	/// <parameter name="startTime">Represents the current time in epoch millis of the clock of the queue.</parameter>
+	InflightTable(long startTime) {
+		visibilityTimer = new TimingWheel<>(10, 64, startTime);
+	}
+
+	/// <summary>Marks the received message as in-flight until the deadline and hands out its receipt handle.</summary>
+	/// <parameter name="message">Represents the received message.</parameter>
+	/// <parameter name="deadline">Represents the epoch millis the message becomes visible again.</parameter>
+	/// <Returns>The receipt handle of the message.</Returns>
+	long add(Message message, long deadline) {
+		long receipt = receipts.incrementAndGet();
+		message.setReceiptId(receipt);
+		TimingWheel.Timeout<Message> timeout = visibilityTimer.schedule(message, deadline);
+		entries.put(receipt, timeout);
+
+		// The message may have expired before it was added to the table.
+		if (timeout.isDone()) {
+			entries.remove(receipt, timeout);
+		}
+
+		return receipt;
+	}
+
+	/// <summary>Removes the in-flight message with the receipt handle so that it is never returned to the queue.</summary>
+	/// <Returns>The removed message, null when the receipt did not identify an in-flight message whose visibility timeout had not passed.</Returns>
+	Message remove(long receipt) {
+		TimingWheel.Timeout<Message> timeout = entries.remove(receipt);
+		return timeout != null && visibilityTimer.cancel(timeout) ? timeout.getItem() : null;
+	}
+
+	/// <summary>Moves the deadline of the in-flight message with the receipt handle.</summary>
+	/// <Returns>True when the receipt identified an in-flight message whose visibility timeout had not passed.</Returns>
+	boolean extend(long receipt, long deadline) {
+		boolean[] extended = { false };
+
+		entries.computeIfPresent(receipt, (key, timeout) -> {
+			if (!visibilityTimer.cancel(timeout)) {
+				return null;
+			}
+
+			extended[0] = true;
+			return visibilityTimer.schedule(timeout.getItem(), deadline);
+		});
+
+		return extended[0];
+	}
+
+	/// <summary>Removes the in-flight messages whose visibility timeout has passed by the given time.</summary>
+	/// <parameter name="now">Represents the current time in epoch millis.</parameter>
+	/// <Returns>The expired messages, each message is returned once.</Returns>
+	List<Message> expire(long now) {
+		List<Message> expired = visibilityTimer.expire(now);
+
+		for (Message message : expired) {
+			entries.remove(message.getReceiptId());
+		}
+
+		return expired;
+	}
+
+	int size() {
+		return entries.size();
+	}
+}
@@ -0,0 +1,159 @@
+package com.messagequeue.services;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.services.model.Message;
+
+/// <summary>
+/// Messages of a FIFO queue, held in a queue per message group. A group is locked from the moment its messages
+/// are received until every one of them is deleted or returned by its visibility timeout, so the messages of a
+/// group are processed one receive after the other and in the order they were sent. Groups that are unlocked and
+/// have messages wait in a run queue, and a receive takes the groups from its head: locked and empty groups are
+/// never looked at, however many of them the queue has. Messages without a group share the group of the queue.
+/// </summary>
+final class MessageGroups implements ReadyMessages {
+
+	private static final String defaultGroupId = "";
+
+	private final Map<String, Group> groups = new HashMap<>();
+	private final ArrayDeque<Group> runnable = new ArrayDeque<>();
+	private long sequence;
+	private volatile int count;
+
+	/// <summary>Adds the message after the messages of its group, the message gets the next sequence number of the queue.</summary>
+	@Override
+	public synchronized boolean offer(Message message) {
+		message.setSequenceNumber(++sequence);
+		Group group = groups.computeIfAbsent(groupId(message), groupId -> new Group());
+		group.messages.addLast(message);
+
+		if (group.inflight == 0 && group.messages.size() == 1) {
+			runnable.addLast(group);
+		}
+
+		count++;
+		return true;
+	}
+
+	@Override
+	public Message poll() {
+		List<Message> messages = new ArrayList<>(1);
+		return drainTo(messages, 1) > 0 ? messages.get(0) : null;
+	}
+
+	/// <summary>
+	/// Removes up to the given number of messages, taking the messages of a group in order before moving on to
+	/// the next group. Every group a message is taken from is locked.
+	/// </summary>
+	@Override
+	public synchronized int drainTo(List<Message> target, int max) {
+		int drained = 0;
+		Group group;
+
+		while (drained < max && (group = runnable.pollFirst()) != null) {
+			Message message;
+
+			while (drained < max && (message = group.messages.pollFirst()) != null) {
+				target.add(message);
+				group.inflight++;
+				drained++;
+			}
+		}
+
+		count -= drained;
+		return drained;
+	}
+
+	@Override
+	public int size() {
+		return count;
+	}
+
+	/// <summary>
+	/// Returns the message to its group ahead of the messages sent after it, and unlocks the group once none of
+	/// its messages are in flight.
+	/// </summary>
+	@Override
+	public synchronized boolean requeue(Message message) {
+		Group group = groups.computeIfAbsent(groupId(message), groupId -> new Group());
+		boolean wasRunnable = group.inflight == 0 && !group.messages.isEmpty();
+		group.insert(message);
+		count++;
+
+		if (group.inflight > 0) {
+			group.inflight--;
+		}
+
+		if (group.inflight == 0 && !wasRunnable) {
+			runnable.addLast(group);
+		}
+
+		return true;
+	}
+
+	/// <summary>Unlocks the group of the message once none of its messages are in flight.</summary>
+	@Override
+	public synchronized void release(Message message) {
+		String groupId = groupId(message);
+		Group group = groups.get(groupId);
+
+		if (group == null || group.inflight == 0 || --group.inflight > 0) {
+			return;
+		}
+
+		if (group.messages.isEmpty()) {
+			groups.remove(groupId);
+		}
+		else {
+			runnable.addLast(group);
+		}
+	}
+
+	/// <summary>Removes every message ready to be received, the groups with in-flight messages stay locked.</summary>
+	@Override
+	public synchronized void clear() {
+		Iterator<Group> iterator = groups.values().iterator();
+
+		while (iterator.hasNext()) {
+			Group group = iterator.next();
+			group.messages.clear();
+
+			if (group.inflight == 0) {
+				iterator.remove();
+			}
+		}
+
+		runnable.clear();
+		count = 0;
+	}
+
+	private static String groupId(Message message) {
+		return message.getMessageGroupId() != null ? message.getMessageGroupId() : defaultGroupId;
+	}
+
+	/// <summary>Messages of a group in sequence order, and the number of its messages in flight.</summary>
+	private static final class Group {
+		private final ArrayDeque<Message> messages = new ArrayDeque<>();
+		private int inflight;
+
+		/// <summary>Inserts the message before the first message with a greater sequence number.</summary>
+		void insert(Message message) {
+			ArrayDeque<Message> earlier = new ArrayDeque<>();
+
+			while (!messages.isEmpty() && messages.peekFirst().getSequenceNumber() < message.getSequenceNumber()) {
+				earlier.push(messages.pollFirst());
+			}
+
+			messages.addFirst(message);
+
+			while (!earlier.isEmpty()) {
+				messages.addFirst(earlier.pop());
+			}
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package com.messagequeue.services;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.services.model.Message;
+import com.services.model.ReceiveMessageRequest;
+import com.utilities.MillisClock;
+
+/// <summary>
+/// Asynchronous receives of a queue waiting for messages, parked without a thread until a push signals the
+/// queue, a periodic check finds messages, or their wait time passes. Receives are served in the order they
+/// were parked, one pass at a time: a signal arriving during a pass runs another pass, so no push is missed.
+/// </summary>
+class PendingReceives {
+
+	/// <summary>Receives the messages ready in the queue, empty when there are none.</summary>
+	interface Receiver {
+		List<Message> receive(ReceiveMessageRequest request) throws Exception;
+	}
+
+	private final Receiver receiver;
+	private final Executor executor;
+	private final ScheduledExecutorService scheduler;
+	private final long checkMillis;
+	private final MillisClock clock;
+	private final ConcurrentLinkedQueue<Pending> pending = new ConcurrentLinkedQueue<>();
+
+	// Signals not served yet, the thread moving it from zero runs the passes.
+	private final AtomicInteger signals = new AtomicInteger();
+
+	// Periodic check of the queue, running while receives are parked.
+	private ScheduledFuture<?> sweep;
+
+	/// <parameter name="receiver">Represents the receive of the queue.</parameter>
+	/// <parameter name="executor">Represents where the receives run.</parameter>
+	/// <parameter name="scheduler">Represents the timer of the periodic checks.</parameter>
+	/// <parameter name="checkMillis">Represents the longest a receive waits without looking for messages that
+	/// were not signalled, such as in-flight messages past their visibility timeout.</parameter>
+	/// <parameter name="clock">Represents the clock of the wait times of the receives.</parameter>
+	PendingReceives(Receiver receiver, Executor executor, ScheduledExecutorService scheduler, long checkMillis, MillisClock clock) {
+		this.receiver = receiver;
+		this.executor = executor;
+		this.scheduler = scheduler;
+		this.checkMillis = checkMillis;
+		this.clock = clock;
+	}
+
+	/// <summary>Parks the receive until messages arrive or its wait time passes.</summary>
+	/// <parameter name="request">Represents the Receive Message Request, found empty by the caller.</parameter>
+	/// <Returns>The future completed with the messages, or with null when the wait time passed.</Returns>
+	CompletableFuture<List<Message>> park(ReceiveMessageRequest request) {
+		long waitMillis = TimeUnit.SECONDS.toMillis(request.getWaitTimeSeconds());
+		Pending receive = new Pending(request, clock.millis() + waitMillis);
+		pending.add(receive);
+		startSweep();
+		scheduler.schedule(this::signal, waitMillis, TimeUnit.MILLISECONDS);
+
+		// A push may have come between the receive of the caller and the parking.
+		signal();
+		return receive.future;
+	}
+
+	/// <summary>Serves the parked receives after messages were pushed to the queue.</summary>
+	void signal() {
+		if (signals.getAndIncrement() == 0) {
+			executor.execute(this::serve);
+		}
+	}
+
+	int size() {
+		return pending.size();
+	}
+
+	private synchronized void startSweep() {
+		if (sweep == null) {
+			sweep = scheduler.scheduleWithFixedDelay(this::sweep, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void sweep() {
+		synchronized (this) {
+			if (pending.isEmpty()) {
+				sweep.cancel(false);
+				sweep = null;
+				return;
+			}
+		}
+
+		signal();
+	}
+
+	private void serve() {
+		int missed = 1;
+
+		do {
+			servePass();
+			missed = signals.addAndGet(-missed);
+		}
+		while (missed != 0);
+	}
+
+	/// <summary>
+	/// Receives for the parked receives in order until the queue is found empty, after which only the receives
+	/// past their wait time are completed. A receive cancelled while its messages were received leaves them
+	/// in flight, they are received again once their visibility timeout passes.
+	/// </summary>
+	private void servePass() {
+		long now = clock.millis();
+		boolean empty = false;
+
+		for (Iterator<Pending> it = pending.iterator(); it.hasNext();) {
+			Pending receive = it.next();
+
+			if (receive.future.isDone()) {
+				it.remove();
+				continue;
+			}
+
+			boolean expired = now >= receive.deadline;
+
+			if (empty && !expired) {
+				continue;
+			}
+
+			try {
+				List<Message> messages = empty ? null : receiver.receive(receive.request);
+
+				if (messages != null && !messages.isEmpty()) {
+					it.remove();
+					receive.future.complete(messages);
+				}
+				else {
+					empty = true;
+
+					if (expired) {
+						it.remove();
+						receive.future.complete(null);
+					}
+				}
+			}
+			catch (Exception e) {
+				it.remove();
+				receive.future.completeExceptionally(e);
+			}
+		}
+	}
+
+	private static class Pending {
+		private final ReceiveMessageRequest request;
+		private final long deadline;
+		private final CompletableFuture<List<Message>> future = new CompletableFuture<>();
+
+		Pending(ReceiveMessageRequest request, long deadline) {
+			this.request = request;
+			this.deadline = deadline;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package com.messagequeue.services;
+
+/// <summary>
+/// Data structure holding the messages of an in-memory queue that are ready to be received:
+///
+///   LINKED  unbounded linked queue, allocates a node for every message pushed.
+///   RING    bounded ring buffer preallocated with the given power-of-two capacity. Consumers claim a whole
+///           receive batch at once, and producers wait for room while the ring is full.
+///   FIFO    unbounded queue per message group. Messages of a group are received in the order they were sent,
+///           one receive at a time: the group stays locked while it has in-flight messages, and its messages
+///           returned by a visibility timeout go back to the head of the group. Different groups are received
+///           in parallel.
+/// </summary>
+public final class QueueEngine {
+
+	public enum Kind {
+		LINKED,
+		RING,
+		FIFO
+	}
+
+	private final Kind kind;
+	private final int capacity;
+
+	private QueueEngine(Kind kind, int capacity) {
+		this.kind = kind;
+		this.capacity = capacity;
+	}
+
+	public static QueueEngine linked() {
+		return new QueueEngine(Kind.LINKED, 0);
+	}
+
+	public static QueueEngine ring(int capacity) {
+		return new QueueEngine(Kind.RING, capacity);
+	}
+
+	public static QueueEngine fifo() {
+		return new QueueEngine(Kind.FIFO, 0);
+	}
+
+	/// <summary>Parses an engine written as linked, fifo or ring:[capacity].</summary>
+	/// <parameter name="text">Represents the engine as written in the configuration.</parameter>
+	public static QueueEngine parse(String text) {
+		String[] tokens = text.trim().split(":");
+		Kind kind = Kind.valueOf(tokens[0].toUpperCase());
+
+		if (kind == Kind.RING) {
+			if (tokens.length != 2) {
+				throw new IllegalArgumentException("Missing capacity in queue engine " + text);
+			}
+
+			return new QueueEngine(kind, Integer.parseInt(tokens[1]));
+		}
+
+		return new QueueEngine(kind, 0);
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	/// <summary>Returns the capacity of the RING engine.</summary>
+	public int getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public String toString() {
+		return capacity > 0 ? kind.name().toLowerCase() + ":" + capacity : kind.name().toLowerCase();
+	}
+}
@@ -1,24 +1,42 @@
-/**
- * 
- */
-package com.messagequeue.services;
-
-import java.util.List;
-
-import com.services.model.Message;
-import com.services.model.DeleteMessageRequest;
-import com.services.model.SendMessageRequest;
-import com.services.model.ReceiveMessageRequest;
-
-public interface QueueService {
-	
-	//  pushes a message onto a queue.
-	void push(SendMessageRequest request);
-	
-	//  retrieves a single message from a queue.
-	List<Message> poll(ReceiveMessageRequest request) throws InterruptedException;
-	
-	//  deletes a message from the queue that was received by pull().
-	void delete(DeleteMessageRequest request) ;
-	
-}
+/**
+ * 
+ */
+package com.messagequeue.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.services.model.ChangeVisibilityRequest;
+import com.services.model.ChangeVisibilityResult;
+import com.services.model.Message;
+import com.services.model.DeleteMessageRequest;
+import com.services.model.DeleteMessageResult;
+import com.services.model.SendMessageRequest;
+import com.services.model.ReceiveMessageRequest;
+
+public interface QueueService {
+	
+	//  pushes a message onto a queue.
+	void push(SendMessageRequest request);
+	
+	//  retrieves a single message from a queue.
+	List<Message> poll(ReceiveMessageRequest request) throws InterruptedException;
+	
+	//  deletes the messages from the queue that were received by poll(), reporting the outcome for every message.
+	DeleteMessageResult delete(DeleteMessageRequest request) ;
+	
+	//  changes the visibility timeout of the messages received by poll() from now on, reporting the outcome for every message.
+	//  A message whose visibility timeout already passed or which was deleted is reported as failed.
+	ChangeVisibilityResult changeVisibility(ChangeVisibilityRequest request);
+	
+	//  moves the messages received the max receive count of the policy to its dead-letter queue, null stops moving them.
+	void setRedrivePolicy(String queueUrl, RedrivePolicy policy);
+	
+	//  changes the visibility timeout of a single message received by poll(), returning true when it was changed.
+	default boolean changeVisibility(String queueUrl, Message message, long visibilityTimeoutMillis) {
+		List<Message> messages = new ArrayList<>();
+		messages.add(message);
+		return changeVisibility(new ChangeVisibilityRequest(queueUrl, messages, visibilityTimeoutMillis)).getFailed().isEmpty();
+	}
+	
+}
@@ -0,0 +1,128 @@
+package com.messagequeue.services;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.services.model.Message;
+import com.utilities.RingBuffer;
+
+/// <summary>Messages of an in-memory queue that are ready to be received, held by the engine of the queue.</summary>
+interface ReadyMessages {
+
+	/// <summary>Adds the message after the messages ready to be received.</summary>
+	/// <Returns>True when the message was added, false when the engine is full.</Returns>
+	boolean offer(Message message);
+
+	/// <summary>Removes the first message ready to be received.</summary>
+	/// <Returns>The message, null when no message is ready.</Returns>
+	Message poll();
+
+	/// <summary>Removes up to the given number of messages ready to be received.</summary>
+	/// <Returns>The number of messages added to the target.</Returns>
+	int drainTo(List<Message> target, int max);
+
+	/// <summary>Returns the approximate number of messages ready to be received.</summary>
+	int size();
+
+	/// <summary>
+	/// Returns a received message whose visibility timeout passed to the messages ready to be received. Messages
+	/// go back after the messages ready to be received, unless the engine keeps them in order.
+	/// </summary>
+	/// <Returns>True when the message was added, false when the engine is full.</Returns>
+	default boolean requeue(Message message) {
+		return offer(message);
+	}
+
+	/// <summary>Tells the engine that a received message was deleted or moved to another queue.</summary>
+	default void release(Message message) {
+	}
+
+	/// <summary>Removes every message ready to be received.</summary>
+	default void clear() {
+		while (poll() != null) {
+		}
+	}
+
+	static ReadyMessages create(QueueEngine engine) {
+		switch (engine.getKind()) {
+			case RING:
+				return new Ring(engine.getCapacity());
+			case FIFO:
+				return new MessageGroups();
+			default:
+				return new Linked();
+		}
+	}
+
+	/// <summary>Messages in a linked queue. ConcurrentLinkedQueue.size walks the whole queue, so the messages are counted.</summary>
+	final class Linked implements ReadyMessages {
+		private final ConcurrentLinkedQueue<Message> messages = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public boolean offer(Message message) {
+			messages.offer(message);
+			count.incrementAndGet();
+			return true;
+		}
+
+		@Override
+		public Message poll() {
+			Message message = messages.poll();
+
+			if (message != null) {
+				count.decrementAndGet();
+			}
+
+			return message;
+		}
+
+		@Override
+		public int drainTo(List<Message> target, int max) {
+			int drained = 0;
+			Message message;
+
+			while (drained < max && (message = poll()) != null) {
+				target.add(message);
+				drained++;
+			}
+
+			return drained;
+		}
+
+		@Override
+		public int size() {
+			return count.get();
+		}
+	}
+
+	/// <summary>Messages in a preallocated ring buffer, a receive batch is claimed with a single CAS.</summary>
+	final class Ring implements ReadyMessages {
+		private final RingBuffer<Message> messages;
+
+		Ring(int capacity) {
+			messages = new RingBuffer<>(capacity);
+		}
+
+		@Override
+		public boolean offer(Message message) {
+			return messages.offer(message);
+		}
+
+		@Override
+		public Message poll() {
+			return messages.poll();
+		}
+
+		@Override
+		public int drainTo(List<Message> target, int max) {
+			return messages.drainTo(target, max);
+		}
+
+		@Override
+		public int size() {
+			return messages.size();
+		}
+	}
+}
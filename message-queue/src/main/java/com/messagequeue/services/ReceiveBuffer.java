@@ -0,0 +1,198 @@
+package com.messagequeue.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.services.model.Message;
+import com.utilities.MillisClock;
+
+/// <summary>
+/// Prefetches the messages of a remote queue so local receives are served from memory. Up to the given number of
+/// receives of a full batch are kept running while the buffer has room for their messages, so the round trips to
+/// the queue overlap with the processing of the messages already received. A prefetched message counts down its
+/// visibility timeout while it waits in the buffer; once less than a quarter of it is left, the message is no
+/// longer handed out but released back to the queue, so a consumer never starts on a message about to reappear.
+/// </summary>
+class ReceiveBuffer {
+
+	/// <summary>Receives a batch of messages from the queue, long polling when the queue is empty.</summary>
+	interface Fetcher {
+		CompletableFuture<List<Message>> fetch();
+	}
+
+	// Delay before a receive that failed is tried again.
+	private static final long retryMillis = 1000;
+
+	private final Fetcher fetcher;
+	private final Consumer<List<Message>> releaser;
+	private final int maxReceives;
+	private final int capacity;
+	private final long visibilityTimeoutMillis;
+	private final ScheduledExecutorService scheduler;
+	private final MillisClock clock;
+
+	private final LinkedBlockingQueue<Prefetched> ready = new LinkedBlockingQueue<>();
+	private final AtomicInteger runningReceives = new AtomicInteger();
+	private volatile boolean closed;
+
+	/// <parameter name="fetcher">Represents the receive of a batch from the queue.</parameter>
+	/// <parameter name="releaser">Represents the release of messages back to the queue, making them visible at once.</parameter>
+	/// <parameter name="maxReceives">Represents the most receives running at once.</parameter>
+	/// <parameter name="batchSize">Represents the most messages returned by a receive.</parameter>
+	/// <parameter name="visibilityTimeoutMillis">Represents the visibility timeout the messages are received with.</parameter>
+	/// <parameter name="scheduler">Represents the timer of the retries of failed receives.</parameter>
+	/// <parameter name="clock">Represents the clock the visibility timeouts are counted on.</parameter>
+	ReceiveBuffer(Fetcher fetcher, Consumer<List<Message>> releaser, int maxReceives, int batchSize, long visibilityTimeoutMillis,
+			ScheduledExecutorService scheduler, MillisClock clock) {
+		this.fetcher = fetcher;
+		this.releaser = releaser;
+		this.maxReceives = maxReceives;
+		this.capacity = maxReceives * batchSize;
+		this.visibilityTimeoutMillis = visibilityTimeoutMillis;
+		this.scheduler = scheduler;
+		this.clock = clock;
+	}
+
+	/// <summary>
+	/// Hands out up to the given number of prefetched messages, waiting up to the wait time for messages when
+	/// the buffer is empty. Messages close to the end of their visibility timeout are released instead.
+	/// </summary>
+	/// <parameter name="maxMessages">Represents the most messages to hand out.</parameter>
+	/// <parameter name="waitMillis">Represents the longest to wait for messages.</parameter>
+	/// <Returns>The messages, empty when none arrived within the wait time.</Returns>
+	List<Message> poll(int maxMessages, long waitMillis) throws InterruptedException {
+		long deadline = clock.millis() + waitMillis;
+		List<Message> messages = take(maxMessages);
+
+		while (messages.isEmpty() && !closed) {
+			long remaining = deadline - clock.millis();
+			Prefetched first = remaining > 0 ? ready.poll(remaining, TimeUnit.MILLISECONDS) : null;
+
+			if (first == null) {
+				break;
+			}
+
+			ready.add(first);
+			messages = take(maxMessages);
+		}
+
+		return messages;
+	}
+
+	/// <summary>Hands out up to the given number of prefetched messages without waiting.</summary>
+	List<Message> take(int maxMessages) {
+		List<Message> messages = new ArrayList<>();
+		List<Message> expiring = new ArrayList<>();
+		long now = clock.millis();
+		Prefetched prefetched;
+
+		while (messages.size() < maxMessages && (prefetched = ready.poll()) != null) {
+			if (prefetched.expiresAt - now < visibilityTimeoutMillis / 4) {
+				expiring.add(prefetched.message);
+			}
+			else {
+				messages.add(prefetched.message);
+			}
+		}
+
+		release(expiring);
+		fill();
+		return messages;
+	}
+
+	/// <summary>Starts receives while fewer than the most receives run and the buffer has room for their messages.</summary>
+	void fill() {
+		for (;;) {
+			int running = runningReceives.get();
+
+			if (closed || running >= maxReceives || ready.size() + (running + 1) * (capacity / maxReceives) > capacity) {
+				return;
+			}
+
+			if (runningReceives.compareAndSet(running, running + 1)) {
+				long receivedAt = clock.millis();
+				CompletableFuture<List<Message>> receive;
+
+				try {
+					receive = fetcher.fetch();
+				}
+				catch (RuntimeException e) {
+					receive = new CompletableFuture<>();
+					receive.completeExceptionally(e);
+				}
+
+				receive.whenComplete((messages, failure) -> received(messages, failure, receivedAt));
+			}
+		}
+	}
+
+	/// <summary>Returns the number of prefetched messages waiting to be handed out.</summary>
+	int size() {
+		return ready.size();
+	}
+
+	/// <summary>Stops prefetching and releases the messages waiting in the buffer.</summary>
+	void close() {
+		closed = true;
+		List<Message> messages = new ArrayList<>();
+		Prefetched prefetched;
+
+		while ((prefetched = ready.poll()) != null) {
+			messages.add(prefetched.message);
+		}
+
+		release(messages);
+	}
+
+	/// <summary>Adds the messages of a completed receive to the buffer and starts the next receive.</summary>
+	private void received(List<Message> messages, Throwable failure, long receivedAt) {
+		runningReceives.decrementAndGet();
+
+		if (failure != null) {
+			failure.printStackTrace();
+
+			// The queue is tried again after a pause rather than in a tight loop of failing receives.
+			if (!closed) {
+				scheduler.schedule(this::fill, retryMillis, TimeUnit.MILLISECONDS);
+			}
+
+			return;
+		}
+
+		if (messages != null) {
+			for (Message message : messages) {
+				ready.add(new Prefetched(message, receivedAt + visibilityTimeoutMillis));
+			}
+		}
+
+		if (closed) {
+			close();
+		}
+		else {
+			fill();
+		}
+	}
+
+	private void release(List<Message> messages) {
+		if (!messages.isEmpty()) {
+			releaser.accept(messages);
+		}
+	}
+
+	/// <summary>Prefetched message and the time its visibility timeout passes, counted from the start of its receive.</summary>
+	private static class Prefetched {
+		private final Message message;
+		private final long expiresAt;
+
+		Prefetched(Message message, long expiresAt) {
+			this.message = message;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package com.messagequeue.services;
+
+/// <summary>
+/// Moves the messages of a queue that were received maxReceiveCount times without being deleted to a dead-letter
+/// queue of the same backend, the way the RedrivePolicy attribute of an Amazon SQS queue does. A message is
+/// moved instead of being made visible again once its visibility timeout passes for the last allowed receive,
+/// so a message that can never be processed stops taking the time of the consumers.
+/// </summary>
+public final class RedrivePolicy {
+
+	private final String deadLetterQueueUrl;
+	private final int maxReceiveCount;
+
+	/// <parameter name="deadLetterQueueUrl">Represents the Queue URL the messages are moved to.</parameter>
+	/// <parameter name="maxReceiveCount">Represents the number of receives after which a message is moved.</parameter>
+	public RedrivePolicy(String deadLetterQueueUrl, int maxReceiveCount) {
+		if (maxReceiveCount < 1) {
+			throw new IllegalArgumentException("The max receive count must be at least 1: " + maxReceiveCount);
+		}
+
+		this.deadLetterQueueUrl = deadLetterQueueUrl;
+		this.maxReceiveCount = maxReceiveCount;
+	}
+
+	public String getDeadLetterQueueUrl() {
+		return deadLetterQueueUrl;
+	}
+
+	public int getMaxReceiveCount() {
+		return maxReceiveCount;
+	}
+
+	/// <summary>Throws when the policy would move the messages of the queue to the queue itself.</summary>
+	/// <parameter name="queueUrl">Represents the Queue URL the policy is set on.</parameter>
+	void validate(String queueUrl) {
+		if (deadLetterQueueUrl.equals(queueUrl)) {
+			throw new IllegalArgumentException("A queue cannot be its own dead-letter queue: " + queueUrl);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return maxReceiveCount + " receives to " + deadLetterQueueUrl;
+	}
+}
@@ -0,0 +1,122 @@
+package com.messagequeue.services;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
+
+/// <summary>
+/// Settings of the HTTP client of SqsQueueService. The client keeps a pool of persistent connections shared by
+/// all the calls, each connection reused for up to the connection TTL and closed by the idle connection reaper
+/// once unused, so the calls skip the TCP and TLS handshakes. Failed calls the SDK considers retryable, such as
+/// throttling and server errors, are retried with capped exponential backoff and full jitter. The socket timeout
+/// must exceed the 20 seconds of a long polling receive. The endpoint, when set, replaces the us-west-2 endpoint
+/// of Amazon SQS, pointing the client at a local SQS-compatible server.
+/// </summary>
+public final class SqsClientSettings {
+
+	private String endpoint;
+	private int maxConnections = 50;
+	private int connectionTimeoutMillis = 5000;
+	private int socketTimeoutMillis = 25000;
+	private long connectionTtlMillis = 60000;
+	private int maxErrorRetry = 3;
+	private long baseBackoffMillis = 100;
+	private long maxBackoffMillis = 20000;
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	public void setEndpoint(String endpoint) {
+		this.endpoint = endpoint;
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/// <summary>Sets the size of the connection pool, which also sizes the thread pool of the asynchronous calls.</summary>
+	public void setMaxConnections(int maxConnections) {
+		if (maxConnections < 1) {
+			throw new IllegalArgumentException("The pool must hold at least one connection: " + maxConnections);
+		}
+
+		this.maxConnections = maxConnections;
+	}
+
+	public int getConnectionTimeoutMillis() {
+		return connectionTimeoutMillis;
+	}
+
+	public void setConnectionTimeoutMillis(int connectionTimeoutMillis) {
+		this.connectionTimeoutMillis = connectionTimeoutMillis;
+	}
+
+	public int getSocketTimeoutMillis() {
+		return socketTimeoutMillis;
+	}
+
+	public void setSocketTimeoutMillis(int socketTimeoutMillis) {
+		this.socketTimeoutMillis = socketTimeoutMillis;
+	}
+
+	public long getConnectionTtlMillis() {
+		return connectionTtlMillis;
+	}
+
+	/// <summary>Sets how long a pooled connection is kept alive for reuse, -1 keeping it until the server closes it.</summary>
+	public void setConnectionTtlMillis(long connectionTtlMillis) {
+		this.connectionTtlMillis = connectionTtlMillis;
+	}
+
+	public int getMaxErrorRetry() {
+		return maxErrorRetry;
+	}
+
+	public void setMaxErrorRetry(int maxErrorRetry) {
+		this.maxErrorRetry = maxErrorRetry;
+	}
+
+	public long getBaseBackoffMillis() {
+		return baseBackoffMillis;
+	}
+
+	public void setBaseBackoffMillis(long baseBackoffMillis) {
+		this.baseBackoffMillis = baseBackoffMillis;
+	}
+
+	public long getMaxBackoffMillis() {
+		return maxBackoffMillis;
+	}
+
+	public void setMaxBackoffMillis(long maxBackoffMillis) {
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+
+	/// <summary>Returns the configuration of the SDK client with the pool, timeouts and retries of the settings.</summary>
+	public ClientConfiguration toClientConfiguration() {
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setMaxConnections(maxConnections);
+		configuration.setConnectionTimeout(connectionTimeoutMillis);
+		configuration.setSocketTimeout(socketTimeoutMillis);
+		configuration.setConnectionTTL(connectionTtlMillis);
+		configuration.setUseReaper(true);
+		configuration.setMaxErrorRetry(maxErrorRetry);
+		configuration.setRetryPolicy(new RetryPolicy(
+				PredefinedRetryPolicies.DEFAULT_RETRY_CONDITION, (request, exception, retries) -> backoffMillis(retries), maxErrorRetry, true));
+		return configuration;
+	}
+
+	/// <summary>
+	/// Returns the delay before the next retry, a random delay up to the base backoff doubled for every retry
+	/// made so far, capped at the max backoff. The jitter spreads the retries of the clients failing together.
+	/// </summary>
+	/// <parameter name="retries">Represents the number of retries made so far.</parameter>
+	long backoffMillis(int retries) {
+		// Past 30 doublings any sensible base backoff is above the cap.
+		long ceiling = retries < 31 ? Math.min(maxBackoffMillis, baseBackoffMillis << retries) : maxBackoffMillis;
+		return ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling + 1) : 0;
+	}
+}
@@ -1,157 +1,650 @@
-package com.messagequeue.services;
-
-import java.util.ArrayList;
-import java.util.List;
-
-
-import com.services.model.Message;
-import com.services.model.DeleteMessageRequest;
-import com.services.model.SendMessageRequest;
-import com.services.model.ReceiveMessageRequest;
-import com.amazonaws.AmazonClientException;
-import com.amazonaws.auth.AWSCredentials;
-import com.amazonaws.auth.profile.ProfileCredentialsProvider;
-import com.amazonaws.regions.Region;
-import com.amazonaws.regions.Regions;
-import com.amazonaws.services.sqs.AmazonSQS;
-import com.amazonaws.services.sqs.AmazonSQSClient;
-import com.amazonaws.services.sqs.model.CreateQueueRequest;
-import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
-import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
-import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
-import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
-
-
-public class SqsQueueService implements QueueService {
-	
-	private final AmazonSQS sqs;
-	private final Region usWest2;
-	private final AWSCredentials credentials;
-	
-	public SqsQueueService() {
-		
-        try {
-            credentials = new ProfileCredentialsProvider().getCredentials();
-        } catch (Exception e) {
-            throw new AmazonClientException(
-                    "Cannot load the credentials from the credential profiles file. " +
-                    "Please make sure that your credentials file is at the correct " +
-                    "location (~/.aws/credentials), and is in valid format.",
-                    e);
-        }
-
-        sqs = new AmazonSQSClient(credentials);
-        usWest2 = Region.getRegion(Regions.US_WEST_2);
-        sqs.setRegion(usWest2);
-    }
-	
-	/// <summary>
-    /// Sending batch of messages to in memory queue.
-    /// Delay seconds will wait for the specified delay before pushing on to Queue. </summary>
-	/// <parameter name ="request">Represents the Send Message Request.</parameter>
-	@Override
-	public void push(SendMessageRequest request) {
-		
-		List<SendMessageBatchRequestEntry> entries = new ArrayList<SendMessageBatchRequestEntry>();
-		
-		for(Message msg : request.getAllMessages()) {
-			SendMessageBatchRequestEntry entry = new SendMessageBatchRequestEntry();
-			entry.setDelaySeconds(request.getDelaySeconds());
-			entry.setMessageBody(msg.toString());
-			entries.add(entry);
-		}
-		
-		// Create the Send Message Batch request for Amazon sqs Send Operation.
-		SendMessageBatchRequest sendBatchRequest = new SendMessageBatchRequest();
-		sendBatchRequest.setEntries(entries);
-		sendBatchRequest.setQueueUrl(request.getQueueUrl());
-		sendBatchRequest.setRequestCredentials(credentials);
-	
-		sqs.sendMessageBatch(sendBatchRequest);
-	}
-
-	/// <summary>
-    /// Retrieves one or more messages (up to max limit specified in the configuration), from the specified queue 
-	/// </summary>
-	/// <parameter name ="request">Represents the Receive Message Request.</parameter>
-    ///<Returns>Returns the Queue Messages for processing.</Returns>
-	@Override
-	public List<Message> poll(ReceiveMessageRequest request) {
-		
-		com.amazonaws.services.sqs.model.ReceiveMessageRequest receiveRequest = 
-														new com.amazonaws.services.sqs.model.ReceiveMessageRequest();
-		receiveRequest.setRequestCredentials(credentials);
-		receiveRequest.setQueueUrl(request.getQueueUrl());
-		receiveRequest.setVisibilityTimeout(request.getVisibilityTimeout());
-		
-		List<com.amazonaws.services.sqs.model.Message> sqsMessages = sqs.receiveMessage(receiveRequest).getMessages();
-		List<Message> messages = new ArrayList<Message>();
-		
-		for (com.amazonaws.services.sqs.model.Message msg : sqsMessages) {
-			Message message = new Message();
-			message.setMessage(msg.getBody());
-			msg.setReceiptHandle(msg.getReceiptHandle());
-			messages.add(message);
-		}
-		
-		return messages;
-	}
-
-	/// <summary>
-    /// Deletes the messages from Amazon SQS Queue. 
-	/// </summary>
-	/// <parameter name ="request">Represents the Receive Message Request.</parameter>
-    @Override
-	public void delete(DeleteMessageRequest request) {
-		
-		List<DeleteMessageBatchRequestEntry> entries = new ArrayList<DeleteMessageBatchRequestEntry>();
-		DeleteMessageBatchRequest deleteRequest = new DeleteMessageBatchRequest();
-		
-		for(Message msg : request.getMessages()) {
-			
-			DeleteMessageBatchRequestEntry entry = new DeleteMessageBatchRequestEntry();
-			entry.setReceiptHandle(Integer.toString(msg.getReceiptId()));
-			entries.add(entry);
-		}
-		
-		deleteRequest.setRequestCredentials(credentials);
-		deleteRequest.setQueueUrl(request.getQueueUrl());
-		deleteRequest.setEntries(entries);
-		
-		sqs.deleteMessageBatch(deleteRequest);
-	}
-    
-    /// <summary>
-    /// Must be called by the client before trying to send or pull queue to get the
-    /// Queue URL associated with the Queue, the client is attempting to perform the opearation.
-	/// </summary>
-	/// <parameter name ="url">Represents the Queue URL.</parameter>
-    /// <Returns>Returns the Queue URL associated with the Queue.</Returns>
-	public String getOrCreateQueue(String url) {
-		
-		String myQueueUrl = null;
-		
-		if(!QueueExists(url)) {
-			CreateQueueRequest createQueueRequest = new CreateQueueRequest("MyQueue");
-			myQueueUrl = sqs.createQueue(createQueueRequest).getQueueUrl();
-		}
-		
-		return myQueueUrl;
-	}
-	
-	/// <summary>
-    /// Must be called by the client before trying to send or pull queue to get the
-    /// Queue URL associated with the Queue, the client is attempting to perform the operation.
-	/// </summary>
-	/// <parameter name ="url">Represents the Queue URL.</parameter>
-	private boolean QueueExists(String url){
-		
-		for (String queueUrl : sqs.listQueues().getQueueUrls()) {
-		    if(queueUrl.equalsIgnoreCase(url)) {
-		    	return true;
-		    }
-		}
-		
-		return false;
-	}
-}
+package com.messagequeue.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+
+import com.services.model.ChangeVisibilityRequest;
+import com.services.model.ChangeVisibilityResult;
+import com.services.model.Message;
+import com.services.model.DeleteMessageRequest;
+import com.services.model.DeleteMessageResult;
+import com.services.model.SendMessageRequest;
+import com.services.model.ReceiveMessageRequest;
+import com.utilities.MillisClock;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.profile.ProfileCredentialsProvider;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.AmazonSQSAsyncClient;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResultEntry;
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.GetQueueUrlRequest;
+import com.amazonaws.services.sqs.model.QueueDoesNotExistException;
+import com.amazonaws.services.sqs.model.SetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+
+
+public class SqsQueueService implements AsyncQueueService {
+	
+	// Limits of Amazon SQS on the messages returned by a receive and on its long polling wait.
+	private static final int maxReceiveMessages = 10;
+	// Limits of Amazon SQS on the entries of a batch and on the total size of their message bodies.
+	public static final int maxBatchEntries = 10;
+	public static final int maxBatchBytes = 256 * 1024;
+	
+	// Attribute of a received message counting its receives, including the current one.
+	private static final String approximateReceiveCount = "ApproximateReceiveCount";
+	// Attribute of a received message of a FIFO queue naming its message group.
+	private static final String messageGroupId = "MessageGroupId";
+	
+	// The names of Amazon SQS FIFO queues end with the suffix, and their messages must have a message group.
+	private static final String fifoSuffix = ".fifo";
+	private static final String defaultMessageGroupId = "default";
+	private static final int maxWaitTimeSeconds = 20;
+	
+	// The asynchronous client serves the blocking calls as well.
+	private final AmazonSQSAsync sqs;
+	private final AWSCredentials credentials;
+	
+	// Queue URLs resolved so far, by queue name.
+	private final Map<String, String> queueUrls = new ConcurrentHashMap<>();
+	
+	// Prefetch buffers of the queues prefetching is enabled for, by Queue URL.
+	private final Map<String, ReceiveBuffer> receiveBuffers = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService prefetchScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "sqs-prefetch");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	public SqsQueueService() {
+		this(profileCredentials(), new SqsClientSettings());
+	}
+	
+	/// <summary>
+    /// Creates the service with its own pool of connections and threads, sized by the settings. The client is
+    /// pointed at the endpoint of the settings when there is one, otherwise at Amazon SQS in us-west-2.
+	/// </summary>
+	/// <parameter name ="credentials">Represents the credentials signing the calls.</parameter>
+	/// <parameter name ="settings">Represents the settings of the HTTP client.</parameter>
+	public SqsQueueService(AWSCredentials credentials, SqsClientSettings settings) {
+		
+		this.credentials = credentials;
+		
+		ExecutorService executor = Executors.newFixedThreadPool(settings.getMaxConnections(), runnable -> {
+			Thread thread = new Thread(runnable, "sqs-client");
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+        AmazonSQSAsyncClient client = new AmazonSQSAsyncClient(credentials, settings.toClientConfiguration(), executor);
+        client.addRequestHandler(new FifoRequestHandler());
+        sqs = client;
+        
+        if(settings.getEndpoint() != null) {
+        	sqs.setEndpoint(settings.getEndpoint());
+        }
+        else {
+        	sqs.setRegion(Region.getRegion(Regions.US_WEST_2));
+        }
+    }
+	
+	private static AWSCredentials profileCredentials() {
+		
+        try {
+            return new ProfileCredentialsProvider().getCredentials();
+        } catch (Exception e) {
+            throw new AmazonClientException(
+                    "Cannot load the credentials from the credential profiles file. " +
+                    "Please make sure that your credentials file is at the correct " +
+                    "location (~/.aws/credentials), and is in valid format.",
+                    e);
+        }
+	}
+	
+	/// <summary>
+    /// Sending batch of messages to Amazon SQS Queue. The messages are sent in batches within the limits of
+    /// Amazon SQS of 10 entries and 256 KB, and the messages SQS failed to accept are reported. </summary>
+	/// <parameter name ="request">Represents the Send Message Request.</parameter>
+	@Override
+	public void push(SendMessageRequest request) {
+		for(SendMessageBatchRequest batch : toSendBatchRequests(request)) {
+			for(BatchResultErrorEntry entry : sqs.sendMessageBatch(batch).getFailed()) {
+				System.out.println("Failed to send entry " + entry.getId() + ": " + entry.getCode() + " " + entry.getMessage());
+			}
+		}
+	}
+	
+	/// <summary>
+    /// Sending batch of messages to Amazon SQS Queue through the asynchronous client, sending the batches within
+    /// the limits of Amazon SQS concurrently. </summary>
+	/// <parameter name ="request">Represents the Send Message Request.</parameter>
+    ///<Returns>Returns the future completed once SQS accepted every message, failed when it rejected any.</Returns>
+	@Override
+	public CompletableFuture<Void> pushAsync(SendMessageRequest request) {
+		List<CompletableFuture<Void>> batches = new ArrayList<>();
+		List<SendMessageBatchRequest> batchRequests;
+		
+		try {
+			batchRequests = toSendBatchRequests(request);
+		}
+		catch(IllegalArgumentException e) {
+			CompletableFuture<Void> rejected = new CompletableFuture<>();
+			rejected.completeExceptionally(e);
+			return rejected;
+		}
+		
+		for(SendMessageBatchRequest batch : batchRequests) {
+			CompletableFuture<Void> future = new CompletableFuture<>();
+			sqs.sendMessageBatchAsync(batch, handler(future, this::checkSendResult));
+			batches.add(future);
+		}
+		
+		return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0]));
+	}
+	
+	/// <summary>
+    /// Splits the messages of the request into batch requests of at most 10 entries and 256 KB of message bodies.
+    /// Every entry is identified by the index of its message in the request. The entries of a FIFO queue carry the
+    /// message group of their message, or the default group of the queue, and a deduplication id of their own, so
+    /// the SDK retrying a batch does not send its messages twice. A message asking for a delay is rejected for a FIFO
+    /// queue before any batch is sent, as SQS only applies the delay of the queue to its messages.
+	/// </summary>
+	private List<SendMessageBatchRequest> toSendBatchRequests(SendMessageRequest request) {
+		
+		List<SendMessageBatchRequest> batches = new ArrayList<SendMessageBatchRequest>();
+		List<SendMessageBatchRequestEntry> entries = new ArrayList<SendMessageBatchRequestEntry>();
+		List<Message> messages = request.getAllMessages();
+		boolean fifo = request.getQueueUrl().endsWith(fifoSuffix);
+		int batchBytes = 0;
+		
+		for(int i = 0; i < messages.size(); i++) {
+			Message msg = messages.get(i);
+			String body = msg.toString();
+			int bodyBytes = body.getBytes(StandardCharsets.UTF_8).length;
+			
+			if(entries.size() == maxBatchEntries || (!entries.isEmpty() && batchBytes + bodyBytes > maxBatchBytes)) {
+				batches.add(toSendBatchRequest(request, entries));
+				entries = new ArrayList<SendMessageBatchRequestEntry>();
+				batchBytes = 0;
+			}
+			
+			SendMessageBatchRequestEntry entry;
+			
+			if(fifo) {
+				// FIFO queues only take the delay of the queue and reject a send asking for a delay of its own.
+				if(request.getDelaySeconds(msg) > 0) {
+					throw new IllegalArgumentException("FIFO queues only take the delay of the queue, message " + i + " asks for "
+							+ request.getDelaySeconds(msg) + " delay seconds: " + request.getQueueUrl());
+				}
+				
+				entry = new FifoRequestHandler.Entry(msg.getMessageGroupId() != null ? msg.getMessageGroupId() : defaultMessageGroupId,
+						UUID.randomUUID().toString());
+			}
+			else {
+				entry = new SendMessageBatchRequestEntry();
+				entry.setDelaySeconds(request.getDelaySeconds(msg));
+			}
+			
+			entry.setId(Integer.toString(i));
+			entry.setMessageBody(body);
+			entries.add(entry);
+			batchBytes += bodyBytes;
+		}
+		
+		if(!entries.isEmpty()) {
+			batches.add(toSendBatchRequest(request, entries));
+		}
+		
+		return batches;
+	}
+	
+	private SendMessageBatchRequest toSendBatchRequest(SendMessageRequest request, List<SendMessageBatchRequestEntry> entries) {
+		
+		// Create the Send Message Batch request for Amazon sqs Send Operation.
+		SendMessageBatchRequest sendBatchRequest = new SendMessageBatchRequest();
+		sendBatchRequest.setEntries(entries);
+		sendBatchRequest.setQueueUrl(request.getQueueUrl());
+		sendBatchRequest.setRequestCredentials(credentials);
+	
+		return sendBatchRequest;
+	}
+	
+	private Void checkSendResult(SendMessageBatchResult result) {
+		
+		if(!result.getFailed().isEmpty()) {
+			BatchResultErrorEntry entry = result.getFailed().get(0);
+			throw new AmazonClientException(result.getFailed().size() + " messages were not sent, entry " + entry.getId() + ": "
+					+ entry.getCode() + " " + entry.getMessage());
+		}
+		
+		return null;
+	}
+
+	/// <summary>
+    /// Retrieves one or more messages (up to max limit specified in the configuration), from the specified queue 
+	/// The Wait Time Seconds of the request is passed on as SQS long polling, so an empty queue holds the receive
+	/// open on the SQS side, up to its limit of 20 seconds, instead of returning at once. A queue prefetching its
+	/// messages is polled from its buffer, waiting up to the Wait Time Seconds of the request for prefetched messages.
+	/// </summary>
+	/// <parameter name ="request">Represents the Receive Message Request.</parameter>
+    ///<Returns>Returns the Queue Messages for processing.</Returns>
+	@Override
+	public List<Message> poll(ReceiveMessageRequest request) {
+		ReceiveBuffer buffer = receiveBuffers.get(request.getQueueUrl());
+		
+		if(buffer != null) {
+			try {
+				return buffer.poll(request.getRequestBatchSize(), request.getWaitTimeSeconds() * 1000L);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return new ArrayList<Message>();
+			}
+		}
+		
+		return toMessages(sqs.receiveMessage(toReceiveRequest(request)));
+	}
+	
+	/// <summary>
+    /// Retrieves messages from the specified queue through the asynchronous client, long polling up to
+    /// the Wait Time Seconds of the request.
+	/// </summary>
+	/// <parameter name ="request">Represents the Receive Message Request.</parameter>
+    ///<Returns>Returns the future completed with the Queue Messages.</Returns>
+	@Override
+	public CompletableFuture<List<Message>> pollAsync(ReceiveMessageRequest request) {
+		ReceiveBuffer buffer = receiveBuffers.get(request.getQueueUrl());
+		
+		// Prefetched messages are returned at once, an empty buffer falls back to a receive of its own.
+		if(buffer != null) {
+			List<Message> prefetched = buffer.take(request.getRequestBatchSize());
+			
+			if(!prefetched.isEmpty()) {
+				return CompletableFuture.completedFuture(prefetched);
+			}
+		}
+		
+		return receiveAsync(request);
+	}
+	
+	/// <summary>
+    /// Starts prefetching the messages of the queue. The given number of receives of 10 messages are kept running
+    /// while the buffer has room for their messages, and poll takes the messages from the buffer instead of
+    /// receiving them itself, so the latency of the receives is hidden behind the processing of the messages
+    /// already received. Every prefetched message has the given visibility timeout, whatever the timeout of the
+    /// poll, and a message with less than a quarter of it left is released back to the queue instead of returned.
+	/// </summary>
+	/// <parameter name ="queueUrl">Represents the Queue URL.</parameter>
+	/// <parameter name ="concurrentReceives">Represents the most receives running at once.</parameter>
+	/// <parameter name ="visibilityTimeoutMillis">Represents the visibility timeout of the prefetched messages.</parameter>
+	public void enablePrefetch(String queueUrl, int concurrentReceives, long visibilityTimeoutMillis) {
+		if(concurrentReceives < 1) {
+			throw new IllegalArgumentException("At least one receive must be running: " + concurrentReceives);
+		}
+		
+		ReceiveMessageRequest prefetch = new ReceiveMessageRequest(queueUrl, maxReceiveMessages, 0, maxWaitTimeSeconds);
+		prefetch.setVisibilityTimeoutMillis(visibilityTimeoutMillis);
+		
+		ReceiveBuffer buffer = new ReceiveBuffer(
+				() -> receiveAsync(prefetch),
+				messages -> changeVisibilityAsync(new ChangeVisibilityRequest(queueUrl, messages, 0)),
+				concurrentReceives, maxReceiveMessages, visibilityTimeoutMillis, prefetchScheduler, MillisClock.monotonic());
+		
+		ReceiveBuffer previous = receiveBuffers.put(queueUrl, buffer);
+		
+		if(previous != null) {
+			previous.close();
+		}
+		
+		buffer.fill();
+	}
+	
+	/// <summary>
+    /// Stops prefetching the messages of the queue and releases the prefetched messages back to the queue.
+	/// </summary>
+	/// <parameter name ="queueUrl">Represents the Queue URL.</parameter>
+	public void disablePrefetch(String queueUrl) {
+		ReceiveBuffer buffer = receiveBuffers.remove(queueUrl);
+		
+		if(buffer != null) {
+			buffer.close();
+		}
+	}
+	
+	/// <summary>
+    /// Stops prefetching the messages of every queue and shuts the client and its connections down.
+	/// </summary>
+	public void close() {
+		for(String queueUrl : new ArrayList<String>(receiveBuffers.keySet())) {
+			disablePrefetch(queueUrl);
+		}
+		
+		prefetchScheduler.shutdownNow();
+		sqs.shutdown();
+	}
+	
+	/// <summary>
+    /// Receives the messages with the asynchronous client, bypassing the prefetch buffer of the queue.
+	/// </summary>
+	private CompletableFuture<List<Message>> receiveAsync(ReceiveMessageRequest request) {
+		CompletableFuture<List<Message>> future = new CompletableFuture<>();
+		sqs.receiveMessageAsync(toReceiveRequest(request), handler(future, this::toMessages));
+		return future;
+	}
+	
+	private com.amazonaws.services.sqs.model.ReceiveMessageRequest toReceiveRequest(ReceiveMessageRequest request) {
+		
+		com.amazonaws.services.sqs.model.ReceiveMessageRequest receiveRequest = 
+														new com.amazonaws.services.sqs.model.ReceiveMessageRequest();
+		receiveRequest.setRequestCredentials(credentials);
+		receiveRequest.setQueueUrl(request.getQueueUrl());
+		// SQS takes the visibility timeout in whole seconds, a partial second is rounded up.
+		receiveRequest.setVisibilityTimeout((int)((request.getVisibilityTimeoutMillis() + 999) / 1000));
+		receiveRequest.setMaxNumberOfMessages(Math.min(request.getRequestBatchSize(), maxReceiveMessages));
+		receiveRequest.setWaitTimeSeconds(Math.min(request.getWaitTimeSeconds(), maxWaitTimeSeconds));
+		receiveRequest.setAttributeNames(Arrays.asList(approximateReceiveCount, messageGroupId));
+		
+		return receiveRequest;
+	}
+	
+	private List<Message> toMessages(ReceiveMessageResult result) {
+		
+		List<com.amazonaws.services.sqs.model.Message> sqsMessages = result.getMessages();
+		List<Message> messages = new ArrayList<Message>();
+		
+		for (com.amazonaws.services.sqs.model.Message msg : sqsMessages) {
+			Message message = new Message();
+			message.setMessage(msg.getBody());
+			message.setReceiptHandle(msg.getReceiptHandle());
+			
+			String receiveCount = msg.getAttributes().get(approximateReceiveCount);
+			
+			if(receiveCount != null) {
+				message.setPriorAttempts(Integer.parseInt(receiveCount) - 1);
+			}
+			
+			message.setMessageGroupId(msg.getAttributes().get(messageGroupId));
+			
+			messages.add(message);
+		}
+		
+		return messages;
+	}
+
+	/// <summary>
+    /// Deletes the messages from Amazon SQS Queue, in batches of at most 10 entries since a prefetched poll may
+    /// return more messages than that. Every message is sent as a batch entry identified by its index in the
+    /// request, which maps the successful and failed entries of the batch results back to the messages.
+	/// </summary>
+	/// <parameter name ="request">Represents the Receive Message Request.</parameter>
+    ///<Returns>Returns the outcome of the delete for every message.</Returns>
+    @Override
+	public DeleteMessageResult delete(DeleteMessageRequest request) {
+		DeleteMessageResult result = new DeleteMessageResult();
+		
+		for(int from = 0; from < request.getMessages().size(); from += maxBatchEntries) {
+			addDeleteResult(result, request, sqs.deleteMessageBatch(toDeleteBatchRequest(request, from)));
+		}
+		
+		return result;
+	}
+    
+	/// <summary>
+    /// Deletes the messages from Amazon SQS Queue through the asynchronous client, sending the batches of
+    /// 10 entries concurrently.
+	/// </summary>
+	/// <parameter name ="request">Represents the Delete Message Request.</parameter>
+    ///<Returns>Returns the future completed with the outcome of the delete for every message.</Returns>
+	@Override
+	public CompletableFuture<DeleteMessageResult> deleteAsync(DeleteMessageRequest request) {
+		List<CompletableFuture<DeleteMessageBatchResult>> batches = new ArrayList<>();
+		
+		for(int from = 0; from < request.getMessages().size(); from += maxBatchEntries) {
+			CompletableFuture<DeleteMessageBatchResult> batch = new CompletableFuture<>();
+			sqs.deleteMessageBatchAsync(toDeleteBatchRequest(request, from), handler(batch, result -> result));
+			batches.add(batch);
+		}
+		
+		return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+			DeleteMessageResult result = new DeleteMessageResult();
+			
+			for(CompletableFuture<DeleteMessageBatchResult> batch : batches) {
+				addDeleteResult(result, request, batch.join());
+			}
+			
+			return result;
+		});
+	}
+	
+	private DeleteMessageBatchRequest toDeleteBatchRequest(DeleteMessageRequest request, int from) {
+		
+		List<DeleteMessageBatchRequestEntry> entries = new ArrayList<DeleteMessageBatchRequestEntry>();
+		DeleteMessageBatchRequest deleteRequest = new DeleteMessageBatchRequest();
+		List<Message> messages = request.getMessages();
+		
+		for(int i = from; i < Math.min(from + maxBatchEntries, messages.size()); i++) {
+			
+			DeleteMessageBatchRequestEntry entry = new DeleteMessageBatchRequestEntry();
+			entry.setId(Integer.toString(i));
+			entry.setReceiptHandle(messages.get(i).getReceiptHandle());
+			entries.add(entry);
+		}
+		
+		deleteRequest.setRequestCredentials(credentials);
+		deleteRequest.setQueueUrl(request.getQueueUrl());
+		deleteRequest.setEntries(entries);
+		
+		return deleteRequest;
+	}
+	
+	private void addDeleteResult(DeleteMessageResult result, DeleteMessageRequest request, DeleteMessageBatchResult batchResult) {
+		
+		List<Message> messages = request.getMessages();
+		
+		for(DeleteMessageBatchResultEntry entry : batchResult.getSuccessful()) {
+			result.addSuccessful(messages.get(Integer.parseInt(entry.getId())));
+		}
+		
+		for(BatchResultErrorEntry entry : batchResult.getFailed()) {
+			result.addFailed(messages.get(Integer.parseInt(entry.getId())), entry.getCode(), entry.getMessage(), entry.isSenderFault());
+		}
+	}
+    
+	/// <summary>
+    /// Sets the RedrivePolicy attribute of the Amazon SQS Queue, which moves the messages to the dead-letter
+    /// queue on the side of Amazon SQS. The dead-letter queue is identified by its ARN, which is looked up first.
+	/// </summary>
+	/// <parameter name ="queueUrl">Represents the Queue URL.</parameter>
+	/// <parameter name ="policy">Represents the redrive policy, null to stop moving messages.</parameter>
+	@Override
+	public void setRedrivePolicy(String queueUrl, RedrivePolicy policy) {
+		String redrivePolicy = "";
+		
+		if(policy != null) {
+			policy.validate(queueUrl);
+			
+			GetQueueAttributesRequest arnRequest = new GetQueueAttributesRequest(policy.getDeadLetterQueueUrl()).withAttributeNames("QueueArn");
+			arnRequest.setRequestCredentials(credentials);
+			String deadLetterTargetArn = sqs.getQueueAttributes(arnRequest).getAttributes().get("QueueArn");
+			
+			redrivePolicy = "{\"maxReceiveCount\":\"" + policy.getMaxReceiveCount() + "\",\"deadLetterTargetArn\":\"" + deadLetterTargetArn + "\"}";
+		}
+		
+		Map<String, String> attributes = new HashMap<String, String>();
+		attributes.put("RedrivePolicy", redrivePolicy);
+		
+		SetQueueAttributesRequest attributesRequest = new SetQueueAttributesRequest(queueUrl, attributes);
+		attributesRequest.setRequestCredentials(credentials);
+		sqs.setQueueAttributes(attributesRequest);
+	}
+	
+	/// <summary>
+    /// Changes the visibility timeout of the messages with Amazon SQS ChangeMessageVisibilityBatch, in batches of
+    /// at most 10 entries. Every entry is identified by the index of its message in the request.
+	/// </summary>
+	/// <parameter name ="request">Represents the Change Visibility Request.</parameter>
+    ///<Returns>Returns the outcome of the change for every message.</Returns>
+	@Override
+	public ChangeVisibilityResult changeVisibility(ChangeVisibilityRequest request) {
+		ChangeVisibilityResult result = new ChangeVisibilityResult();
+		
+		for(int from = 0; from < request.getMessages().size(); from += maxBatchEntries) {
+			addChangeVisibilityResult(result, request, sqs.changeMessageVisibilityBatch(toChangeVisibilityBatchRequest(request, from)));
+		}
+		
+		return result;
+	}
+	
+	/// <summary>
+    /// Changes the visibility timeout of the messages through the asynchronous client, sending the batches of
+    /// 10 entries concurrently.
+	/// </summary>
+	/// <parameter name ="request">Represents the Change Visibility Request.</parameter>
+    ///<Returns>Returns the future completed with the outcome of the change for every message.</Returns>
+	@Override
+	public CompletableFuture<ChangeVisibilityResult> changeVisibilityAsync(ChangeVisibilityRequest request) {
+		List<CompletableFuture<ChangeMessageVisibilityBatchResult>> batches = new ArrayList<>();
+		
+		for(int from = 0; from < request.getMessages().size(); from += maxBatchEntries) {
+			CompletableFuture<ChangeMessageVisibilityBatchResult> batch = new CompletableFuture<>();
+			sqs.changeMessageVisibilityBatchAsync(toChangeVisibilityBatchRequest(request, from), handler(batch, result -> result));
+			batches.add(batch);
+		}
+		
+		return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+			ChangeVisibilityResult result = new ChangeVisibilityResult();
+			
+			for(CompletableFuture<ChangeMessageVisibilityBatchResult> batch : batches) {
+				addChangeVisibilityResult(result, request, batch.join());
+			}
+			
+			return result;
+		});
+	}
+	
+	private ChangeMessageVisibilityBatchRequest toChangeVisibilityBatchRequest(ChangeVisibilityRequest request, int from) {
+		
+		List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<ChangeMessageVisibilityBatchRequestEntry>();
+		List<Message> messages = request.getMessages();
+		
+		// SQS takes the visibility timeout in whole seconds, a partial second is rounded up.
+		int visibilityTimeout = (int)((request.getVisibilityTimeoutMillis() + 999) / 1000);
+		
+		for(int i = from; i < Math.min(from + maxBatchEntries, messages.size()); i++) {
+			
+			ChangeMessageVisibilityBatchRequestEntry entry = new ChangeMessageVisibilityBatchRequestEntry();
+			entry.setId(Integer.toString(i));
+			entry.setReceiptHandle(messages.get(i).getReceiptHandle());
+			entry.setVisibilityTimeout(visibilityTimeout);
+			entries.add(entry);
+		}
+		
+		ChangeMessageVisibilityBatchRequest changeRequest = new ChangeMessageVisibilityBatchRequest();
+		changeRequest.setRequestCredentials(credentials);
+		changeRequest.setQueueUrl(request.getQueueUrl());
+		changeRequest.setEntries(entries);
+		
+		return changeRequest;
+	}
+	
+	private void addChangeVisibilityResult(ChangeVisibilityResult result, ChangeVisibilityRequest request, ChangeMessageVisibilityBatchResult batchResult) {
+		
+		List<Message> messages = request.getMessages();
+		
+		for(ChangeMessageVisibilityBatchResultEntry entry : batchResult.getSuccessful()) {
+			result.addSuccessful(messages.get(Integer.parseInt(entry.getId())));
+		}
+		
+		for(BatchResultErrorEntry entry : batchResult.getFailed()) {
+			result.addFailed(messages.get(Integer.parseInt(entry.getId())), entry.getCode(), entry.getMessage(), entry.isSenderFault());
+		}
+	}
+    
+    /// <summary>
+    /// Returns the handler of an asynchronous call completing the future with the converted result of the call.
+	/// </summary>
+	private static <Q extends AmazonWebServiceRequest, R, T> AsyncHandler<Q, R> handler(CompletableFuture<T> future, ResultConverter<R, T> converter) {
+		return new AsyncHandler<Q, R>() {
+			@Override
+			public void onError(Exception exception) {
+				future.completeExceptionally(exception);
+			}
+			
+			@Override
+			public void onSuccess(Q request, R result) {
+				try {
+					future.complete(converter.convert(result));
+				}
+				catch (RuntimeException e) {
+					future.completeExceptionally(e);
+				}
+			}
+		};
+	}
+	
+	private interface ResultConverter<R, T> {
+		T convert(R result);
+	}
+    
+    /// <summary>
+    /// Must be called by the client before trying to send or pull queue to get the
+    /// Queue URL associated with the Queue, the client is attempting to perform the operation.
+    /// The URL is looked up with GetQueueUrl, and the queue created with CreateQueue when it does not exist,
+    /// once per queue name. Later calls return the URL from memory. A queue name ending with .fifo is created as
+    /// a FIFO queue.
+	/// </summary>
+	/// <parameter name ="queueName">Represents the name of the Queue.</parameter>
+    /// <Returns>Returns the Queue URL associated with the Queue.</Returns>
+	public String getOrCreateQueue(String queueName) {
+		return queueUrls.computeIfAbsent(queueName, this::resolveQueueUrl);
+	}
+	
+	private String resolveQueueUrl(String queueName) {
+		
+		GetQueueUrlRequest getQueueUrlRequest = new GetQueueUrlRequest(queueName);
+		getQueueUrlRequest.setRequestCredentials(credentials);
+		
+		try {
+			return sqs.getQueueUrl(getQueueUrlRequest).getQueueUrl();
+		}
+		catch (QueueDoesNotExistException e) {
+			CreateQueueRequest createQueueRequest = new CreateQueueRequest(queueName);
+			createQueueRequest.setRequestCredentials(credentials);
+			
+			if(queueName.endsWith(fifoSuffix)) {
+				createQueueRequest.addAttributesEntry("FifoQueue", "true");
+			}
+			
+			// CreateQueue returns the URL of the existing queue when another client created it in between.
+			return sqs.createQueue(createQueueRequest).getQueueUrl();
+		}
+	}
+}
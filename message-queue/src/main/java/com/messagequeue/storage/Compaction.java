@@ -0,0 +1,178 @@
+package com.messagequeue.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/// <summary>
+/// Compaction of a single full segment, prepared by FileQueueStore.prepareCompaction and swapped in by
+/// FileQueueStore.completeCompaction. The records that were not deleted when the compaction was prepared
+/// are copied to a new file and every run of deleted records is replaced by a gap record.
+///
+/// The copy works on a snapshot of the segment taken when the compaction was prepared. Full segments are
+/// never written to again, so the copy runs without holding any lock while producers and consumers keep
+/// using the queue. Records deleted during the copy are still copied and are removed by a later compaction.
+/// </summary>
+public class Compaction {
+
+	static final String suffix = ".compacting";
+
+	private static final int chunkBytes = 64 * 1024;
+
+	private final File directory;
+	private final Segment segment;
+	private final ByteBuffer records;
+	private final int[] offsets;
+	private final BitSet live;
+
+	private File file;
+	private int[] compactedOffsets;
+	private long compactedBytes;
+	private int holeCount;
+
+	// Throttling state of the running copy.
+	private ByteBuffer chunk;
+	private FileChannel channel;
+	private long bytesPerSecond;
+	private long started;
+
+	Compaction(File directory, Segment segment, ByteBuffer records, int[] offsets, BitSet live) {
+		this.directory = directory;
+		this.segment = segment;
+		this.records = records;
+		this.offsets = offsets;
+		this.live = live;
+	}
+
+	/// <summary>
+	/// Copies the live records of the segment to the compacted file and forces it to the disk, writing at most
+	/// the given number of bytes per second so the copy does not starve the producers and consumers of disk bandwidth.
+	/// </summary>
+	/// <parameter name="bytesPerSecond">Represents the maximum write rate, zero or less for no limit.</parameter>
+	public void write(long bytesPerSecond) throws IOException, InterruptedException {
+		this.bytesPerSecond = bytesPerSecond;
+		this.started = System.nanoTime();
+
+		file = File.createTempFile(Segment.prefix, suffix, directory);
+		compactedOffsets = new int[Math.max(offsets.length, 64)];
+		chunk = ByteBuffer.allocate(chunkBytes);
+		int gap = 0;
+
+		try (FileChannel output = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+			channel = output;
+
+			for (int i = 0; i < offsets.length; i++) {
+				if (!live.get(i)) {
+					compactedOffsets[i] = -1;
+					gap++;
+					continue;
+				}
+
+				gap = writeGap(gap);
+
+				int length = RecordCodec.readRecordLength(records, offsets[i]);
+				reserve(length);
+				compactedOffsets[i] = (int)(compactedBytes + chunk.position());
+
+				ByteBuffer record = records.duplicate();
+				record.limit(offsets[i] + length).position(offsets[i]);
+				chunk.put(record);
+			}
+
+			writeGap(gap);
+			flush();
+			output.force(false);
+		}
+		catch (IOException | InterruptedException | RuntimeException e) {
+			discard();
+			throw e;
+		}
+		finally {
+			channel = null;
+			chunk = null;
+		}
+	}
+
+	/// <summary>Removes the compacted file when the compaction is not swapped in.</summary>
+	public void discard() {
+		if (file != null) {
+			file.delete();
+		}
+	}
+
+	public long getBaseSequence() {
+		return segment.getBaseSequence();
+	}
+
+	/// <summary>Returns the size of the segment file before the compaction.</summary>
+	public long getOriginalBytes() {
+		return records.limit();
+	}
+
+	/// <summary>Returns the size of the compacted file.</summary>
+	public long getCompactedBytes() {
+		return compactedBytes;
+	}
+
+	Segment getSegment() {
+		return segment;
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	int[] getCompactedOffsets() {
+		return compactedOffsets;
+	}
+
+	int getHoleCount() {
+		return holeCount;
+	}
+
+	/// <summary>Writes a gap record for the deleted positions skipped since the last live record.</summary>
+	/// <Returns>Zero, the length of the gap once it is written.</Returns>
+	private int writeGap(int positions) throws IOException, InterruptedException {
+		if (positions > 0) {
+			reserve(RecordCodec.headerBytes + RecordCodec.checksumBytes);
+			RecordCodec.encodeGap(chunk, positions);
+			holeCount += positions;
+		}
+
+		return 0;
+	}
+
+	/// <summary>Makes room for a record of the given length in the chunk, flushing the chunk when it is full.</summary>
+	private void reserve(int length) throws IOException, InterruptedException {
+		if (chunk.remaining() < length) {
+			flush();
+		}
+
+		if (chunk.remaining() < length) {
+			chunk = ByteBuffer.allocate(length);
+		}
+	}
+
+	/// <summary>Writes the chunk to the compacted file and waits as long as the copy runs ahead of the write rate.</summary>
+	private void flush() throws IOException, InterruptedException {
+		chunk.flip();
+
+		while (chunk.hasRemaining()) {
+			compactedBytes += channel.write(chunk);
+		}
+
+		chunk.clear();
+
+		if (bytesPerSecond > 0) {
+			long dueMillis = compactedBytes * 1000 / bytesPerSecond;
+			long elapsedMillis = (System.nanoTime() - started) / 1000000;
+
+			if (dueMillis > elapsedMillis) {
+				Thread.sleep(dueMillis - elapsedMillis);
+			}
+		}
+	}
+}
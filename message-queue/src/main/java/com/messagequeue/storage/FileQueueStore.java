@@ -0,0 +1,781 @@
+package com.messagequeue.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.services.model.ChangeVisibilityResult;
+import com.services.model.DeleteMessageResult;
+import com.services.model.Message;
+import com.services.model.MessageStatus;
+import com.utilities.MillisClock;
+
+/// <summary>
+/// Storage engine of a single file queue. Messages are appended to fixed-size segment files that are
+/// never rewritten, and the state of every record (pending, delayed or in-flight until a deadline, deleted) is kept
+/// in a sidecar state file per segment, where a state change is a single in-place slot write. The pending
+/// and in-flight records are kept in an in-memory index that is rebuilt from the state files when the
+/// store is opened, so push, receive and delete only cost work proportional to the size of the batch.
+/// A segment file is dropped once all of its records are deleted, and a full segment file holding mostly
+/// deleted records is replaced by a compacted copy in the background through prepareCompaction and
+/// completeCompaction.
+/// Changes are forced to the disk according to the FsyncPolicy of the store before the changing call returns,
+/// or later by syncIfDue for the INTERVAL policy.
+/// Callers serialize changes through the QueueLock of the directory and reload the store when the
+/// version of the queue files no longer matches the version the store was loaded from.
+/// Receipt ids are reserved in blocks recorded in the receipts file of the directory, so a reloaded or
+/// reopened store never hands out a receipt id again, and a stale receipt never identifies another message.
+///
+/// Opening the store recovers it from a crash: every segment loads its offset index from its last checkpoint,
+/// checks the records written after the checkpoint against their checksums and drops the torn records at
+/// its tail. Checkpoints are written after the segments are forced, so only the records written since the
+/// last force of a segment are scanned and the recovery time does not grow with the size of the queue.
+/// </summary>
+public class FileQueueStore {
+
+	public static final long defaultSegmentBytes = 16L * 1024 * 1024;
+
+	private static final long minuteMillis = 60 * 1000;
+
+	// Bytes appended to the active segment after which a force also writes its checkpoint.
+	static final long checkpointBytes = 1024 * 1024;
+
+	// File holding the highest receipt id reserved so far, and the number of receipt ids reserved at once.
+	static final String receiptsFileName = "receipts";
+	private static final long receiptBlock = 1024;
+
+	private final File directory;
+	private final long segmentBytes;
+	private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+	// In-flight and delayed records by sequence number, and ordered by deadline so expired records are found first.
+	private final Map<Long, InflightRecord> inflight = new HashMap<>();
+	private final TreeSet<InflightRecord> deadlines = new TreeSet<>();
+	private final Map<Long, Long> receipts = new HashMap<>();
+	private long lastReceiptId;
+	private long reservedReceiptId;
+	private final FileChannel receiptsChannel;
+	private int delayedRecords;
+	private volatile int pendingCount;
+	private volatile int inflightCount;
+	private volatile int delayedCount;
+
+	// Version of the queue files the in-memory index reflects, and whether the files were changed since it was set.
+	private long version;
+	private boolean changed;
+
+	// Reused between appends to encode the records of a batch.
+	private ByteBuffer writeBuffer = ByteBuffer.allocate(64 * 1024);
+
+	// Segments changed since they were last forced to the disk, and the bytes appended to them.
+	private FsyncPolicy fsyncPolicy = FsyncPolicy.never();
+	private final Set<Segment> unsynced = new LinkedHashSet<>();
+	private long unsyncedBytes;
+	private long lastSyncMillis;
+
+	// Time of the visibility timeouts, delays and fsync intervals of the store.
+	private final MillisClock clock;
+
+	// Outcome of the recovery run when the store was opened.
+	private final long recoveryMillis;
+	private long truncatedBytes;
+
+	public FileQueueStore(File directory) throws IOException {
+		this(directory, defaultSegmentBytes);
+	}
+
+	public FileQueueStore(File directory, long segmentBytes) throws IOException {
+		this(directory, segmentBytes, MillisClock.monotonic());
+	}
+
+	/// <summary>Opens the store located in the given directory, creating it when it does not exist.</summary>
+	/// <parameter name="directory">Represents the queue directory.</parameter>
+	/// <parameter name="segmentBytes">Represents the size after which a new segment file is started.</parameter>
+	/// <parameter name="clock">Represents the clock of the deadlines of the store, in epoch millis so they stay
+	/// meaningful to the other processes using the queue and after a restart.</parameter>
+	public FileQueueStore(File directory, long segmentBytes, MillisClock clock) throws IOException {
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		this.clock = clock;
+		this.lastSyncMillis = clock.millis();
+
+		long started = System.nanoTime();
+		directory.mkdirs();
+
+		// Copies of compactions interrupted by a crash were never swapped in.
+		for (File file : directory.listFiles((dir, name) -> name.endsWith(Compaction.suffix))) {
+			file.delete();
+		}
+
+		File[] files = directory.listFiles((dir, name) -> Segment.isSegmentFile(name));
+		for (File file : files) {
+			Segment segment = Segment.open(file);
+			segments.put(segment.getBaseSequence(), segment);
+			pendingCount += segment.getPending().cardinality();
+			truncatedBytes += segment.getTruncatedBytes();
+			loadInflight(segment);
+		}
+
+		if (segments.isEmpty()) {
+			segments.put(0L, Segment.create(directory, 0));
+		}
+
+		receiptsChannel = FileChannel.open(new File(directory, receiptsFileName).toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		reservedReceiptId = readReservedReceiptId();
+		lastReceiptId = Math.max(lastReceiptId, reservedReceiptId);
+
+		// Torn records dropped by the recovery changed the segments other processes may have loaded.
+		changed = truncatedBytes > 0;
+
+		migrateLegacyQueue();
+		recoveryMillis = (System.nanoTime() - started) / 1000000;
+
+		// Opening an intact queue, as every reload after a change by another process does, is not reported.
+		if (truncatedBytes > 0) {
+			System.out.println("Recovered file queue " + directory + " in " + recoveryMillis + " ms: " + segments.size() + " segments, "
+					+ pendingCount + " pending and " + inflightCount + " in-flight messages, " + truncatedBytes + " bytes of torn records truncated.");
+		}
+	}
+
+	/// <summary>
+	/// Appends the messages to the active segment, starting a new segment when it is full. A message with
+	/// delay seconds is stored at once as delayed until its visible-at time, and is received from then on. The
+	/// visible-at time is also written to the record, so a crash or a reload before the delayed state of the
+	/// record is forced leaves the message delayed rather than pending.
+	/// </summary>
+	/// <parameter name="messages">Represents the messages to be queued.</parameter>
+	public synchronized void append(List<Message> messages) throws IOException {
+		Segment active = segments.lastEntry().getValue();
+		long firstSequence = active.getNextSequence();
+		long activeBytes = active.getSizeBytes();
+		long now = clock.millis();
+		writeBuffer.clear();
+
+		for (Message message : messages) {
+			if (activeBytes >= segmentBytes) {
+				writeBuffer.flip();
+				unsyncedBytes += writeBuffer.remaining();
+				active.append(writeBuffer);
+				active.close();
+				unsynced.add(active);
+				writeBuffer.clear();
+				active = Segment.create(directory, active.getNextSequence());
+				segments.put(active.getBaseSequence(), active);
+				activeBytes = 0;
+			}
+
+			byte[] body = message.getMessage() != null ? message.getMessage().getBytes(StandardCharsets.UTF_8) : new byte[0];
+			int length = RecordCodec.encodedLength(body);
+			ensureWriteCapacity(length);
+			RecordCodec.encode(writeBuffer, message, body, visibleAt(message, now));
+			activeBytes += length;
+		}
+
+		writeBuffer.flip();
+		unsyncedBytes += writeBuffer.remaining();
+		active.append(writeBuffer);
+		unsynced.add(active);
+		pendingCount += messages.size();
+		changed = true;
+
+		for (int i = 0; i < messages.size(); i++) {
+			long visibleAt = visibleAt(messages.get(i), now);
+
+			if (visibleAt >= 0) {
+				markDelayed(firstSequence + i, visibleAt);
+			}
+		}
+
+		syncByPolicy();
+	}
+
+	/// <summary>Returns the epoch millis the message appended now becomes visible, -1 when it is not delayed.</summary>
+	private static long visibleAt(Message message, long now) {
+		Integer delaySeconds = message.getDelaySeconds();
+		return delaySeconds != null && delaySeconds > 0 ? now + delaySeconds * 1000L : -1;
+	}
+
+	/// <summary>
+	/// Receives up to batch size records and marks them as in-flight until the visibility timeout has passed.
+	/// Records whose deadline has passed, in-flight records past their visibility timeout and delayed records
+	/// past their visible-at time, are received first, followed by the pending records in the order they were queued.
+	/// </summary>
+	/// <parameter name="batchSize">Represents the maximum number of messages to receive.</parameter>
+	/// <parameter name="visibilityTimeoutMillis">Represents the visibility timeout, in milliseconds, of the received messages.</parameter>
+	/// <parameter name="now">Represents the time the messages are received, in epoch millis of the clock of the store.</parameter>
+	/// <Returns>The received messages, empty when there are no messages to process.</Returns>
+	public synchronized List<Message> receive(int batchSize, long visibilityTimeoutMillis, long now) throws IOException {
+		List<Long> sequences = new ArrayList<>();
+		List<Integer> priorAttempts = new ArrayList<>();
+
+		for (InflightRecord record : deadlines) {
+			if (sequences.size() >= batchSize || record.deadline > now) {
+				break;
+			}
+
+			sequences.add(record.sequence);
+			priorAttempts.add(record.delayed ? record.priorAttempts : record.priorAttempts + 1);
+		}
+
+		for (Segment segment : segments.values()) {
+			BitSet pending = segment.getPending();
+
+			for (int i = pending.nextSetBit(0); i >= 0 && sequences.size() < batchSize; i = pending.nextSetBit(i + 1)) {
+				sequences.add(segment.getBaseSequence() + i);
+				priorAttempts.add(null);
+			}
+
+			if (sequences.size() >= batchSize) {
+				break;
+			}
+		}
+
+		List<Message> messages = read(sequences);
+		long deadline = now + visibilityTimeoutMillis;
+		Date receivedTime = messages.isEmpty() ? null : new Date(now);
+
+		for (int i = 0; i < messages.size(); i++) {
+			Message message = messages.get(i);
+
+			if (priorAttempts.get(i) != null) {
+				message.setPriorAttempts(priorAttempts.get(i));
+			}
+
+			message.setMessageStatus(MessageStatus.INFLIGHT);
+			message.setinvisibleFromTime(receivedTime);
+			message.setReceiptId(nextReceiptId());
+			markInflight(sequences.get(i), message.getReceiptId(), deadline, message.getPriorAttempts());
+		}
+
+		if (!messages.isEmpty()) {
+			syncByPolicy();
+		}
+
+		return messages;
+	}
+
+	/// <summary>Deletes the received messages identified by their receipt ids.</summary>
+	/// <parameter name="messages">Represents the messages returned by a previous receive.</parameter>
+	/// <Returns>The outcome of the delete for every message.</Returns>
+	public synchronized DeleteMessageResult delete(List<Message> messages) throws IOException {
+		DeleteMessageResult result = new DeleteMessageResult();
+
+		for (Message message : messages) {
+			Long sequence = receipts.get(message.getReceiptId());
+
+			if (sequence != null) {
+				markDeleted(sequence);
+				result.addSuccessful(message);
+			}
+			else {
+				result.addFailed(message, DeleteMessageResult.receiptHandleIsInvalid,
+						"The receipt handle " + message.getReceiptId() + " does not identify an in-flight message.", true);
+			}
+		}
+
+		dropDeletedSegments();
+
+		if (!result.getSuccessful().isEmpty()) {
+			syncByPolicy();
+		}
+
+		return result;
+	}
+
+	/// <summary>
+	/// Claims the in-flight records past their visibility timeout that were received the max receive count, to be
+	/// moved to the dead-letter queue. A claimed record stays in flight until the claim expires, so the caller
+	/// appends the returned messages to the dead-letter queue and then deletes them here by their receipt ids. A
+	/// crash in between leaves a message in both queues rather than in none, as the record is claimed again once
+	/// the claim expires.
+	/// </summary>
+	/// <parameter name="maxReceiveCount">Represents the number of receives after which a record is moved.</parameter>
+	/// <parameter name="now">Represents the current time, in epoch millis of the clock of the store.</parameter>
+	/// <parameter name="claimMillis">Represents the time the claimed records are kept from receives.</parameter>
+	/// <Returns>The claimed messages, with their receive count and the receipt id of the claim.</Returns>
+	public synchronized List<Message> claimDeadLetters(int maxReceiveCount, long now, long claimMillis) throws IOException {
+		List<Long> sequences = new ArrayList<>();
+		List<Integer> priorAttempts = new ArrayList<>();
+
+		for (InflightRecord record : deadlines) {
+			if (record.deadline > now) {
+				break;
+			}
+
+			if (!record.delayed && record.priorAttempts + 1 >= maxReceiveCount) {
+				sequences.add(record.sequence);
+				priorAttempts.add(record.priorAttempts);
+			}
+		}
+
+		if (sequences.isEmpty()) {
+			return new ArrayList<>();
+		}
+
+		List<Message> messages = read(sequences);
+
+		for (int i = 0; i < messages.size(); i++) {
+			Message message = messages.get(i);
+			message.setPriorAttempts(priorAttempts.get(i) + 1);
+			message.setMessageStatus(MessageStatus.NEW);
+			message.setinvisibleFromTime(null);
+			message.setReceiptId(nextReceiptId());
+
+			// The claim keeps the prior attempts, so an expired claim is claimed again rather than received.
+			markInflight(sequences.get(i), message.getReceiptId(), now + claimMillis, priorAttempts.get(i));
+		}
+
+		syncByPolicy();
+		return messages;
+	}
+
+	/// <summary>
+	/// Moves the deadline of the received messages identified by their receipt ids to the visibility timeout
+	/// from now, a single slot write per message. A message past its visibility timeout is reported as failed.
+	/// </summary>
+	/// <parameter name="messages">Represents the messages returned by a previous receive.</parameter>
+	/// <parameter name="visibilityTimeoutMillis">Represents the new visibility timeout in milliseconds.</parameter>
+	/// <parameter name="now">Represents the time of the change, in epoch millis of the clock of the store.</parameter>
+	/// <Returns>The outcome of the change for every message.</Returns>
+	public synchronized ChangeVisibilityResult changeVisibility(List<Message> messages, long visibilityTimeoutMillis, long now) throws IOException {
+		ChangeVisibilityResult result = new ChangeVisibilityResult();
+
+		for (Message message : messages) {
+			Long sequence = receipts.get(message.getReceiptId());
+			InflightRecord record = sequence != null ? inflight.get(sequence) : null;
+
+			if (record != null && record.deadline > now) {
+				markInflight(sequence, record.receiptId, now + visibilityTimeoutMillis, record.priorAttempts);
+				result.addSuccessful(message);
+			}
+			else {
+				result.addFailed(message, DeleteMessageResult.receiptHandleIsInvalid,
+						"The receipt handle " + message.getReceiptId() + " does not identify an in-flight message.", true);
+			}
+		}
+
+		if (!result.getSuccessful().isEmpty()) {
+			syncByPolicy();
+		}
+
+		return result;
+	}
+
+	/// <summary>
+	/// Prepares the compaction of the first full segment in which the share of deleted records reaches the ratio,
+	/// taking a snapshot of the segment. The compaction is run by the caller without holding any lock.
+	/// </summary>
+	/// <parameter name="minDeletedRatio">Represents the share of deleted records that makes a segment worth compacting.</parameter>
+	/// <Returns>The compaction to run, null when no segment is worth compacting.</Returns>
+	public synchronized Compaction prepareCompaction(double minDeletedRatio) throws IOException {
+		Segment active = segments.lastEntry().getValue();
+
+		for (Segment segment : segments.values()) {
+			int present = segment.getRecordCount() - segment.getHoleCount();
+			int deleted = present - segment.getLiveCount();
+
+			if (segment != active && deleted > 0 && deleted >= present * minDeletedRatio) {
+				return new Compaction(directory, segment, segment.records(), segment.getOffsets(), segment.getLiveRecords());
+			}
+		}
+
+		return null;
+	}
+
+	/// <summary>
+	/// Swaps the compacted copy written by the compaction in for its segment. The copy is discarded when the
+	/// segment was dropped or the store reloaded since the compaction was prepared, so callers hand any written
+	/// compaction to the current store of the queue and never discard it themselves.
+	/// </summary>
+	/// <parameter name="compaction">Represents a compaction whose copy was written, prepared by this store or one it replaced.</parameter>
+	/// <Returns>True when the copy was swapped in.</Returns>
+	public synchronized boolean completeCompaction(Compaction compaction) throws IOException {
+		Segment segment = segments.get(compaction.getBaseSequence());
+
+		if (segment == null || segment != compaction.getSegment()) {
+			compaction.discard();
+			return false;
+		}
+
+		segment.replace(compaction.getFile(), compaction.getCompactedOffsets(), compaction.getCompactedBytes(), compaction.getHoleCount());
+		changed = true;
+		System.out.println("Compacted segment " + compaction.getBaseSequence() + " of file queue " + directory + " from "
+				+ compaction.getOriginalBytes() + " to " + compaction.getCompactedBytes() + " bytes.");
+		return true;
+	}
+
+	/// <summary>Removes all the messages from the queue.</summary>
+	public synchronized void purge() throws IOException {
+		long nextSequence = segments.lastEntry().getValue().getNextSequence();
+
+		for (Segment segment : segments.values()) {
+			segment.delete();
+		}
+
+		segments.clear();
+		unsynced.clear();
+		unsyncedBytes = 0;
+		inflight.clear();
+		deadlines.clear();
+		receipts.clear();
+		delayedRecords = 0;
+		pendingCount = 0;
+		inflightCount = 0;
+		delayedCount = 0;
+		segments.put(nextSequence, Segment.create(directory, nextSequence));
+		changed = true;
+	}
+
+	/// <summary>
+	/// Forces every change made to the segments and their state files so far to the disk, then checkpoints the
+	/// segments that are full or have grown by the checkpoint size since their last checkpoint.
+	/// </summary>
+	public synchronized void sync() throws IOException {
+		Segment active = segments.lastEntry().getValue();
+
+		for (Segment segment : unsynced) {
+			segment.force();
+
+			if (segment != active || segment.getUncheckpointedBytes() >= checkpointBytes) {
+				segment.checkpoint();
+			}
+		}
+
+		unsynced.clear();
+		unsyncedBytes = 0;
+		lastSyncMillis = clock.millis();
+	}
+
+	/// <summary>Forces the changes to the disk when the interval of the INTERVAL policy has passed since the last force.</summary>
+	/// <parameter name="now">Represents the current time in epoch millis.</parameter>
+	public synchronized void syncIfDue(long now) throws IOException {
+		if (fsyncPolicy.getMode() == FsyncPolicy.Mode.INTERVAL && !unsynced.isEmpty()
+				&& now - lastSyncMillis >= fsyncPolicy.getThreshold()) {
+			sync();
+		}
+	}
+
+	/// <summary>Forces the pending changes to the disk and closes the files held open by the store.</summary>
+	public synchronized void close() throws IOException {
+		sync();
+
+		for (Segment segment : segments.values()) {
+			segment.checkpoint();
+			segment.close();
+		}
+
+		receiptsChannel.close();
+	}
+
+	public synchronized FsyncPolicy getFsyncPolicy() {
+		return fsyncPolicy;
+	}
+
+	public synchronized void setFsyncPolicy(FsyncPolicy fsyncPolicy) {
+		this.fsyncPolicy = fsyncPolicy;
+	}
+
+	/// <summary>Returns the number of messages waiting to be received. Does not wait for a running operation.</summary>
+	public int getPendingCount() {
+		return pendingCount;
+	}
+
+	/// <summary>Returns the number of messages received and not yet deleted. Does not wait for a running operation.</summary>
+	public int getInflightCount() {
+		return inflightCount;
+	}
+
+	/// <summary>Returns the number of delayed messages not yet visible. Does not wait for a running operation.</summary>
+	public int getDelayedCount() {
+		return delayedCount;
+	}
+
+	/// <summary>Returns the time it took to recover the store when it was opened.</summary>
+	public long getRecoveryMillis() {
+		return recoveryMillis;
+	}
+
+	/// <summary>Returns the bytes of torn records dropped from the segments when the store was opened.</summary>
+	public long getTruncatedBytes() {
+		return truncatedBytes;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
+	/// <summary>
+	/// Returns whether the queue files were changed since the last call, and clears the flag. Operations that
+	/// found nothing to change leave the files, and so the version of the queue, as they were.
+	/// </summary>
+	public synchronized boolean takeChanged() {
+		boolean result = changed;
+		changed = false;
+		return result;
+	}
+
+	public synchronized int getSegmentCount() {
+		return segments.size();
+	}
+
+	/// <summary>Reads the records with the given sequence numbers through the offset index of their segments.</summary>
+	/// <Returns>The messages in the order of the given sequence numbers.</Returns>
+	private List<Message> read(List<Long> sequences) throws IOException {
+		List<Message> messages = new ArrayList<>(sequences.size());
+
+		for (Long sequence : sequences) {
+			Segment segment = segments.floorEntry(sequence).getValue();
+			messages.add(segment.read((int)(sequence - segment.getBaseSequence())));
+		}
+
+		return messages;
+	}
+
+	/// <summary>Adds the in-flight records of a segment that has just been opened to the in-memory index.</summary>
+	private void loadInflight(Segment segment) {
+		SegmentState state = segment.getState();
+
+		for (int i = 0; i < segment.getRecordCount(); i++) {
+			if (state.getState(i) == SegmentState.inflight) {
+				InflightRecord record = new InflightRecord(segment.getBaseSequence() + i, state.getReceiptId(i), state.getDeadline(i), state.getPriorAttempts(i), false);
+				inflight.put(record.sequence, record);
+				deadlines.add(record);
+				receipts.put(record.receiptId, record.sequence);
+				lastReceiptId = Math.max(lastReceiptId, record.receiptId);
+			}
+			else if (state.getState(i) == SegmentState.delayed) {
+				InflightRecord record = new InflightRecord(segment.getBaseSequence() + i, 0, state.getDeadline(i), state.getPriorAttempts(i), true);
+				inflight.put(record.sequence, record);
+				deadlines.add(record);
+				delayedRecords++;
+			}
+		}
+
+		updateCounts();
+	}
+
+	private void markInflight(long sequence, long receiptId, long deadline, int priorAttempts) throws IOException {
+		Segment segment = segments.floorEntry(sequence).getValue();
+		int position = (int)(sequence - segment.getBaseSequence());
+
+		segment.getState().setInflight(position, receiptId, deadline, priorAttempts);
+		changed = true;
+		clearPending(segment, position);
+		removeInflight(sequence);
+
+		InflightRecord record = new InflightRecord(sequence, receiptId, deadline, priorAttempts, false);
+		inflight.put(sequence, record);
+		deadlines.add(record);
+		receipts.put(receiptId, sequence);
+		updateCounts();
+	}
+
+	private void markDelayed(long sequence, long visibleAt) throws IOException {
+		Segment segment = segments.floorEntry(sequence).getValue();
+		int position = (int)(sequence - segment.getBaseSequence());
+
+		segment.getState().setDelayed(position, visibleAt);
+		changed = true;
+		clearPending(segment, position);
+
+		InflightRecord record = new InflightRecord(sequence, 0, visibleAt, 0, true);
+		inflight.put(sequence, record);
+		deadlines.add(record);
+		delayedRecords++;
+		updateCounts();
+	}
+
+	/// <summary>
+	/// Hands out the next receipt id, reserving a new block of receipt ids in the receipts file first when the
+	/// reserved ids are used up. The reservation is forced to the disk before any of its ids is handed out.
+	/// </summary>
+	private long nextReceiptId() throws IOException {
+		if (lastReceiptId >= reservedReceiptId) {
+			ByteBuffer reserved = ByteBuffer.allocate(8);
+			reserved.putLong(lastReceiptId + receiptBlock);
+			reserved.flip();
+
+			while (reserved.hasRemaining()) {
+				receiptsChannel.write(reserved, reserved.position());
+			}
+
+			receiptsChannel.force(false);
+			reservedReceiptId = lastReceiptId + receiptBlock;
+			changed = true;
+		}
+
+		return ++lastReceiptId;
+	}
+
+	private long readReservedReceiptId() throws IOException {
+		ByteBuffer reserved = ByteBuffer.allocate(8);
+
+		while (reserved.hasRemaining()) {
+			if (receiptsChannel.read(reserved, reserved.position()) < 0) {
+				// A queue without a receipts file has handed out no receipt id beyond those of its in-flight records.
+				return 0;
+			}
+		}
+
+		reserved.flip();
+		return reserved.getLong();
+	}
+
+	private void updateCounts() {
+		inflightCount = inflight.size() - delayedRecords;
+		delayedCount = delayedRecords;
+	}
+
+	private void markDeleted(long sequence) throws IOException {
+		Segment segment = segments.floorEntry(sequence).getValue();
+		int position = (int)(sequence - segment.getBaseSequence());
+
+		segment.getState().setDeleted(position);
+		changed = true;
+		clearPending(segment, position);
+		segment.decrementLiveCount();
+		removeInflight(sequence);
+	}
+
+	private void clearPending(Segment segment, int position) {
+		if (segment.getPending().get(position)) {
+			segment.getPending().clear(position);
+			pendingCount--;
+		}
+	}
+
+	private void removeInflight(long sequence) {
+		InflightRecord previous = inflight.remove(sequence);
+
+		if (previous != null) {
+			deadlines.remove(previous);
+
+			if (previous.delayed) {
+				delayedRecords--;
+			}
+			else {
+				receipts.remove(previous.receiptId);
+			}
+
+			updateCounts();
+		}
+	}
+
+	/// <summary>Forces the changes made by the current call to the disk when the fsync policy requires it.</summary>
+	private void syncByPolicy() throws IOException {
+		switch (fsyncPolicy.getMode()) {
+			case ALWAYS:
+				sync();
+				break;
+			case BYTES:
+				if (unsyncedBytes >= fsyncPolicy.getThreshold()) {
+					sync();
+				}
+				break;
+			case INTERVAL:
+				syncIfDue(clock.millis());
+				break;
+			default:
+				break;
+		}
+	}
+
+	/// <summary>Drops the segment files whose records are all deleted. The active segment is always kept.</summary>
+	private void dropDeletedSegments() throws IOException {
+		Iterator<Segment> iterator = segments.values().iterator();
+		Segment active = segments.lastEntry().getValue();
+
+		while (iterator.hasNext()) {
+			Segment segment = iterator.next();
+
+			if (segment != active && segment.getLiveCount() == 0) {
+				segment.delete();
+				unsynced.remove(segment);
+				iterator.remove();
+			}
+		}
+	}
+
+	/// <summary>
+	/// Moves the messages of a queue file written in the legacy text format into the segments. Messages
+	/// that were in-flight stay in-flight until their original invisible from time plus the default
+	/// visibility timeout has passed. The legacy file is renamed once its messages are stored, so the
+	/// migration runs only once.
+	/// </summary>
+	private void migrateLegacyQueue() throws IOException {
+		File legacy = new File(directory, LegacyQueueReader.fileName);
+
+		if (!legacy.isFile() || legacy.length() == 0) {
+			return;
+		}
+
+		List<Message> messages = LegacyQueueReader.read(legacy);
+		long firstSequence = segments.lastEntry().getValue().getNextSequence();
+		append(messages);
+
+		for (int i = 0; i < messages.size(); i++) {
+			Message message = messages.get(i);
+
+			if (message.getMessageStatus() == MessageStatus.INFLIGHT && message.getinvisibleFromTime() != null) {
+				long deadline = message.getinvisibleFromTime().getTime() + LegacyQueueReader.visibilityTimeout * minuteMillis;
+				markInflight(firstSequence + i, nextReceiptId(), deadline, message.getPriorAttempts());
+			}
+		}
+
+		legacy.renameTo(new File(directory, LegacyQueueReader.fileName + ".migrated"));
+	}
+
+	private void ensureWriteCapacity(int length) {
+		if (writeBuffer.remaining() < length) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(writeBuffer.capacity() * 2, writeBuffer.position() + length));
+			writeBuffer.flip();
+			larger.put(writeBuffer);
+			writeBuffer = larger;
+		}
+	}
+
+	/// <summary>
+	/// State of a record that has been received and not yet deleted, or of a delayed record that is not visible
+	/// yet, whose deadline is its visible-at time and which has no receipt.
+	/// </summary>
+	private static class InflightRecord implements Comparable<InflightRecord> {
+		private final long sequence;
+		private final long receiptId;
+		private final long deadline;
+		private final int priorAttempts;
+		private final boolean delayed;
+
+		InflightRecord(long sequence, long receiptId, long deadline, int priorAttempts, boolean delayed) {
+			this.sequence = sequence;
+			this.receiptId = receiptId;
+			this.deadline = deadline;
+			this.priorAttempts = priorAttempts;
+			this.delayed = delayed;
+		}
+
+		@Override
+		public int compareTo(InflightRecord other) {
+			int result = Long.compare(deadline, other.deadline);
+			return result != 0 ? result : Long.compare(sequence, other.sequence);
+		}
+	}
+}
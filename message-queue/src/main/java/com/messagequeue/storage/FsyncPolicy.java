@@ -0,0 +1,77 @@
+package com.messagequeue.storage;
+
+/// <summary>
+/// Policy deciding when the changes of a file queue are forced to the disk, and therefore how much
+/// acknowledged data can be lost when the machine crashes:
+///
+///   ALWAYS    every push is forced before it is acknowledged, nothing acknowledged is lost.
+///   INTERVAL  changes are forced at most the given number of milliseconds after they are written.
+///   BYTES     changes are forced once the given number of bytes has been written since the last force.
+///   NEVER     changes are left to the operating system to write back.
+///
+/// A crash of the process alone never loses acknowledged data, whatever the policy.
+/// </summary>
+public final class FsyncPolicy {
+
+	public enum Mode {
+		ALWAYS,
+		INTERVAL,
+		BYTES,
+		NEVER
+	}
+
+	private final Mode mode;
+	private final long threshold;
+
+	private FsyncPolicy(Mode mode, long threshold) {
+		this.mode = mode;
+		this.threshold = threshold;
+	}
+
+	public static FsyncPolicy always() {
+		return new FsyncPolicy(Mode.ALWAYS, 0);
+	}
+
+	public static FsyncPolicy everyMillis(long millis) {
+		return new FsyncPolicy(Mode.INTERVAL, millis);
+	}
+
+	public static FsyncPolicy everyBytes(long bytes) {
+		return new FsyncPolicy(Mode.BYTES, bytes);
+	}
+
+	public static FsyncPolicy never() {
+		return new FsyncPolicy(Mode.NEVER, 0);
+	}
+
+	/// <summary>Parses a policy written as always, never, interval:[millis] or bytes:[bytes].</summary>
+	/// <parameter name="text">Represents the policy as written in the configuration.</parameter>
+	public static FsyncPolicy parse(String text) {
+		String[] tokens = text.trim().split(":");
+		Mode mode = Mode.valueOf(tokens[0].toUpperCase());
+
+		if (mode == Mode.INTERVAL || mode == Mode.BYTES) {
+			if (tokens.length != 2) {
+				throw new IllegalArgumentException("Missing threshold in fsync policy " + text);
+			}
+
+			return new FsyncPolicy(mode, Long.parseLong(tokens[1]));
+		}
+
+		return new FsyncPolicy(mode, 0);
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	/// <summary>Returns the milliseconds of the INTERVAL policy or the bytes of the BYTES policy.</summary>
+	public long getThreshold() {
+		return threshold;
+	}
+
+	@Override
+	public String toString() {
+		return threshold > 0 ? mode.name().toLowerCase() + ":" + threshold : mode.name().toLowerCase();
+	}
+}
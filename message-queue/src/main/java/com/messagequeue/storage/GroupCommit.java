@@ -0,0 +1,104 @@
+package com.messagequeue.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.services.model.Message;
+
+/// <summary>
+/// Merges the pushes of concurrent producers into a single write. A producer queues its messages and
+/// then competes for the leader lock; the producer that gets it writes the messages of every producer
+/// queued so far in one go, while the others wait for the lock. A producer that gets the lock and finds
+/// its messages already written by an earlier leader returns straight away. Every producer returns only
+/// once the write covering its messages has completed, so it inherits the durability of that write.
+/// </summary>
+public class GroupCommit {
+
+	/// <summary>Writes the merged messages of a group of producers.</summary>
+	@FunctionalInterface
+	public interface Writer {
+		void write(List<Message> messages) throws IOException;
+	}
+
+	private final Writer writer;
+	private final ConcurrentLinkedQueue<Request> requests = new ConcurrentLinkedQueue<>();
+	private final ReentrantLock leader = new ReentrantLock();
+
+	public GroupCommit(Writer writer) {
+		this.writer = writer;
+	}
+
+	/// <summary>
+	/// Writes the messages together with the messages of the other producers waiting to write. A failed write
+	/// fails every producer of its group with the failure of the write.
+	/// </summary>
+	/// <parameter name="messages">Represents the messages of this producer.</parameter>
+	public void append(List<Message> messages) throws IOException {
+		Request request = new Request(messages);
+		requests.add(request);
+
+		leader.lock();
+
+		try {
+			if (!request.done) {
+				writeGroup();
+			}
+		}
+		finally {
+			leader.unlock();
+		}
+
+		if (request.failure instanceof IOException) {
+			throw (IOException) request.failure;
+		}
+
+		if (request.failure instanceof RuntimeException) {
+			throw (RuntimeException) request.failure;
+		}
+
+		if (request.failure instanceof Error) {
+			throw (Error) request.failure;
+		}
+	}
+
+	/// <summary>Writes the messages of every queued request and completes the requests.</summary>
+	private void writeGroup() {
+		List<Request> group = new ArrayList<>();
+		List<Message> messages = new ArrayList<>();
+		Request next;
+
+		while ((next = requests.poll()) != null) {
+			group.add(next);
+			messages.addAll(next.messages);
+		}
+
+		Throwable failure = null;
+
+		try {
+			writer.write(messages);
+		}
+		catch (IOException | RuntimeException | Error e) {
+			failure = e;
+		}
+		finally {
+			for (Request request : group) {
+				request.failure = failure;
+				request.done = true;
+			}
+		}
+	}
+
+	/// <summary>Messages of a single producer waiting to be written. Accessed under the leader lock.</summary>
+	private static class Request {
+		private final List<Message> messages;
+		private boolean done;
+		private Throwable failure;
+
+		Request(List<Message> messages) {
+			this.messages = messages;
+		}
+	}
+}
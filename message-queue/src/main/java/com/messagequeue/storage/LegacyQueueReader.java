@@ -0,0 +1,100 @@
+package com.messagequeue.storage;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.services.model.Message;
+import com.services.model.MessageStatus;
+
+/// <summary>
+/// Reads the queue files written before the segment store, where every message is a single line in the
+/// pipe-delimited format STATUS|priorAttempts|invisibleFromTime|receiptId|content. Used to migrate those
+/// files into the segment store when a queue is opened.
+/// </summary>
+final class LegacyQueueReader {
+
+	static final String fileName = "messages";
+
+	// Visibility timeout, in minutes, of the messages that were in-flight in the legacy file.
+	static final int visibilityTimeout = 5;
+
+	private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+	private static final int fieldCount = 5;
+
+	private LegacyQueueReader() {}
+
+	/// <summary>Reads all the messages of the legacy queue file.</summary>
+	/// <parameter name="file">Represents the legacy messages file.</parameter>
+	/// <Returns>The messages in the order they appear in the file.</Returns>
+	static List<Message> read(File file) throws IOException {
+		List<Message> messages = new ArrayList<>();
+
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				Message message = parse(line);
+
+				if (message != null) {
+					messages.add(message);
+				}
+			}
+		}
+
+		return messages;
+	}
+
+	/// <summary>Converts a line of the legacy queue file into a Message object.</summary>
+	/// <parameter name = "line">String representation of the message.</parameter>
+	/// <Returns>Message Object, null when the line is not a valid message.</Returns>
+	static Message parse(String line) {
+		int[] separators = new int[fieldCount - 1];
+		int from = 0;
+
+		// The content is the last field and may itself contain the separator.
+		for (int i = 0; i < separators.length; i++) {
+			separators[i] = line.indexOf('|', from);
+
+			if (separators[i] < 0) {
+				return null;
+			}
+
+			from = separators[i] + 1;
+		}
+
+		try {
+			Message message = new Message();
+			message.setMessageStatus(MessageStatus.valueOf(line.substring(0, separators[0])));
+			message.setPriorAttempts(Integer.parseInt(line.substring(separators[0] + 1, separators[1])));
+
+			String invisibleFromTime = line.substring(separators[1] + 1, separators[2]);
+			if (!invisibleFromTime.isEmpty()) {
+				LocalDateTime time = LocalDateTime.parse(invisibleFromTime, formatter);
+				message.setinvisibleFromTime(Date.from(time.atZone(ZoneId.systemDefault()).toInstant()));
+			}
+
+			String receiptId = line.substring(separators[2] + 1, separators[3]);
+			if (!receiptId.isEmpty()) {
+				message.setReceiptId(Long.parseLong(receiptId));
+			}
+
+			message.setMessage(line.substring(separators[3] + 1));
+			return message;
+		}
+		catch (IllegalArgumentException | DateTimeParseException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package com.messagequeue.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/// <summary>
+/// Lock of a file queue directory. Threads of this process are serialized by an in-memory StampedLock,
+/// so a waiting thread is handed the lock as soon as it is released, and processes are serialized by an
+/// exclusive FileChannel lock on the lock file, which the operating system releases when the process dies.
+///
+/// The lock file also holds a version number that every writer increments before releasing the lock.
+/// A writer that finds a version different from the one its in-memory index was built from knows that
+/// the queue files were changed by someone else and reloads the index.
+///
+/// Readers that only look at the in-memory index (counts, metrics) use an optimistic read stamp and
+/// never block writers.
+/// </summary>
+public class QueueLock {
+
+	static final String fileName = "queue.lock";
+
+	private static final ConcurrentHashMap<String, QueueLock> locks = new ConcurrentHashMap<>();
+
+	private final File file;
+	private final StampedLock local = new StampedLock();
+	private final ByteBuffer versionBuffer = ByteBuffer.allocate(8);
+	private FileChannel channel;
+	private FileLock fileLock;
+	private long writeStamp;
+
+	private QueueLock(File directory) {
+		this.file = new File(directory, fileName);
+	}
+
+	/// <summary>
+	/// Returns the lock of the queue directory. The FileChannel lock is held on behalf of the whole
+	/// process, so every user of the same directory in this process shares the same instance.
+	/// </summary>
+	/// <parameter name="directory">Represents the queue directory.</parameter>
+	public static QueueLock forDirectory(File directory) throws IOException {
+		String key = directory.getCanonicalPath();
+		return locks.computeIfAbsent(key, k -> new QueueLock(new File(k)));
+	}
+
+	/// <summary>Acquires the lock exclusively, waiting for other threads and processes to release it.</summary>
+	/// <Returns>The version of the queue files at the time the lock is acquired.</Returns>
+	public long lockWrite() throws IOException {
+		long stamp = local.writeLock();
+
+		try {
+			if (channel == null || !channel.isOpen()) {
+				file.getParentFile().mkdirs();
+				channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			}
+
+			fileLock = channel.lock();
+			writeStamp = stamp;
+			return readVersion();
+		}
+		catch (IOException | RuntimeException e) {
+			local.unlockWrite(stamp);
+			throw e;
+		}
+	}
+
+	/// <summary>
+	/// Records that the queue files were changed under the lock. Must be called while holding the lock.
+	/// </summary>
+	/// <Returns>The new version of the queue files.</Returns>
+	public long commit() throws IOException {
+		long version = readVersion() + 1;
+
+		versionBuffer.clear();
+		versionBuffer.putLong(version);
+		versionBuffer.flip();
+
+		while (versionBuffer.hasRemaining()) {
+			channel.write(versionBuffer, versionBuffer.position());
+		}
+
+		return version;
+	}
+
+	/// <summary>Releases the lock acquired by lockWrite.</summary>
+	public void unlockWrite() throws IOException {
+		try {
+			if (fileLock != null) {
+				fileLock.release();
+				fileLock = null;
+			}
+		}
+		finally {
+			local.unlockWrite(writeStamp);
+		}
+	}
+
+	/// <summary>Returns a stamp for an optimistic read of the in-memory state, zero when the lock is held exclusively.</summary>
+	public long tryOptimisticRead() {
+		return local.tryOptimisticRead();
+	}
+
+	/// <summary>Returns true when no writer acquired the lock since the stamp was issued.</summary>
+	public boolean validate(long stamp) {
+		return local.validate(stamp);
+	}
+
+	/// <summary>Acquires the in-process lock for reading, waiting for a writer of this process to release it.</summary>
+	public long lockRead() {
+		return local.readLock();
+	}
+
+	public void unlockRead(long stamp) {
+		local.unlockRead(stamp);
+	}
+
+	private long readVersion() throws IOException {
+		versionBuffer.clear();
+
+		while (versionBuffer.hasRemaining()) {
+			if (channel.read(versionBuffer, versionBuffer.position()) < 0) {
+				// A new lock file has no version yet.
+				return 0;
+			}
+		}
+
+		versionBuffer.flip();
+		return versionBuffer.getLong();
+	}
+}
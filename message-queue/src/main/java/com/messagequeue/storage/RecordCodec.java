@@ -0,0 +1,220 @@
+package com.messagequeue.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.zip.CRC32;
+
+import com.services.model.Message;
+import com.services.model.MessageStatus;
+
+/// <summary>
+/// Binary format of the records stored in the segment files. Every record starts with a fixed-width
+/// header followed by the UTF-8 message body:
+///
+///   int   length         bytes of the record following this field
+///   byte  version        format version of the record
+///   byte  status         ordinal of the MessageStatus
+///   int   priorAttempts  number of times the message was received before
+///   long  visibility     epoch millis the message was made invisible, -1 when never received. For a NEW
+///                        record, epoch millis the delayed message becomes visible, -1 when not delayed
+///   long  receiptId      receipt id of the last receive, 0 when never received
+///   int   bodyLength     bytes of the message body
+///
+/// The body is followed by the CRC32 checksum of the record from the version field to the end of
+/// the body, so a record torn by a crash is recognized when the segment is recovered. Records of
+/// version 1 were written without the checksum and are still read.
+///
+/// A compacted segment replaces runs of deleted records with a gap record, a header without body whose
+/// status is the gap status and whose priorAttempts field holds the number of positions the gap stands
+/// for, so the records that are left keep their position in the segment.
+///
+/// The visible-at time of a delayed message is part of its record, so a record that reached the disk without
+/// the delayed state of its slot in the SegmentState file is still delayed when the segment is recovered.
+///
+/// The header fields are read in place at a fixed offset from the start of the record, so a reader
+/// can skip over a record or inspect its state without touching the body.
+/// </summary>
+final class RecordCodec {
+
+	static final byte version = 2;
+	static final int headerBytes = 30;
+	static final int checksumBytes = 4;
+
+	private static final byte uncheckedVersion = 1;
+	private static final byte gapStatus = -1;
+
+	private static final int versionOffset = 4;
+	private static final int statusOffset = 5;
+	private static final int priorAttemptsOffset = 6;
+	private static final int visibilityOffset = 10;
+	private static final int receiptIdOffset = 18;
+	private static final int bodyLengthOffset = 26;
+
+	private static final MessageStatus[] statuses = MessageStatus.values();
+
+	private RecordCodec() {}
+
+	/// <summary>Returns the number of bytes the record of a message with the given body takes.</summary>
+	static int encodedLength(byte[] body) {
+		return headerBytes + body.length + checksumBytes;
+	}
+
+	/// <summary>Writes the record of the message at the current position of the target buffer.</summary>
+	/// <parameter name="target">Represents the buffer the record is written to.</parameter>
+	/// <parameter name="message">Represents the message to be written.</parameter>
+	/// <parameter name="body">Represents the UTF-8 encoded content of the message.</parameter>
+	/// <parameter name="visibleAt">Represents the epoch millis a delayed NEW message becomes visible, -1 when not delayed.</parameter>
+	static void encode(ByteBuffer target, Message message, byte[] body, long visibleAt) {
+		MessageStatus status = message.getMessageStatus() != null ? message.getMessageStatus() : MessageStatus.NEW;
+		Date invisibleFromTime = message.getinvisibleFromTime();
+
+		int start = target.position();
+
+		target.putInt(headerBytes - 4 + body.length + checksumBytes);
+		target.put(version);
+		target.put((byte)status.ordinal());
+		target.putInt(message.getPriorAttempts());
+		if (status == MessageStatus.NEW) {
+			target.putLong(visibleAt);
+		}
+		else {
+			target.putLong(invisibleFromTime != null ? invisibleFromTime.getTime() : -1);
+		}
+
+		target.putLong(message.getReceiptId());
+		target.putInt(body.length);
+		target.put(body);
+		target.putInt(checksum(target, start + 4, target.position()));
+	}
+
+	/// <summary>Writes a gap record standing for the given number of deleted positions.</summary>
+	/// <parameter name="target">Represents the buffer the record is written to.</parameter>
+	/// <parameter name="positions">Represents the number of positions the gap stands for.</parameter>
+	static void encodeGap(ByteBuffer target, int positions) {
+		int start = target.position();
+
+		target.putInt(headerBytes - 4 + checksumBytes);
+		target.put(version);
+		target.put(gapStatus);
+		target.putInt(positions);
+		target.putLong(-1);
+		target.putLong(0);
+		target.putInt(0);
+		target.putInt(checksum(target, start + 4, target.position()));
+	}
+
+	static boolean isGap(ByteBuffer buffer, int offset) {
+		return buffer.get(offset + statusOffset) == gapStatus;
+	}
+
+	/// <summary>Returns the number of positions the gap record starting at the offset stands for.</summary>
+	static int readGapPositions(ByteBuffer buffer, int offset) {
+		return buffer.getInt(offset + priorAttemptsOffset);
+	}
+
+	/// <summary>
+	/// Returns true when a complete record of a known version starts at the offset and its checksum matches.
+	/// A record cut short or overwritten by a crash while it was written is not valid.
+	/// </summary>
+	/// <parameter name="buffer">Represents the buffer holding the record.</parameter>
+	/// <parameter name="offset">Represents the offset of the record in the buffer.</parameter>
+	/// <parameter name="limit">Represents the end of the written bytes of the buffer.</parameter>
+	static boolean isValid(ByteBuffer buffer, int offset, int limit) {
+		if (limit - offset < headerBytes) {
+			return false;
+		}
+
+		int length = buffer.getInt(offset);
+		if (length < headerBytes - 4 || offset + 4L + length > limit) {
+			return false;
+		}
+
+		byte recordVersion = readVersion(buffer, offset);
+		int bodyLength = readBodyLength(buffer, offset);
+
+		if (recordVersion == uncheckedVersion) {
+			return bodyLength == length - (headerBytes - 4);
+		}
+
+		if (recordVersion != version || bodyLength != length - (headerBytes - 4) - checksumBytes) {
+			return false;
+		}
+
+		int end = offset + headerBytes + bodyLength;
+		return buffer.getInt(end) == checksum(buffer, offset + 4, end);
+	}
+
+	/// <summary>Returns the number of bytes taken by the record starting at the offset, including the length field.</summary>
+	static int readRecordLength(ByteBuffer buffer, int offset) {
+		return buffer.getInt(offset) + 4;
+	}
+
+	static byte readVersion(ByteBuffer buffer, int offset) {
+		return buffer.get(offset + versionOffset);
+	}
+
+	static MessageStatus readStatus(ByteBuffer buffer, int offset) {
+		return statuses[buffer.get(offset + statusOffset)];
+	}
+
+	static int readPriorAttempts(ByteBuffer buffer, int offset) {
+		return buffer.getInt(offset + priorAttemptsOffset);
+	}
+
+	/// <summary>Returns the visible-at time of the NEW record starting at the offset, -1 when it is not delayed.</summary>
+	static long readVisibleAt(ByteBuffer buffer, int offset) {
+		return readStatus(buffer, offset) == MessageStatus.NEW ? readVisibility(buffer, offset) : -1;
+	}
+
+	static long readVisibility(ByteBuffer buffer, int offset) {
+		return buffer.getLong(offset + visibilityOffset);
+	}
+
+	static long readReceiptId(ByteBuffer buffer, int offset) {
+		return buffer.getLong(offset + receiptIdOffset);
+	}
+
+	static int readBodyLength(ByteBuffer buffer, int offset) {
+		return buffer.getInt(offset + bodyLengthOffset);
+	}
+
+	/// <summary>Decodes the record starting at the offset into a Message object.</summary>
+	/// <parameter name="buffer">Represents the buffer holding the record.</parameter>
+	/// <parameter name="offset">Represents the offset of the record in the buffer.</parameter>
+	/// <Returns>Message Object</Returns>
+	static Message decode(ByteBuffer buffer, int offset) {
+		byte recordVersion = readVersion(buffer, offset);
+
+		if (recordVersion != version && recordVersion != uncheckedVersion) {
+			throw new IllegalStateException("Unsupported record version " + readVersion(buffer, offset) + " at offset " + offset);
+		}
+
+		byte[] body = new byte[readBodyLength(buffer, offset)];
+		ByteBuffer source = buffer.duplicate();
+		source.position(offset + headerBytes);
+		source.get(body);
+
+		Message message = new Message();
+		message.setMessageStatus(readStatus(buffer, offset));
+		message.setPriorAttempts(readPriorAttempts(buffer, offset));
+
+		long visibility = readVisibility(buffer, offset);
+		if (visibility >= 0 && message.getMessageStatus() != MessageStatus.NEW) {
+			message.setinvisibleFromTime(new Date(visibility));
+		}
+
+		message.setReceiptId(readReceiptId(buffer, offset));
+		message.setMessage(new String(body, StandardCharsets.UTF_8));
+		return message;
+	}
+
+	private static int checksum(ByteBuffer buffer, int from, int to) {
+		ByteBuffer region = buffer.duplicate();
+		region.limit(to).position(from);
+
+		CRC32 crc = new CRC32();
+		crc.update(region);
+		return (int)crc.getValue();
+	}
+}
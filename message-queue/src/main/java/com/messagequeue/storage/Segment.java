@@ -0,0 +1,428 @@
+package com.messagequeue.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import com.services.model.Message;
+
+/// <summary>
+/// A single append-only segment file of the file queue. Records are stored in the RecordCodec format and are
+/// addressed by their sequence number, which is the base sequence of the segment plus the position
+/// of the record within the segment. Records are never modified once written.
+/// Reads go through a memory mapping of the file and an in-memory index of the offset of every record,
+/// so a record is read without scanning or decoding the records in front of it. The mapping is extended in
+/// steps rather than after every append, and the records appended past it are read through the channel they
+/// are appended through.
+/// The state of the records is kept out of band in the SegmentState sidecar of the segment.
+///
+/// When a segment is opened, the offset index is loaded from the SegmentCheckpoint of the segment and only
+/// the records written after the checkpoint are scanned and checked against their checksums. The segment
+/// is truncated at the first record that is not valid, which drops the records torn by a crash.
+///
+/// A full segment can be replaced by a compacted copy holding only the records that are not deleted. The deleted
+/// records become gap records, so every record keeps its position and the state file stays valid.
+/// </summary>
+class Segment {
+
+	static final String prefix = "messages-";
+	static final String suffix = ".log";
+
+	// Bytes appended past the mapping after which a read maps the file again instead of reading the channel.
+	private static final long remapBytes = 1 << 20;
+
+	private final long baseSequence;
+	private final File file;
+	private final SegmentState state;
+	private int recordCount;
+	private long sizeBytes;
+
+	// Offset of every record in the file, indexed by position in the segment.
+	private int[] offsets = new int[64];
+	private MappedByteBuffer mapped;
+
+	// Kept open while the segment is written to, closed once the segment is full. Also reads the records
+	// appended past the mapping.
+	private FileChannel channel;
+
+	// Records of this segment that are waiting to be received, indexed by position in the segment.
+	private final BitSet pending = new BitSet();
+
+	// Records of this segment that are not yet deleted (pending, delayed or in-flight).
+	private int liveCount;
+
+	// Positions of records removed by compaction, which have no offset in the file.
+	private int holeCount;
+
+	// Bytes covered by the last checkpoint, and bytes of torn records dropped when the segment was opened.
+	private long checkpointBytes;
+	private long truncatedBytes;
+
+	private Segment(long baseSequence, File file) throws IOException {
+		this.baseSequence = baseSequence;
+		this.file = file;
+		this.state = new SegmentState(file.getParentFile(), baseSequence);
+	}
+
+	/// <summary>Creates a new empty segment starting at the given sequence number.</summary>
+	/// <parameter name="directory">Represents the queue directory.</parameter>
+	/// <parameter name="baseSequence">Represents the sequence number of the first record.</parameter>
+	static Segment create(File directory, long baseSequence) throws IOException {
+		// A state file or checkpoint left behind by an earlier segment with the same base must not apply to this one.
+		new File(directory, SegmentState.fileName(baseSequence)).delete();
+		SegmentCheckpoint.delete(directory, baseSequence);
+
+		Segment segment = new Segment(baseSequence, new File(directory, fileName(baseSequence)));
+		segment.file.createNewFile();
+		return segment;
+	}
+
+	/// <summary>
+	/// Opens an existing segment, recovers its offset index from the checkpoint and the records written after it,
+	/// and loads the pending records from its state file.
+	/// </summary>
+	/// <parameter name="file">Represents the segment file.</parameter>
+	static Segment open(File file) throws IOException {
+		String name = file.getName();
+		long baseSequence = Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+		Segment segment = new Segment(baseSequence, file);
+
+		segment.sizeBytes = file.length();
+		SegmentCheckpoint checkpoint = SegmentCheckpoint.read(file.getParentFile(), baseSequence, segment.sizeBytes);
+
+		if (checkpoint != null) {
+			segment.offsets = checkpoint.getOffsets();
+			segment.recordCount = checkpoint.getRecordCount();
+			segment.checkpointBytes = checkpoint.getSizeBytes();
+
+			for (int i = 0; i < segment.recordCount; i++) {
+				if (segment.offsets[i] < 0) {
+					segment.holeCount++;
+				}
+			}
+		}
+
+		segment.recover(segment.checkpointBytes);
+
+		for (int i = 0; i < segment.recordCount; i++) {
+			byte state = segment.state.getState(i);
+
+			if (state == SegmentState.pending) {
+				segment.pending.set(i);
+			}
+
+			if (state != SegmentState.deleted) {
+				segment.liveCount++;
+			}
+		}
+
+		return segment;
+	}
+
+	static boolean isSegmentFile(String name) {
+		return name.startsWith(prefix) && name.endsWith(suffix);
+	}
+
+	static String fileName(long baseSequence) {
+		return String.format("%s%020d%s", prefix, baseSequence, suffix);
+	}
+
+	/// <summary>Appends the encoded records to the end of the segment and marks them as pending.</summary>
+	/// <parameter name="records">Represents the buffer holding the encoded records between its position and limit.</parameter>
+	void append(ByteBuffer records) throws IOException {
+		int first = recordCount;
+		long start = sizeBytes;
+		ByteBuffer view = records.duplicate();
+
+		if (channel == null) {
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+
+		for (long position = start; records.hasRemaining();) {
+			position += channel.write(records, position);
+		}
+
+		sizeBytes += view.remaining();
+		index(view.slice(), start);
+		liveCount += recordCount - first;
+		pending.set(first, recordCount);
+	}
+
+	/// <summary>
+	/// Reads the record at the given position directly from the mapped segment file. A record appended past the
+	/// mapping is read through the channel, until enough bytes were appended to map the file again.
+	/// </summary>
+	/// <parameter name="position">Represents the position of the record in the segment.</parameter>
+	/// <Returns>Message Object</Returns>
+	Message read(int position) throws IOException {
+		int offset = offsets[position];
+
+		if (offset < 0) {
+			throw new IllegalStateException("Record " + (baseSequence + position) + " was removed by compaction");
+		}
+
+		if (mapped == null || offset >= mapped.limit()) {
+			if (channel != null && mapped != null && sizeBytes - mapped.limit() < remapBytes) {
+				return readUnmapped(position);
+			}
+
+			map();
+		}
+
+		return RecordCodec.decode(mapped, offset);
+	}
+
+	/// <summary>Returns a view of all the records written to the segment so far, independent of later reads.</summary>
+	ByteBuffer records() throws IOException {
+		if (mapped == null || mapped.limit() < sizeBytes) {
+			map();
+		}
+
+		return mapped.duplicate();
+	}
+
+	/// <summary>Returns the positions of the records that are not deleted and were not removed by compaction.</summary>
+	BitSet getLiveRecords() {
+		BitSet live = new BitSet(recordCount);
+
+		for (int i = 0; i < recordCount; i++) {
+			if (offsets[i] >= 0 && state.getState(i) != SegmentState.deleted) {
+				live.set(i);
+			}
+		}
+
+		return live;
+	}
+
+	/// <summary>
+	/// Replaces the segment file with its compacted copy. The checkpoint of the old file is removed before the
+	/// copy is renamed over it, so a crash in between leaves a segment that is recovered by a full scan.
+	/// </summary>
+	/// <parameter name="compacted">Represents the compacted copy of the segment file.</parameter>
+	/// <parameter name="compactedOffsets">Represents the offset of every record in the copy, negative for holes.</parameter>
+	/// <parameter name="compactedBytes">Represents the size of the copy.</parameter>
+	/// <parameter name="holes">Represents the number of positions removed from the copy.</parameter>
+	void replace(File compacted, int[] compactedOffsets, long compactedBytes, int holes) throws IOException {
+		close();
+		SegmentCheckpoint.delete(file.getParentFile(), baseSequence);
+		Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		offsets = compactedOffsets;
+		sizeBytes = compactedBytes;
+		holeCount = holes;
+		mapped = null;
+		checkpointBytes = 0;
+		checkpoint();
+	}
+
+	/// <summary>Forces the records and the state changes written so far to the disk.</summary>
+	void force() throws IOException {
+		if (channel != null) {
+			channel.force(false);
+		}
+		else if (file.exists()) {
+			// The segment is full and its channel closed, any channel of the file forces its written pages.
+			try (FileChannel forced = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+				forced.force(false);
+			}
+		}
+
+		state.force();
+	}
+
+	/// <summary>Closes the channel the records are appended through. It is reopened on the next append.</summary>
+	void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
+	/// <summary>
+	/// Writes the checkpoint of the offset index when records were appended since the last checkpoint.
+	/// Must only be called once the records were forced to the disk.
+	/// </summary>
+	void checkpoint() throws IOException {
+		if (sizeBytes > checkpointBytes) {
+			SegmentCheckpoint.write(file.getParentFile(), baseSequence, sizeBytes, offsets, recordCount);
+			checkpointBytes = sizeBytes;
+		}
+	}
+
+	/// <summary>Removes the segment file, its state file and its checkpoint from the disk.</summary>
+	void delete() throws IOException {
+		close();
+		mapped = null;
+		file.delete();
+		state.delete();
+		SegmentCheckpoint.delete(file.getParentFile(), baseSequence);
+	}
+
+	long getBaseSequence() {
+		return baseSequence;
+	}
+
+	long getNextSequence() {
+		return baseSequence + recordCount;
+	}
+
+	int getRecordCount() {
+		return recordCount;
+	}
+
+	long getSizeBytes() {
+		return sizeBytes;
+	}
+
+	SegmentState getState() {
+		return state;
+	}
+
+	BitSet getPending() {
+		return pending;
+	}
+
+	/// <summary>Returns the bytes appended since the last checkpoint, which are scanned when the segment is opened.</summary>
+	long getUncheckpointedBytes() {
+		return sizeBytes - checkpointBytes;
+	}
+
+	int getHoleCount() {
+		return holeCount;
+	}
+
+	int[] getOffsets() {
+		return Arrays.copyOf(offsets, recordCount);
+	}
+
+	long getTruncatedBytes() {
+		return truncatedBytes;
+	}
+
+	int getLiveCount() {
+		return liveCount;
+	}
+
+	void decrementLiveCount() {
+		liveCount--;
+	}
+
+	/// <summary>Adds the offset of every record in the buffer to the offset index, reading only the record headers.</summary>
+	/// <parameter name="records">Represents the records, starting at the beginning of the buffer.</parameter>
+	/// <parameter name="fileOffset">Represents the offset of the buffer in the segment file.</parameter>
+	private void index(ByteBuffer records, long fileOffset) {
+		int offset = 0;
+
+		while (offset < records.limit()) {
+			addRecord(records, offset, (int)(fileOffset + offset));
+			offset += RecordCodec.readRecordLength(records, offset);
+		}
+	}
+
+	/// <summary>Adds the record to the offset index. A gap record adds a hole for every position it stands for.</summary>
+	private void addRecord(ByteBuffer records, int offset, int fileOffset) {
+		if (RecordCodec.isGap(records, offset)) {
+			int positions = RecordCodec.readGapPositions(records, offset);
+
+			for (int i = 0; i < positions; i++) {
+				addOffset(-1);
+			}
+
+			holeCount += positions;
+		}
+		else {
+			addOffset(fileOffset);
+		}
+	}
+
+	/// <summary>
+	/// Indexes the records from the given offset to the end of the file, checking every record against its
+	/// checksum, and truncates the file at the first record that is not valid.
+	/// </summary>
+	/// <parameter name="from">Represents the offset of the first record not covered by the checkpoint.</parameter>
+	private void recover(long from) throws IOException {
+		MappedByteBuffer records = map();
+		int offset = (int)from;
+		int limit = (int)sizeBytes;
+
+		while (offset < limit && RecordCodec.isValid(records, offset, limit)) {
+			addRecord(records, offset, offset);
+			restoreDelay(records, offset);
+			offset += RecordCodec.readRecordLength(records, offset);
+		}
+
+		if (offset < limit) {
+			truncatedBytes = limit - offset;
+			System.out.println("Truncating " + truncatedBytes + " bytes of torn records at offset " + offset + " of " + file.getName());
+
+			mapped = null;
+			try (FileChannel truncated = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+				truncated.truncate(offset);
+				truncated.force(false);
+			}
+
+			sizeBytes = offset;
+			map();
+		}
+
+		// Positions past the last record may hold the state of records lost in the crash.
+		state.clearFrom(recordCount);
+	}
+
+	/// <summary>
+	/// Marks the delayed record just indexed as delayed when its slot still reads as pending, as it does when the
+	/// record reached the disk before its slot, or another process loads the segment before the slot was written.
+	/// </summary>
+	private void restoreDelay(ByteBuffer records, int offset) throws IOException {
+		int position = recordCount - 1;
+
+		if (!RecordCodec.isGap(records, offset) && state.getState(position) == SegmentState.pending) {
+			long visibleAt = RecordCodec.readVisibleAt(records, offset);
+
+			if (visibleAt >= 0) {
+				state.setDelayed(position, visibleAt);
+			}
+		}
+	}
+
+	private void addOffset(int offset) {
+		if (recordCount == offsets.length) {
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		}
+
+		offsets[recordCount++] = offset;
+	}
+
+	/// <summary>Reads the record at the given position, which lies past the mapping, through the channel.</summary>
+	/// <parameter name="position">Represents the position of the record in the segment.</parameter>
+	private Message readUnmapped(int position) throws IOException {
+		int offset = offsets[position];
+		long end = position + 1 < recordCount && offsets[position + 1] >= 0 ? offsets[position + 1] : sizeBytes;
+		ByteBuffer record = ByteBuffer.allocate((int)(end - offset));
+
+		while (record.hasRemaining()) {
+			if (channel.read(record, offset + record.position()) < 0) {
+				throw new IOException("Record " + (baseSequence + position) + " is past the end of " + file.getName());
+			}
+		}
+
+		return RecordCodec.decode(record, 0);
+	}
+
+	/// <summary>Maps the written part of the segment file into memory.</summary>
+	private MappedByteBuffer map() throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, sizeBytes);
+		}
+
+		return mapped;
+	}
+}
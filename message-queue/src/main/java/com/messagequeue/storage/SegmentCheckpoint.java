@@ -0,0 +1,131 @@
+package com.messagequeue.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/// <summary>
+/// Checkpoint of the offset index of a segment, so that a segment is not scanned again from the start
+/// when the queue is opened. The checkpoint file holds:
+///
+///   long  sizeBytes    bytes of the segment covered by the checkpoint
+///   int   recordCount  records of the segment covered by the checkpoint
+///   int[] offsets      offset of every covered record
+///   int   checksum     CRC32 of the fields above
+///
+/// A checkpoint is only written once the records it covers were forced to the disk, and it replaces the
+/// previous checkpoint with an atomic rename, so a crash leaves either the old or the new checkpoint.
+/// A checkpoint that does not match its checksum or covers more bytes than the segment holds is ignored.
+/// </summary>
+class SegmentCheckpoint {
+
+	static final String suffix = ".index";
+
+	private static final int headerBytes = 12;
+
+	private final long sizeBytes;
+	private final int recordCount;
+	private final int[] offsets;
+
+	private SegmentCheckpoint(long sizeBytes, int recordCount, int[] offsets) {
+		this.sizeBytes = sizeBytes;
+		this.recordCount = recordCount;
+		this.offsets = offsets;
+	}
+
+	static String fileName(long baseSequence) {
+		return String.format("%s%020d%s", Segment.prefix, baseSequence, suffix);
+	}
+
+	/// <summary>Writes the checkpoint of the first record count records of the segment.</summary>
+	/// <parameter name="directory">Represents the queue directory.</parameter>
+	/// <parameter name="baseSequence">Represents the sequence number of the first record of the segment.</parameter>
+	/// <parameter name="sizeBytes">Represents the bytes of the segment holding the records.</parameter>
+	/// <parameter name="offsets">Represents the offset index of the segment.</parameter>
+	/// <parameter name="recordCount">Represents the number of records covered.</parameter>
+	static void write(File directory, long baseSequence, long sizeBytes, int[] offsets, int recordCount) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(headerBytes + recordCount * 4 + 4);
+		buffer.putLong(sizeBytes);
+		buffer.putInt(recordCount);
+
+		for (int i = 0; i < recordCount; i++) {
+			buffer.putInt(offsets[i]);
+		}
+
+		buffer.putInt(checksum(buffer, buffer.position()));
+		buffer.flip();
+
+		File file = new File(directory, fileName(baseSequence));
+		File temporary = new File(directory, fileName(baseSequence) + ".tmp");
+
+		try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+
+			channel.force(false);
+		}
+
+		Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/// <summary>Reads the checkpoint of the segment.</summary>
+	/// <parameter name="directory">Represents the queue directory.</parameter>
+	/// <parameter name="baseSequence">Represents the sequence number of the first record of the segment.</parameter>
+	/// <parameter name="segmentBytes">Represents the current size of the segment file.</parameter>
+	/// <Returns>The checkpoint, null when there is none or it cannot be used.</Returns>
+	static SegmentCheckpoint read(File directory, long baseSequence, long segmentBytes) throws IOException {
+		File file = new File(directory, fileName(baseSequence));
+
+		if (!file.isFile() || file.length() < headerBytes + 4) {
+			return null;
+		}
+
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		long sizeBytes = buffer.getLong(0);
+		int recordCount = buffer.getInt(8);
+
+		if (recordCount < 0 || buffer.capacity() != headerBytes + recordCount * 4L + 4 || sizeBytes > segmentBytes
+				|| buffer.getInt(buffer.capacity() - 4) != checksum(buffer, buffer.capacity() - 4)) {
+			System.out.println("Ignoring the invalid checkpoint " + file.getName());
+			return null;
+		}
+
+		int[] offsets = new int[Math.max(recordCount, 64)];
+		buffer.position(headerBytes);
+
+		for (int i = 0; i < recordCount; i++) {
+			offsets[i] = buffer.getInt();
+		}
+
+		return new SegmentCheckpoint(sizeBytes, recordCount, offsets);
+	}
+
+	/// <summary>Removes the checkpoint file of the segment from the disk.</summary>
+	static void delete(File directory, long baseSequence) {
+		new File(directory, fileName(baseSequence)).delete();
+	}
+
+	long getSizeBytes() {
+		return sizeBytes;
+	}
+
+	int getRecordCount() {
+		return recordCount;
+	}
+
+	int[] getOffsets() {
+		return offsets;
+	}
+
+	private static int checksum(ByteBuffer buffer, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 0, length);
+		return (int)crc.getValue();
+	}
+}
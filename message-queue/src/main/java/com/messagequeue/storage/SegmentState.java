@@ -0,0 +1,131 @@
+package com.messagequeue.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/// <summary>
+/// Sidecar file holding the state of every record of a segment, so that receiving or deleting a message
+/// never touches the segment itself. The file is an array of fixed-width slots indexed by the position
+/// of the record in the segment:
+///
+///   byte  state          PENDING, INFLIGHT, DELETED or DELAYED
+///   int   priorAttempts  number of times the message was received before the current receive
+///   long  deadline       epoch millis the in-flight or delayed message becomes visible
+///   long  receiptId      receipt id of the current receive
+///
+/// Slots of records that were never received are all zero, which reads as PENDING, so appending to the
+/// segment needs no write to this file. A state change is a single slot write into the memory mapping.
+/// </summary>
+class SegmentState {
+
+	static final String suffix = ".state";
+
+	static final byte pending = 0;
+	static final byte inflight = 1;
+	static final byte deleted = 2;
+	static final byte delayed = 3;
+
+	static final int slotBytes = 24;
+	private static final int growSlots = 16 * 1024;
+
+	private static final int priorAttemptsOffset = 4;
+	private static final int deadlineOffset = 8;
+	private static final int receiptIdOffset = 16;
+
+	private final File file;
+	private MappedByteBuffer slots;
+
+	/// <summary>Opens the state file of the segment with the given base sequence, creating it when it does not exist.</summary>
+	/// <parameter name="directory">Represents the queue directory.</parameter>
+	/// <parameter name="baseSequence">Represents the sequence number of the first record of the segment.</parameter>
+	SegmentState(File directory, long baseSequence) throws IOException {
+		this.file = new File(directory, fileName(baseSequence));
+		map(Math.max(file.length() / slotBytes, growSlots));
+	}
+
+	static String fileName(long baseSequence) {
+		return String.format("%s%020d%s", Segment.prefix, baseSequence, suffix);
+	}
+
+	byte getState(int position) {
+		return position < capacity() ? slots.get(position * slotBytes) : pending;
+	}
+
+	int getPriorAttempts(int position) {
+		return slots.getInt(position * slotBytes + priorAttemptsOffset);
+	}
+
+	long getDeadline(int position) {
+		return slots.getLong(position * slotBytes + deadlineOffset);
+	}
+
+	long getReceiptId(int position) {
+		return slots.getLong(position * slotBytes + receiptIdOffset);
+	}
+
+	/// <summary>Marks the record as received until the deadline.</summary>
+	void setInflight(int position, long receiptId, long deadline, int priorAttempts) throws IOException {
+		ensureCapacity(position);
+
+		int slot = position * slotBytes;
+		slots.putInt(slot + priorAttemptsOffset, priorAttempts);
+		slots.putLong(slot + deadlineOffset, deadline);
+		slots.putLong(slot + receiptIdOffset, receiptId);
+		slots.put(slot, inflight);
+	}
+
+	/// <summary>Marks the appended record as delayed until its visible-at time.</summary>
+	void setDelayed(int position, long visibleAt) throws IOException {
+		ensureCapacity(position);
+
+		int slot = position * slotBytes;
+		slots.putLong(slot + deadlineOffset, visibleAt);
+		slots.put(slot, delayed);
+	}
+
+	/// <summary>Marks the record as deleted.</summary>
+	void setDeleted(int position) throws IOException {
+		ensureCapacity(position);
+		slots.put(position * slotBytes, deleted);
+	}
+
+	/// <summary>Resets the slots from the given position on to pending, for positions no record was appended at yet.</summary>
+	void clearFrom(int position) {
+		for (int i = position; i < capacity(); i++) {
+			if (slots.get(i * slotBytes) != pending) {
+				slots.put(i * slotBytes, pending);
+			}
+		}
+	}
+
+	/// <summary>Forces the state changes made so far to the disk.</summary>
+	void force() {
+		slots.force();
+	}
+
+	/// <summary>Removes the state file from the disk.</summary>
+	void delete() {
+		slots = null;
+		file.delete();
+	}
+
+	private int capacity() {
+		return slots.capacity() / slotBytes;
+	}
+
+	private void ensureCapacity(int position) throws IOException {
+		if (position >= capacity()) {
+			map(Math.max(position + 1, capacity() * 2L));
+		}
+	}
+
+	/// <summary>Maps the given number of slots of the state file, growing the file when it is smaller.</summary>
+	private void map(long slotCount) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+			slots = channel.map(FileChannel.MapMode.READ_WRITE, 0, slotCount * slotBytes);
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package com.services.model;
+
+import java.util.List;
+
+public class ChangeVisibilityRequest {
+	private String queueUrl;
+	private List<Message> messages;
+	private long visibilityTimeoutMillis;
+	
+	public ChangeVisibilityRequest(String queueUrl, List<Message> messages, long visibilityTimeoutMillis) {
+		this.queueUrl = queueUrl;
+		this.messages = messages;
+		this.visibilityTimeoutMillis = visibilityTimeoutMillis;
+	}
+	
+	public String getQueueUrl() {
+		return queueUrl;
+	}
+	
+	public void setQueueUrl(String queueUrl) {
+		this.queueUrl = queueUrl;
+	}
+	
+	public List<Message> getMessages() {
+		return this.messages;
+	}
+	
+	public void setMessages(List<Message> messages) {
+		this.messages = messages;
+	}
+	
+	// Milliseconds the messages stay invisible from the time of the change, 0 makes them visible at once.
+	public long getVisibilityTimeoutMillis() {
+		return visibilityTimeoutMillis;
+	}
+	
+	public void setVisibilityTimeoutMillis(long visibilityTimeoutMillis) {
+		this.visibilityTimeoutMillis = visibilityTimeoutMillis;
+	}
+}
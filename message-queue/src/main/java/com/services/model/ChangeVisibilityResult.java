@@ -0,0 +1,30 @@
+package com.services.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/// <summary>
+/// Outcome of a Change Visibility Request for every message of the request, the way Amazon SQS reports the
+/// entries of a batch visibility change: the messages whose lease was changed and, for the others, why not.
+/// </summary>
+public class ChangeVisibilityResult {
+
+	private final List<Message> successful = new ArrayList<>();
+	private final List<DeleteMessageResult.Failure> failed = new ArrayList<>();
+
+	public List<Message> getSuccessful() {
+		return successful;
+	}
+
+	public List<DeleteMessageResult.Failure> getFailed() {
+		return failed;
+	}
+
+	public void addSuccessful(Message message) {
+		successful.add(message);
+	}
+
+	public void addFailed(Message message, String code, String reason, boolean senderFault) {
+		failed.add(new DeleteMessageResult.Failure(message, code, reason, senderFault));
+	}
+}
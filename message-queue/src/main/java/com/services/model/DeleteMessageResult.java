@@ -0,0 +1,65 @@
+package com.services.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/// <summary>
+/// Outcome of a Delete Message Request for every message of the request, the way Amazon SQS reports
+/// the entries of a batch delete: the messages deleted and, for the others, why they were not.
+/// </summary>
+public class DeleteMessageResult {
+
+	// Failure code of a receipt that does not identify an in-flight message of the queue.
+	public static final String receiptHandleIsInvalid = "ReceiptHandleIsInvalid";
+
+	private final List<Message> successful = new ArrayList<>();
+	private final List<Failure> failed = new ArrayList<>();
+
+	public List<Message> getSuccessful() {
+		return successful;
+	}
+
+	public List<Failure> getFailed() {
+		return failed;
+	}
+
+	public void addSuccessful(Message message) {
+		successful.add(message);
+	}
+
+	public void addFailed(Message message, String code, String reason, boolean senderFault) {
+		failed.add(new Failure(message, code, reason, senderFault));
+	}
+
+	/// <summary>Message that could not be deleted and the reason it could not.</summary>
+	public static class Failure {
+		private final Message message;
+		private final String code;
+		private final String reason;
+		private final boolean senderFault;
+
+		public Failure(Message message, String code, String reason, boolean senderFault) {
+			this.message = message;
+			this.code = code;
+			this.reason = reason;
+			this.senderFault = senderFault;
+		}
+
+		public Message getMessage() {
+			return message;
+		}
+
+		public String getCode() {
+			return code;
+		}
+
+		public String getReason() {
+			return reason;
+		}
+
+		/// <summary>Returns true when the request was at fault, false when the queue failed to delete the message.</summary>
+		public boolean isSenderFault() {
+			return senderFault;
+		}
+	}
+}
@@ -1,75 +1,121 @@
-package com.services.model;
-
-import java.text.Format;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-
-
-public class Message {
-	
-	private MessageStatus status;
-	private int priorAttempts;
-	private Date invisibleFromTime;
-	private int receiptId;
-	private String content;
-	
-	public Message() {}
-	
-	public Message(Date invisibleFromTime, String content ){
-		super();
-		this.invisibleFromTime = invisibleFromTime;
-		this.content = content;
-		this.status= MessageStatus.NEW;
-	}
-	
-	public String getMessage(){
-		return content;
-	}
-	
-	public void setMessage(String content){
-		this.content = content;
-	}
-	
-	public int getPriorAttempts(){
-		return priorAttempts;
-	}
-	
-	public void setPriorAttempts(int priorAttempts){
-		this.priorAttempts = priorAttempts;
-	}
-	
-	public void setinvisibleFromTime(Date invisibleFromTime){
-		this.invisibleFromTime = invisibleFromTime;
-	}
-	
-	public Date getinvisibleFromTime(){
-		return invisibleFromTime;
-	}
-	
-	public int getReceiptId(){
-		return receiptId;
-	}
-	
-	public void setReceiptId(int receiptId){
-		this.receiptId = receiptId;
-	}
-	
-	public MessageStatus getMessageStatus(){
-		return status;
-	}
-	
-	public void setMessageStatus(MessageStatus status){
-		this.status = status;
-	}
-	
-	public String toString(){
-		Format formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-		String vFrom = (invisibleFromTime != null) ? formatter.format(invisibleFromTime):"";
-		
-		return status + "|" +
-				Integer.toString(priorAttempts) + "|" +  
-						vFrom + "|" + 
-					Integer.toString(receiptId) + "|" +
-					content;
-	}
+package com.services.model;
+
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+
+
+public class Message {
+	
+	private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+	
+	private MessageStatus status;
+	private int priorAttempts;
+	private Date invisibleFromTime;
+	private long receiptId;
+	private String content;
+	
+	// Receipt handle of a message received from Amazon SQS, whose handles are strings rather than numbers.
+	private String receiptHandle;
+	
+	// Seconds the message stays invisible after it is pushed, overriding the delay of the send request when set.
+	private Integer delaySeconds;
+	
+	// Group of a message of a FIFO queue, messages of the same group are received one after the other in the order
+	// they were sent.
+	private String messageGroupId;
+	
+	// Order of the message within its FIFO queue, given when the message is added to the queue.
+	private long sequenceNumber;
+	
+	public Message() {}
+	
+	public Message(Date invisibleFromTime, String content ){
+		super();
+		this.invisibleFromTime = invisibleFromTime;
+		this.content = content;
+		this.status= MessageStatus.NEW;
+	}
+	
+	public String getMessage(){
+		return content;
+	}
+	
+	public void setMessage(String content){
+		this.content = content;
+	}
+	
+	public int getPriorAttempts(){
+		return priorAttempts;
+	}
+	
+	public void setPriorAttempts(int priorAttempts){
+		this.priorAttempts = priorAttempts;
+	}
+	
+	public void setinvisibleFromTime(Date invisibleFromTime){
+		this.invisibleFromTime = invisibleFromTime;
+	}
+	
+	public Date getinvisibleFromTime(){
+		return invisibleFromTime;
+	}
+	
+	public long getReceiptId(){
+		return receiptId;
+	}
+	
+	public void setReceiptId(long receiptId){
+		this.receiptId = receiptId;
+	}
+	
+	public String getReceiptHandle(){
+		return receiptHandle != null ? receiptHandle : Long.toString(receiptId);
+	}
+	
+	public void setReceiptHandle(String receiptHandle){
+		this.receiptHandle = receiptHandle;
+	}
+	
+	public Integer getDelaySeconds(){
+		return delaySeconds;
+	}
+	
+	public void setDelaySeconds(Integer delaySeconds){
+		this.delaySeconds = delaySeconds;
+	}
+	
+	public String getMessageGroupId(){
+		return messageGroupId;
+	}
+	
+	public void setMessageGroupId(String messageGroupId){
+		this.messageGroupId = messageGroupId;
+	}
+	
+	public long getSequenceNumber(){
+		return sequenceNumber;
+	}
+	
+	public void setSequenceNumber(long sequenceNumber){
+		this.sequenceNumber = sequenceNumber;
+	}
+	
+	public MessageStatus getMessageStatus(){
+		return status;
+	}
+	
+	public void setMessageStatus(MessageStatus status){
+		this.status = status;
+	}
+	
+	public String toString(){
+		String vFrom = (invisibleFromTime != null) ? formatter.format(invisibleFromTime.toInstant()):"";
+		
+		return status + "|" +
+				Integer.toString(priorAttempts) + "|" +  
+						vFrom + "|" + 
+					Long.toString(receiptId) + "|" +
+					content;
+	}
 }
\ No newline at end of file
@@ -1,6 +1,6 @@
-package com.services.model;
-
-public enum MessageStatus {
-	NEW,
-	INFLIGHT
-}
+package com.services.model;
+
+public enum MessageStatus {
+	NEW,
+	INFLIGHT
+}
@@ -1,39 +1,67 @@
-package com.services.model;
-
-public class ReceiveMessageRequest {
-	private String queueUrl;
-	private int requestBatchSize;
-	private int visibilityTimeout;
-	
-	public ReceiveMessageRequest() {}
-	
-	public ReceiveMessageRequest(String queueUrl, int requestBatchSize, int visibilityTimeout) {
-		this.queueUrl = queueUrl;
-		this.requestBatchSize = requestBatchSize;
-		this.visibilityTimeout = visibilityTimeout;
-	}
-	
-	public int getRequestBatchSize() {
-		return requestBatchSize;
-	}
-	
-	public void setMessageBatchSize(int requestBatchSize) {
-		this.requestBatchSize = requestBatchSize;
-	}
-	
-	public String getQueueUrl() {
-		return queueUrl;
-	}
-	
-	public void setQueueUrl(String queueUrl) {
-		this.queueUrl = queueUrl;
-	}
-	
-	public int getVisibilityTimeout() {
-		return visibilityTimeout;
-	}
-	
-	public void setVisibilityTimeout(int visibilityTimeout) {
-		this.visibilityTimeout = visibilityTimeout;
-	}
-}
+package com.services.model;
+
+public class ReceiveMessageRequest {
+	private String queueUrl;
+	private int requestBatchSize;
+	private int visibilityTimeout;
+	private long visibilityTimeoutMillis;
+	private int waitTimeSeconds;
+	
+	public ReceiveMessageRequest() {}
+	
+	public ReceiveMessageRequest(String queueUrl, int requestBatchSize, int visibilityTimeout) {
+		this.queueUrl = queueUrl;
+		this.requestBatchSize = requestBatchSize;
+		setVisibilityTimeout(visibilityTimeout);
+	}
+	
+	public ReceiveMessageRequest(String queueUrl, int requestBatchSize, int visibilityTimeout, int waitTimeSeconds) {
+		this(queueUrl, requestBatchSize, visibilityTimeout);
+		this.waitTimeSeconds = waitTimeSeconds;
+	}
+	
+	public int getRequestBatchSize() {
+		return requestBatchSize;
+	}
+	
+	public void setMessageBatchSize(int requestBatchSize) {
+		this.requestBatchSize = requestBatchSize;
+	}
+	
+	public String getQueueUrl() {
+		return queueUrl;
+	}
+	
+	public void setQueueUrl(String queueUrl) {
+		this.queueUrl = queueUrl;
+	}
+	
+	// Minutes the received messages stay invisible, rounded down when the timeout was set in milliseconds.
+	public int getVisibilityTimeout() {
+		return visibilityTimeout;
+	}
+	
+	public void setVisibilityTimeout(int visibilityTimeout) {
+		this.visibilityTimeout = visibilityTimeout;
+		this.visibilityTimeoutMillis = visibilityTimeout * 60L * 1000;
+	}
+	
+	// Milliseconds the received messages stay invisible, the timeout the queues work with.
+	public long getVisibilityTimeoutMillis() {
+		return visibilityTimeoutMillis;
+	}
+	
+	public void setVisibilityTimeoutMillis(long visibilityTimeoutMillis) {
+		this.visibilityTimeoutMillis = visibilityTimeoutMillis;
+		this.visibilityTimeout = (int)(visibilityTimeoutMillis / (60L * 1000));
+	}
+	
+	// Seconds a receive waits for messages to arrive when the queue is empty, 0 returns at once.
+	public int getWaitTimeSeconds() {
+		return waitTimeSeconds;
+	}
+	
+	public void setWaitTimeSeconds(int waitTimeSeconds) {
+		this.waitTimeSeconds = waitTimeSeconds;
+	}
+}
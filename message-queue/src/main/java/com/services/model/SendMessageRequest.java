@@ -1,43 +1,48 @@
-package com.services.model;
-
-import java.util.List;
-
-public class SendMessageRequest {
-	private String queueUrl;
-	private List<Message> messages;
-	private int delaySeconds;
-	
-	public SendMessageRequest() {}
-	
-	public SendMessageRequest(String queueUrl, List<Message> messages, int delaySeconds) {
-		
-		this.queueUrl = queueUrl;
-		this.messages = messages;
-		this.delaySeconds = delaySeconds;
-	}
-	
-	public int getDelaySeconds() {
-		return delaySeconds;
-	}
-	
-	public void setDelaySeconds(int delaySeconds) {
-		this.delaySeconds = delaySeconds;
-	}
-	
-	public String getQueueUrl() {
-		return queueUrl;
-	}
-	
-	public void setQueueUrl(String queueUrl) {
-		this.queueUrl = queueUrl;
-	}
-	
-	public List<Message> getAllMessages() {
-		return messages;
-	}
-	
-	public void setAllMessage(List<Message> messages) {
-		this.messages = messages;
-	}
-}
-
+package com.services.model;
+
+import java.util.List;
+
+public class SendMessageRequest {
+	private String queueUrl;
+	private List<Message> messages;
+	private int delaySeconds;
+	
+	public SendMessageRequest() {}
+	
+	public SendMessageRequest(String queueUrl, List<Message> messages, int delaySeconds) {
+		
+		this.queueUrl = queueUrl;
+		this.messages = messages;
+		this.delaySeconds = delaySeconds;
+	}
+	
+	public int getDelaySeconds() {
+		return delaySeconds;
+	}
+	
+	public void setDelaySeconds(int delaySeconds) {
+		this.delaySeconds = delaySeconds;
+	}
+	
+	/// <summary>Returns the delay of the message, its own delay seconds when set, otherwise the delay of the request.</summary>
+	public int getDelaySeconds(Message message) {
+		return message.getDelaySeconds() != null ? message.getDelaySeconds() : delaySeconds;
+	}
+	
+	public String getQueueUrl() {
+		return queueUrl;
+	}
+	
+	public void setQueueUrl(String queueUrl) {
+		this.queueUrl = queueUrl;
+	}
+	
+	public List<Message> getAllMessages() {
+		return messages;
+	}
+	
+	public void setAllMessage(List<Message> messages) {
+		this.messages = messages;
+	}
+}
+
@@ -0,0 +1,67 @@
+package com.utilities;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/// <summary>
+/// Wakes threads waiting for a change, such as messages being pushed to a queue they found empty. Every change
+/// moves the version of the notifier, so a thread that reads the version before looking at the queue and waits
+/// for it to move never misses a change made after it looked. Signalling takes no lock while nobody is waiting.
+/// </summary>
+public class ChangeNotifier {
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+	private final AtomicLong version = new AtomicLong();
+	private final AtomicInteger waiters = new AtomicInteger();
+
+	/// <summary>Returns the version to pass to await, read before looking for the change.</summary>
+	public long getVersion() {
+		return version.get();
+	}
+
+	/// <summary>Records a change and wakes the waiting threads.</summary>
+	public void signal() {
+		version.incrementAndGet();
+
+		if (waiters.get() > 0) {
+			lock.lock();
+
+			try {
+				changed.signalAll();
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/// <summary>Waits until the version moves past the given version or the time passes.</summary>
+	/// <parameter name="seenVersion">Represents the version read before looking for the change.</parameter>
+	/// <parameter name="millis">Represents the maximum time to wait in milliseconds.</parameter>
+	/// <Returns>True when a change was signalled, false when the time passed.</Returns>
+	public boolean await(long seenVersion, long millis) throws InterruptedException {
+		long nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+		lock.lock();
+		waiters.incrementAndGet();
+
+		try {
+			while (version.get() == seenVersion) {
+				if (nanos <= 0) {
+					return false;
+				}
+
+				nanos = changed.awaitNanos(nanos);
+			}
+
+			return true;
+		}
+		finally {
+			waiters.decrementAndGet();
+			lock.unlock();
+		}
+	}
+}
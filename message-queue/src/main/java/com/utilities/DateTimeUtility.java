@@ -1,23 +1,23 @@
-package com.utilities;
-
-import java.util.Date;
-
-public class DateTimeUtility {
-	private final static long SECOND_MILLIS = 1000;
-    private final static long MINUTE_MILLIS = SECOND_MILLIS*60;
-    
-	public static int minutesDiff( Date earlierDate, Date laterDate )
-    {
-        if( earlierDate == null || laterDate == null ) return 0;
-        
-        return (int)((laterDate.getTime()/MINUTE_MILLIS) - (earlierDate.getTime()/MINUTE_MILLIS));
-    }
-	
-	public static Date addMinutesToDate(int minutes, Date beforeTime){
-	    final long ONE_MINUTE_IN_MILLIS = 60000; 
-
-	    long curTimeInMs = beforeTime.getTime();
-	    Date afterAddingMins = new Date(curTimeInMs + (minutes * ONE_MINUTE_IN_MILLIS));
-	    return afterAddingMins;
-	}
-}
+package com.utilities;
+
+import java.util.Date;
+
+public class DateTimeUtility {
+	private final static long SECOND_MILLIS = 1000;
+    private final static long MINUTE_MILLIS = SECOND_MILLIS*60;
+    
+	public static int minutesDiff( Date earlierDate, Date laterDate )
+    {
+        if( earlierDate == null || laterDate == null ) return 0;
+        
+        return (int)((laterDate.getTime()/MINUTE_MILLIS) - (earlierDate.getTime()/MINUTE_MILLIS));
+    }
+	
+	public static Date addMinutesToDate(int minutes, Date beforeTime){
+	    final long ONE_MINUTE_IN_MILLIS = 60000; 
+
+	    long curTimeInMs = beforeTime.getTime();
+	    Date afterAddingMins = new Date(curTimeInMs + (minutes * ONE_MINUTE_IN_MILLIS));
+	    return afterAddingMins;
+	}
+}
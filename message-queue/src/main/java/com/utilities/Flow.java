@@ -0,0 +1,36 @@
+package com.utilities;
+
+/// <summary>
+/// Interfaces of demand-driven streams, with the same methods and contracts as java.util.concurrent.Flow of
+/// Java 9 and the Reactive Streams API, for use on Java 8. A Publisher hands a Subscriber a Subscription, and
+/// sends it no more items than the Subscriber has requested through it.
+/// </summary>
+public final class Flow {
+
+	private Flow() {
+	}
+
+	@FunctionalInterface
+	public interface Publisher<T> {
+		void subscribe(Subscriber<? super T> subscriber);
+	}
+
+	public interface Subscriber<T> {
+		void onSubscribe(Subscription subscription);
+
+		void onNext(T item);
+
+		void onError(Throwable throwable);
+
+		void onComplete();
+	}
+
+	public interface Subscription {
+		void request(long n);
+
+		void cancel();
+	}
+
+	public interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+	}
+}
@@ -0,0 +1,36 @@
+package com.utilities;
+
+/// <summary>
+/// Source of the current time in milliseconds for visibility timeouts, delays and wait times. The queues take
+/// the clock as a dependency, so tests can move time forward themselves instead of sleeping.
+/// </summary>
+public interface MillisClock {
+
+	/// <summary>Returns the current time in epoch millis.</summary>
+	long millis();
+
+	/// <summary>
+	/// Returns the clock of the process. It starts at the wall clock time and then moves with System.nanoTime,
+	/// so it never goes back and ignores changes to the wall clock while the process runs.
+	/// </summary>
+	static MillisClock monotonic() {
+		return Monotonic.instance;
+	}
+
+	/// <summary>Wall clock time of the start of the process plus the nanoseconds elapsed since.</summary>
+	final class Monotonic implements MillisClock {
+
+		private static final Monotonic instance = new Monotonic();
+
+		private final long startMillis = System.currentTimeMillis();
+		private final long startNanos = System.nanoTime();
+
+		private Monotonic() {
+		}
+
+		@Override
+		public long millis() {
+			return startMillis + (System.nanoTime() - startNanos) / 1000000;
+		}
+	}
+}
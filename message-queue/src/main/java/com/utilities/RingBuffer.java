@@ -0,0 +1,153 @@
+package com.utilities;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/// <summary>
+/// Bounded multi-producer multi-consumer queue on a preallocated ring of power-of-two slots. Every slot carries
+/// a sequence telling which position of the ring it holds and whether it is filled, so producers and consumers
+/// claim positions with a CAS on the tail and the head without a lock and without allocating per element.
+/// A consumer claims every filled slot of a batch with a single CAS on the head.
+/// </summary>
+public class RingBuffer<E> {
+
+	private final int capacity;
+	private final int mask;
+	private final Object[] elements;
+
+	// A slot holding position p is empty for it when its sequence is p, filled when it is p + 1.
+	private final AtomicLongArray sequences;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	/// <summary>Creates the ring with room for at least the given number of elements.</summary>
+	/// <parameter name="capacity">Represents the minimum capacity, rounded up to a power of two.</parameter>
+	public RingBuffer(int capacity) {
+		if (capacity < 2 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Capacity must be between 2 and 2^30: " + capacity);
+		}
+
+		this.capacity = Integer.highestOneBit(capacity - 1) << 1;
+		this.mask = this.capacity - 1;
+		this.elements = new Object[this.capacity];
+		this.sequences = new AtomicLongArray(this.capacity);
+
+		for (int i = 0; i < this.capacity; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	/// <summary>Adds the element at the tail of the ring.</summary>
+	/// <Returns>True when the element was added, false when the ring is full.</Returns>
+	public boolean offer(E element) {
+		if (element == null) {
+			throw new NullPointerException();
+		}
+
+		long position = tail.get();
+
+		for (;;) {
+			int index = (int) position & mask;
+			long difference = sequences.get(index) - position;
+
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					elements[index] = element;
+					sequences.set(index, position + 1);
+					return true;
+				}
+
+				position = tail.get();
+			}
+			else if (difference < 0) {
+				// The slot still holds the element of the previous lap.
+				return false;
+			}
+			else {
+				position = tail.get();
+			}
+		}
+	}
+
+	/// <summary>Removes the element at the head of the ring.</summary>
+	/// <Returns>The element, null when the ring is empty.</Returns>
+	@SuppressWarnings("unchecked")
+	public E poll() {
+		long position = head.get();
+
+		for (;;) {
+			int index = (int) position & mask;
+			long difference = sequences.get(index) - (position + 1);
+
+			if (difference == 0) {
+				if (head.compareAndSet(position, position + 1)) {
+					return release(index, position);
+				}
+
+				position = head.get();
+			}
+			else if (difference < 0) {
+				return null;
+			}
+			else {
+				position = head.get();
+			}
+		}
+	}
+
+	/// <summary>
+	/// Removes up to the given number of elements from the head of the ring. The filled slots following the head
+	/// are counted first and then claimed together with one CAS, so a batch costs one contended operation.
+	/// </summary>
+	/// <parameter name="target">Represents the collection the elements are added to, in ring order.</parameter>
+	/// <parameter name="max">Represents the maximum number of elements to remove.</parameter>
+	/// <Returns>The number of elements removed.</Returns>
+	public int drainTo(Collection<? super E> target, int max) {
+		for (;;) {
+			long position = head.get();
+			int filled = 0;
+
+			while (filled < max && filled < capacity
+					&& sequences.get((int) (position + filled) & mask) == position + filled + 1) {
+				filled++;
+			}
+
+			if (filled == 0) {
+				if (sequences.get((int) position & mask) - (position + 1) < 0) {
+					return 0;
+				}
+
+				// Another consumer moved the head past the position read.
+				continue;
+			}
+
+			if (head.compareAndSet(position, position + filled)) {
+				for (int i = 0; i < filled; i++) {
+					target.add(release((int) (position + i) & mask, position + i));
+				}
+
+				return filled;
+			}
+		}
+	}
+
+	/// <summary>Returns the approximate number of elements in the ring.</summary>
+	public int size() {
+		long size = tail.get() - head.get();
+		return (int) Math.max(0, Math.min(capacity, size));
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	/// <summary>Takes the element out of the claimed slot and hands the slot to the producer of the next lap.</summary>
+	@SuppressWarnings("unchecked")
+	private E release(int index, long position) {
+		E element = (E) elements[index];
+		elements[index] = null;
+		sequences.set(index, position + capacity);
+		return element;
+	}
+}
@@ -0,0 +1,206 @@
+package com.utilities;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/// <summary>
+/// Hierarchical timing wheel holding items until their deadline has passed. Every level is a ring of
+/// wheelSize buckets, each bucket holding the items whose deadline falls into one tick of the level, and
+/// the tick of every level is wheelSize times the tick of the level below. An item is placed in the
+/// lowest level whose ring reaches its deadline and moves down a level whenever its bucket comes up,
+/// so scheduling, cancelling and expiring an item cost O(1) amortized whatever the number of items.
+///
+/// The wheel has no thread of its own; it is advanced by expire, which returns every item whose deadline
+/// has passed exactly once. Items are never returned before their deadline and at most one tick after it.
+/// </summary>
+public class TimingWheel<T> {
+
+	/// <summary>Handle of a scheduled item.</summary>
+	public static final class Timeout<T> {
+		private final T item;
+		private final long deadline;
+		private volatile boolean done;
+
+		private Timeout(T item, long deadline) {
+			this.item = item;
+			this.deadline = deadline;
+		}
+
+		public T getItem() {
+			return item;
+		}
+
+		public long getDeadline() {
+			return deadline;
+		}
+
+		/// <summary>Returns true once the item has been returned by expire or cancelled.</summary>
+		public boolean isDone() {
+			return done;
+		}
+	}
+
+	private final long tickMillis;
+	private final int wheelSize;
+	private final List<Level<T>> levels = new ArrayList<>();
+
+	// Items whose deadline had already passed when they were scheduled or cascaded.
+	private final List<Timeout<T>> expired = new ArrayList<>();
+	private int size;
+
+	/// <summary>Creates a timing wheel.</summary>
+	/// <parameter name="tickMillis">Represents the tick of the lowest level, the precision of the wheel.</parameter>
+	/// <parameter name="wheelSize">Represents the number of buckets of every level.</parameter>
+	/// <parameter name="startTime">Represents the current time in epoch millis.</parameter>
+	public TimingWheel(long tickMillis, int wheelSize, long startTime) {
+		this.tickMillis = tickMillis;
+		this.wheelSize = wheelSize;
+		levels.add(new Level<>(tickMillis, wheelSize, startTime, true));
+	}
+
+	/// <summary>Schedules the item to be returned by expire once the deadline has passed.</summary>
+	/// <parameter name="item">Represents the item.</parameter>
+	/// <parameter name="deadline">Represents the deadline in epoch millis.</parameter>
+	/// <Returns>The handle to cancel the item with.</Returns>
+	public synchronized Timeout<T> schedule(T item, long deadline) {
+		Timeout<T> timeout = new Timeout<>(item, deadline);
+		add(timeout);
+		size++;
+		return timeout;
+	}
+
+	/// <summary>Removes the item from the wheel unless it was already returned by expire.</summary>
+	/// <Returns>True when the item was removed, false when it had already expired or been cancelled.</Returns>
+	public synchronized boolean cancel(Timeout<T> timeout) {
+		if (timeout.done) {
+			return false;
+		}
+
+		// The item is dropped from its bucket when the bucket comes up.
+		timeout.done = true;
+		size--;
+		return true;
+	}
+
+	/// <summary>Advances the wheel to the given time and returns the items whose deadline has passed.</summary>
+	/// <parameter name="now">Represents the current time in epoch millis.</parameter>
+	/// <Returns>The expired items, each item is returned once.</Returns>
+	public synchronized List<T> expire(long now) {
+		List<Timeout<T>> due = new ArrayList<>(expired);
+		List<Timeout<T>> cascaded = new ArrayList<>();
+		expired.clear();
+
+		for (int i = 0; i < levels.size(); i++) {
+			levels.get(i).advance(now, i == 0 ? due : cascaded);
+		}
+
+		// Items of the upper levels whose bucket came up either expired or move to a lower level.
+		for (Timeout<T> timeout : cascaded) {
+			add(timeout);
+		}
+
+		due.addAll(expired);
+		expired.clear();
+
+		List<T> items = new ArrayList<>(due.size());
+
+		for (Timeout<T> timeout : due) {
+			if (!timeout.done) {
+				timeout.done = true;
+				size--;
+				items.add(timeout.item);
+			}
+		}
+
+		return items;
+	}
+
+	/// <summary>Returns the number of items scheduled and neither expired nor cancelled.</summary>
+	public synchronized int size() {
+		return size;
+	}
+
+	/// <summary>Places the item in the lowest level whose ring reaches its deadline, adding levels as needed.</summary>
+	private void add(Timeout<T> timeout) {
+		if (timeout.done) {
+			return;
+		}
+
+		for (int i = 0; ; i++) {
+			if (i == levels.size()) {
+				Level<T> top = levels.get(i - 1);
+				levels.add(new Level<>(top.tick * wheelSize, wheelSize, levels.get(0).currentTick * tickMillis, false));
+			}
+
+			Level<T> level = levels.get(i);
+			long tick = timeout.deadline / level.tick;
+
+			// The ring of a level reaches past the current tick of the level above, so only items whose
+			// deadline has passed are behind the current tick of the level they are checked against.
+			if (tick < level.currentTick) {
+				expired.add(timeout);
+				return;
+			}
+
+			if (tick - level.currentTick < wheelSize) {
+				level.add(timeout, tick);
+				return;
+			}
+		}
+	}
+
+	/// <summary>
+	/// A ring of buckets of a single tick size, holding the items of the ticks from the current tick on.
+	/// The buckets of the lowest level are emptied once their tick has ended, the buckets of the upper levels
+	/// as soon as their tick starts, so their items move down in time to expire from the lowest level.
+	/// </summary>
+	private static final class Level<T> {
+		private final long tick;
+		private final boolean lowest;
+		private final ArrayDeque<Timeout<T>>[] buckets;
+
+		// Tick of the bucket the next advance starts from, all earlier buckets have been emptied.
+		private long currentTick;
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		Level(long tick, int wheelSize, long startTime, boolean lowest) {
+			this.tick = tick;
+			this.lowest = lowest;
+			this.buckets = new ArrayDeque[wheelSize];
+			this.currentTick = lowest ? startTime / tick : startTime / tick + 1;
+		}
+
+		void add(Timeout<T> timeout, long tick) {
+			int index = (int)(tick % buckets.length);
+
+			if (buckets[index] == null) {
+				buckets[index] = new ArrayDeque<>();
+			}
+
+			buckets[index].add(timeout);
+		}
+
+		/// <summary>Empties the buckets that came up by the given time into the target list.</summary>
+		void advance(long now, List<Timeout<T>> target) {
+			long nowTick = lowest ? now / tick : now / tick + 1;
+			long last = Math.min(nowTick, currentTick + buckets.length);
+
+			for (long t = currentTick; t < last; t++) {
+				ArrayDeque<Timeout<T>> bucket = buckets[(int)(t % buckets.length)];
+
+				if (bucket != null) {
+					for (Timeout<T> timeout : bucket) {
+						if (!timeout.done) {
+							target.add(timeout);
+						}
+					}
+
+					bucket.clear();
+				}
+			}
+
+			currentTick = Math.max(currentTick, nowTick);
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.messagequeue;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.messagequeue.services.InMemoryQueueService;
+import com.services.model.Message;
+import com.services.model.MessageStatus;
+import com.services.model.SendMessageRequest;
+
+public class BufferedProducerTest {
+
+	// Sizes of the batches pushed to the queue.
+	private final ConcurrentLinkedQueue<Integer> batches = new ConcurrentLinkedQueue<>();
+
+	private final InMemoryQueueService queueService = new InMemoryQueueService() {
+		@Override
+		public CompletableFuture<Void> pushAsync(SendMessageRequest request) {
+			batches.add(request.getAllMessages().size());
+			return super.pushAsync(request);
+		}
+	};
+
+	@After
+	public void tearDown() {
+		queueService.close();
+	}
+
+	/// <summary>
+	/// Verifies that the messages sent by many threads are pushed in full batches, that the last partial batch
+	/// is pushed once its linger time passed, and that every message gets its future completed.
+	/// </summary>
+	@Test(timeout = 10000)
+	public void testSendsAreBatched() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(5);
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+		try (BufferedProducer producer = new BufferedProducer(queueService, "buffered-test", 10, 256 * 1024, 200)) {
+			List<Future<List<CompletableFuture<Void>>>> sends = new ArrayList<>();
+
+			for (int t = 0; t < 5; t++) {
+				sends.add(executor.submit(() -> {
+					List<CompletableFuture<Void>> sent = new ArrayList<>();
+
+					for (int i = 0; i < 19; i++) {
+						sent.add(producer.send(newMessage("Message " + i)));
+					}
+
+					return sent;
+				}));
+			}
+
+			for (Future<List<CompletableFuture<Void>>> send : sends) {
+				futures.addAll(send.get());
+			}
+
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(2, TimeUnit.SECONDS);
+		}
+
+		executor.shutdown();
+		assertEquals(95, queueService.getApproximateNumberOfMessages("buffered-test"));
+		assertEquals(10, batches.size());
+
+		for (int size : batches) {
+			assertTrue(size <= 10);
+		}
+	}
+
+	/// <summary>Verifies that a batch is pushed before it would exceed the most bytes of a batch.</summary>
+	@Test(timeout = 10000)
+	public void testBatchesStayWithinBytes() throws Exception {
+		String content = new String(new char[100]).replace('\0', 'x');
+		int bytes = newMessage(content).toString().length();
+
+		try (BufferedProducer producer = new BufferedProducer(queueService, "buffered-bytes-test", 10, 3 * bytes + 1, 50)) {
+			CompletableFuture<Void> last = null;
+
+			for (int i = 0; i < 7; i++) {
+				last = producer.send(newMessage(content));
+			}
+
+			last.get(2, TimeUnit.SECONDS);
+			assertTrue(producer.send(newMessage(content + content + content + content)).isCompletedExceptionally());
+		}
+
+		assertEquals(7, queueService.getApproximateNumberOfMessages("buffered-bytes-test"));
+		assertEquals(3, batches.size());
+		assertEquals(Integer.valueOf(3), batches.peek());
+	}
+
+	private Message newMessage(String content) {
+		Message message = new Message();
+		message.setMessageStatus(MessageStatus.NEW);
+		message.setMessage(content);
+		return message;
+	}
+}
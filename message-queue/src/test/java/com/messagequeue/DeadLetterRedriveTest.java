@@ -0,0 +1,98 @@
+package com.messagequeue;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.messagequeue.services.InMemoryQueueService;
+import com.messagequeue.services.QueueEngine;
+import com.services.model.DeleteMessageRequest;
+import com.services.model.Message;
+import com.services.model.MessageStatus;
+import com.services.model.ReceiveMessageRequest;
+import com.services.model.SendMessageRequest;
+
+public class DeadLetterRedriveTest {
+
+	private final InMemoryQueueService queueService = new InMemoryQueueService();
+
+	@After
+	public void tearDown() {
+		queueService.close();
+	}
+
+	/// <summary>
+	/// Verifies that the redrive moves the messages of the dead-letter queue back to the source queue no faster
+	/// than its rate, as new messages whose receives are counted from zero.
+	/// </summary>
+	@Test(timeout = 10000)
+	public void testRedriveMovesMessagesAtRate() throws Exception {
+		List<Message> messages = new ArrayList<>();
+
+		for (int i = 0; i < 30; i++) {
+			Message message = new Message();
+			message.setMessageStatus(MessageStatus.NEW);
+			message.setMessage("Message " + i);
+			message.setPriorAttempts(3);
+			messages.add(message);
+		}
+
+		queueService.push(new SendMessageRequest("redrive-dlq", messages, 0));
+
+		long started = System.currentTimeMillis();
+		assertEquals(25, new DeadLetterRedrive(queueService, "redrive-dlq", "redrive-source", 100).run(25));
+		assertTrue(System.currentTimeMillis() - started >= 200);
+
+		assertEquals(5, queueService.getApproximateNumberOfMessages("redrive-dlq"));
+		assertEquals(0, queueService.getApproximateNumberOfMessagesNotVisible("redrive-dlq"));
+		assertEquals(25, queueService.getApproximateNumberOfMessages("redrive-source"));
+
+		List<Message> received = queueService.poll(new ReceiveMessageRequest("redrive-source", 1, 1, 0));
+		assertEquals("Message 0", received.get(0).getMessage());
+		assertEquals(0, received.get(0).getPriorAttempts());
+
+		assertEquals(5, new DeadLetterRedrive(queueService, "redrive-dlq", "redrive-source", 100).run(100));
+	}
+
+	/// <summary>
+	/// Verifies that redriving a FIFO dead-letter queue keeps the message group of every message, so the source
+	/// FIFO queue hands out the messages of each group in their order, one receive after the other.
+	/// </summary>
+	@Test(timeout = 10000)
+	public void testRedriveKeepsMessageGroups() throws Exception {
+		assertTrue(queueService.createQueue("redrive-dlq.fifo", QueueEngine.fifo()));
+		assertTrue(queueService.createQueue("redrive-source.fifo", QueueEngine.fifo()));
+		List<Message> messages = new ArrayList<>();
+
+		for (int i = 0; i < 4; i++) {
+			Message message = new Message();
+			message.setMessageStatus(MessageStatus.NEW);
+			message.setMessage("Message " + i);
+			message.setMessageGroupId(i % 2 == 0 ? "group-a" : "group-b");
+			messages.add(message);
+		}
+
+		queueService.push(new SendMessageRequest("redrive-dlq.fifo", messages, 0));
+
+		assertEquals(4, new DeadLetterRedrive(queueService, "redrive-dlq.fifo", "redrive-source.fifo", 100).run(100));
+		assertEquals(0, queueService.getApproximateNumberOfMessages("redrive-dlq.fifo"));
+
+		// A receive locks the group of its message, so the next receive takes the other group rather than waiting.
+		ReceiveMessageRequest request = new ReceiveMessageRequest("redrive-source.fifo", 1, 1, 0);
+		List<Message> first = queueService.poll(request);
+		assertEquals("Message 0", first.get(0).getMessage());
+		assertEquals("group-a", first.get(0).getMessageGroupId());
+
+		List<Message> second = queueService.poll(request);
+		assertEquals("Message 1", second.get(0).getMessage());
+		assertEquals("group-b", second.get(0).getMessageGroupId());
+		assertNull(queueService.poll(request));
+
+		queueService.delete(new DeleteMessageRequest("redrive-source.fifo", first));
+		assertEquals("Message 2", queueService.poll(request).get(0).getMessage());
+	}
+}
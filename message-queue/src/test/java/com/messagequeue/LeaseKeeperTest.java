@@ -0,0 +1,56 @@
+package com.messagequeue;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.messagequeue.services.InMemoryQueueService;
+import com.services.model.Message;
+import com.services.model.MessageStatus;
+import com.services.model.ReceiveMessageRequest;
+import com.services.model.SendMessageRequest;
+
+public class LeaseKeeperTest {
+
+	private final InMemoryQueueService queueService = new InMemoryQueueService();
+
+	@After
+	public void tearDown() {
+		queueService.close();
+	}
+
+	/// <summary>
+	/// Verifies that a held message stays invisible for several leases, and becomes visible again within a
+	/// lease once it is released.
+	/// </summary>
+	@Test(timeout = 10000)
+	public void testHeldMessagesStayInvisible() throws Exception {
+		String queueUrl = "lease-test";
+		Message message = new Message();
+		message.setMessageStatus(MessageStatus.NEW);
+		message.setMessage("lease");
+		List<Message> messages = new ArrayList<>();
+		messages.add(message);
+		queueService.push(new SendMessageRequest(queueUrl, messages, 0));
+
+		ReceiveMessageRequest request = new ReceiveMessageRequest(queueUrl, 5, 0, 0);
+		request.setVisibilityTimeoutMillis(300);
+
+		try (LeaseKeeper keeper = new LeaseKeeper(queueService, queueUrl, 300)) {
+			List<Message> received = queueService.poll(request);
+			keeper.hold(received);
+
+			Thread.sleep(1000);
+			assertNull(queueService.poll(request));
+			assertEquals(1, keeper.size());
+
+			keeper.release(received);
+			Thread.sleep(500);
+			assertEquals(messages, queueService.poll(request));
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package com.messagequeue;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.messagequeue.services.InMemoryQueueService;
+import com.services.model.Message;
+import com.services.model.MessageStatus;
+import com.services.model.SendMessageRequest;
+import com.utilities.Flow;
+
+public class QueuePublisherTest {
+
+	private final InMemoryQueueService queueService = new InMemoryQueueService();
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+		queueService.close();
+	}
+
+	/// <summary>
+	/// Verifies that the publisher receives no more messages than the subscriber requested, leaving the rest
+	/// in the queue, and deletes the messages sent to the subscriber.
+	/// </summary>
+	@Test(timeout = 10000)
+	public void testPublisherReceivesOnlyRequestedMessages() throws Exception {
+		String queueUrl = "publisher-test";
+		queueService.push(new SendMessageRequest(queueUrl, newMessages(25), 0));
+
+		BlockingQueue<Message> received = new LinkedBlockingQueue<>();
+		List<Flow.Subscription> subscriptions = new ArrayList<>();
+
+		new QueuePublisher(queueService, queueUrl, 10, 1, 1, executor).subscribe(new Flow.Subscriber<Message>() {
+			public void onSubscribe(Flow.Subscription subscription) {
+				subscriptions.add(subscription);
+				subscription.request(7);
+			}
+
+			public void onNext(Message message) {
+				received.add(message);
+			}
+
+			public void onError(Throwable throwable) {
+				throwable.printStackTrace();
+			}
+
+			public void onComplete() {
+			}
+		});
+
+		for (int i = 0; i < 7; i++) {
+			assertNotNull(received.poll(2, TimeUnit.SECONDS));
+		}
+
+		assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+		assertEquals(18, queueService.getApproximateNumberOfMessages(queueUrl));
+		assertEquals(0, queueService.getApproximateNumberOfMessagesNotVisible(queueUrl));
+
+		subscriptions.get(0).request(100);
+
+		for (int i = 0; i < 18; i++) {
+			assertNotNull(received.poll(2, TimeUnit.SECONDS));
+		}
+
+		subscriptions.get(0).cancel();
+		Thread.sleep(100);
+		assertEquals(0, queueService.getApproximateNumberOfMessages(queueUrl));
+		assertEquals(0, queueService.getApproximateNumberOfMessagesNotVisible(queueUrl));
+	}
+
+	/// <summary>Verifies that the subscriber pushes the messages of a publisher in batches, including the last partial one.</summary>
+	@Test(timeout = 10000)
+	public void testSubscriberPushesBatches() throws Exception {
+		String queueUrl = "subscriber-test";
+		List<Message> messages = newMessages(10);
+		List<Long> requests = new ArrayList<>();
+
+		// Publisher sending the messages as they are requested on the calling thread.
+		Flow.Publisher<Message> publisher = subscriber -> subscriber.onSubscribe(new Flow.Subscription() {
+			private int next;
+
+			public void request(long n) {
+				requests.add(n);
+
+				for (long i = 0; i < n && next < messages.size(); i++) {
+					subscriber.onNext(messages.get(next++));
+				}
+
+				if (next == messages.size()) {
+					next++;
+					subscriber.onComplete();
+				}
+			}
+
+			public void cancel() {
+			}
+		});
+
+		QueueSubscriber subscriber = new QueueSubscriber(queueService, queueUrl, 4, 0);
+		publisher.subscribe(subscriber);
+
+		subscriber.getCompletion().get(1, TimeUnit.SECONDS);
+		assertEquals(10, queueService.getApproximateNumberOfMessages(queueUrl));
+
+		for (Long request : requests) {
+			assertEquals(4L, request.longValue());
+		}
+	}
+
+	private List<Message> newMessages(int count) {
+		List<Message> messages = new ArrayList<>();
+
+		for (int i = 0; i < count; i++) {
+			Message message = new Message();
+			message.setMessageStatus(MessageStatus.NEW);
+			message.setMessage("flow " + i);
+			messages.add(message);
+		}
+
+		return messages;
+	}
+}
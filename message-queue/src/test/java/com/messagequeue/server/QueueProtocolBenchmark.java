@@ -0,0 +1,95 @@
+package com.messagequeue.server;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.messagequeue.services.InMemoryQueueService;
+import com.services.model.DeleteMessageRequest;
+import com.services.model.Message;
+import com.services.model.MessageStatus;
+import com.services.model.ReceiveMessageRequest;
+import com.services.model.SendMessageRequest;
+
+/// <summary>
+/// Measures the messages per second moved through a QueueProtocolServer on loopback by 1, 4 and 16 threads
+/// sharing one client connection. Every thread pushes a batch of small messages, receives a batch and deletes
+/// it, the way the producers and consumers of the application do.
+/// Run the main method on the test classpath after mvn test-compile.
+/// </summary>
+public class QueueProtocolBenchmark {
+
+	private static final int[] threadCounts = { 1, 4, 16 };
+	private static final int batchSize = 100;
+	private static final long warmupMillis = 1000;
+	private static final long measureMillis = 3000;
+
+	public static void main(String[] args) throws Exception {
+		InMemoryQueueService queueService = new InMemoryQueueService();
+
+		try (QueueProtocolServer server = new QueueProtocolServer(queueService, new InetSocketAddress("localhost", 0));
+				QueueProtocolClient client = new QueueProtocolClient("localhost", server.getPort())) {
+			System.out.println(String.format("%8s %16s", "threads", "messages/sec"));
+
+			for (int threads : threadCounts) {
+				run(client, threads, warmupMillis);
+				double rate = run(client, threads, measureMillis);
+				System.out.println(String.format("%8d %,16.0f", threads, rate));
+			}
+		}
+		finally {
+			queueService.close();
+		}
+	}
+
+	/// <summary>Runs the threads against the queue of the server for the given time.</summary>
+	/// <Returns>The messages received and deleted per second.</Returns>
+	private static double run(QueueProtocolClient client, int threads, long millis) throws Exception {
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final CountDownLatch start = new CountDownLatch(1);
+		final LongAdder received = new LongAdder();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		for (int t = 0; t < threads; t++) {
+			final String queueUrl = "benchmark-" + t;
+
+			executor.submit(() -> {
+				List<Message> batch = new ArrayList<>(batchSize);
+
+				for (int i = 0; i < batchSize; i++) {
+					Message message = new Message();
+					message.setMessageStatus(MessageStatus.NEW);
+					message.setMessage("message " + i);
+					batch.add(message);
+				}
+
+				ReceiveMessageRequest request = new ReceiveMessageRequest(queueUrl, batchSize, 1, 0);
+				start.await();
+
+				while (running.get()) {
+					client.push(new SendMessageRequest(queueUrl, batch, 0));
+					List<Message> messages = client.poll(request);
+					client.delete(new DeleteMessageRequest(queueUrl, messages));
+					received.add(messages.size());
+				}
+
+				return null;
+			});
+		}
+
+		long started = System.nanoTime();
+		start.countDown();
+		Thread.sleep(millis);
+		running.set(false);
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+
+		return received.sum() * 1e9 / (System.nanoTime() - started);
+	}
+}
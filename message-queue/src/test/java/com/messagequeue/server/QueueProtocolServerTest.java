@@ -0,0 +1,143 @@
+package com.messagequeue.server;
+
+import static org.junit.Assert.*;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.messagequeue.services.InMemoryQueueService;
+import com.messagequeue.services.RedrivePolicy;
+import com.services.model.ChangeVisibilityRequest;
+import com.services.model.ChangeVisibilityResult;
+import com.services.model.DeleteMessageRequest;
+import com.services.model.DeleteMessageResult;
+import com.services.model.Message;
+import com.services.model.MessageStatus;
+import com.services.model.ReceiveMessageRequest;
+import com.services.model.SendMessageRequest;
+
+public class QueueProtocolServerTest {
+
+	private InMemoryQueueService queueService;
+	private QueueProtocolServer server;
+	private QueueProtocolClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		queueService = new InMemoryQueueService();
+		server = new QueueProtocolServer(queueService, new InetSocketAddress("localhost", 0));
+		client = new QueueProtocolClient("localhost", server.getPort());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		server.close();
+		queueService.close();
+	}
+
+	/// <summary>
+	/// Verifies that the client pushes, receives, changes the visibility of and deletes messages of the queue
+	/// behind the server, with the outcome of every message reported back.
+	/// </summary>
+	@Test(timeout = 10000)
+	public void testQueueOperations() throws Exception {
+		String queueUrl = "protocol-test";
+		List<Message> sent = messages("first", "second");
+		sent.get(1).setMessageGroupId("group");
+		client.push(new SendMessageRequest(queueUrl, sent, 0));
+		assertEquals(2, queueService.getApproximateNumberOfMessages(queueUrl));
+
+		ReceiveMessageRequest request = new ReceiveMessageRequest(queueUrl, 10, 1, 1);
+		List<Message> received = client.poll(request);
+		assertEquals(2, received.size());
+		assertEquals("first", received.get(0).getMessage());
+		assertEquals(0, received.get(0).getPriorAttempts());
+		assertNotNull(received.get(0).getinvisibleFromTime());
+		assertNull(received.get(0).getMessageGroupId());
+		assertEquals("group", received.get(1).getMessageGroupId());
+
+		List<Message> released = new ArrayList<>();
+		released.add(received.get(0));
+		ChangeVisibilityResult changed = client.changeVisibility(new ChangeVisibilityRequest(queueUrl, released, 0));
+		assertEquals(1, changed.getSuccessful().size());
+		assertSame(received.get(0), changed.getSuccessful().get(0));
+
+		List<Message> again = client.poll(request);
+		assertEquals(1, again.size());
+		assertEquals(1, again.get(0).getPriorAttempts());
+
+		List<Message> processed = new ArrayList<>();
+		processed.add(again.get(0));
+		processed.add(received.get(1));
+		processed.add(received.get(0));
+
+		DeleteMessageResult deleted = client.delete(new DeleteMessageRequest(queueUrl, processed));
+		assertEquals(2, deleted.getSuccessful().size());
+		assertEquals(1, deleted.getFailed().size());
+		assertSame(received.get(0), deleted.getFailed().get(0).getMessage());
+		assertEquals(DeleteMessageResult.receiptHandleIsInvalid, deleted.getFailed().get(0).getCode());
+
+		// An empty queue answers a receive without wait with no messages.
+		assertTrue(client.poll(new ReceiveMessageRequest(queueUrl, 10, 1, 0)).isEmpty());
+	}
+
+	/// <summary>
+	/// Verifies that requests pipelined by many callers on the single connection are all answered, and that a
+	/// failed request fails its own future only.
+	/// </summary>
+	@Test(timeout = 20000)
+	public void testPipelinedRequests() throws Exception {
+		String queueUrl = "protocol-pipelined";
+		List<CompletableFuture<Void>> pushes = new ArrayList<>();
+
+		for (int i = 0; i < 2000; i++) {
+			pushes.add(client.pushAsync(new SendMessageRequest(queueUrl, messages("message " + i), 0)));
+		}
+
+		CompletableFuture.allOf(pushes.toArray(new CompletableFuture<?>[0])).join();
+		assertEquals(2000, queueService.getApproximateNumberOfMessages(queueUrl));
+
+		// A queue cannot be its own dead-letter queue, the server reports the failure to the caller.
+		try {
+			client.setRedrivePolicy(queueUrl, new RedrivePolicy(queueUrl, 3));
+			fail("The redrive policy should have been rejected.");
+		}
+		catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("own dead-letter queue"));
+		}
+
+		List<CompletableFuture<List<Message>>> polls = new ArrayList<>();
+
+		for (int i = 0; i < 200; i++) {
+			polls.add(client.pollAsync(new ReceiveMessageRequest(queueUrl, 10, 1, 0)));
+		}
+
+		int received = 0;
+
+		for (CompletableFuture<List<Message>> poll : polls) {
+			received += poll.join().size();
+		}
+
+		assertEquals(2000, received);
+	}
+
+	private List<Message> messages(String... bodies) {
+		List<Message> messages = new ArrayList<>();
+
+		for (String body : bodies) {
+			Message message = new Message();
+			message.setMessageStatus(MessageStatus.NEW);
+			message.setMessage(body);
+			messages.add(message);
+		}
+
+		return messages;
+	}
+}
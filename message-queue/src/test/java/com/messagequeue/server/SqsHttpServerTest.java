@@ -0,0 +1,284 @@
+package com.messagequeue.server;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.messagequeue.services.InMemoryQueueService;
+import com.messagequeue.services.QueueEngine;
+import com.messagequeue.services.SqsClientSettings;
+import com.messagequeue.services.SqsQueueService;
+import com.services.model.ChangeVisibilityRequest;
+import com.services.model.ChangeVisibilityResult;
+import com.services.model.DeleteMessageRequest;
+import com.services.model.DeleteMessageResult;
+import com.services.model.Message;
+import com.services.model.MessageStatus;
+import com.services.model.ReceiveMessageRequest;
+import com.services.model.SendMessageRequest;
+
+public class SqsHttpServerTest {
+
+	private InMemoryQueueService queueService;
+	private SqsHttpServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		queueService = new InMemoryQueueService();
+		server = new SqsHttpServer(queueService, "", new InetSocketAddress("localhost", 0));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.close();
+		queueService.close();
+	}
+
+	/// <summary>
+	/// Verifies that SqsQueueService, through the AWS SDK, creates a queue, sends, receives, changes the
+	/// visibility of and deletes messages on the local server.
+	/// </summary>
+	@Test(timeout = 30000)
+	public void testSqsQueueServiceAgainstLocalServer() throws Exception {
+		SqsClientSettings settings = new SqsClientSettings();
+		settings.setEndpoint(server.getEndpoint());
+		settings.setMaxErrorRetry(0);
+		SqsQueueService sqs = new SqsQueueService(new BasicAWSCredentials("local", "local"), settings);
+
+		try {
+			String queueUrl = sqs.getOrCreateQueue("orders");
+			assertEquals(server.getEndpoint() + "/queue/orders", queueUrl);
+			assertSame(queueUrl, sqs.getOrCreateQueue("orders"));
+
+			List<Message> messages = new ArrayList<>();
+
+			for (int i = 0; i < 2; i++) {
+				Message message = new Message();
+				message.setMessageStatus(MessageStatus.NEW);
+				message.setMessage("order <" + i + "> & more");
+				messages.add(message);
+			}
+
+			sqs.push(new SendMessageRequest(queueUrl, messages, 0));
+			assertEquals(2, queueService.getApproximateNumberOfMessages("orders"));
+
+			ReceiveMessageRequest request = new ReceiveMessageRequest(queueUrl, 10, 1, 1);
+			List<Message> received = sqs.poll(request);
+			assertEquals(2, received.size());
+			assertEquals(messages.get(0).toString(), received.get(0).getMessage());
+			assertEquals(0, received.get(0).getPriorAttempts());
+
+			List<Message> released = new ArrayList<>();
+			released.add(received.get(0));
+			ChangeVisibilityResult changed = sqs.changeVisibility(new ChangeVisibilityRequest(queueUrl, released, 0));
+			assertEquals(1, changed.getSuccessful().size());
+
+			List<Message> again = sqs.poll(request);
+			assertEquals(1, again.size());
+			assertEquals(1, again.get(0).getPriorAttempts());
+
+			List<Message> processed = new ArrayList<>();
+			processed.add(again.get(0));
+			processed.add(received.get(1));
+			Message unknown = new Message();
+			unknown.setReceiptHandle("not-a-receipt");
+			processed.add(unknown);
+
+			DeleteMessageResult deleted = sqs.delete(new DeleteMessageRequest(queueUrl, processed));
+			assertEquals(2, deleted.getSuccessful().size());
+			assertEquals(1, deleted.getFailed().size());
+			assertSame(unknown, deleted.getFailed().get(0).getMessage());
+			assertEquals(DeleteMessageResult.receiptHandleIsInvalid, deleted.getFailed().get(0).getCode());
+			assertEquals(0, queueService.getApproximateNumberOfMessagesNotVisible("orders"));
+		}
+		finally {
+			sqs.close();
+		}
+	}
+
+	/// <summary>
+	/// Verifies that SqsQueueService deletes more messages than a batch of Amazon SQS holds, as a prefetched poll
+	/// may return, in several batches.
+	/// </summary>
+	@Test(timeout = 30000)
+	public void testDeleteMoreThanBatch() throws Exception {
+		SqsClientSettings settings = new SqsClientSettings();
+		settings.setEndpoint(server.getEndpoint());
+		settings.setMaxErrorRetry(0);
+		SqsQueueService sqs = new SqsQueueService(new BasicAWSCredentials("local", "local"), settings);
+
+		try {
+			String queueUrl = sqs.getOrCreateQueue("large-delete");
+			List<Message> messages = new ArrayList<>();
+
+			for (int i = 0; i < 25; i++) {
+				Message message = new Message();
+				message.setMessageStatus(MessageStatus.NEW);
+				message.setMessage("message " + i);
+				messages.add(message);
+			}
+
+			sqs.push(new SendMessageRequest(queueUrl, messages, 0));
+			List<Message> received = new ArrayList<>();
+
+			while (received.size() < messages.size()) {
+				received.addAll(sqs.poll(new ReceiveMessageRequest(queueUrl, 10, 30, 1)));
+			}
+
+			assertEquals(25, sqs.delete(new DeleteMessageRequest(queueUrl, received)).getSuccessful().size());
+			assertEquals(0, queueService.getApproximateNumberOfMessagesNotVisible("large-delete"));
+		}
+		finally {
+			sqs.close();
+		}
+	}
+
+	/// <summary>
+	/// Verifies that SqsQueueService sends the message groups of a FIFO queue, and that the local FIFO queue behind
+	/// the server hands out the next message of a group only once its in-flight message is deleted. A message asking
+	/// for a delay of its own is rejected before it is sent, as SQS FIFO queues only take the delay of the queue.
+	/// </summary>
+	@Test(timeout = 30000)
+	public void testFifoQueueAgainstLocalServer() throws Exception {
+		assertTrue(queueService.createQueue("orders.fifo", QueueEngine.fifo()));
+		SqsClientSettings settings = new SqsClientSettings();
+		settings.setEndpoint(server.getEndpoint());
+		settings.setMaxErrorRetry(0);
+		SqsQueueService sqs = new SqsQueueService(new BasicAWSCredentials("local", "local"), settings);
+
+		try {
+			String queueUrl = sqs.getOrCreateQueue("orders.fifo");
+			List<Message> messages = new ArrayList<>();
+
+			for (int i = 0; i < 4; i++) {
+				Message message = new Message();
+				message.setMessageStatus(MessageStatus.NEW);
+				message.setMessage("order " + i);
+				message.setMessageGroupId(i % 2 == 0 ? "customer-a" : "customer-b");
+				messages.add(message);
+			}
+
+			sqs.push(new SendMessageRequest(queueUrl, messages, 0));
+			ReceiveMessageRequest request = new ReceiveMessageRequest(queueUrl, 1, 30, 0);
+
+			List<Message> first = sqs.poll(request);
+			assertEquals(messages.get(0).toString(), first.get(0).getMessage());
+			assertEquals("customer-a", first.get(0).getMessageGroupId());
+			assertEquals(messages.get(1).toString(), sqs.poll(request).get(0).getMessage());
+			assertTrue(sqs.poll(request).isEmpty());
+
+			assertEquals(1, sqs.delete(new DeleteMessageRequest(queueUrl, first)).getSuccessful().size());
+			List<Message> next = sqs.poll(request);
+			assertEquals(messages.get(2).toString(), next.get(0).getMessage());
+			assertEquals("customer-a", next.get(0).getMessageGroupId());
+
+			messages.get(0).setDelaySeconds(5);
+			SendMessageRequest delayed = new SendMessageRequest(queueUrl, messages.subList(0, 1), 0);
+
+			try {
+				sqs.push(delayed);
+				fail("A delayed message was sent to a FIFO queue.");
+			}
+			catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("delay"));
+			}
+
+			try {
+				sqs.pushAsync(delayed).get();
+				fail("A delayed message was sent to a FIFO queue.");
+			}
+			catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof IllegalArgumentException);
+			}
+
+			assertEquals(1, queueService.getApproximateNumberOfMessages("orders.fifo"));
+		}
+		finally {
+			sqs.close();
+		}
+	}
+
+	/// <summary>
+	/// Verifies that pipelined requests on a keep-alive connection are answered in order, and that the
+	/// connection is closed after a request asking for it.
+	/// </summary>
+	@Test(timeout = 10000)
+	public void testPipelinedRequests() throws Exception {
+		try (Socket socket = new Socket("localhost", server.getPort())) {
+			OutputStream output = socket.getOutputStream();
+			output.write((request("Action=GetQueueUrl&QueueName=missing", "")
+					+ request("Action=CreateQueue&QueueName=pipelined", "")
+					+ request("Action=GetQueueUrl&QueueName=pipelined", "Connection: close\r\n")).getBytes(StandardCharsets.UTF_8));
+			output.flush();
+
+			String responses = readAll(socket.getInputStream());
+			int missing = responses.indexOf("AWS.SimpleQueueService.NonExistentQueue");
+			int created = responses.indexOf("<CreateQueueResponse");
+			int found = responses.indexOf("<GetQueueUrlResponse");
+
+			assertTrue(responses, missing > 0 && created > missing && found > created);
+			assertTrue(responses.startsWith("HTTP/1.1 400 "));
+			assertTrue(responses.contains("<QueueUrl>http://localhost/queue/pipelined</QueueUrl>"));
+		}
+	}
+
+	/// <summary>
+	/// Verifies that malformed requests are answered with errors of their own, and that the connection and the
+	/// server keep serving the requests that follow them.
+	/// </summary>
+	@Test(timeout = 10000)
+	public void testMalformedRequests() throws Exception {
+		server.createQueue("malformed");
+
+		try (Socket socket = new Socket("localhost", server.getPort())) {
+			OutputStream output = socket.getOutputStream();
+			output.write((request("Action=%zz", "")
+					+ request("Action=ReceiveMessage&QueueUrl=http://local%20host/queue/%7C", "")
+					+ request("Action=GetQueueUrl&QueueName=malformed", "Connection: close\r\n")).getBytes(StandardCharsets.UTF_8));
+			output.flush();
+
+			String responses = readAll(socket.getInputStream());
+			int malformed = responses.indexOf("<Code>MalformedQueryString</Code>");
+			int invalid = responses.indexOf("<Code>InvalidParameterValue</Code>");
+			int found = responses.indexOf("<QueueUrl>http://localhost/queue/malformed</QueueUrl>");
+
+			assertTrue(responses, malformed > 0 && invalid > malformed && found > invalid);
+		}
+
+		try (Socket socket = new Socket("localhost", server.getPort())) {
+			OutputStream output = socket.getOutputStream();
+			output.write(request("Action=GetQueueUrl&QueueName=malformed", "Connection: close\r\n").getBytes(StandardCharsets.UTF_8));
+			output.flush();
+			assertTrue(readAll(socket.getInputStream()).startsWith("HTTP/1.1 200 "));
+		}
+	}
+
+	private String request(String body, String headers) {
+		return "POST / HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/x-www-form-urlencoded\r\n" + headers
+				+ "Content-Length: " + body.length() + "\r\n\r\n" + body;
+	}
+
+	private String readAll(InputStream input) throws Exception {
+		StringBuilder text = new StringBuilder();
+		byte[] buffer = new byte[4096];
+		int read;
+
+		while ((read = input.read(buffer)) >= 0) {
+			text.append(new String(buffer, 0, read, StandardCharsets.UTF_8));
+		}
+
+		return text.toString();
+	}
+}
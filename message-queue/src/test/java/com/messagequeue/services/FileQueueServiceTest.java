@@ -1,488 +1,461 @@
-package com.messagequeue.services;
-
-import static org.junit.Assert.*;
-
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.lang.reflect.Method;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.List;
-import java.util.Random;
-
-import org.junit.After;
-import org.junit.AfterClass;
-import org.junit.Before;
-import org.junit.BeforeClass;
-import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.test.context.ActiveProfiles;
-import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
-
-import com.services.model.Message;
-import com.services.model.MessageStatus;
-import com.messagequeue.config.ApplicationConfiguration;
-import com.messagequeue.services.FileQueueService;
-import com.services.model.DeleteMessageRequest;
-import com.services.model.SendMessageRequest;
-import com.services.model.ReceiveMessageRequest;
-import com.utilities.DateTimeUtility;
-
-@RunWith(SpringJUnit4ClassRunner.class)
-@SpringBootTest
-@ActiveProfiles("test")
-public class FileQueueServiceTest {
-	static String queueUri;
-	static final String queueName = "messages";
-	private static final String lockName = ".lock";
-	
-	@Autowired
-	private FileQueueService serviceInstance;
-	
-	@Autowired
-	private ApplicationConfiguration config;
-	
-	
-	@BeforeClass
-	public static void setUpBeforeClass() throws Exception {
-		
-	}
-
-	@AfterClass
-	public static void tearDownAfterClass() throws Exception {
-	
-	}
-
-	@Before
-	public void setUp() throws Exception {
-		queueUri = config.getQueueUrl();
-	}
-
-	@After
-	public void tearDown() throws Exception {
-	
-	}
-	
-	@Test
-	public void testPush() throws Exception {
-		
-		int delayMessageSec = Integer.parseInt(config.getDelayPublish());
-		int msgBatchSize = Integer.parseInt(config.getMaxMessages());
-		
-		File file = CreateQueueFile();
-		
-		AcquireLock();
-		
-		// Clear the contents of the queue.
-		try(PrintWriter pw = new PrintWriter(new FileWriter(file))) {   // append
-			pw.print("");
-		}
-				
-		ReleaseLock();
-		
-		// Generate Send Message Request.
-		Random randomGenerator = new Random();
-		List<Message> messages= new ArrayList<Message>();
-		
-		for (int i =0; i < msgBatchSize; i++) {
-		
-			String messageContent = "File implementation of SQS - Message ID: " + Integer.toString(randomGenerator.nextInt(500));
-				
-			Message message = new Message();
-			message.setMessageStatus(MessageStatus.NEW);
-			message.setPriorAttempts(0);
-			message.setMessage(messageContent);
-			messages.add(message);
-		}
-		
-		SendMessageRequest request = new SendMessageRequest(queueUri, messages, delayMessageSec);
-		
-		// Place Request to push messages to the SQS Queue. 
-		serviceInstance.push(request);
-		
-		file = CreateQueueFile();
-		
-		AcquireLock();
-		
-		//Call helper function to get the number of messages in the messages file.
-		int actualMessageCount = totalRecordCount(file);
-		
-		ReleaseLock();
-		
-		assertEquals(msgBatchSize, actualMessageCount);
-	}
-	
-	@Test
-	public void testReplaceSelected() throws Exception {
-		DateFormat formatter =new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-		Calendar cal = Calendar.getInstance();
-		String currTime = formatter.format(cal.getTime());
-		
-		String message = "0|0|" + currTime + "||File implementation of SQS - Message ID:123";
-		String newMessage = "1|0|" + currTime + "|123|File implementation of SQS - Message ID:123";
-		
-		File file = CreateQueueFile();
-		
-		AcquireLock();
-		
-		// Clear the contents of the queue.
-		try(PrintWriter pw = new PrintWriter(new FileWriter(file))) {   // append
-			pw.print("");
-		}
-				
-		try(PrintWriter pw = new PrintWriter(new FileWriter(file, true))) {   // append
-			pw.println(message);
-		}
-    	
-		ReleaseLock();
-		
-		Method replaceSel = FileQueueService.class.getDeclaredMethod("replaceSelected",String.class, String.class, String.class);
-		replaceSel.setAccessible(true);
-		replaceSel.invoke(serviceInstance,message, newMessage, queueUri);
-		
-		AcquireLock();
-		
-		String actualMessage = convertFileToString(file);
-		
-		ReleaseLock();
-		
-		assertEquals(newMessage, actualMessage);
-	}
-	
-	@Test
-	public void testDeleteMessages() throws Exception {
-		int msgBatchSize = 10;
-		int deletedMessageCount = 4;
-		
-		// Generate Send Message Request.
-		Random randomGenerator = new Random();
-		List<Message> messages= new ArrayList<>();
-		
-		for (int i =0; i < msgBatchSize; i++) {
-		
-			String messageContent = "File implementation of SQS - Message ID: " + Integer.toString(randomGenerator.nextInt(500));
-				
-			Message message = new Message();
-			
-			message.setMessageStatus(MessageStatus.NEW);
-			message.setPriorAttempts(0);
-			message.setMessage(messageContent);
-			messages.add(message);
-		}
-		
-		try{
-			
-			// Call the Helper Method to create the messages file(File Queue).
-			File file = CreateQueueFile();
-			
-			AcquireLock();
-			
-			// Clear the contents of the queue.
-			try(PrintWriter pw = new PrintWriter(new FileWriter(file))) {   // append
-				pw.print("");
-			}
-					
-			try(PrintWriter pw = new PrintWriter(new FileWriter(file, true))) {   // append
-				for(Message msg : messages) {
-					pw.println(msg);
-				}
-			}
-		}
-		finally {
-			ReleaseLock();
-		}
-		
-		List<Message> deleteMessages = new ArrayList<>();
-		
-		int count = 0;
-		for (Message msg : messages) {
-			
-			if(count < deletedMessageCount) {
-				deleteMessages.add(msg);
-			}
-			count++;
-		}
-		
-		DeleteMessageRequest request = new DeleteMessageRequest(queueUri, deleteMessages);
-		
-		serviceInstance.delete(request);
-		
-		int expectedRemainingMessage = 6;
-		int actualMessageCount;
-		
-		try {
-					
-			File file = CreateQueueFile();
-			
-			AcquireLock();
-			
-			//Call helper function to get the number of messages in the messages file.
-			actualMessageCount = totalRecordCount(file);
-		}
-		finally{
-			ReleaseLock();
-		}
-		assertEquals(expectedRemainingMessage, actualMessageCount);
-		
-		
-	}
-	
-	/// <summary>
-    /// Verifies that no messages are returned when size of the queue is Empty and 
-	/// an appropriate message should be printed on the console.
-    /// </summary>
-    @Test
-	public void testPollWithEmptyQueue() throws Exception {
-	   	int visibilityTimeout = Integer.parseInt(config.getVisibilityTimeout());
-	    	File messagesFile = CreateQueueFile();
-			
-	    	AcquireLock();
-	    	
-		// Clear the contents of the queue.
-		try(PrintWriter pw = new PrintWriter(new FileWriter(messagesFile))) {   // append
-			pw.print("");
-		}
-		
-		ReleaseLock();
-			
-	    	ReceiveMessageRequest request = new ReceiveMessageRequest(queueUri, 5,visibilityTimeout);
-		List<Message> messages = serviceInstance.poll(request);
-		
-		assertNull(messages);
-	}
-	
-    /// <summary>
-    /// Verifies that no messages are returned when Queue is Not Empty. But there are no new messages 
-	/// present in queue for processing. An appropriate message should be printed on the console.
-    /// </summary>
-    ///<TestResults>An appropriate message should be printed on the console stating
-    /// There are no messages in queue waiting to be processed.</TestResults>
-    @Test
-    public void testPollWithNoNewMessagesInQueue() throws Exception {
-    	
-    		DateFormat formatter =new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-		Calendar cal = Calendar.getInstance();
-		String currTime = formatter.format(cal.getTime());
-		
-		int visibilityTimeout = Integer.parseInt(config.getVisibilityTimeout());
-		
-    		String message = "INFLIGHT|0|"+ currTime + "|7777|File implementation of SQS - Message ID:123";
-		
-		
-		File messagesFile = CreateQueueFile();
-		
-		AcquireLock();
-		
-		// Clear the contents of the queue.
-		try(PrintWriter pw = new PrintWriter(new FileWriter(messagesFile))) {   // append
-			pw.print("");
-		}
-		
-		try(PrintWriter pw = new PrintWriter(new FileWriter(messagesFile, true))) {   // append
-			pw.println(message);
-		}
-		
-		ReleaseLock();
-		
-		ReceiveMessageRequest request = new ReceiveMessageRequest(queueUri, 5, visibilityTimeout);
-		List<Message> messages = serviceInstance.poll(request);
-		
-		assertNull(messages);
-    }
-    
-    @Test
-    public void testPoll() throws Exception{
-    	
-    	int msgBatchSize = 10;
-    	int visibilityTimeout = Integer.parseInt(config.getVisibilityTimeout());
-    	
-    	Random randomGenerator = new Random();
-		List<Message> messages= new ArrayList<Message>();
-		
-		for (int i =0; i < msgBatchSize; i++) {
-		
-			String messageContent = "File implementation of SQS - Message ID: " + Integer.toString(randomGenerator.nextInt(500));
-				
-			Message message = new Message();
-			
-			if(i%2 == 0 ) {
-				message.setMessageStatus(MessageStatus.NEW);
-			}
-			else {
-				message.setMessageStatus(MessageStatus.INFLIGHT);
-			}
-			
-			message.setPriorAttempts(0);
-			message.setMessage(messageContent);
-			messages.add(message);
-		}
-		
-		int expectedMessagesPolled = 5;
-		
-		AcquireLock();
-		File messagesFile = CreateQueueFile();
-		
-		// Clear the contents of the queue.
-		try(PrintWriter pw = new PrintWriter(new FileWriter(messagesFile))) {   // append
-			pw.print("");
-		}
-		
-		try(PrintWriter pw = new PrintWriter(new FileWriter(messagesFile, true))) {   // append
-			for(Message msg : messages) {
-				pw.println(msg);
-			}
-		}
-		
-		ReleaseLock();
-		
-		ReceiveMessageRequest request = new ReceiveMessageRequest(queueUri, 10, visibilityTimeout);
-		List<Message> polledMessages = serviceInstance.poll(request);
-		
-		assertEquals(expectedMessagesPolled, polledMessages.size());
-		
-    }
-    
-    
-    @Test(timeout = 999)
-	public void testVisibilityTimeout() throws Exception {
-		int msgBatchSize = 3;
-		int visibilityTimeout = Integer.parseInt(config.getVisibilityTimeout());
-		
-		List<Message> inflightMessages = new ArrayList<Message>();
-		// Add message to in-flight message collection with invisible from time set to 15 minutes 
-	    // past the current time.
-	    
-		// Generate Send Message Request.
-		Random randomGenerator = new Random();
-		Calendar cal = Calendar.getInstance();
-		Date invisibleFromTime = DateTimeUtility.addMinutesToDate(-10, cal.getTime());
-		
-		String messageContent = "File implementation of SQS - Message ID: " + Integer.toString(randomGenerator.nextInt(500));
-		
-		Message message = new Message();
-		message.setMessageStatus(MessageStatus.INFLIGHT);
-		// Set Prior Attempt to 1 indicating this message was attempted once earlier.
-		message.setPriorAttempts(1);
-		message.setMessage(messageContent);
-		// Set InvisibleFromTime to 15 past the current time.
-		message.setinvisibleFromTime(invisibleFromTime);
-		inflightMessages.add(message);
-		
-		AcquireLock();
-		File messagesFile = CreateQueueFile();
-		
-		// Clear the contents of the queue.
-		try(PrintWriter pw = new PrintWriter(new FileWriter(messagesFile))) {   // append
-			pw.print("");
-		}
-		
-		try(PrintWriter pw = new PrintWriter(new FileWriter(messagesFile, true))) {   // append
-			for(Message msg : inflightMessages) {
-				pw.println(msg);
-			}
-		}
-		
-		ReleaseLock();
-		
-		ReceiveMessageRequest receiveRequest = new ReceiveMessageRequest(queueUri,msgBatchSize, visibilityTimeout);
-		List<Message> receivedMessages = (List<Message>)serviceInstance.poll(receiveRequest);
-		
-		int actual = receivedMessages != null ? receivedMessages.size() : 0;
-		assertEquals(1, actual);
-		
-	}
-    
-	
-	// ########## 	Helper methods for Testing FileQueueService ##########################
-    
-    /// <summary>
-    /// Helper method to convert a given File into string representation. 
-	/// </summary>
-    ///<Returns>String representation of File</Returns>
-    private String convertFileToString(File file) throws IOException {
-		BufferedReader reader = new BufferedReader(new FileReader (file));
-	    String         line = null;
-	    StringBuilder  stringBuilder = new StringBuilder();
-	    
-	    try {
-	        while((line = reader.readLine()) != null) {
-	            stringBuilder.append(line);
-	            stringBuilder.append(System.getProperty("line.separator"));
-	        }
-	        
-	        return stringBuilder.toString().trim();
-	    } finally {
-	        reader.close();
-	    }
-		
-	}
-	
-    /// <summary>
-    /// Helper method to find the total number of records (messages) in the given file. 
-	/// </summary>
-    ///<Returns>Number of records in File</Returns>
-	private int totalRecordCount(File file) throws IOException {
-		int count = 0;
-		BufferedReader reader = null;
-		try {
-			
-			reader = new BufferedReader(new FileReader (file));
-	    
-			while((reader.readLine()) != null) {
-	            count++;
-	        }
-	    } finally {
-	    		reader.close();
-	    }
-		
-	    return count;
-	}
-	
-	
-	
-	/// <summary>
-    /// Helper method that invokes the private CreateQueueFile through Reflection to get 
-	/// a file reference to queue message file. 
-	/// </summary>
-    ///<Returns>Returns the Queue Messages File.</Returns>
-	private File CreateQueueFile() throws Exception {
-		// Call the Get Queue to get reference to the messages file(File Queue).
-		Method getMessageFile = FileQueueService.class.getDeclaredMethod("getQueue",String.class);
-		getMessageFile.setAccessible(true);
-		File messagesFile = (File)getMessageFile.invoke(serviceInstance,queueUri);
-		
-		return messagesFile;
-	}
-	
-	/// <summary>
-    /// Helper method that invokes the private acquireWriteLock through Reflection to get 
-	/// lock to operate on the Messages file (Queue file). 
-	/// </summary>
-	private void AcquireLock() throws Exception {
-		File lockFile = new File(queueUri + lockName);
-		Method acquireWriteLock = FileQueueService.class.getDeclaredMethod("acquireWriteLock",File.class);
-		acquireWriteLock.setAccessible(true);
-		acquireWriteLock.invoke(serviceInstance,lockFile);
-	}
-	
-	/// <summary>
-    /// Helper method that invokes the private releaseWriteLock through Reflection to release 
-	/// lock held on the Messages file (Queue file. 
-	/// </summary>
-	private void ReleaseLock() throws Exception {
-		File lockFile = new File(queueUri + lockName);
-		
-		Method acquireWriteLock = FileQueueService.class.getDeclaredMethod("releaseWriteLock",File.class);
-		acquireWriteLock.setAccessible(true);
-		acquireWriteLock.invoke(serviceInstance,lockFile);
-	}
+package com.messagequeue.services;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.services.model.Message;
+import com.services.model.MessageStatus;
+import com.messagequeue.config.ApplicationConfiguration;
+import com.messagequeue.services.FileQueueService;
+import com.messagequeue.storage.FileQueueStore;
+import com.services.model.DeleteMessageRequest;
+import com.services.model.DeleteMessageResult;
+import com.services.model.SendMessageRequest;
+import com.services.model.ReceiveMessageRequest;
+import com.utilities.DateTimeUtility;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class FileQueueServiceTest {
+	static String queueUri;
+	
+	@Autowired
+	private FileQueueService serviceInstance;
+	
+	@Autowired
+	private ApplicationConfiguration config;
+	
+	
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		// The application runner produces and consumes on the configured queue while the tests run.
+		queueUri = config.getQueueUrl() + "service-test//";
+		
+		// Clear the contents of the queue.
+		GetStore().purge();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+	
+	}
+	
+	@Test
+	public void testPush() throws Exception {
+		
+		int msgBatchSize = Integer.parseInt(config.getMaxMessages());
+		
+		// Place Request to push messages to the SQS Queue. 
+		serviceInstance.push(GenerateSendMessage(msgBatchSize));
+		
+		assertEquals(msgBatchSize, GetStore().getPendingCount());
+	}
+	
+	@Test
+	public void testDeleteMessages() throws Exception {
+		int msgBatchSize = 10;
+		int deletedMessageCount = 4;
+		int visibilityTimeout = Integer.parseInt(config.getVisibilityTimeout());
+		
+		serviceInstance.push(GenerateSendMessage(msgBatchSize));
+		
+		ReceiveMessageRequest receiveRequest = new ReceiveMessageRequest(queueUri, msgBatchSize, visibilityTimeout);
+		List<Message> receivedMessages = serviceInstance.poll(receiveRequest);
+		
+		List<Message> deleteMessages = new ArrayList<>();
+		
+		int count = 0;
+		for (Message msg : receivedMessages) {
+			
+			if(count < deletedMessageCount) {
+				deleteMessages.add(msg);
+			}
+			count++;
+		}
+		
+		DeleteMessageRequest request = new DeleteMessageRequest(queueUri, deleteMessages);
+		
+		assertEquals(deletedMessageCount, serviceInstance.delete(request).getSuccessful().size());
+		
+		// The receipts of deleted messages no longer identify in-flight messages.
+		assertEquals(deletedMessageCount, serviceInstance.delete(request).getFailed().size());
+		
+		int expectedRemainingMessage = 6;
+		assertEquals(expectedRemainingMessage, GetStore().getInflightCount());
+	}
+	
+	/// <summary>
+    /// Verifies that no messages are returned when size of the queue is Empty and 
+	/// an appropriate message should be printed on the console.
+    /// </summary>
+    @Test
+	public void testPollWithEmptyQueue() throws Exception {
+	   	int visibilityTimeout = Integer.parseInt(config.getVisibilityTimeout());
+			
+	    	ReceiveMessageRequest request = new ReceiveMessageRequest(queueUri, 5,visibilityTimeout);
+		List<Message> messages = serviceInstance.poll(request);
+		
+		assertNull(messages);
+	}
+	
+    /// <summary>
+    /// Verifies that no messages are returned when Queue is Not Empty. But there are no new messages 
+	/// present in queue for processing. An appropriate message should be printed on the console.
+    /// </summary>
+    ///<TestResults>An appropriate message should be printed on the console stating
+    /// There are no messages in queue waiting to be processed.</TestResults>
+    @Test
+    public void testPollWithNoNewMessagesInQueue() throws Exception {
+		
+		int visibilityTimeout = Integer.parseInt(config.getVisibilityTimeout());
+		
+		serviceInstance.push(GenerateSendMessage(1));
+		
+		// Receive the only message so that it is in-flight.
+		ReceiveMessageRequest request = new ReceiveMessageRequest(queueUri, 5, visibilityTimeout);
+		serviceInstance.poll(request);
+		
+		List<Message> messages = serviceInstance.poll(request);
+		
+		assertNull(messages);
+    }
+    
+    @Test
+    public void testPoll() throws Exception{
+    	
+    	int msgBatchSize = 10;
+    	int visibilityTimeout = Integer.parseInt(config.getVisibilityTimeout());
+		
+		serviceInstance.push(GenerateSendMessage(msgBatchSize));
+		
+		// Half of the messages are in-flight.
+		serviceInstance.poll(new ReceiveMessageRequest(queueUri, msgBatchSize / 2, visibilityTimeout));
+		
+		int expectedMessagesPolled = 5;
+		
+		ReceiveMessageRequest request = new ReceiveMessageRequest(queueUri, 10, visibilityTimeout);
+		List<Message> polledMessages = serviceInstance.poll(request);
+		
+		assertEquals(expectedMessagesPolled, polledMessages.size());
+		
+		for (Message msg : polledMessages) {
+			assertEquals(MessageStatus.INFLIGHT, msg.getMessageStatus());
+		}
+    }
+    
+    
+    @Test(timeout = 999)
+	public void testVisibilityTimeout() throws Exception {
+		int msgBatchSize = 3;
+		int visibilityTimeout = Integer.parseInt(config.getVisibilityTimeout());
+		
+		serviceInstance.push(GenerateSendMessage(1));
+		
+		// Receive the message with invisible from time set to 10 minutes past the current time.
+		Calendar cal = Calendar.getInstance();
+		Date invisibleFromTime = DateTimeUtility.addMinutesToDate(-10, cal.getTime());
+		GetStore().receive(msgBatchSize, TimeUnit.MINUTES.toMillis(visibilityTimeout), invisibleFromTime.getTime());
+		
+		ReceiveMessageRequest receiveRequest = new ReceiveMessageRequest(queueUri,msgBatchSize, visibilityTimeout);
+		List<Message> receivedMessages = (List<Message>)serviceInstance.poll(receiveRequest);
+		
+		int actual = receivedMessages != null ? receivedMessages.size() : 0;
+		assertEquals(1, actual);
+		
+		// Prior attempt indicates the message was attempted once earlier.
+		assertEquals(1, receivedMessages.get(0).getPriorAttempts());
+	}
+    
+	
+    /// <summary>
+    /// Verifies that producers pushing from several threads at once are all stored, and that the
+    /// message counts read without the queue lock reflect them.
+    /// </summary>
+    @Test(timeout = 5000)
+    public void testConcurrentPush() throws Exception {
+    		int threads = 8;
+    		int msgBatchSize = 5;
+    		
+    		ExecutorService executor = Executors.newFixedThreadPool(threads);
+    		
+    		for (int i = 0; i < threads; i++) {
+    			executor.execute(() -> serviceInstance.push(GenerateSendMessage(msgBatchSize)));
+    		}
+    		
+    		executor.shutdown();
+    		assertTrue(executor.awaitTermination(4, TimeUnit.SECONDS));
+    		
+    		assertEquals(threads * msgBatchSize, serviceInstance.getApproximateNumberOfMessages(queueUri));
+    		assertEquals(0, serviceInstance.getApproximateNumberOfMessagesNotVisible(queueUri));
+    }
+    
+    /// <summary>
+    /// Verifies that a service reloads the queue when the queue files were changed by another
+    /// service instance, the way they would be by another process.
+    /// </summary>
+    @Test
+    public void testReloadsQueueChangedElsewhere() throws Exception {
+    		int visibilityTimeout = Integer.parseInt(config.getVisibilityTimeout());
+    		FileQueueService otherInstance = new FileQueueService();
+    		
+    		// Load the queue in this service before the other instance changes it.
+    		serviceInstance.push(GenerateSendMessage(2));
+    		otherInstance.push(GenerateSendMessage(3));
+    		
+    		ReceiveMessageRequest request = new ReceiveMessageRequest(queueUri, 10, visibilityTimeout);
+    		List<Message> messages = serviceInstance.poll(request);
+    		
+    		assertEquals(5, messages.size());
+    		assertNull(otherInstance.poll(request));
+    }
+    
+    /// <summary>
+    /// Verifies that operations leaving the queue files unchanged keep the version of the queue, so other
+    /// processes do not reload it, while a change commits a new version.
+    /// </summary>
+    @Test
+    public void testUnchangedQueueKeepsVersion() throws Exception {
+    		int visibilityTimeout = Integer.parseInt(config.getVisibilityTimeout());
+    		serviceInstance.push(GenerateSendMessage(1));
+    		
+    		ReceiveMessageRequest request = new ReceiveMessageRequest(queueUri, 5, visibilityTimeout);
+    		List<Message> received = serviceInstance.poll(request);
+    		FileQueueStore store = GetStore();
+    		long version = store.getVersion();
+    		
+    		assertNull(serviceInstance.poll(request));
+    		Message unknown = new Message();
+    		unknown.setReceiptId(-1);
+    		List<Message> unknownMessages = new ArrayList<>();
+    		unknownMessages.add(unknown);
+    		assertEquals(1, serviceInstance.delete(new DeleteMessageRequest(queueUri, unknownMessages)).getFailed().size());
+    		assertSame(store, GetStore());
+    		assertEquals(version, store.getVersion());
+    		
+    		assertEquals(1, serviceInstance.delete(new DeleteMessageRequest(queueUri, received)).getSuccessful().size());
+    		assertEquals(version + 1, GetStore().getVersion());
+    }
+    
+    /// <summary>
+    /// Verifies that a receive waiting on an empty queue returns the messages pushed while it waits, well before
+    /// its wait time, and that a receive on a queue that stays empty returns nothing once the wait time passed.
+    /// </summary>
+    @Test(timeout = 5000)
+    public void testLongPoll() throws Exception {
+    		int visibilityTimeout = Integer.parseInt(config.getVisibilityTimeout());
+    		ExecutorService executor = Executors.newSingleThreadExecutor();
+    		
+    		long started = System.currentTimeMillis();
+    		assertNull(serviceInstance.poll(new ReceiveMessageRequest(queueUri, 5, visibilityTimeout, 1)));
+    		assertTrue(System.currentTimeMillis() - started >= 1000);
+    		
+    		Future<List<Message>> waiting = executor.submit(() -> serviceInstance.poll(new ReceiveMessageRequest(queueUri, 5, visibilityTimeout, 20)));
+    		Thread.sleep(100);
+    		serviceInstance.push(GenerateSendMessage(2));
+    		
+    		assertEquals(2, waiting.get(2, TimeUnit.SECONDS).size());
+    		executor.shutdown();
+    }
+    
+    /// <summary>
+    /// Verifies that an asynchronous receive parked on the empty queue is completed by an asynchronous push,
+    /// and that the received messages are deleted asynchronously.
+    /// </summary>
+    @Test(timeout = 5000)
+    public void testAsyncOperations() throws Exception {
+    		int visibilityTimeout = Integer.parseInt(config.getVisibilityTimeout());
+    		
+    		CompletableFuture<List<Message>> waiting = serviceInstance.pollAsync(new ReceiveMessageRequest(queueUri, 5, visibilityTimeout, 20));
+    		Thread.sleep(100);
+    		assertFalse(waiting.isDone());
+    		
+    		serviceInstance.pushAsync(GenerateSendMessage(3)).get();
+    		List<Message> messages = waiting.get(2, TimeUnit.SECONDS);
+    		assertEquals(3, messages.size());
+    		
+    		DeleteMessageResult result = serviceInstance.deleteAsync(new DeleteMessageRequest(queueUri, messages)).get();
+    		assertEquals(3, result.getSuccessful().size());
+    		assertEquals(0, serviceInstance.getApproximateNumberOfMessagesNotVisible(queueUri));
+    }
+    
+    /// <summary>
+    /// Verifies that a push with the delay of the request stores its messages as delayed, without setting
+    /// the delay seconds of the messages of the caller.
+    /// </summary>
+    @Test
+    public void testDelayedPushKeepsCallerMessages() throws Exception {
+    		int visibilityTimeout = Integer.parseInt(config.getVisibilityTimeout());
+    		List<Message> messages = GenerateSendMessage(2).getAllMessages();
+    		
+    		serviceInstance.push(new SendMessageRequest(queueUri, messages, 60));
+    		
+    		for (Message message : messages) {
+    			assertNull(message.getDelaySeconds());
+    		}
+    		
+    		assertNull(serviceInstance.poll(new ReceiveMessageRequest(queueUri, 5, visibilityTimeout)));
+    }
+    
+    /// <summary>
+    /// Verifies that a push of a message with a message group is rejected, synchronously and asynchronously,
+    /// rather than stored without its group.
+    /// </summary>
+    @Test
+    public void testGroupedPushIsRejected() throws Exception {
+    		List<Message> messages = GenerateSendMessage(2).getAllMessages();
+    		messages.get(1).setMessageGroupId("customer-a");
+    		SendMessageRequest request = new SendMessageRequest(queueUri, messages, 0);
+    		
+    		try {
+    			serviceInstance.push(request);
+    			fail("A grouped message was pushed to a file queue.");
+    		}
+    		catch (IllegalArgumentException e) {
+    			assertTrue(e.getMessage(), e.getMessage().contains("customer-a"));
+    		}
+    		
+    		try {
+    			serviceInstance.pushAsync(request).get();
+    			fail("A grouped message was pushed to a file queue.");
+    		}
+    		catch (ExecutionException e) {
+    			assertTrue(e.getCause() instanceof IllegalArgumentException);
+    		}
+    		
+    		assertEquals(0, serviceInstance.getApproximateNumberOfMessages(queueUri));
+    }
+    
+    /// <summary>
+    /// Verifies that receives on two queues that are each other's dead-letter queue move the messages back and
+    /// forth without deadlocking, and without losing or duplicating any of them.
+    /// </summary>
+    @Test(timeout = 10000)
+    public void testMutualDeadLetterQueues() throws Exception {
+    		String[] queues = { config.getQueueUrl() + "redrive-a//", config.getQueueUrl() + "redrive-b//" };
+    		
+    		for (int i = 0; i < queues.length; i++) {
+    			GetStore(queues[i]).purge();
+    			serviceInstance.setRedrivePolicy(queues[i], new RedrivePolicy(queues[1 - i], 1));
+    			serviceInstance.push(new SendMessageRequest(queues[i], GenerateSendMessage(10).getAllMessages(), 0));
+    		}
+    		
+    		ExecutorService executor = Executors.newFixedThreadPool(4);
+    		List<Future<?>> receivers = new ArrayList<>();
+    		
+    		for (int i = 0; i < 4; i++) {
+    			String queue = queues[i % 2];
+    			receivers.add(executor.submit(() -> {
+    				ReceiveMessageRequest request = new ReceiveMessageRequest(queue, 3, 0);
+    				request.setVisibilityTimeoutMillis(0);
+    				
+    				for (int j = 0; j < 50; j++) {
+    					serviceInstance.poll(request);
+    				}
+    				return null;
+    			}));
+    		}
+    		
+    		try {
+    			for (Future<?> receiver : receivers) {
+    				receiver.get(8, TimeUnit.SECONDS);
+    			}
+    			
+    			int total = 0;
+    			
+    			for (String queue : queues) {
+    				total += serviceInstance.getApproximateNumberOfMessages(queue)
+    						+ serviceInstance.getApproximateNumberOfMessagesNotVisible(queue);
+    			}
+    			
+    			assertEquals(20, total);
+    		}
+    		finally {
+    			executor.shutdownNow();
+    			
+    			for (String queue : queues) {
+    				serviceInstance.setRedrivePolicy(queue, null);
+    			}
+    		}
+    }
+    
+	// ########## 	Helper methods for Testing FileQueueService ##########################
+    
+    /// <summary>
+    /// Helper method to generate a Send Message Request with the given number of messages. 
+	/// </summary>
+    ///<Returns>Send Message Request</Returns>
+    private SendMessageRequest GenerateSendMessage(int msgBatchSize) {
+    		int delayMessageSec = Integer.parseInt(config.getDelayPublish());
+    		Random randomGenerator = new Random();
+		List<Message> messages= new ArrayList<Message>();
+		
+		for (int i =0; i < msgBatchSize; i++) {
+		
+			String messageContent = "File implementation of SQS - Message ID: " + Integer.toString(randomGenerator.nextInt(500));
+				
+			Message message = new Message();
+			message.setMessageStatus(MessageStatus.NEW);
+			message.setPriorAttempts(0);
+			message.setMessage(messageContent);
+			messages.add(message);
+		}
+		
+		return new SendMessageRequest(queueUri, messages, delayMessageSec);
+    }
+	
+	/// <summary>
+    /// Helper method that invokes the private getStore through Reflection to get 
+	/// a reference to the storage of the file queue. 
+	/// </summary>
+    ///<Returns>Returns the Queue Store.</Returns>
+	private FileQueueStore GetStore() throws Exception {
+		return GetStore(queueUri);
+	}
+	
+	/// <summary>
+    /// Helper method that invokes the private getStore through Reflection to get 
+	/// a reference to the storage of the given file queue. 
+	/// </summary>
+    ///<Returns>Returns the Queue Store.</Returns>
+	private FileQueueStore GetStore(String uri) throws Exception {
+		Method getStore = FileQueueService.class.getDeclaredMethod("getStore",String.class);
+		getStore.setAccessible(true);
+		FileQueueStore store = (FileQueueStore)getStore.invoke(serviceInstance,uri);
+		
+		return store;
+	}
 }
\ No newline at end of file
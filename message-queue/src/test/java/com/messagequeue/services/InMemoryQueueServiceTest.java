@@ -1,248 +1,632 @@
-package com.messagequeue.services;
-
-import com.utilities.DateTimeUtility;
-
-import static org.junit.Assert.assertEquals;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.List;
-import java.util.Random;
-import java.util.concurrent.ConcurrentLinkedQueue;
-
-import org.junit.After;
-import org.junit.AfterClass;
-import org.junit.Before;
-import org.junit.BeforeClass;
-
-import com.services.model.Message;
-import com.services.model.MessageStatus;
-import com.messagequeue.config.ApplicationConfiguration;
-import com.messagequeue.services.InMemoryQueueService;
-import com.services.model.DeleteMessageRequest;
-import com.services.model.SendMessageRequest;
-import com.services.model.ReceiveMessageRequest;
-import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.test.context.ActiveProfiles;
-import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
-
-@RunWith(SpringJUnit4ClassRunner.class)
-@SpringBootTest
-@ActiveProfiles("local")
-public class InMemoryQueueServiceTest  {
-	
-	@Autowired
-	private InMemoryQueueService serviceInstance;
-	
-	@Autowired
-	private ApplicationConfiguration config;
-	
-	ConcurrentLinkedQueue<Message> queue;
-	String queueUri;
-	
-	@BeforeClass
-	public static void setUpBeforeClass() throws Exception {
-		
-	}
-
-	@AfterClass
-	public static void tearDownAfterClass() throws Exception {
-	}
-
-	@Before
-	public void setUp() throws Exception {
-		queueUri = config.getQueueUrl();
-		queue = createQueue();
-		queue.clear();
-	}
-
-	@After
-	public void tearDown() throws Exception {
-	}
-	
-
-	// Push a single message on the queue and check if the size of the queue increases 1.
-	// A delay of 0sec for local environment is introduced before pushing the messages to the In memory queue.
-	@Test(timeout = 999)
-	public void testPushSingle() {
-		
-		int delayMessageSec = Integer.parseInt(config.getDelayPublish());
-		
-		// Generate Send Message Request.
-		Random randomGenerator = new Random();
-		List<Message> messages= new ArrayList<Message>();
-		
-		String messageContent = "In Memory implementation of SQS - Message ID: " + Integer.toString(randomGenerator.nextInt(500));
-			
-		Message message = new Message();
-		message.setMessageStatus(MessageStatus.NEW);
-		message.setPriorAttempts(0);
-		message.setMessage(messageContent);
-		messages.add(message);
-	
-		SendMessageRequest request = new SendMessageRequest(queueUri, messages, delayMessageSec);
-		
-		// Place Request to push messages to the SQS Queue. 
-		serviceInstance.push(request);
-		
-		assertEquals(1, queue.size());
-	}
-	
-	// Push multiple messages on the queue and check if the size of the queue 
-	// increases by the number of messages being pushed.
-	// A delay of 0sec for local environment is introduced before pushing the messages to the In memory queue.
-	@Test(timeout = 999)
-	public void testPushMultiple() {
-		
-		int delayMessageSec = Integer.parseInt(config.getDelayPublish());
-		int msgBatchSize = Integer.parseInt(config.getMaxMessages());
-		
-		// Generate Send Message Request.
-		Random randomGenerator = new Random();
-		List<Message> messages= new ArrayList<Message>();
-		
-		for (int i =0; i < msgBatchSize; i++) {
-		
-			String messageContent = "In Memory implementation of SQS - Message ID: " + Integer.toString(randomGenerator.nextInt(500));
-				
-			Message message = new Message();
-			message.setMessageStatus(MessageStatus.NEW);
-			message.setPriorAttempts(0);
-			message.setMessage(messageContent);
-			messages.add(message);
-		}
-		
-		SendMessageRequest request = new SendMessageRequest(queueUri, messages, delayMessageSec);
-		
-		// Place Request to push messages to the SQS Queue. 
-		serviceInstance.push(request);
-		
-		assertEquals(msgBatchSize, queue.size());
-	}
-	
-	// Pushed number of messages smaller than the Batch Size. 
-	// Expected output should be 
-	@Test(timeout = 999)
-	public void testPoll(){
-		
-		int delayMessageSec = Integer.parseInt(config.getDelayPublish());
-		int visibilityTimeout = Integer.parseInt(config.getVisibilityTimeout());
-		int msgBatchSize = Integer.parseInt(config.getMaxMessages());
-		
-		// Generate Send Message Request.
-		Random randomGenerator = new Random();
-		List<Message> messages= new ArrayList<Message>();
-		
-		for (int i =0; i < msgBatchSize; i++) {
-		
-			String messageContent = "In Memory implementation of SQS - Message ID: " + Integer.toString(randomGenerator.nextInt(500));
-				
-			Message message = new Message();
-			message.setMessageStatus(MessageStatus.NEW);
-			message.setPriorAttempts(0);
-			message.setMessage(messageContent);
-			messages.add(message);
-		}
-		
-		SendMessageRequest request = new SendMessageRequest(queueUri, messages, delayMessageSec);
-		serviceInstance.push(request);
-		
-		ReceiveMessageRequest receiveRequest = new ReceiveMessageRequest(queueUri,msgBatchSize, visibilityTimeout);
-		List<Message> receivedMessages = (List<Message>)serviceInstance.poll(receiveRequest);
-		
-		int actual = receivedMessages != null ? receivedMessages.size() : 0;
-		assertEquals(msgBatchSize, actual);
-	}
-	
-	// Visibility Time out for local environment is configured as 5 minutes.
-	// Set the in-flight message with invisible from time to 10 minutes
-	@Test(timeout = 999)
-	public void testVisibilityTimeout() throws NoSuchFieldException, IllegalArgumentException, IllegalAccessException {
-		
-		int visibilityTimeout = Integer.parseInt(config.getVisibilityTimeout());
-		int msgBatchSize = Integer.parseInt(config.getMaxMessages());
-		
-		List<Message> inflightMessages = new ArrayList<Message>();
-		// Add message to in-flight message collection with invisible from time set to 15 minutes 
-	    // past the current time.
-	    
-		// Generate Send Message Request.
-		Random randomGenerator = new Random();
-		Calendar cal = Calendar.getInstance();
-		Date invisibleFromTime = DateTimeUtility.addMinutesToDate(-10, cal.getTime());
-		
-		String messageContent = "In Memory implementation of SQS - Message ID: " + Integer.toString(randomGenerator.nextInt(500));
-		
-		Message message = new Message();
-		message.setMessageStatus(MessageStatus.INFLIGHT);
-		// Set Prior Attempt to 1 indicating this message was attempted once earlier.
-		message.setPriorAttempts(1);
-		message.setMessage(messageContent);
-		// Set InvisibleFromTime to 15 past the current time.
-		message.setinvisibleFromTime(invisibleFromTime);
-		inflightMessages.add(message);
-		
-		// Make the inflightMessage collection visible through Reflection.
-		Field field = InMemoryQueueService.class.getDeclaredField("inflightMessages");
-	    field.setAccessible(true);
-	    field.set(serviceInstance, inflightMessages);
-		
-	    ReceiveMessageRequest receiveRequest = new ReceiveMessageRequest(queueUri,msgBatchSize, visibilityTimeout);
-		List<Message> receivedMessages = (List<Message>)serviceInstance.poll(receiveRequest);
-		
-		int actual = receivedMessages != null ? receivedMessages.size() : 0;
-		assertEquals(1, actual);
-		
-	}
-	
-	@Test(timeout=999)
-	public void testDelete() {
-		int delayMessageSec = Integer.parseInt(config.getDelayPublish());
-		
-		// Generate Send Message Request.
-		Random randomGenerator = new Random();
-		List<Message> messages= new ArrayList<Message>();
-		
-		
-		String messageContent = "In Memory implementation of SQS - Message ID: " + Integer.toString(randomGenerator.nextInt(500));
-			
-		Message message = new Message();
-		message.setMessageStatus(MessageStatus.NEW);
-		message.setPriorAttempts(0);
-		message.setMessage(messageContent);
-		messages.add(message);
-		SendMessageRequest request = new SendMessageRequest(queueUri, messages, delayMessageSec);
-		
-		// Place Request to push messages to the SQS Queue. 
-		serviceInstance.push(request);
-		
-		List<Message> deleteMessages = new ArrayList<Message>();
-		deleteMessages.add(message);
-		
-		DeleteMessageRequest deleteRequest = new DeleteMessageRequest(queueUri, deleteMessages);
-		serviceInstance.delete(deleteRequest);
-		
-		assertEquals(0, queue.size());
-	}
-	
-	/// <summary>
-    /// Helper method that invokes the private CreateQueueFile through Reflection to get 
-	/// a file reference to queue message file. 
-	/// </summary>
-    ///<Returns>Returns the Queue Messages File.</Returns>
-	@SuppressWarnings("unchecked")
-	private ConcurrentLinkedQueue<Message>  createQueue() throws Exception {
-		// Call the Get Queue to get reference to the messages file(File Queue).
-		Method getMessageQueue = InMemoryQueueService.class.getDeclaredMethod("getOrCreateQueue",String.class);
-		getMessageQueue.setAccessible(true);
-		ConcurrentLinkedQueue<Message> queue = (ConcurrentLinkedQueue<Message>)getMessageQueue.invoke(serviceInstance,queueUri);
-		
-		return queue;
-	}
-}
-
+package com.messagequeue.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+
+import com.services.model.ChangeVisibilityRequest;
+import com.services.model.ChangeVisibilityResult;
+import com.services.model.Message;
+import com.services.model.MessageStatus;
+import com.messagequeue.config.ApplicationConfiguration;
+import com.messagequeue.services.InMemoryQueueService;
+import com.services.model.DeleteMessageRequest;
+import com.services.model.DeleteMessageResult;
+import com.services.model.SendMessageRequest;
+import com.services.model.ReceiveMessageRequest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest
+@ActiveProfiles("local")
+public class InMemoryQueueServiceTest  {
+	
+	@Autowired
+	private InMemoryQueueService serviceInstance;
+	
+	@Autowired
+	private ApplicationConfiguration config;
+	
+	InMemoryQueue queue;
+	String queueUri;
+	
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		queueUri = config.getQueueUrl();
+		queue = createQueue();
+		queue.clear();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+
+	// Push a single message on the queue and check if the size of the queue increases 1.
+	// A delay of 0sec for local environment is introduced before pushing the messages to the In memory queue.
+	@Test(timeout = 999)
+	public void testPushSingle() {
+		
+		int delayMessageSec = Integer.parseInt(config.getDelayPublish());
+		
+		// Generate Send Message Request.
+		Random randomGenerator = new Random();
+		List<Message> messages= new ArrayList<Message>();
+		
+		String messageContent = "In Memory implementation of SQS - Message ID: " + Integer.toString(randomGenerator.nextInt(500));
+			
+		Message message = new Message();
+		message.setMessageStatus(MessageStatus.NEW);
+		message.setPriorAttempts(0);
+		message.setMessage(messageContent);
+		messages.add(message);
+	
+		SendMessageRequest request = new SendMessageRequest(queueUri, messages, delayMessageSec);
+		
+		// Place Request to push messages to the SQS Queue. 
+		serviceInstance.push(request);
+		
+		assertEquals(1, queue.getReadyCount());
+	}
+	
+	// Push multiple messages on the queue and check if the size of the queue 
+	// increases by the number of messages being pushed.
+	// A delay of 0sec for local environment is introduced before pushing the messages to the In memory queue.
+	@Test(timeout = 999)
+	public void testPushMultiple() {
+		
+		int delayMessageSec = Integer.parseInt(config.getDelayPublish());
+		int msgBatchSize = Integer.parseInt(config.getMaxMessages());
+		
+		// Generate Send Message Request.
+		Random randomGenerator = new Random();
+		List<Message> messages= new ArrayList<Message>();
+		
+		for (int i =0; i < msgBatchSize; i++) {
+		
+			String messageContent = "In Memory implementation of SQS - Message ID: " + Integer.toString(randomGenerator.nextInt(500));
+				
+			Message message = new Message();
+			message.setMessageStatus(MessageStatus.NEW);
+			message.setPriorAttempts(0);
+			message.setMessage(messageContent);
+			messages.add(message);
+		}
+		
+		SendMessageRequest request = new SendMessageRequest(queueUri, messages, delayMessageSec);
+		
+		// Place Request to push messages to the SQS Queue. 
+		serviceInstance.push(request);
+		
+		assertEquals(msgBatchSize, queue.getReadyCount());
+	}
+	
+	// Pushed number of messages smaller than the Batch Size. 
+	// Expected output should be 
+	@Test(timeout = 999)
+	public void testPoll() throws Exception {
+		
+		int delayMessageSec = Integer.parseInt(config.getDelayPublish());
+		int visibilityTimeout = Integer.parseInt(config.getVisibilityTimeout());
+		int msgBatchSize = Integer.parseInt(config.getMaxMessages());
+		
+		// Generate Send Message Request.
+		Random randomGenerator = new Random();
+		List<Message> messages= new ArrayList<Message>();
+		
+		for (int i =0; i < msgBatchSize; i++) {
+		
+			String messageContent = "In Memory implementation of SQS - Message ID: " + Integer.toString(randomGenerator.nextInt(500));
+				
+			Message message = new Message();
+			message.setMessageStatus(MessageStatus.NEW);
+			message.setPriorAttempts(0);
+			message.setMessage(messageContent);
+			messages.add(message);
+		}
+		
+		SendMessageRequest request = new SendMessageRequest(queueUri, messages, delayMessageSec);
+		serviceInstance.push(request);
+		
+		ReceiveMessageRequest receiveRequest = new ReceiveMessageRequest(queueUri,msgBatchSize, visibilityTimeout);
+		List<Message> receivedMessages = (List<Message>)serviceInstance.poll(receiveRequest);
+		
+		int actual = receivedMessages != null ? receivedMessages.size() : 0;
+		assertEquals(msgBatchSize, actual);
+	}
+	
+	// A message received with a visibility timeout of 0 minutes is returned to the queue by the next
+	// receive and received again exactly once, with the prior attempts incremented.
+	@Test(timeout = 999)
+	public void testVisibilityTimeout() throws InterruptedException {
+		
+		int visibilityTimeout = Integer.parseInt(config.getVisibilityTimeout());
+		int msgBatchSize = Integer.parseInt(config.getMaxMessages());
+		String visibilityQueueUri = queueUri + "visibility-test";
+		
+		Random randomGenerator = new Random();
+		String messageContent = "In Memory implementation of SQS - Message ID: " + Integer.toString(randomGenerator.nextInt(500));
+		
+		Message message = new Message();
+		message.setMessageStatus(MessageStatus.NEW);
+		message.setPriorAttempts(0);
+		message.setMessage(messageContent);
+		List<Message> messages = new ArrayList<Message>();
+		messages.add(message);
+		serviceInstance.push(new SendMessageRequest(visibilityQueueUri, messages, 0));
+		
+		List<Message> receivedMessages = serviceInstance.poll(new ReceiveMessageRequest(visibilityQueueUri, msgBatchSize, 0));
+		assertEquals(1, receivedMessages.size());
+		long firstReceipt = receivedMessages.get(0).getReceiptId();
+		
+		// Let the visibility timeout pass.
+		Thread.sleep(50);
+		
+		ReceiveMessageRequest receiveRequest = new ReceiveMessageRequest(visibilityQueueUri, msgBatchSize, visibilityTimeout);
+		receivedMessages = serviceInstance.poll(receiveRequest);
+		assertEquals(1, receivedMessages.size());
+		assertEquals(1, receivedMessages.get(0).getPriorAttempts());
+		assertNotEquals(firstReceipt, receivedMessages.get(0).getReceiptId());
+		
+		// The expired message is not re-queued a second time.
+		assertNull(serviceInstance.poll(receiveRequest));
+	}
+	
+	// A deleted in-flight message is not returned to the queue once its visibility timeout has passed.
+	@Test(timeout = 999)
+	public void testDeletedMessageIsNotRequeued() throws InterruptedException {
+		
+		int msgBatchSize = Integer.parseInt(config.getMaxMessages());
+		String visibilityQueueUri = queueUri + "visibility-delete-test";
+		
+		Message message = new Message();
+		message.setMessageStatus(MessageStatus.NEW);
+		message.setMessage("In Memory implementation of SQS - Deleted message");
+		List<Message> messages = new ArrayList<Message>();
+		messages.add(message);
+		serviceInstance.push(new SendMessageRequest(visibilityQueueUri, messages, 0));
+		
+		ReceiveMessageRequest receiveRequest = new ReceiveMessageRequest(visibilityQueueUri, msgBatchSize, 0);
+		List<Message> receivedMessages = serviceInstance.poll(receiveRequest);
+		serviceInstance.delete(new DeleteMessageRequest(visibilityQueueUri, receivedMessages));
+		
+		Thread.sleep(50);
+		assertNull(serviceInstance.poll(receiveRequest));
+	}
+	
+	// Deletes a received message by its receipt handle. Deleting it again, or deleting a message that
+	// was never received, is reported as a failure of that message.
+	@Test(timeout=999)
+	public void testDelete() throws Exception {
+		int delayMessageSec = Integer.parseInt(config.getDelayPublish());
+		int visibilityTimeout = Integer.parseInt(config.getVisibilityTimeout());
+		String deleteQueueUri = queueUri + "delete-test";
+		
+		// Generate Send Message Request.
+		Random randomGenerator = new Random();
+		List<Message> messages= new ArrayList<Message>();
+		
+		
+		String messageContent = "In Memory implementation of SQS - Message ID: " + Integer.toString(randomGenerator.nextInt(500));
+			
+		Message message = new Message();
+		message.setMessageStatus(MessageStatus.NEW);
+		message.setPriorAttempts(0);
+		message.setMessage(messageContent);
+		messages.add(message);
+		SendMessageRequest request = new SendMessageRequest(deleteQueueUri, messages, delayMessageSec);
+		
+		// Place Request to push messages to the SQS Queue. 
+		serviceInstance.push(request);
+		
+		Message neverReceived = new Message();
+		neverReceived.setMessage("Never received");
+		List<Message> unknownMessages = new ArrayList<Message>();
+		unknownMessages.add(neverReceived);
+		
+		DeleteMessageResult unknownResult = serviceInstance.delete(new DeleteMessageRequest(deleteQueueUri, unknownMessages));
+		assertEquals(1, unknownResult.getFailed().size());
+		assertEquals(DeleteMessageResult.receiptHandleIsInvalid, unknownResult.getFailed().get(0).getCode());
+		
+		List<Message> receivedMessages = serviceInstance.poll(new ReceiveMessageRequest(deleteQueueUri, 1, visibilityTimeout));
+		DeleteMessageRequest deleteRequest = new DeleteMessageRequest(deleteQueueUri, receivedMessages);
+		
+		DeleteMessageResult result = serviceInstance.delete(deleteRequest);
+		assertEquals(1, result.getSuccessful().size());
+		assertEquals(0, result.getFailed().size());
+		
+		result = serviceInstance.delete(deleteRequest);
+		assertEquals(0, result.getSuccessful().size());
+		assertEquals(1, result.getFailed().size());
+	}
+	
+	/// <summary>
+	/// Verifies that threads creating the same queue concurrently all get the same queue, and that
+	/// messages pushed to one queue are never received from another.
+	/// </summary>
+	@Test
+	public void testQueuesAreCreatedOnceAndIsolated() throws Exception {
+		String uri = queueUri + "registry-test";
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<InMemoryQueue>> created = new ArrayList<>();
+		
+		for(int i = 0; i < threads; i++) {
+			created.add(executor.submit(() -> {
+				start.await();
+				return createQueue(uri);
+			}));
+		}
+		
+		start.countDown();
+		InMemoryQueue first = created.get(0).get();
+		for(Future<InMemoryQueue> queue : created) {
+			assertSame(first, queue.get());
+		}
+		executor.shutdown();
+		
+		String otherUri = queueUri + "registry-other-test";
+		Message message = new Message();
+		message.setMessageStatus(MessageStatus.NEW);
+		message.setMessage("isolated");
+		List<Message> messages = new ArrayList<>();
+		messages.add(message);
+		serviceInstance.push(new SendMessageRequest(uri, messages, 0));
+		
+		assertEquals(1, serviceInstance.getApproximateNumberOfMessages(uri));
+		assertEquals(0, serviceInstance.getApproximateNumberOfMessages(otherUri));
+		assertNull(serviceInstance.poll(new ReceiveMessageRequest(otherUri, 10, 1)));
+		assertEquals(1, serviceInstance.poll(new ReceiveMessageRequest(uri, 10, 1)).size());
+		assertEquals(1, serviceInstance.getApproximateNumberOfMessagesNotVisible(uri));
+	}
+	
+	/// <summary>
+	/// Verifies that a queue created on a ring buffer hands out the messages in order, a batch at a time.
+	/// </summary>
+	@Test
+	public void testRingBufferQueue() throws Exception {
+		String uri = queueUri + "ring-test";
+		assertTrue(serviceInstance.createQueue(uri, QueueEngine.ring(4)));
+		assertFalse(serviceInstance.createQueue(uri, QueueEngine.linked()));
+		assertEquals(QueueEngine.Kind.RING, createQueue(uri).getEngine().getKind());
+		
+		List<Message> messages = new ArrayList<>();
+		for(int i = 0; i < 4; i++) {
+			Message message = new Message();
+			message.setMessageStatus(MessageStatus.NEW);
+			message.setMessage("ring " + i);
+			messages.add(message);
+		}
+		serviceInstance.push(new SendMessageRequest(uri, messages, 0));
+		assertEquals(4, serviceInstance.getApproximateNumberOfMessages(uri));
+		
+		List<Message> received = serviceInstance.poll(new ReceiveMessageRequest(uri, 3, 1));
+		assertEquals(messages.subList(0, 3), received);
+		assertEquals(messages.subList(3, 4), serviceInstance.poll(new ReceiveMessageRequest(uri, 3, 1)));
+		assertNull(serviceInstance.poll(new ReceiveMessageRequest(uri, 3, 1)));
+	}
+	
+	/// <summary>
+	/// Verifies that a receive waiting on an empty queue is woken by a push well before its wait time, and that
+	/// a receive on a queue that stays empty returns nothing once the wait time passed.
+	/// </summary>
+	@Test(timeout = 5000)
+	public void testLongPoll() throws Exception {
+		String uri = queueUri + "long-poll-test";
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		
+		long started = System.currentTimeMillis();
+		assertNull(serviceInstance.poll(new ReceiveMessageRequest(uri, 5, 1, 1)));
+		assertTrue(System.currentTimeMillis() - started >= 1000);
+		
+		Future<List<Message>> waiting = executor.submit(() -> serviceInstance.poll(new ReceiveMessageRequest(uri, 5, 1, 20)));
+		Thread.sleep(100);
+		
+		Message message = new Message();
+		message.setMessageStatus(MessageStatus.NEW);
+		message.setMessage("long poll");
+		List<Message> messages = new ArrayList<>();
+		messages.add(message);
+		serviceInstance.push(new SendMessageRequest(uri, messages, 0));
+		
+		assertEquals(messages, waiting.get(2, TimeUnit.SECONDS));
+		executor.shutdown();
+	}
+	
+	/// <summary>
+	/// Verifies that a push with Delay Seconds returns at once, that its messages are received only once the
+	/// delay has passed, and that the delay of a message overrides the delay of the request.
+	/// </summary>
+	@Test(timeout = 5000)
+	public void testDelayedPushDoesNotBlock() throws Exception {
+		String uri = queueUri + "delay-test";
+		List<Message> messages = new ArrayList<>();
+		
+		for(int i = 0; i < 2; i++) {
+			Message message = new Message();
+			message.setMessageStatus(MessageStatus.NEW);
+			message.setMessage("delayed " + i);
+			messages.add(message);
+		}
+		
+		messages.get(1).setDelaySeconds(0);
+		
+		long started = System.currentTimeMillis();
+		serviceInstance.push(new SendMessageRequest(uri, messages, 1));
+		assertTrue(System.currentTimeMillis() - started < 100);
+		assertEquals(1, serviceInstance.getApproximateNumberOfMessagesDelayed(uri));
+		
+		// The message without delay of its own waits for the delay of the request.
+		List<Message> received = serviceInstance.poll(new ReceiveMessageRequest(uri, 5, 1, 0));
+		assertEquals(1, received.size());
+		assertEquals(messages.get(1), received.get(0));
+		assertNull(serviceInstance.poll(new ReceiveMessageRequest(uri, 5, 1, 0)));
+		
+		received = serviceInstance.poll(new ReceiveMessageRequest(uri, 5, 1, 2));
+		assertTrue(System.currentTimeMillis() - started >= 1000);
+		assertEquals(messages.get(0), received.get(0));
+		assertEquals(0, received.get(0).getPriorAttempts());
+		assertEquals(0, serviceInstance.getApproximateNumberOfMessagesDelayed(uri));
+	}
+	
+	/// <summary>
+	/// Verifies that a visibility timeout of a few seconds is kept to the millisecond on the clock of the service,
+	/// without waiting for the wall clock.
+	/// </summary>
+	@Test
+	public void testMillisecondVisibilityTimeout() throws Exception {
+		AtomicLong now = new AtomicLong(1000000);
+		InMemoryQueueService service = new InMemoryQueueService(now::get);
+		String uri = queueUri + "clock-test";
+		
+		Message message = new Message();
+		message.setMessageStatus(MessageStatus.NEW);
+		message.setMessage("clock");
+		List<Message> messages = new ArrayList<>();
+		messages.add(message);
+		service.push(new SendMessageRequest(uri, messages, 0));
+		
+		ReceiveMessageRequest request = new ReceiveMessageRequest(uri, 5, 0, 0);
+		request.setVisibilityTimeoutMillis(1500);
+		assertEquals(messages, service.poll(request));
+		
+		now.addAndGet(1480);
+		assertNull(service.poll(request));
+		
+		// The timing wheel of the queue ticks every 10 milliseconds.
+		now.addAndGet(30);
+		List<Message> received = service.poll(request);
+		assertEquals(messages, received);
+		assertEquals(1, received.get(0).getPriorAttempts());
+		assertEquals(1001510, received.get(0).getinvisibleFromTime().getTime());
+		service.close();
+	}
+	
+	/// <summary>
+	/// Verifies that the visibility timeout of received messages can be extended in a batch and cut to 0, and
+	/// that a message past its visibility timeout can no longer be changed.
+	/// </summary>
+	@Test
+	public void testChangeVisibility() throws Exception {
+		AtomicLong now = new AtomicLong(1000000);
+		InMemoryQueueService service = new InMemoryQueueService(now::get);
+		String uri = queueUri + "visibility-test";
+		List<Message> messages = new ArrayList<>();
+		
+		for(int i = 0; i < 3; i++) {
+			Message message = new Message();
+			message.setMessageStatus(MessageStatus.NEW);
+			message.setMessage("visibility " + i);
+			messages.add(message);
+		}
+		
+		service.push(new SendMessageRequest(uri, messages, 0));
+		ReceiveMessageRequest request = new ReceiveMessageRequest(uri, 5, 0, 0);
+		request.setVisibilityTimeoutMillis(1000);
+		List<Message> received = service.poll(request);
+		Message stale = new Message();
+		stale.setReceiptId(received.get(2).getReceiptId());
+		
+		now.addAndGet(900);
+		ChangeVisibilityResult result = service.changeVisibility(new ChangeVisibilityRequest(uri, received.subList(0, 2), 5000));
+		assertEquals(2, result.getSuccessful().size());
+		assertTrue(service.changeVisibility(uri, received.get(1), 0));
+		
+		// Only the third message passed its visibility timeout, the second was made visible at once.
+		now.addAndGet(200);
+		List<Message> visible = service.poll(request);
+		assertEquals(2, visible.size());
+		assertFalse(visible.contains(received.get(0)));
+		
+		// The receipt handed out before the message was received again is no longer valid.
+		assertFalse(service.changeVisibility(uri, stale, 5000));
+		result = service.changeVisibility(new ChangeVisibilityRequest(uri, Collections.singletonList(stale), 5000));
+		assertEquals(1, result.getFailed().size());
+		assertEquals(DeleteMessageResult.receiptHandleIsInvalid, result.getFailed().get(0).getCode());
+		service.close();
+	}
+	
+	/// <summary>
+	/// Verifies that a message is received the max receive count of the queue, with its receives counted, and
+	/// is then moved to the dead-letter queue instead of being received again.
+	/// </summary>
+	@Test
+	public void testDeadLetterQueue() throws Exception {
+		AtomicLong now = new AtomicLong(1000000);
+		InMemoryQueueService service = new InMemoryQueueService(now::get);
+		String uri = queueUri + "redrive-test";
+		String deadLetterUri = queueUri + "redrive-test-dlq";
+		service.setRedrivePolicy(uri, new RedrivePolicy(deadLetterUri, 2));
+		
+		Message message = new Message();
+		message.setMessageStatus(MessageStatus.NEW);
+		message.setMessage("poison");
+		List<Message> messages = new ArrayList<>();
+		messages.add(message);
+		service.push(new SendMessageRequest(uri, messages, 0));
+		
+		ReceiveMessageRequest request = new ReceiveMessageRequest(uri, 5, 0, 0);
+		request.setVisibilityTimeoutMillis(1000);
+		
+		for(int attempt = 0; attempt < 2; attempt++) {
+			List<Message> received = service.poll(request);
+			assertEquals(messages, received);
+			assertEquals(attempt, received.get(0).getPriorAttempts());
+			now.addAndGet(1100);
+		}
+		
+		assertNull(service.poll(request));
+		assertEquals(0, service.getApproximateNumberOfMessagesNotVisible(uri));
+		
+		List<Message> deadLetters = service.poll(new ReceiveMessageRequest(deadLetterUri, 5, 1, 0));
+		assertEquals(messages, deadLetters);
+		assertEquals(2, deadLetters.get(0).getPriorAttempts());
+		service.close();
+	}
+	
+	/// <summary>
+	/// Verifies that thousands of asynchronous receives can wait on a queue without a thread each, that the
+	/// asynchronous pushes wake every one of them, and that a receive whose wait time passes completes empty.
+	/// </summary>
+	@Test(timeout = 10000)
+	public void testAsyncReceivesWaitWithoutThreads() throws Exception {
+		String uri = queueUri + "async-test";
+		int receives = 2000;
+		List<CompletableFuture<List<Message>>> waiting = new ArrayList<>();
+		
+		for(int i = 0; i < receives; i++) {
+			waiting.add(serviceInstance.pollAsync(new ReceiveMessageRequest(uri, 1, 1, 20)));
+		}
+		
+		for(CompletableFuture<List<Message>> receive : waiting) {
+			assertFalse(receive.isDone());
+		}
+		
+		for(int i = 0; i < receives; i++) {
+			Message message = new Message();
+			message.setMessageStatus(MessageStatus.NEW);
+			message.setMessage("async " + i);
+			List<Message> messages = new ArrayList<>();
+			messages.add(message);
+			serviceInstance.pushAsync(new SendMessageRequest(uri, messages, 0)).get();
+		}
+		
+		List<Message> received = new ArrayList<>();
+		for(CompletableFuture<List<Message>> receive : waiting) {
+			received.addAll(receive.get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(receives, received.size());
+		
+		DeleteMessageResult result = serviceInstance.deleteAsync(new DeleteMessageRequest(uri, received)).get();
+		assertEquals(receives, result.getSuccessful().size());
+		
+		long started = System.currentTimeMillis();
+		assertNull(serviceInstance.pollAsync(new ReceiveMessageRequest(uri, 1, 1, 1)).get(5, TimeUnit.SECONDS));
+		assertTrue(System.currentTimeMillis() - started >= 1000);
+	}
+	
+	/// <summary>
+	/// Verifies that a FIFO queue hands out the messages of a group in order and one receive at a time, keeps the
+	/// group locked while it has in-flight messages while other groups are received, and returns a message past its
+	/// visibility timeout to the head of its group.
+	/// </summary>
+	@Test
+	public void testFifoMessageGroups() throws Exception {
+		AtomicLong now = new AtomicLong(1000000);
+		InMemoryQueueService service = new InMemoryQueueService(now::get);
+		String uri = queueUri + "fifo-test";
+		assertTrue(service.createQueue(uri, QueueEngine.fifo()));
+		List<Message> messages = new ArrayList<>();
+		
+		for(int i = 0; i < 6; i++) {
+			Message message = new Message();
+			message.setMessageStatus(MessageStatus.NEW);
+			message.setMessage("fifo " + i);
+			message.setMessageGroupId(i % 2 == 0 ? "even" : "odd");
+			messages.add(message);
+		}
+		
+		service.push(new SendMessageRequest(uri, messages, 0));
+		ReceiveMessageRequest request = new ReceiveMessageRequest(uri, 2, 0, 0);
+		request.setVisibilityTimeoutMillis(1000);
+		
+		// The first receive takes the even group in order, the second the odd group while the even group is locked.
+		List<Message> even = service.poll(request);
+		assertEquals(Arrays.asList(messages.get(0), messages.get(2)), even);
+		List<Message> odd = service.poll(request);
+		assertEquals(Arrays.asList(messages.get(1), messages.get(3)), odd);
+		assertNull(service.poll(request));
+		assertEquals(2, service.getApproximateNumberOfMessages(uri));
+		
+		// Deleting one of the two in-flight messages keeps the group locked.
+		assertEquals(1, service.delete(new DeleteMessageRequest(uri, odd.subList(0, 1))).getSuccessful().size());
+		assertNull(service.poll(request));
+		
+		// The undeleted message returns to the head of its group once its visibility timeout passed.
+		now.addAndGet(500);
+		assertTrue(service.changeVisibility(uri, even.get(0), 5000));
+		now.addAndGet(600);
+		List<Message> again = service.poll(request);
+		assertEquals(Arrays.asList(messages.get(3), messages.get(5)), again);
+		assertEquals(1, again.get(0).getPriorAttempts());
+		
+		// The even group stays locked until its extended message is deleted.
+		assertNull(service.poll(request));
+		assertEquals(1, service.delete(new DeleteMessageRequest(uri, even.subList(0, 1))).getSuccessful().size());
+		assertEquals(Arrays.asList(messages.get(2), messages.get(4)), service.poll(request));
+		service.close();
+	}
+	
+	/// <summary>
+    /// Helper method that invokes the private getOrCreateQueue through Reflection to get 
+	/// a reference to the state of the queue. 
+	/// </summary>
+    ///<Returns>Returns the Queue.</Returns>
+	private InMemoryQueue createQueue() throws Exception {
+		return createQueue(queueUri);
+	}
+	
+	private InMemoryQueue createQueue(String uri) throws Exception {
+		Method getMessageQueue = InMemoryQueueService.class.getDeclaredMethod("getOrCreateQueue",String.class);
+		getMessageQueue.setAccessible(true);
+		
+		return (InMemoryQueue)getMessageQueue.invoke(serviceInstance,uri);
+	}
+}
+
@@ -0,0 +1,81 @@
+package com.messagequeue.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.services.model.Message;
+
+/// <summary>
+/// Compares the throughput of the in-memory queue engines at 1, 4, 16 and 64 threads. Every thread pushes a
+/// batch of messages and then receives a batch, the way the producers and consumers of the application do.
+/// Run the main method on the test classpath after mvn test-compile, on a machine with enough cores for the thread counts.
+/// </summary>
+public class ReadyMessagesBenchmark {
+
+	private static final int[] threadCounts = { 1, 4, 16, 64 };
+	private static final int batchSize = 10;
+	private static final long warmupMillis = 1000;
+	private static final long measureMillis = 3000;
+
+	public static void main(String[] args) throws Exception {
+		QueueEngine[] engines = { QueueEngine.linked(), QueueEngine.ring(1024) };
+
+		System.out.println(String.format("%-10s %8s %16s", "engine", "threads", "messages/sec"));
+
+		for (int threads : threadCounts) {
+			for (QueueEngine engine : engines) {
+				run(engine, threads, warmupMillis);
+				double rate = run(engine, threads, measureMillis);
+				System.out.println(String.format("%-10s %8d %,16.0f", engine, threads, rate));
+			}
+		}
+	}
+
+	/// <summary>Runs the threads against a new queue of the engine for the given time.</summary>
+	/// <Returns>The messages received per second.</Returns>
+	private static double run(QueueEngine engine, int threads, long millis) throws Exception {
+		final ReadyMessages messages = ReadyMessages.create(engine);
+		final Message message = new Message();
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final CountDownLatch start = new CountDownLatch(1);
+		final LongAdder received = new LongAdder();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		for (int t = 0; t < threads; t++) {
+			executor.submit(() -> {
+				List<Message> batch = new ArrayList<>(batchSize);
+				start.await();
+
+				while (running.get()) {
+					for (int i = 0; i < batchSize; i++) {
+						// A full ring is drained by the producer itself, otherwise every thread could end up waiting for room.
+						while (!messages.offer(message)) {
+							batch.clear();
+							received.add(messages.drainTo(batch, batchSize));
+						}
+					}
+
+					batch.clear();
+					received.add(messages.drainTo(batch, batchSize));
+				}
+
+				return null;
+			});
+		}
+
+		long started = System.nanoTime();
+		start.countDown();
+		Thread.sleep(millis);
+		running.set(false);
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+
+		return received.sum() * 1e9 / (System.nanoTime() - started);
+	}
+}
@@ -0,0 +1,107 @@
+package com.messagequeue.services;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.services.model.Message;
+
+public class ReceiveBufferTest {
+
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+	private final ConcurrentLinkedQueue<CompletableFuture<List<Message>>> receives = new ConcurrentLinkedQueue<>();
+	private final List<Message> released = new ArrayList<>();
+	private final AtomicLong now = new AtomicLong(1000);
+
+	@After
+	public void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	/// <summary>
+	/// Verifies that the buffer keeps the given number of receives running, serves polls from memory, and starts
+	/// a new receive only once the buffer has room for its messages.
+	/// </summary>
+	@Test(timeout = 10000)
+	public void testPrefetchedMessagesAreServedFromMemory() throws Exception {
+		ReceiveBuffer buffer = newBuffer(2);
+		buffer.fill();
+		assertEquals(2, receives.size());
+
+		receives.poll().complete(messages("a", "b"));
+		// The completed receive is not replaced while the buffer has no room for the messages of both receives.
+		assertEquals(1, receives.size());
+		assertEquals(2, buffer.size());
+
+		List<Message> polled = buffer.poll(1, 0);
+		assertEquals(1, polled.size());
+		assertEquals("a", polled.get(0).getMessage());
+
+		polled = buffer.poll(10, 0);
+		assertEquals(1, polled.size());
+		assertEquals("b", polled.get(0).getMessage());
+		assertEquals(2, receives.size());
+
+		// An empty buffer returns nothing once the wait time passes.
+		assertTrue(buffer.poll(10, 0).isEmpty());
+		buffer.close();
+	}
+
+	/// <summary>
+	/// Verifies that prefetched messages with less than a quarter of their visibility timeout left are released
+	/// instead of handed out, and that closing the buffer releases the messages still waiting in it.
+	/// </summary>
+	@Test(timeout = 10000)
+	public void testExpiringMessagesAreReleased() throws Exception {
+		ReceiveBuffer buffer = newBuffer(1);
+		buffer.fill();
+		receives.poll().complete(messages("old"));
+
+		// A full buffer starts no receive until its messages are taken.
+		assertTrue(receives.isEmpty());
+
+		now.addAndGet(800);
+		assertTrue(buffer.poll(10, 0).isEmpty());
+		assertEquals(1, released.size());
+		assertEquals("old", released.get(0).getMessage());
+
+		receives.poll().complete(messages("new"));
+		List<Message> polled = buffer.poll(10, 0);
+		assertEquals(1, polled.size());
+		assertEquals("new", polled.get(0).getMessage());
+
+		receives.poll().complete(messages("left"));
+		buffer.close();
+		assertEquals(2, released.size());
+		assertEquals("left", released.get(1).getMessage());
+	}
+
+	private ReceiveBuffer newBuffer(int maxReceives) {
+		return new ReceiveBuffer(() -> {
+			CompletableFuture<List<Message>> receive = new CompletableFuture<>();
+			receives.add(receive);
+			return receive;
+		}, released::addAll, maxReceives, 10, 1000, scheduler, now::get);
+	}
+
+	private List<Message> messages(String... bodies) {
+		List<Message> messages = new ArrayList<>();
+
+		for (String body : bodies) {
+			Message message = new Message();
+			message.setMessage(body);
+			messages.add(message);
+		}
+
+		return messages;
+	}
+}
@@ -0,0 +1,49 @@
+package com.messagequeue.services;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.amazonaws.ClientConfiguration;
+
+public class SqsClientSettingsTest {
+
+	/// <summary>
+	/// Verifies that the pool, timeouts and retries of the settings are passed on to the SDK client configuration.
+	/// </summary>
+	@Test
+	public void testClientConfiguration() {
+		SqsClientSettings settings = new SqsClientSettings();
+		settings.setMaxConnections(8);
+		settings.setConnectionTimeoutMillis(1000);
+		settings.setSocketTimeoutMillis(30000);
+		settings.setConnectionTtlMillis(120000);
+		settings.setMaxErrorRetry(5);
+
+		ClientConfiguration configuration = settings.toClientConfiguration();
+		assertEquals(8, configuration.getMaxConnections());
+		assertEquals(1000, configuration.getConnectionTimeout());
+		assertEquals(30000, configuration.getSocketTimeout());
+		assertEquals(120000, configuration.getConnectionTTL());
+		assertTrue(configuration.useReaper());
+		assertEquals(5, configuration.getRetryPolicy().getMaxErrorRetry());
+	}
+
+	/// <summary>
+	/// Verifies that the backoff grows with the retries and never exceeds the cap.
+	/// </summary>
+	@Test
+	public void testBackoffIsCapped() {
+		SqsClientSettings settings = new SqsClientSettings();
+		settings.setBaseBackoffMillis(100);
+		settings.setMaxBackoffMillis(1000);
+
+		for (int i = 0; i < 100; i++) {
+			assertTrue(settings.backoffMillis(0) <= 100);
+			assertTrue(settings.backoffMillis(2) <= 400);
+			assertTrue(settings.backoffMillis(10) <= 1000);
+			assertTrue(settings.backoffMillis(100) <= 1000);
+			assertTrue(settings.backoffMillis(100) >= 0);
+		}
+	}
+}
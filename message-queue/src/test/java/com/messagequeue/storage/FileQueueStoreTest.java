@@ -0,0 +1,551 @@
+package com.messagequeue.storage;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.services.model.Message;
+import com.services.model.MessageStatus;
+
+public class FileQueueStoreTest {
+
+	private static final long visibilityTimeoutMillis = 5 * 60 * 1000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File directory;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = folder.newFolder("queue");
+	}
+
+	/// <summary>
+	/// Verifies that new segments are started once the active segment is full and that the segments
+	/// are dropped once all of their records are deleted.
+	/// </summary>
+	@Test
+	public void testSegmentsAreRolledAndDropped() throws Exception {
+		FileQueueStore store = new FileQueueStore(directory, 256);
+
+		store.append(generateMessages(40));
+		assertTrue(store.getSegmentCount() > 1);
+
+		List<Message> received = store.receive(40, visibilityTimeoutMillis, System.currentTimeMillis());
+		assertEquals(40, received.size());
+		assertEquals(40, store.delete(received).getSuccessful().size());
+
+		// Only the active segment is left.
+		assertEquals(1, store.getSegmentCount());
+		assertEquals(1, directory.listFiles((dir, name) -> Segment.isSegmentFile(name)).length);
+	}
+
+	/// <summary>Verifies that the state of the queue is rebuilt from the segments and the state log.</summary>
+	@Test
+	public void testStateIsRebuiltOnOpen() throws Exception {
+		FileQueueStore store = new FileQueueStore(directory, 256);
+		store.append(generateMessages(10));
+
+		List<Message> received = store.receive(4, visibilityTimeoutMillis, System.currentTimeMillis());
+		store.delete(received.subList(0, 2));
+
+		FileQueueStore reopened = new FileQueueStore(directory, 256);
+		assertEquals(6, reopened.getPendingCount());
+		assertEquals(2, reopened.getInflightCount());
+
+		// Receipt ids handed out before the restart are still valid.
+		assertEquals(2, reopened.delete(received.subList(2, 4)).getSuccessful().size());
+		assertEquals(0, reopened.getInflightCount());
+
+		// Messages are received in the order they were queued.
+		List<Message> remaining = reopened.receive(10, visibilityTimeoutMillis, System.currentTimeMillis());
+		assertEquals("Message 4", remaining.get(0).getMessage());
+	}
+
+	/// <summary>
+	/// Verifies that receiving and deleting messages only changes the state files, leaving the segment
+	/// files untouched.
+	/// </summary>
+	@Test
+	public void testStateChangesDoNotRewriteSegments() throws Exception {
+		FileQueueStore store = new FileQueueStore(directory, 1024);
+		store.append(generateMessages(10));
+
+		File segment = directory.listFiles((dir, name) -> Segment.isSegmentFile(name))[0];
+		long segmentBytes = segment.length();
+		long modified = segment.lastModified();
+
+		List<Message> received = store.receive(10, visibilityTimeoutMillis, System.currentTimeMillis());
+		store.delete(received.subList(0, 5));
+
+		assertEquals(segmentBytes, segment.length());
+		assertEquals(modified, segment.lastModified());
+
+		FileQueueStore reopened = new FileQueueStore(directory, 1024);
+		assertEquals(0, reopened.getPendingCount());
+		assertEquals(5, reopened.getInflightCount());
+	}
+
+	/// <summary>
+	/// Verifies that messages received right after each append are read back intact, both while they lie past
+	/// the mapping of the segment and once enough was appended for the segment to be mapped again.
+	/// </summary>
+	@Test
+	public void testAppendedRecordsAreReadPastTheMapping() throws Exception {
+		FileQueueStore store = new FileQueueStore(directory, 16 << 20);
+		char[] padding = new char[100 * 1024];
+		Arrays.fill(padding, 'x');
+
+		for (int i = 0; i < 30; i++) {
+			Message message = new Message();
+			message.setMessage("Message " + i + " " + new String(padding));
+			store.append(Collections.singletonList(message));
+
+			List<Message> received = store.receive(1, 1000, 1000000);
+			assertEquals(1, received.size());
+			assertEquals(message.getMessage(), received.get(0).getMessage());
+		}
+
+		assertEquals(1, directory.listFiles((dir, name) -> Segment.isSegmentFile(name)).length);
+	}
+
+	/// <summary>
+	/// Verifies that a queue file in the legacy text format is migrated into the segments, keeping the
+	/// state of its messages and contents that contain the separator or a status name.
+	/// </summary>
+	@Test
+	public void testLegacyQueueIsMigrated() throws Exception {
+		File legacy = new File(directory, "messages");
+
+		try (PrintWriter pw = new PrintWriter(new FileWriter(legacy))) {
+			pw.println("NEW|0||0|Message with NEW and a | in it");
+			pw.println("INFLIGHT|2|2017-08-01 10:00:00|7|In-flight message");
+		}
+
+		FileQueueStore store = new FileQueueStore(directory, 256);
+		assertEquals(1, store.getPendingCount());
+		assertEquals(1, store.getInflightCount());
+		assertFalse(legacy.exists());
+
+		// The in-flight message is long past its visibility timeout and is received first.
+		List<Message> received = store.receive(2, visibilityTimeoutMillis, System.currentTimeMillis());
+		assertEquals("In-flight message", received.get(0).getMessage());
+		assertEquals(3, received.get(0).getPriorAttempts());
+		assertEquals("Message with NEW and a | in it", received.get(1).getMessage());
+	}
+
+	/// <summary>
+	/// Verifies that a record torn by a crash after the last checkpoint is dropped when the store is opened,
+	/// and that the records covered by the checkpoint and the valid records after it are kept.
+	/// </summary>
+	@Test
+	public void testTornTailIsTruncatedOnRecovery() throws Exception {
+		FileQueueStore store = new FileQueueStore(directory, 4096);
+		store.append(generateMessages(5));
+		store.close();
+		assertEquals(1, directory.listFiles((dir, name) -> name.endsWith(SegmentCheckpoint.suffix)).length);
+
+		store.append(generateMessages(3));
+		File segment = directory.listFiles((dir, name) -> Segment.isSegmentFile(name))[0];
+		long length = segment.length();
+
+		// Corrupt the checksum of the last record, the way a write cut short by a crash would.
+		try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+			raf.seek(length - 1);
+			int last = raf.read();
+			raf.seek(length - 1);
+			raf.write(last ^ 0xFF);
+		}
+
+		FileQueueStore reopened = new FileQueueStore(directory, 4096);
+		assertEquals(7, reopened.getPendingCount());
+		assertTrue(reopened.getTruncatedBytes() > 0);
+		assertEquals(length - reopened.getTruncatedBytes(), segment.length());
+
+		// New records are appended after the last valid record.
+		reopened.append(generateMessages(1));
+		List<Message> received = reopened.receive(10, visibilityTimeoutMillis, System.currentTimeMillis());
+		assertEquals(8, received.size());
+		assertEquals("Message 1", received.get(6).getMessage());
+		assertEquals("Message 0", received.get(7).getMessage());
+	}
+
+	/// <summary>
+	/// Verifies that compacting a full segment shrinks its file while the remaining pending and in-flight
+	/// records keep their positions, receipts and order, also after the store is reopened.
+	/// </summary>
+	@Test
+	public void testCompactionKeepsLiveRecords() throws Exception {
+		FileQueueStore store = new FileQueueStore(directory, 512);
+		store.append(generateMessages(40));
+		assertTrue(store.getSegmentCount() > 1);
+
+		File first = directory.listFiles((dir, name) -> Segment.isSegmentFile(name))[0];
+		long originalBytes = first.length();
+
+		// Leave one record of the first segment in-flight and delete the others received.
+		List<Message> received = store.receive(12, visibilityTimeoutMillis, System.currentTimeMillis());
+		store.delete(received.subList(0, 10));
+
+		Compaction compaction = store.prepareCompaction(0.5);
+		assertNotNull(compaction);
+		compaction.write(0);
+
+		// A record deleted while the copy is written is copied and stays deleted.
+		store.delete(received.subList(10, 11));
+		assertTrue(store.completeCompaction(compaction));
+		assertTrue(first.length() < originalBytes);
+
+		FileQueueStore reopened = new FileQueueStore(directory, 512);
+		assertEquals(28, reopened.getPendingCount());
+		assertEquals(1, reopened.getInflightCount());
+		assertEquals(1, reopened.delete(received.subList(11, 12)).getSuccessful().size());
+
+		List<Message> remaining = reopened.receive(40, visibilityTimeoutMillis, System.currentTimeMillis());
+		assertEquals(28, remaining.size());
+		assertEquals("Message 12", remaining.get(0).getMessage());
+	}
+
+	/// <summary>
+	/// Verifies that a compaction handed to a store reloaded since it was prepared is discarded by that store,
+	/// leaving its segment and no compacted copy behind.
+	/// </summary>
+	@Test
+	public void testCompactionOfReloadedStoreIsDiscarded() throws Exception {
+		FileQueueStore store = new FileQueueStore(directory, 512);
+		store.append(generateMessages(40));
+		store.delete(store.receive(10, visibilityTimeoutMillis, System.currentTimeMillis()));
+
+		File first = directory.listFiles((dir, name) -> Segment.isSegmentFile(name))[0];
+		long originalBytes = first.length();
+
+		Compaction compaction = store.prepareCompaction(0.5);
+		assertNotNull(compaction);
+		compaction.write(0);
+
+		FileQueueStore reloaded = new FileQueueStore(directory, 512);
+		assertFalse(reloaded.completeCompaction(compaction));
+		assertEquals(originalBytes, first.length());
+		assertEquals(0, directory.listFiles((dir, name) -> name.endsWith(Compaction.suffix)).length);
+		assertEquals(30, reloaded.receive(40, visibilityTimeoutMillis, System.currentTimeMillis()).size());
+	}
+
+	/// <summary>
+	/// Verifies that the fsync policies are parsed from the configuration and that forcing the store
+	/// covers the segments that were rolled since the last force.
+	/// </summary>
+	@Test
+	public void testFsyncPolicy() throws Exception {
+		assertEquals(FsyncPolicy.Mode.ALWAYS, FsyncPolicy.parse("always").getMode());
+		assertEquals(250, FsyncPolicy.parse("interval:250").getThreshold());
+		assertEquals(FsyncPolicy.Mode.BYTES, FsyncPolicy.parse("bytes:4096").getMode());
+
+		FileQueueStore store = new FileQueueStore(directory, 256);
+		store.setFsyncPolicy(FsyncPolicy.everyBytes(512));
+		store.append(generateMessages(40));
+		store.sync();
+		store.close();
+
+		FileQueueStore reopened = new FileQueueStore(directory, 256);
+		reopened.setFsyncPolicy(FsyncPolicy.always());
+		assertEquals(40, reopened.getPendingCount());
+		assertEquals(40, reopened.receive(40, visibilityTimeoutMillis, System.currentTimeMillis()).size());
+	}
+
+	/// <summary>
+	/// Verifies that a reopened store never hands out the receipt id of a message deleted before, so a consumer
+	/// holding the stale receipt cannot delete or extend the message received after the reload.
+	/// </summary>
+	@Test
+	public void testReceiptIdsAreNotReusedAfterReload() throws Exception {
+		FileQueueStore store = new FileQueueStore(directory, 1024);
+		store.append(generateMessages(3));
+
+		List<Message> first = store.receive(1, visibilityTimeoutMillis, System.currentTimeMillis());
+		List<Message> stale = store.receive(1, visibilityTimeoutMillis, System.currentTimeMillis());
+		assertEquals(1, store.delete(stale).getSuccessful().size());
+		store.close();
+
+		// The in-flight record with the highest receipt id is gone, the reopened store must not reuse its receipt id.
+		FileQueueStore reopened = new FileQueueStore(directory, 1024);
+		List<Message> received = reopened.receive(1, visibilityTimeoutMillis, System.currentTimeMillis());
+		assertEquals(1, received.size());
+		assertTrue(received.get(0).getReceiptId() > stale.get(0).getReceiptId());
+
+		assertEquals(1, reopened.delete(stale).getFailed().size());
+		assertEquals(1, reopened.changeVisibility(stale, 60000, System.currentTimeMillis()).getFailed().size());
+		assertEquals(2, reopened.getInflightCount());
+		assertEquals(1, reopened.delete(first).getSuccessful().size());
+	}
+
+	/// <summary>
+	/// Verifies that producers pushing while another push is written are merged into a single write,
+	/// and that every producer returns only once its messages are written.
+	/// </summary>
+	@Test
+	public void testGroupCommitMergesConcurrentPushes() throws Exception {
+		CountDownLatch firstWriteStarted = new CountDownLatch(1);
+		CountDownLatch releaseFirstWrite = new CountDownLatch(1);
+		List<Integer> writes = Collections.synchronizedList(new ArrayList<>());
+
+		GroupCommit groupCommit = new GroupCommit(messages -> {
+			writes.add(messages.size());
+			firstWriteStarted.countDown();
+
+			try {
+				releaseFirstWrite.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(5);
+		executor.execute(() -> append(groupCommit, 1));
+		assertTrue(firstWriteStarted.await(4, TimeUnit.SECONDS));
+
+		for (int i = 0; i < 4; i++) {
+			executor.execute(() -> append(groupCommit, 2));
+		}
+
+		// Let the other producers queue up behind the first write.
+		Thread.sleep(200);
+		releaseFirstWrite.countDown();
+
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(4, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(1, 8), writes);
+	}
+
+	/// <summary>
+	/// Verifies that delayed messages are stored at once, are not received before their visible-at time,
+	/// keep their delay across a reopen and are received as first attempts.
+	/// </summary>
+	@Test
+	public void testDelayedMessagesAreReceivedOnceVisible() throws Exception {
+		FileQueueStore store = new FileQueueStore(directory, 256);
+		List<Message> messages = generateMessages(3);
+		messages.get(0).setDelaySeconds(60);
+		messages.get(1).setDelaySeconds(1);
+		store.append(messages);
+
+		assertEquals(1, store.getPendingCount());
+		assertEquals(2, store.getDelayedCount());
+		assertEquals(0, store.getInflightCount());
+
+		List<Message> received = store.receive(10, visibilityTimeoutMillis, System.currentTimeMillis());
+		assertEquals(1, received.size());
+		assertEquals("Message 2", received.get(0).getMessage());
+
+		FileQueueStore reopened = new FileQueueStore(directory, 256);
+		assertEquals(2, reopened.getDelayedCount());
+		assertEquals(1, reopened.getInflightCount());
+
+		received = reopened.receive(10, visibilityTimeoutMillis, System.currentTimeMillis() + 2000);
+		assertEquals(1, received.size());
+		assertEquals("Message 1", received.get(0).getMessage());
+		assertEquals(0, received.get(0).getPriorAttempts());
+		assertEquals(1, reopened.getDelayedCount());
+		assertEquals(1, reopened.delete(received).getSuccessful().size());
+	}
+
+	/// <summary>
+	/// Verifies that the visibility timeout of received messages is changed in place, survives a reopen, and
+	/// cannot be changed once it has passed.
+	/// </summary>
+	@Test
+	public void testChangeVisibility() throws Exception {
+		FileQueueStore store = new FileQueueStore(directory, 256);
+		store.append(generateMessages(2));
+		List<Message> received = store.receive(2, 1000, 1000000);
+
+		assertEquals(2, store.changeVisibility(received, 60000, 1000500).getSuccessful().size());
+		assertEquals(0, store.receive(2, 1000, 1002000).size());
+
+		FileQueueStore reopened = new FileQueueStore(directory, 256);
+		assertEquals(0, reopened.receive(2, 1000, 1060000).size());
+		assertEquals(1, reopened.changeVisibility(received.subList(0, 1), 0, 1060000).getSuccessful().size());
+
+		List<Message> visible = reopened.receive(2, 1000, 1060000);
+		assertEquals(1, visible.size());
+		assertEquals(1, visible.get(0).getPriorAttempts());
+		assertEquals(1, reopened.changeVisibility(received.subList(1, 2), 1000, 1060500).getFailed().size());
+	}
+
+	/// <summary>
+	/// Verifies that the in-flight records past their last allowed receive are claimed for the dead-letter queue
+	/// with their receive count, that the others are left to be received again, and that a claim not followed by
+	/// a delete expires into a new claim rather than a receive.
+	/// </summary>
+	@Test
+	public void testDeadLettersAreMoved() throws Exception {
+		FileQueueStore store = new FileQueueStore(directory, 256);
+		FileQueueStore deadLetterStore = new FileQueueStore(folder.newFolder("dead-letters"), 256);
+		store.append(generateMessages(2));
+
+		store.receive(1, 1000, 1000000);
+		store.receive(1, 1000, 1000000);
+		assertEquals(0, store.claimDeadLetters(2, 1002000, 60000).size());
+
+		// The first message is received a second time, the second one is still on its first receive.
+		List<Message> received = store.receive(1, 1000, 1002000);
+		assertEquals("Message 0", received.get(0).getMessage());
+		assertEquals(1, received.get(0).getPriorAttempts());
+
+		List<Message> claimed = store.claimDeadLetters(2, 1004000, 60000);
+		assertEquals(1, claimed.size());
+		assertEquals(2, store.getInflightCount());
+
+		// The claim expires without a delete, as after a crash before the move completed.
+		assertEquals(0, store.claimDeadLetters(2, 1005000, 60000).size());
+		claimed = store.claimDeadLetters(2, 1064000, 60000);
+		assertEquals(1, claimed.size());
+		assertEquals(2, claimed.get(0).getPriorAttempts());
+
+		deadLetterStore.append(claimed);
+		assertEquals(1, store.delete(claimed).getSuccessful().size());
+		assertEquals(1, store.getInflightCount());
+
+		received = store.receive(10, 1000, 1004000);
+		assertEquals(1, received.size());
+		assertEquals("Message 1", received.get(0).getMessage());
+
+		List<Message> deadLetters = deadLetterStore.receive(10, 1000, 1004000);
+		assertEquals(1, deadLetters.size());
+		assertEquals("Message 0", deadLetters.get(0).getMessage());
+		assertEquals(2, deadLetters.get(0).getPriorAttempts());
+	}
+
+	/// <summary>
+	/// Verifies that a delayed record that reached the disk without the delayed state of its slot, as after a
+	/// crash before the state file was forced, is still delayed once the store is reopened.
+	/// </summary>
+	@Test
+	public void testDelayIsRecoveredFromRecord() throws Exception {
+		FileQueueStore store = new FileQueueStore(directory, 1024);
+		List<Message> messages = generateMessages(2);
+		messages.get(0).setDelaySeconds(60);
+		store.append(messages);
+
+		// Clear the state file, leaving every slot pending, and reopen the store without closing it.
+		try (RandomAccessFile raf = new RandomAccessFile(new File(directory, SegmentState.fileName(0)), "rw")) {
+			raf.write(new byte[(int)raf.length()]);
+		}
+
+		FileQueueStore reopened = new FileQueueStore(directory, 1024);
+		assertEquals(1, reopened.getDelayedCount());
+		assertEquals(1, reopened.getPendingCount());
+
+		List<Message> received = reopened.receive(10, visibilityTimeoutMillis, System.currentTimeMillis());
+		assertEquals(1, received.size());
+		assertEquals("Message 1", received.get(0).getMessage());
+
+		received = reopened.receive(10, visibilityTimeoutMillis, System.currentTimeMillis() + 61000);
+		assertEquals(1, received.size());
+		assertEquals("Message 0", received.get(0).getMessage());
+	}
+
+	/// <summary>
+	/// Verifies that a write failing with a runtime exception fails every producer merged into it, rather than
+	/// only the producer that wrote the group.
+	/// </summary>
+	@Test
+	public void testGroupCommitFailsEveryProducerOfFailedWrite() throws Exception {
+		CountDownLatch firstWriteStarted = new CountDownLatch(1);
+		CountDownLatch releaseFirstWrite = new CountDownLatch(1);
+		AtomicInteger writes = new AtomicInteger();
+
+		GroupCommit groupCommit = new GroupCommit(messages -> {
+			int write = writes.incrementAndGet();
+			firstWriteStarted.countDown();
+
+			try {
+				releaseFirstWrite.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			// Only the merged write of the producers queued behind the first write fails.
+			if (write == 2) {
+				throw new IllegalStateException("Record too large.");
+			}
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(5);
+		Future<?> first = executor.submit(() -> {
+			groupCommit.append(generateMessages(1));
+			return null;
+		});
+		assertTrue(firstWriteStarted.await(4, TimeUnit.SECONDS));
+		List<Future<?>> merged = new ArrayList<>();
+
+		for (int i = 0; i < 4; i++) {
+			merged.add(executor.submit(() -> {
+				groupCommit.append(generateMessages(2));
+				return null;
+			}));
+		}
+
+		// Let the other producers queue up behind the first write.
+		Thread.sleep(200);
+		releaseFirstWrite.countDown();
+		first.get(4, TimeUnit.SECONDS);
+
+		for (Future<?> producer : merged) {
+			try {
+				producer.get(4, TimeUnit.SECONDS);
+				fail("The producer should have failed with the write of its messages.");
+			}
+			catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof IllegalStateException);
+			}
+		}
+
+		assertEquals(2, writes.get());
+		executor.shutdown();
+	}
+
+	private void append(GroupCommit groupCommit, int count) {
+		try {
+			groupCommit.append(generateMessages(count));
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private List<Message> generateMessages(int count) {
+		List<Message> messages = new ArrayList<>();
+
+		for (int i = 0; i < count; i++) {
+			Message message = new Message();
+			message.setMessageStatus(MessageStatus.NEW);
+			message.setMessage("Message " + i);
+			messages.add(message);
+		}
+
+		return messages;
+	}
+}
@@ -0,0 +1,97 @@
+package com.utilities;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class RingBufferTest {
+
+	/// <summary>Verifies that the ring rounds its capacity up, rejects elements while full and keeps the order across laps.</summary>
+	@Test
+	public void testOfferAndDrainAcrossLaps() {
+		RingBuffer<Integer> ring = new RingBuffer<>(3);
+		assertEquals(4, ring.capacity());
+
+		for (int lap = 0; lap < 3; lap++) {
+			for (int i = 0; i < 4; i++) {
+				assertTrue(ring.offer(lap * 4 + i));
+			}
+
+			assertFalse(ring.offer(-1));
+			assertEquals(4, ring.size());
+
+			List<Integer> drained = new ArrayList<>();
+			assertEquals(3, ring.drainTo(drained, 3));
+			assertEquals(Arrays.asList(lap * 4, lap * 4 + 1, lap * 4 + 2), drained);
+			assertEquals(Integer.valueOf(lap * 4 + 3), ring.poll());
+			assertNull(ring.poll());
+			assertEquals(0, ring.drainTo(drained, 3));
+		}
+	}
+
+	/// <summary>
+	/// Verifies that with producers and batch-claiming consumers racing on a small ring every element is
+	/// received exactly once.
+	/// </summary>
+	@Test
+	public void testConcurrentProducersAndConsumersReceiveEveryElementOnce() throws Exception {
+		final RingBuffer<Integer> ring = new RingBuffer<>(64);
+		final int producers = 4;
+		final int consumers = 4;
+		final int perProducer = 50000;
+		final int total = producers * perProducer;
+		final AtomicInteger received = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(producers + consumers);
+		List<Future<List<Integer>>> consumed = new ArrayList<>();
+
+		for (int p = 0; p < producers; p++) {
+			final int first = p * perProducer;
+			executor.submit(() -> {
+				for (int i = first; i < first + perProducer; i++) {
+					while (!ring.offer(i)) {
+						Thread.yield();
+					}
+				}
+			});
+		}
+
+		for (int c = 0; c < consumers; c++) {
+			consumed.add(executor.submit(() -> {
+				List<Integer> elements = new ArrayList<>();
+
+				while (received.get() < total) {
+					int drained = ring.drainTo(elements, 10);
+					received.addAndGet(drained);
+
+					if (drained == 0) {
+						Thread.yield();
+					}
+				}
+
+				return elements;
+			}));
+		}
+
+		BitSet seen = new BitSet(total);
+
+		for (Future<List<Integer>> elements : consumed) {
+			for (Integer element : elements.get()) {
+				assertFalse("Received twice: " + element, seen.get(element));
+				seen.set(element);
+			}
+		}
+
+		executor.shutdown();
+		assertEquals(total, seen.cardinality());
+		assertEquals(0, ring.size());
+	}
+}
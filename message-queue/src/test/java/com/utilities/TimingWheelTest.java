@@ -0,0 +1,54 @@
+package com.utilities;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+	/// <summary>
+	/// Verifies that items spread over several levels of the wheel are returned once their deadline
+	/// has passed, never before it and at most one tick after it, and each of them only once.
+	/// </summary>
+	@Test
+	public void testItemsExpireOnceAfterTheirDeadline() {
+		TimingWheel<Long> wheel = new TimingWheel<>(10, 8, 0);
+		List<Long> deadlines = Arrays.asList(5L, 95L, 640L, 5000L, 123456L);
+
+		for (Long deadline : deadlines) {
+			wheel.schedule(deadline, deadline);
+		}
+
+		List<Long> expired = new ArrayList<>();
+
+		for (long now = 0; now <= 200000; now += 7) {
+			for (Long item : wheel.expire(now)) {
+				assertTrue("Expired early: " + item, item <= now);
+				assertTrue("Expired late: " + item, now - item <= 10 + 7);
+				expired.add(item);
+			}
+		}
+
+		assertEquals(deadlines, expired);
+		assertEquals(0, wheel.size());
+	}
+
+	/// <summary>Verifies that cancelled items are never returned and that items are returned after long pauses.</summary>
+	@Test
+	public void testCancelledItemsAreNotReturned() {
+		TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+		TimingWheel.Timeout<String> cancelled = wheel.schedule("cancelled", 1000);
+		wheel.schedule("kept", 1000);
+		wheel.schedule("past", -50);
+
+		assertTrue(wheel.cancel(cancelled));
+		assertEquals(Arrays.asList("past"), wheel.expire(0));
+		assertEquals(Arrays.asList("kept"), wheel.expire(1000000));
+		assertFalse(wheel.cancel(cancelled));
+		assertEquals(0, wheel.size());
+	}
+}